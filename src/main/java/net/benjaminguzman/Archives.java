@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Utilities to read files inside zip and jar archives in place, through the zip {@link FileSystem},
+ * i.e. without extracting them
+ * <p>
+ * A file inside an archive is referred to as {@code archive!/path/inside/archive}, e.g.
+ * {@code build/schemas.jar!/graphql/schema.graphql}
+ */
+public final class Archives {
+	/**
+	 * Separator between the archive and the path inside the archive
+	 */
+	public static final String ENTRY_SEPARATOR = "!/";
+
+	private Archives() {
+	}
+
+	/**
+	 * @param file the file
+	 * @return true if the file is a zip or jar archive (judging by its extension)
+	 */
+	public static boolean isArchive(@NotNull Path file) {
+		Path name = file.getFileName();
+		if (name == null)
+			return false;
+
+		String lowerName = name.toString().toLowerCase(Locale.ROOT);
+		return (lowerName.endsWith(".zip") || lowerName.endsWith(".jar")) && Files.isRegularFile(file);
+	}
+
+	/**
+	 * Opens an archive. The returned file system should be closed once its files are no longer needed
+	 *
+	 * @param archive the archive
+	 * @return the file system of the archive. Its root is {@code /}
+	 * @throws IOException if the archive couldn't be opened
+	 */
+	@NotNull
+	public static FileSystem open(@NotNull Path archive) throws IOException {
+		return FileSystems.newFileSystem(archive, (ClassLoader) null);
+	}
+
+	/**
+	 * @param file a file given by the user
+	 * @return the archive containing the file, if the file refers to a path inside an archive with
+	 * {@link #ENTRY_SEPARATOR}. The file itself if it is an archive. Null otherwise
+	 */
+	@Nullable
+	public static Path archiveOf(@NotNull Path file) {
+		String str = file.toString();
+		int sepIdx = str.indexOf(ENTRY_SEPARATOR);
+		if (sepIdx != -1 && !Files.exists(file) && isArchive(Path.of(str.substring(0, sepIdx))))
+			return Path.of(str.substring(0, sepIdx));
+		return isArchive(file) ? file : null;
+	}
+
+	/**
+	 * @param file a file given by the user, for which {@link #archiveOf(Path)} is not null
+	 * @return path of the file inside the archive. {@code /} (the root) if the file is the archive itself
+	 */
+	@NotNull
+	public static String entryOf(@NotNull Path file) {
+		String str = file.toString();
+		int sepIdx = str.indexOf(ENTRY_SEPARATOR);
+		return sepIdx != -1 && !isArchive(file) ? str.substring(sepIdx + 1) : "/";
+	}
+
+	/**
+	 * @param file a file, maybe inside an archive
+	 * @return true if the file is inside an archive
+	 */
+	public static boolean isInArchive(@NotNull Path file) {
+		return file.getFileSystem() != FileSystems.getDefault();
+	}
+
+	/**
+	 * @param file a file, maybe inside an archive
+	 * @return the file as it should be shown to the user. For files inside archives, their URI
+	 * (e.g. {@code jar:file:///build/schemas.jar!/schema.graphql})
+	 */
+	@NotNull
+	public static String toString(@NotNull Path file) {
+		return isInArchive(file) ? file.toUri().toString() : file.toString();
+	}
+
+	/**
+	 * @param file a file, maybe inside an archive
+	 * @return name of the file as an entry of an archive, i.e. its normalized path without root nor leading
+	 * {@code ..}, and with {@code /} as separator
+	 */
+	@NotNull
+	public static String entryName(@NotNull Path file) {
+		Path normalized = file.normalize();
+		if (normalized.getRoot() != null)
+			normalized = normalized.getRoot().relativize(normalized);
+
+		StringBuilder name = new StringBuilder();
+		for (Path part : normalized) {
+			if (part.toString().equals("..") || part.toString().isEmpty())
+				continue;
+			if (name.length() > 0)
+				name.append('/');
+			name.append(part);
+		}
+		return name.toString();
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.benjaminguzman;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Watches files and directory trees for changes, through a {@link WatchService}
+ * <p>
+ * Events are debounced: once a change is detected, events are collected until there are none for
+ * {@link #DEBOUNCE_MILLIS}, so saving several files at once (or an editor saving a file in several steps) results in
+ * a single set of changes
+ * <p>
+ * Changed files are given in the same form (e.g. relative) the watched file or directory was given
+ * <p>
+ * This class is not thread-safe
+ */
+public class FileWatcher implements Closeable {
+	private static final Logger LOGGER = Logger.getLogger(FileWatcher.class.getName());
+
+	/**
+	 * Time without events after which a set of changes is returned
+	 */
+	public static final long DEBOUNCE_MILLIS = 100;
+
+	@NotNull
+	private final WatchService watchService;
+
+	@NotNull
+	private final Map<WatchKey, WatchedDir> dirs = new HashMap<>();
+
+	/**
+	 * Watched files, by their absolute path. Values are the files as they were given
+	 */
+	@NotNull
+	private final Map<Path, Path> files = new HashMap<>();
+
+	public FileWatcher() throws IOException {
+		this.watchService = FileSystems.getDefault().newWatchService();
+	}
+
+	/**
+	 * Watches a single file. The file doesn't need to exist, but its directory does
+	 *
+	 * @param file the file
+	 * @throws IOException if the directory of the file couldn't be watched
+	 */
+	public void watchFile(@NotNull Path file) throws IOException {
+		Path absFile = file.toAbsolutePath().normalize();
+		files.put(absFile, file);
+		Path parent = absFile.getParent();
+		if (parent != null)
+			register(parent, null, 0);
+	}
+
+	/**
+	 * Watches the files inside a directory and its subdirectories. Subdirectories created later are watched too
+	 *
+	 * @param dir       the directory
+	 * @param maxDepth  maximum depth of the watched files. Files directly inside the directory have depth 1
+	 * @param dirFilter subdirectories are watched only if they pass this filter
+	 * @throws IOException if the directory couldn't be watched
+	 */
+	public void watchTree(@NotNull Path dir, int maxDepth, @NotNull Predicate<Path> dirFilter) throws IOException {
+		registerTree(new Tree(maxDepth, dirFilter), dir, 0, null);
+	}
+
+	/**
+	 * Waits for changes in the watched files
+	 *
+	 * @return the changes. The set of files may be empty if only files that are not watched changed
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	@NotNull
+	public Changes poll() throws InterruptedException {
+		Changes changes = new Changes();
+		WatchKey key = watchService.take();
+		while (key != null) {
+			handle(key, changes);
+			key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		return changes;
+	}
+
+	@Override
+	public void close() throws IOException {
+		watchService.close();
+	}
+
+	private void handle(@NotNull WatchKey key, @NotNull Changes changes) {
+		WatchedDir watched = dirs.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				changes.overflow = true;
+				continue;
+			}
+			if (watched == null)
+				continue;
+
+			Path name = (Path) event.context();
+			Path watchedFile = files.get(watched.absDir.resolve(name));
+			if (watchedFile != null && Files.isRegularFile(watchedFile))
+				changes.files.add(watchedFile);
+
+			if (watched.tree == null)
+				continue;
+			Path path = watched.dir.resolve(name);
+			BasicFileAttributes attrs;
+			try {
+				attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			} catch (IOException e) {
+				continue; // it was deleted meanwhile
+			}
+			if (attrs.isDirectory()) {
+				// files may have been created before the directory is watched, they're added to the changes
+				if (watched.depth + 1 < watched.tree.maxDepth && watched.tree.dirFilter.test(path))
+					try {
+						registerTree(watched.tree, path, watched.depth + 1, changes);
+					} catch (IOException e) {
+						LOGGER.warning("Couldn't watch " + path + ". " + e.getMessage());
+					}
+			} else if (isFile(path, attrs)) {
+				changes.files.add(path);
+			}
+		}
+		if (!key.reset())
+			dirs.remove(key); // the directory is gone
+	}
+
+	/**
+	 * Registers a directory and, recursively, its subdirectories
+	 *
+	 * @param tree    tree the directory belongs to
+	 * @param dir     the directory
+	 * @param depth   depth of the directory (the root of the tree has depth 0)
+	 * @param changes if not null, files inside the directories are added to it
+	 */
+	private void registerTree(@NotNull Tree tree, @NotNull Path dir, int depth, @Nullable Changes changes)
+		throws IOException {
+		register(dir, tree, depth);
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+			for (Path entry : entries) {
+				BasicFileAttributes attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				if (attrs.isDirectory()) {
+					if (depth + 1 < tree.maxDepth && tree.dirFilter.test(entry))
+						registerTree(tree, entry, depth + 1, changes);
+				} else if (changes != null && isFile(entry, attrs)) {
+					changes.files.add(entry);
+				}
+			}
+		} catch (DirectoryIteratorException e) {
+			throw e.getCause();
+		}
+	}
+
+	private void register(@NotNull Path dir, @Nullable Tree tree, int depth) throws IOException {
+		WatchKey key = dir.register(
+			watchService,
+			StandardWatchEventKinds.ENTRY_CREATE,
+			StandardWatchEventKinds.ENTRY_MODIFY
+		);
+
+		// the same directory may be registered for files and as part of a tree
+		WatchedDir watched = dirs.get(key);
+		if (watched == null || watched.tree == null)
+			dirs.put(key, new WatchedDir(dir, tree, depth));
+	}
+
+	/**
+	 * @return true if the path is a regular file or a symbolic link to a regular file
+	 */
+	private static boolean isFile(@NotNull Path path, @NotNull BasicFileAttributes attrs) {
+		return attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(path));
+	}
+
+	/**
+	 * Changes detected by {@link #poll()}
+	 */
+	public static final class Changes {
+		@NotNull
+		private final Set<Path> files = new LinkedHashSet<>();
+
+		private boolean overflow;
+
+		/**
+		 * @return the files that were created or modified
+		 */
+		@NotNull
+		public Set<Path> getFiles() {
+			return Collections.unmodifiableSet(files);
+		}
+
+		/**
+		 * @return true if some events were lost, so any watched file may have changed
+		 */
+		public boolean isOverflow() {
+			return overflow;
+		}
+	}
+
+	private static final class Tree {
+		private final int maxDepth;
+
+		@NotNull
+		private final Predicate<Path> dirFilter;
+
+		private Tree(int maxDepth, @NotNull Predicate<Path> dirFilter) {
+			this.maxDepth = maxDepth;
+			this.dirFilter = dirFilter;
+		}
+	}
+
+	private static final class WatchedDir {
+		/**
+		 * The directory, as it was given (or found inside a tree)
+		 */
+		@NotNull
+		private final Path dir;
+
+		@NotNull
+		private final Path absDir;
+
+		/**
+		 * Tree the directory belongs to, or null if it is only watched for single files
+		 */
+		@Nullable
+		private final Tree tree;
+
+		/**
+		 * Depth of the directory inside its tree
+		 */
+		private final int depth;
+
+		private WatchedDir(@NotNull Path dir, @Nullable Tree tree, int depth) {
+			this.dir = dir;
+			this.absDir = dir.toAbsolutePath().normalize();
+			this.tree = tree;
+			this.depth = depth;
+		}
+	}
+}
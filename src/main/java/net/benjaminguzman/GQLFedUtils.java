@@ -18,8 +18,13 @@
 
 package net.benjaminguzman;
 
+import net.benjaminguzman.batch.Batch;
+import net.benjaminguzman.daemon.Daemon;
+import net.benjaminguzman.daemon.DaemonClient;
 import net.benjaminguzman.dot.Dot;
+import net.benjaminguzman.lsp.Lsp;
 import net.benjaminguzman.purge.Purge;
+import net.benjaminguzman.search.Search;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import picocli.CommandLine;
@@ -27,9 +32,13 @@ import picocli.CommandLine;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.Socket;
 import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
 @CommandLine.Command(
@@ -37,7 +46,11 @@ import java.util.logging.Logger;
 	description = "gqlfedutils is a set of utilities to help you manage GraphQL Federated services.",
 	subcommands = {
 		Purge.class,
-		Dot.class
+		Dot.class,
+		Search.class,
+		Batch.class,
+		Daemon.class,
+		Lsp.class
 	},
 	version = "gqlfedutils v0.1",
 	header = "Copyright (c) 2021. Benjamín Antonio Velasco Guzmán\n" +
@@ -51,8 +64,30 @@ public class GQLFedUtils {
 	private static final Logger LOGGER = Logger.getLogger(GQLFedUtils.class.getName());
 
 	public static void main(String... args) {
+		// the client is handled before anything else so it doesn't load picocli, see Daemon
+		if (args.length > 0 && "client".equals(args[0])) {
+			args = Arrays.copyOfRange(args, 1, args.length);
+			Socket socket = null;
+			try {
+				socket = DaemonClient.connect(DaemonClient.defaultStateFile());
+			} catch (IOException e) {
+				System.err.println("No daemon is running (" + e.getMessage() + "). Running the command in this process");
+			}
+
+			if (socket != null) {
+				int exitCode;
+				try {
+					exitCode = DaemonClient.run(socket, Path.of(""), args, System.in, System.out, System.err);
+				} catch (IOException e) {
+					System.err.println("😭 Error while communicating with the daemon. " + e.getMessage());
+					exitCode = 1;
+				}
+				System.exit(exitCode);
+			}
+		}
+
 		System.setProperty("java.util.logging.SimpleFormatter.format", "[%4$-7s] [%1$tF %1$tT] %5$s %n");
-		new CommandLine(new GQLFedUtils()).execute(args);
+		System.exit(new CommandLine(new GQLFedUtils()).execute(args));
 	}
 
 	/**
@@ -125,4 +160,56 @@ public class GQLFedUtils {
 		}
 		return output;
 	}
+
+	/**
+	 * Creates an executor that starts a new virtual thread for each task
+	 * <p>
+	 * Virtual threads are only available in Java 21 or newer, so the executor is created through reflection
+	 *
+	 * @return the executor, or null if virtual threads are not available
+	 */
+	@Nullable
+	public static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Appends a string as a JSON string, i.e. quoted and with quotes, backslashes and control characters escaped
+	 *
+	 * @param json  the builder the JSON string is appended to
+	 * @param value the string
+	 */
+	public static void appendJsonString(@NotNull StringBuilder json, @NotNull String value) {
+		json.append('"');
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			switch (c) {
+				case '"':
+					json.append("\\\"");
+					break;
+				case '\\':
+					json.append("\\\\");
+					break;
+				case '\n':
+					json.append("\\n");
+					break;
+				case '\r':
+					json.append("\\r");
+					break;
+				case '\t':
+					json.append("\\t");
+					break;
+				default:
+					if (c < 0x20)
+						json.append(String.format("\\u%04x", (int) c));
+					else
+						json.append(c);
+			}
+		}
+		json.append('"');
+	}
 }
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.batch;
+
+import net.benjaminguzman.ConfigurationException;
+import net.benjaminguzman.GQLFedUtils;
+import net.benjaminguzman.daemon.Daemon;
+import net.benjaminguzman.dot.Dot;
+import net.benjaminguzman.lsp.Lsp;
+import net.benjaminguzman.parse.ParseCache;
+import net.benjaminguzman.purge.Purge;
+import org.jetbrains.annotations.NotNull;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+@CommandLine.Command(
+	name = "batch",
+	description = "Run the purge, dot and search jobs of a manifest file in a single process. " +
+		"Each input file is parsed only once across all jobs, and jobs that don't depend on each other run " +
+		"concurrently. A timing summary is printed at the end",
+	mixinStandardHelpOptions = true,
+	version = "gqlfedutils batch 0.1"
+)
+public class Batch implements Callable<Integer> {
+	private static final Logger LOGGER = Logger.getLogger(Batch.class.getName());
+
+	@CommandLine.Parameters(
+		paramLabel = "FILE",
+		description = "Manifest file. The manifest should be a YAML-formatted file with the following schema:\n" +
+			"jobs:\n" +
+			"  - name: string (optional)\n" +
+			"    command: purge | dot | search\n" +
+			"    args: string[] (the same arguments given in the command line)\n" +
+			"    dependsOn: string[] (optional, names of jobs that should finish first)",
+		arity = "1"
+	)
+	private Path manifestFile;
+
+	@CommandLine.Option(
+		names = {"-j", "--jobs"},
+		description = "Number of jobs to be run concurrently. Default: number of processors"
+	)
+	private int jobs = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Outcome of a job
+	 */
+	private enum Status {
+		SUCCEEDED,
+		FAILED,
+		SKIPPED
+	}
+
+	private static final class JobResult {
+		@NotNull
+		private final Status status;
+
+		private final int exitCode;
+
+		private final long elapsedNanos;
+
+		private JobResult(@NotNull Status status, int exitCode, long elapsedNanos) {
+			this.status = status;
+			this.exitCode = exitCode;
+			this.elapsedNanos = elapsedNanos;
+		}
+	}
+
+	/**
+	 * @return {@link CommandLine.ExitCode#OK} if all jobs completed successfully, or
+	 * {@link CommandLine.ExitCode#SOFTWARE} if the manifest is invalid, or a job failed or was skipped
+	 */
+	@Override
+	public Integer call() {
+		BatchManifest manifest;
+		try {
+			manifest = BatchManifest.load(manifestFile);
+		} catch (IOException e) {
+			LOGGER.severe("😭 Error while reading manifest " + manifestFile.toAbsolutePath() + ". " + e.getMessage());
+			return CommandLine.ExitCode.SOFTWARE;
+		} catch (ConfigurationException e) {
+			LOGGER.severe("😭 Invalid manifest " + manifestFile.toAbsolutePath() + ". " + e.getMessage());
+			return CommandLine.ExitCode.SOFTWARE;
+		}
+
+		if (jobs < 1) {
+			LOGGER.warning("--jobs should be at least 1, using 1");
+			jobs = 1;
+		}
+
+		List<BatchJob> batchJobs = manifest.getJobs();
+		Map<String, BatchJob> jobsByName = new HashMap<>();
+		batchJobs.forEach(job -> jobsByName.put(job.getName(), job));
+
+		ParseCache parseCache = new ParseCache();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(jobs, batchJobs.size())));
+		Map<String, CompletableFuture<JobResult>> results = new LinkedHashMap<>();
+		long startTime = System.nanoTime();
+		try {
+			for (BatchJob job : batchJobs)
+				schedule(job, jobsByName, results, parseCache, executor);
+			for (CompletableFuture<JobResult> result : results.values())
+				result.join();
+		} finally {
+			executor.shutdown();
+		}
+		long elapsedNanos = System.nanoTime() - startTime;
+
+		// summary, in the same order jobs were given
+		long workNanos = 0;
+		int failed = 0, skipped = 0;
+		for (BatchJob job : batchJobs) {
+			JobResult result = results.get(job.getName()).join();
+			workNanos += result.elapsedNanos;
+			String prefix = "Job " + job.getName() + " (" + job.getCommand() + "): ";
+			switch (result.status) {
+				case SUCCEEDED:
+					LOGGER.info(prefix + "completed in " + TimeUnit.NANOSECONDS.toMillis(result.elapsedNanos) + " ms");
+					break;
+				case FAILED:
+					++failed;
+					LOGGER.info(prefix + "failed (exit code " + result.exitCode + ") in "
+						+ TimeUnit.NANOSECONDS.toMillis(result.elapsedNanos) + " ms");
+					break;
+				case SKIPPED:
+					++skipped;
+					LOGGER.info(prefix + "skipped, a job it depends on didn't complete");
+					break;
+			}
+		}
+		LOGGER.info("Ran " + (batchJobs.size() - skipped) + " job(s)"
+			+ (failed > 0 ? ", " + failed + " failed" : "")
+			+ (skipped > 0 ? ", " + skipped + " skipped" : "")
+			+ " in " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + " ms"
+			+ " (" + TimeUnit.NANOSECONDS.toMillis(workNanos) + " ms of work). "
+			+ "Parsed " + parseCache.getMisses() + " file(s), reused " + parseCache.getHits() + " parsed file(s)");
+		return failed > 0 || skipped > 0 ? CommandLine.ExitCode.SOFTWARE : CommandLine.ExitCode.OK;
+	}
+
+	/**
+	 * Schedules a job to run once the jobs it depends on have completed. Those are scheduled first, if needed
+	 *
+	 * @param job        the job
+	 * @param jobsByName all jobs by name
+	 * @param results    results of the jobs scheduled so far, by name
+	 * @param parseCache cache shared by all jobs
+	 * @param executor   executor to run the job in
+	 * @return the result of the job
+	 */
+	@NotNull
+	private static CompletableFuture<JobResult> schedule(@NotNull BatchJob job,
+	                                                     @NotNull Map<String, BatchJob> jobsByName,
+	                                                     @NotNull Map<String, CompletableFuture<JobResult>> results,
+	                                                     @NotNull ParseCache parseCache,
+	                                                     @NotNull ExecutorService executor) {
+		CompletableFuture<JobResult> result = results.get(job.getName());
+		if (result != null)
+			return result;
+
+		// the manifest has no circular dependencies, so this recursion ends
+		List<CompletableFuture<JobResult>> dependencies = new ArrayList<>(job.getDependsOn().size());
+		for (String dependency : job.getDependsOn())
+			dependencies.add(schedule(jobsByName.get(dependency), jobsByName, results, parseCache, executor));
+
+		CompletableFuture<Boolean> dependenciesSucceeded = CompletableFuture.completedFuture(true);
+		for (CompletableFuture<JobResult> dependency : dependencies)
+			dependenciesSucceeded = dependenciesSucceeded.thenCombine(
+				dependency,
+				(succeeded, dependencyResult) -> succeeded && dependencyResult.status == Status.SUCCEEDED
+			);
+		result = dependenciesSucceeded.thenApplyAsync(
+			succeeded -> succeeded ? runJob(job, parseCache) : new JobResult(Status.SKIPPED, -1, 0),
+			executor
+		);
+		results.put(job.getName(), result);
+		return result;
+	}
+
+	/**
+	 * Runs a job in the current thread
+	 *
+	 * @param job        the job
+	 * @param parseCache cache shared by all jobs
+	 * @return the result of the job
+	 */
+	@NotNull
+	private static JobResult runJob(@NotNull BatchJob job, @NotNull ParseCache parseCache) {
+		CommandLine cmd = new CommandLine(new GQLFedUtils());
+		CommandLine subcommand = cmd.getSubcommands().get(job.getCommand());
+		if (subcommand == null || subcommand.getCommand() instanceof Batch
+			|| subcommand.getCommand() instanceof Daemon || subcommand.getCommand() instanceof Lsp) {
+			LOGGER.severe("😭 Job " + job.getName() + " has an unknown command '" + job.getCommand() + "'");
+			return new JobResult(Status.FAILED, CommandLine.ExitCode.USAGE, 0);
+		}
+		if (job.getArgs().contains("--watch")) {
+			// the job would never end, and neither would the batch
+			LOGGER.severe("😭 Job " + job.getName() + " can't run with --watch, run it directly instead");
+			return new JobResult(Status.FAILED, CommandLine.ExitCode.USAGE, 0);
+		}
+
+		Object command = subcommand.getCommand();
+		if (command instanceof Purge)
+			((Purge) command).setParseCache(parseCache);
+		else if (command instanceof Dot)
+			((Dot) command).setParseCache(parseCache);
+
+		List<String> args = new ArrayList<>(job.getArgs().size() + 1);
+		args.add(job.getCommand());
+		args.addAll(job.getArgs());
+
+		LOGGER.info("Job " + job.getName() + ": started");
+		long startTime = System.nanoTime();
+		int exitCode = cmd.execute(args.toArray(new String[0]));
+		long elapsedNanos = System.nanoTime() - startTime;
+		return new JobResult(exitCode == 0 ? Status.SUCCEEDED : Status.FAILED, exitCode, elapsedNanos);
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.batch;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A job of a {@link BatchManifest}, as written in the manifest file
+ * <p>
+ * Example:
+ * <pre>
+ * - name: purge-public
+ *   command: purge
+ *   args: [--config, public.yaml, --suffix, .public, schemas/]
+ *   dependsOn: [compose]
+ * </pre>
+ */
+public class BatchJob {
+	/**
+	 * Name of the job, to refer to it in {@link #dependsOn} and in logs. If null, the job is named after its position
+	 */
+	@Nullable
+	private String name;
+
+	/**
+	 * Subcommand to run, e.g. {@code purge} or {@code dot}
+	 */
+	@NotNull
+	private String command;
+
+	/**
+	 * Arguments for the subcommand, the same ones that would be given in the command line
+	 */
+	@NotNull
+	private List<String> args;
+
+	/**
+	 * Names of the jobs that should finish before this job starts, e.g. because they write its input files.
+	 * Jobs that don't depend on each other may run concurrently
+	 */
+	@NotNull
+	private List<String> dependsOn;
+
+	public BatchJob(@Nullable String name, @NotNull String command, @NotNull List<String> args,
+	                @NotNull List<String> dependsOn) {
+		this.name = name;
+		this.command = command;
+		this.args = args;
+		this.dependsOn = dependsOn;
+	}
+
+	/**
+	 * No args constructor INTENDED TO BE USED ONLY by SnakeYAML
+	 */
+	public BatchJob() {
+		this(null, "", new ArrayList<>(), new ArrayList<>());
+	}
+
+	public @Nullable String getName() {
+		return name;
+	}
+
+	public void setName(@Nullable String name) {
+		this.name = name;
+	}
+
+	public @NotNull String getCommand() {
+		return command;
+	}
+
+	public void setCommand(@Nullable String command) {
+		this.command = command == null ? "" : command;
+	}
+
+	public @NotNull List<String> getArgs() {
+		return args;
+	}
+
+	public void setArgs(@Nullable List<String> args) {
+		this.args = args == null ? new ArrayList<>() : args;
+	}
+
+	public @NotNull List<String> getDependsOn() {
+		return dependsOn;
+	}
+
+	public void setDependsOn(@Nullable List<String> dependsOn) {
+		this.dependsOn = dependsOn == null ? new ArrayList<>() : dependsOn;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchJob{" +
+			"name='" + name + '\'' +
+			", command='" + command + '\'' +
+			", args=" + args +
+			", dependsOn=" + dependsOn +
+			'}';
+	}
+}
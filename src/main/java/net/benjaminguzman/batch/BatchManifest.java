@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.batch;
+
+import net.benjaminguzman.ConfigurationException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.constructor.Constructor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Jobs to be run by {@link Batch}, as written in the manifest file
+ * <p>
+ * Example:
+ * <pre>
+ * jobs:
+ *   - name: purge-public
+ *     command: purge
+ *     args: [--config, public.yaml, --suffix, .public, --overwrite, schemas/]
+ *   - name: dot-public
+ *     command: dot
+ *     args: [--output, public.dot, schemas/supergraph.public.graphql]
+ *     dependsOn: [purge-public]
+ * </pre>
+ */
+public class BatchManifest {
+	@NotNull
+	private List<BatchJob> jobs;
+
+	public BatchManifest(@NotNull List<BatchJob> jobs) {
+		this.jobs = jobs;
+	}
+
+	/**
+	 * No args constructor INTENDED TO BE USED ONLY by SnakeYAML
+	 */
+	public BatchManifest() {
+		this(new ArrayList<>());
+	}
+
+	/**
+	 * Reads a manifest file. Jobs without name are named after their position, e.g. {@code job-1}
+	 *
+	 * @param file the manifest file
+	 * @return the manifest
+	 * @throws IOException            if there was an error when reading the file
+	 * @throws ConfigurationException if the manifest is not valid, e.g. a job depends on a job that doesn't exist
+	 *                                or there are circular dependencies
+	 */
+	@NotNull
+	public static BatchManifest load(@NotNull Path file) throws IOException, ConfigurationException {
+		BatchManifest manifest;
+		try (BufferedReader reader = Files.newBufferedReader(file)) {
+			manifest = new Yaml(new Constructor(BatchManifest.class)).load(reader);
+		} catch (RuntimeException e) { // SnakeYAML exceptions are unchecked
+			throw new ConfigurationException("Invalid manifest. " + e.getMessage());
+		}
+		if (manifest == null)
+			throw new ConfigurationException("The manifest should contain a key named 'jobs'");
+
+		manifest.validate();
+		return manifest;
+	}
+
+	/**
+	 * Names unnamed jobs and checks names are unique, commands are given and dependencies exist and are not circular
+	 *
+	 * @throws ConfigurationException if the manifest is not valid
+	 */
+	private void validate() throws ConfigurationException {
+		Map<String, BatchJob> jobsByName = new HashMap<>();
+		for (int i = 0; i < jobs.size(); ++i) {
+			BatchJob job = jobs.get(i);
+			if (job == null)
+				throw new ConfigurationException("Job " + (i + 1) + " is empty");
+			if (job.getName() == null)
+				job.setName("job-" + (i + 1));
+			if (job.getCommand().isEmpty())
+				throw new ConfigurationException("Job '" + job.getName() + "' should contain a key named 'command'");
+			if (jobsByName.put(job.getName(), job) != null)
+				throw new ConfigurationException("There are several jobs named '" + job.getName() + "'");
+		}
+
+		for (BatchJob job : jobs)
+			for (String dependency : job.getDependsOn())
+				if (!jobsByName.containsKey(dependency))
+					throw new ConfigurationException(
+						"Job '" + job.getName() + "' depends on '" + dependency + "', but there is no such job"
+					);
+
+		// depth-first search for cycles. Jobs in visiting are in the current path
+		Set<String> visited = new HashSet<>(), visiting = new HashSet<>();
+		for (BatchJob job : jobs)
+			checkCycles(job, jobsByName, visited, visiting);
+	}
+
+	private static void checkCycles(@NotNull BatchJob job, @NotNull Map<String, BatchJob> jobsByName,
+	                                @NotNull Set<String> visited, @NotNull Set<String> visiting)
+		throws ConfigurationException {
+		if (visited.contains(job.getName()))
+			return;
+		if (!visiting.add(job.getName()))
+			throw new ConfigurationException("Job '" + job.getName() + "' depends on itself (circular dependency)");
+
+		for (String dependency : job.getDependsOn())
+			checkCycles(jobsByName.get(dependency), jobsByName, visited, visiting);
+
+		visiting.remove(job.getName());
+		visited.add(job.getName());
+	}
+
+	public @NotNull List<BatchJob> getJobs() {
+		return jobs;
+	}
+
+	public void setJobs(@Nullable List<BatchJob> jobs) {
+		this.jobs = jobs == null ? new ArrayList<>() : jobs;
+	}
+
+	@Override
+	public String toString() {
+		return "BatchManifest{" +
+			"jobs=" + jobs +
+			'}';
+	}
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.benjaminguzman.daemon;
+
+import net.benjaminguzman.GQLFedUtils;
+import net.benjaminguzman.batch.Batch;
+import net.benjaminguzman.dot.Dot;
+import net.benjaminguzman.lsp.Lsp;
+import net.benjaminguzman.parse.ParseCache;
+import net.benjaminguzman.purge.Purge;
+import net.benjaminguzman.purge.PurgeConfigCache;
+import net.benjaminguzman.purge.PurgeConfigConverter;
+import org.jetbrains.annotations.NotNull;
+import picocli.CommandLine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
+import java.util.logging.StreamHandler;
+
+@CommandLine.Command(
+	name = "daemon",
+	description = "Keep a process running to serve commands sent with 'gqlfedutils client <command> <args>', so " +
+		"they don't pay the JVM startup time. Parsed files and configurations are kept in memory and reused " +
+		"while they're not modified",
+	mixinStandardHelpOptions = true,
+	version = "gqlfedutils daemon 0.1"
+)
+public class Daemon implements Runnable {
+	private static final Logger LOGGER = Logger.getLogger(Daemon.class.getName());
+
+	/**
+	 * Maximum number of arguments accepted in a request
+	 */
+	private static final int MAX_ARGS = 100_000;
+
+	/**
+	 * Maximum time to wait for a client to send its token. Clients send it as soon as they connect, and requests
+	 * are served one at a time, so a connection that sends nothing shouldn't hold other clients for long
+	 */
+	private static final int TOKEN_TIMEOUT_MS = 500;
+
+	/**
+	 * Maximum time to wait for an authenticated client to send the rest of its request
+	 */
+	private static final int REQUEST_TIMEOUT_MS = 10_000;
+
+	@CommandLine.Option(
+		names = {"--state-file"},
+		description = "File where the port and the access token of the daemon are saved. Clients read it to " +
+			"connect to the daemon. Default: GQLFEDUTILS_DAEMON_FILE environment variable or ~/.gqlfedutils/daemon"
+	)
+	private Path stateFile = DaemonClient.defaultStateFile();
+
+	@CommandLine.Option(
+		names = {"--idle-timeout"},
+		description = "Seconds without requests after which the daemon exits. Use 0 to never exit. Default: 900",
+		defaultValue = "900"
+	)
+	private int idleTimeout;
+
+	@CommandLine.Option(
+		names = {"--cache-size"},
+		description = "Maximum total size, in MiB, of the files whose parsed graphs are kept in memory. " +
+			"Default: 256",
+		defaultValue = "256"
+	)
+	private int cacheSize;
+
+	@CommandLine.Option(
+		names = {"--max-configs"},
+		description = "Maximum number of configuration files kept in memory. Default: 64",
+		defaultValue = "64"
+	)
+	private int maxConfigs;
+
+	@Override
+	public void run() {
+		if (idleTimeout < 0) {
+			LOGGER.warning("--idle-timeout can't be negative, using 0 (never exit)");
+			idleTimeout = 0;
+		}
+		if (cacheSize < 1) {
+			LOGGER.warning("--cache-size should be at least 1, using 1");
+			cacheSize = 1;
+		}
+		if (maxConfigs < 1) {
+			LOGGER.warning("--max-configs should be at least 1, using 1");
+			maxConfigs = 1;
+		}
+
+		ParseCache parseCache = new ParseCache(cacheSize * 1024L * 1024L);
+		PurgeConfigCache configCache = new PurgeConfigCache(maxConfigs);
+
+		byte[] tokenBytes = new byte[32];
+		new SecureRandom().nextBytes(tokenBytes);
+		String token = Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes);
+
+		try (ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+			server.setSoTimeout((int) Math.min(Integer.MAX_VALUE, TimeUnit.SECONDS.toMillis(idleTimeout)));
+			writeStateFile(server.getLocalPort(), token);
+			LOGGER.info("Listening on port " + server.getLocalPort() + ". State saved in " + stateFile);
+
+			// requests are served one at a time, because System.out, System.err and System.in are replaced by the
+			// client streams while a command runs
+			while (true) {
+				Socket socket;
+				try {
+					socket = server.accept();
+				} catch (SocketTimeoutException e) {
+					LOGGER.info("No requests in the last " + idleTimeout + " seconds, shutting down");
+					break;
+				}
+
+				try (socket) {
+					serve(socket, token, parseCache, configCache);
+				} catch (IOException e) {
+					LOGGER.warning("😭 Error while serving a request. " + e.getMessage());
+				}
+			}
+		} catch (IOException e) {
+			LOGGER.severe("😭 Error while starting the daemon. " + e.getMessage());
+		} finally {
+			deleteStateFile(token);
+		}
+	}
+
+	/**
+	 * Saves the port and the token in the state file. The file is only readable by the current user (if the file
+	 * system supports POSIX permissions), so only processes of the same user can send commands
+	 *
+	 * @param port  port the daemon listens to
+	 * @param token token clients should send
+	 * @throws IOException if the file couldn't be written
+	 */
+	private void writeStateFile(int port, @NotNull String token) throws IOException {
+		Path parent = stateFile.toAbsolutePath().getParent();
+		if (parent != null)
+			Files.createDirectories(parent);
+
+		Files.deleteIfExists(stateFile);
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix"))
+			Files.createFile(stateFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		else
+			Files.createFile(stateFile);
+
+		Properties state = new Properties();
+		state.setProperty("port", String.valueOf(port));
+		state.setProperty("token", token);
+		try (Writer writer = Files.newBufferedWriter(stateFile)) {
+			state.store(writer, "gqlfedutils daemon");
+		}
+	}
+
+	/**
+	 * Deletes the state file, unless another daemon has replaced it
+	 *
+	 * @param token token of this daemon
+	 */
+	private void deleteStateFile(@NotNull String token) {
+		Properties state = new Properties();
+		try (Reader reader = Files.newBufferedReader(stateFile)) {
+			state.load(reader);
+			if (token.equals(state.getProperty("token")))
+				Files.delete(stateFile);
+		} catch (NoSuchFileException ignored) {
+		} catch (IOException e) {
+			LOGGER.warning("Couldn't delete state file " + stateFile + ". " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads a request from the client, runs the command and sends back its output and exit code
+	 *
+	 * @param socket      the client socket
+	 * @param token       token the client should send
+	 * @param parseCache  cache of parsed files
+	 * @param configCache cache of configurations
+	 * @throws IOException if there was an error when communicating with the client
+	 */
+	private static void serve(@NotNull Socket socket, @NotNull String token, @NotNull ParseCache parseCache,
+	                          @NotNull PurgeConfigCache configCache) throws IOException {
+		socket.setSoTimeout(TOKEN_TIMEOUT_MS);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+		byte[] clientToken = in.readUTF().getBytes(StandardCharsets.UTF_8);
+		if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), clientToken)) {
+			LOGGER.warning("Rejected a request with an invalid token");
+			return;
+		}
+		socket.setSoTimeout(REQUEST_TIMEOUT_MS);
+
+		Path workingDir = Path.of(in.readUTF());
+		int nArgs = in.readInt();
+		if (nArgs < 0 || nArgs > MAX_ARGS)
+			throw new IOException("Invalid number of arguments: " + nArgs);
+		String[] args = new String[nArgs];
+		for (int i = 0; i < nArgs; ++i)
+			args[i] = in.readUTF();
+
+		// the command may ask something through stdin, the user can take their time
+		socket.setSoTimeout(0);
+
+		long startTime = System.nanoTime();
+		int exitCode = execute(args, workingDir, parseCache, configCache, in, out);
+		out.writeByte(DaemonClient.EXIT);
+		out.writeInt(exitCode);
+		out.flush();
+
+		LOGGER.info("Served '" + String.join(" ", args) + "' in "
+			+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime) + " ms (exit code " + exitCode + "). "
+			+ "Parsed " + parseCache.getMisses() + " file(s), reused " + parseCache.getHits() + " parsed file(s) "
+			+ "so far");
+	}
+
+	/**
+	 * Runs a command with the client streams as System.out, System.err and System.in, and with the logs sent to the
+	 * client
+	 *
+	 * @return the exit code of the command
+	 */
+	private static int execute(@NotNull String[] args, @NotNull Path workingDir, @NotNull ParseCache parseCache,
+	                           @NotNull PurgeConfigCache configCache, @NotNull InputStream in,
+	                           @NotNull DataOutputStream out) {
+		PrintStream stdout = new PrintStream(
+			new BufferedOutputStream(new FrameOutputStream(out, DaemonClient.STDOUT)), true, StandardCharsets.UTF_8
+		);
+		PrintStream stderr = new PrintStream(
+			new BufferedOutputStream(new FrameOutputStream(out, DaemonClient.STDERR)), true, StandardCharsets.UTF_8
+		);
+		InputStream stdin = new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				stdout.flush(); // prompts don't end with a new line
+				return super.read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				stdout.flush();
+				return super.read(b, off, len);
+			}
+		};
+
+		Logger rootLogger = Logger.getLogger("");
+		Handler[] handlers = rootLogger.getHandlers();
+		Handler clientHandler = new StreamHandler(stderr, new SimpleFormatter()) {
+			@Override
+			public synchronized void publish(LogRecord record) {
+				super.publish(record);
+				flush();
+			}
+		};
+		clientHandler.setLevel(handlers.length > 0 ? handlers[0].getLevel() : Level.INFO);
+
+		PrintStream prevOut = System.out, prevErr = System.err;
+		InputStream prevIn = System.in;
+		for (Handler handler : handlers)
+			rootLogger.removeHandler(handler);
+		rootLogger.addHandler(clientHandler);
+		System.setOut(stdout);
+		System.setErr(stderr);
+		System.setIn(stdin);
+		try {
+			CommandLine cmd = new CommandLine(new GQLFedUtils(), new RequestFactory(workingDir, parseCache, configCache));
+			// paths are relative to the client working directory
+			cmd.registerConverter(Path.class, workingDir::resolve);
+			cmd.setOut(new PrintWriter(stdout, true));
+			cmd.setErr(new PrintWriter(stderr, true));
+
+			CommandLine subcommand = args.length > 0 ? cmd.getSubcommands().get(args[0]) : null;
+			if (subcommand != null
+				&& (subcommand.getCommand() instanceof Daemon || subcommand.getCommand() instanceof Batch
+				|| subcommand.getCommand() instanceof Lsp)) {
+				LOGGER.severe("😭 The daemon can't run '" + args[0] + "', run it directly instead");
+				return CommandLine.ExitCode.USAGE;
+			}
+			if (Arrays.asList(args).contains("--watch")) {
+				// the command would never end, and the daemon serves one command at a time
+				LOGGER.severe("😭 The daemon can't run commands with --watch, run them directly instead");
+				return CommandLine.ExitCode.USAGE;
+			}
+
+			return cmd.execute(args);
+		} finally {
+			clientHandler.flush();
+			stdout.flush();
+			stderr.flush();
+			System.setOut(prevOut);
+			System.setErr(prevErr);
+			System.setIn(prevIn);
+			rootLogger.removeHandler(clientHandler);
+			for (Handler handler : handlers)
+				rootLogger.addHandler(handler);
+		}
+	}
+
+	/**
+	 * Creates the commands and converters of a request, giving them the caches and the client working directory
+	 */
+	private static final class RequestFactory implements CommandLine.IFactory {
+		@NotNull
+		private final Path workingDir;
+
+		@NotNull
+		private final ParseCache parseCache;
+
+		@NotNull
+		private final PurgeConfigCache configCache;
+
+		private RequestFactory(@NotNull Path workingDir, @NotNull ParseCache parseCache,
+		                       @NotNull PurgeConfigCache configCache) {
+			this.workingDir = workingDir;
+			this.parseCache = parseCache;
+			this.configCache = configCache;
+		}
+
+		@Override
+		public <K> K create(Class<K> cls) throws Exception {
+			if (cls == PurgeConfigConverter.class)
+				return cls.cast(new PurgeConfigConverter(configCache, workingDir));
+
+			K obj = CommandLine.defaultFactory().create(cls);
+			if (obj instanceof Purge)
+				((Purge) obj).setParseCache(parseCache);
+			else if (obj instanceof Dot)
+				((Dot) obj).setParseCache(parseCache);
+			return obj;
+		}
+	}
+
+	/**
+	 * Sends everything written to it as frames of the given type
+	 */
+	private static final class FrameOutputStream extends OutputStream {
+		@NotNull
+		private final DataOutputStream out;
+
+		private final byte type;
+
+		private FrameOutputStream(@NotNull DataOutputStream out, byte type) {
+			this.out = out;
+			this.type = type;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[]{(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return;
+			synchronized (out) {
+				out.writeByte(type);
+				out.writeInt(len);
+				out.write(b, off, len);
+				out.flush();
+			}
+		}
+	}
+}
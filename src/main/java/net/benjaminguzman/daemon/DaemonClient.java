@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.benjaminguzman.daemon;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Thin client for the {@link Daemon}. It forwards the command line arguments, working directory and stdin to the
+ * daemon, and copies what the daemon outputs to stdout and stderr
+ * <p>
+ * This class doesn't use picocli nor any other heavy dependency, so the client starts as fast as the JVM does
+ */
+public final class DaemonClient {
+	/**
+	 * Frame types sent by the daemon. Output frames are followed by the length and the bytes, the exit frame is
+	 * followed by the exit code
+	 */
+	static final byte EXIT = 0, STDOUT = 1, STDERR = 2;
+
+	private DaemonClient() {
+	}
+
+	/**
+	 * @return the state file the daemon writes and clients read. It is taken from the GQLFEDUTILS_DAEMON_FILE
+	 * environment variable, or it is ~/.gqlfedutils/daemon
+	 */
+	@NotNull
+	public static Path defaultStateFile() {
+		String file = System.getenv("GQLFEDUTILS_DAEMON_FILE");
+		if (file != null && !file.isBlank())
+			return Path.of(file);
+		return Path.of(System.getProperty("user.home"), ".gqlfedutils", "daemon");
+	}
+
+	/**
+	 * Connects to the daemon described by the given state file, and authenticates with the token in it
+	 *
+	 * @param stateFile the state file written by the daemon
+	 * @return the connected socket
+	 * @throws IOException if the state file couldn't be read, or the daemon is not listening
+	 */
+	@NotNull
+	public static Socket connect(@NotNull Path stateFile) throws IOException {
+		Properties state = new Properties();
+		try (Reader reader = Files.newBufferedReader(stateFile)) {
+			state.load(reader);
+		}
+		int port;
+		try {
+			port = Integer.parseInt(state.getProperty("port", ""));
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid state file " + stateFile);
+		}
+
+		Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		try {
+			DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+			out.writeUTF(state.getProperty("token", ""));
+			out.flush();
+		} catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+		return socket;
+	}
+
+	/**
+	 * Runs a command in the daemon
+	 *
+	 * @param socket     socket returned by {@link #connect(Path)}. It is closed when this method returns
+	 * @param workingDir working directory. Relative paths in the arguments are resolved against it
+	 * @param args       command line arguments, e.g. {@code purge --config config.yaml schema.graphql}
+	 * @param in         stdin for the command
+	 * @param out        stdout of the command is copied here
+	 * @param err        stderr of the command (e.g. the logs) is copied here
+	 * @return the exit code of the command
+	 * @throws IOException if the connection with the daemon failed
+	 */
+	public static int run(@NotNull Socket socket, @NotNull Path workingDir, @NotNull String[] args,
+	                      @NotNull InputStream in, @NotNull OutputStream out, @NotNull OutputStream err)
+		throws IOException {
+		try (socket) {
+			DataOutputStream socketOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			socketOut.writeUTF(workingDir.toAbsolutePath().toString());
+			socketOut.writeInt(args.length);
+			for (String arg : args)
+				socketOut.writeUTF(arg);
+			socketOut.flush();
+
+			// stdin is copied in the background because it's only read if the command asks something
+			Thread stdinCopier = new Thread(() -> {
+				try {
+					in.transferTo(socket.getOutputStream());
+					socket.shutdownOutput();
+				} catch (IOException ignored) {
+					// the command has finished
+				}
+			}, "gqlfedutils-client-stdin");
+			stdinCopier.setDaemon(true);
+			stdinCopier.start();
+
+			DataInputStream socketIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			byte[] buffer = new byte[8192];
+			try {
+				while (true) {
+					byte type = socketIn.readByte();
+					if (type == EXIT) {
+						out.flush();
+						err.flush();
+						return socketIn.readInt();
+					}
+
+					OutputStream target = type == STDOUT ? out : err;
+					int remaining = socketIn.readInt();
+					while (remaining > 0) {
+						int n = socketIn.read(buffer, 0, Math.min(remaining, buffer.length));
+						if (n < 0)
+							throw new EOFException();
+						target.write(buffer, 0, n);
+						remaining -= n;
+					}
+					target.flush();
+				}
+			} catch (EOFException e) {
+				throw new IOException("The daemon closed the connection before the command completed");
+			}
+		}
+	}
+}
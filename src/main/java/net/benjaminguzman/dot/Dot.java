@@ -18,16 +18,21 @@
 
 package net.benjaminguzman.dot;
 
+import net.benjaminguzman.Archives;
+import net.benjaminguzman.FileWatcher;
 import net.benjaminguzman.GQLFedUtils;
 import net.benjaminguzman.parse.*;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import picocli.CommandLine;
 
 import java.io.IOException;
+import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 import java.util.logging.Logger;
 
 @CommandLine.Command(
@@ -36,7 +41,7 @@ import java.util.logging.Logger;
 	mixinStandardHelpOptions = true,
 	version = "gqlfedutils dot 0.1"
 )
-public class Dot implements Runnable {
+public class Dot implements Callable<Integer> {
 	private static final Logger LOGGER = Logger.getLogger(Dot.class.getName());
 	private static final String INDENT = "    ";
 	private static final String TWICE_INDENT = INDENT + INDENT;
@@ -60,7 +65,8 @@ public class Dot implements Runnable {
 
 	@CommandLine.Parameters(
 		paramLabel = "FILE",
-		description = "Input file.",
+		description = "Input file. A file inside a zip or jar archive is read in place with " +
+			"archive!/path/inside/archive, e.g. schemas.jar!/schema.graphql",
 		arity = "1"
 	)
 	private Path inputFile;
@@ -79,6 +85,19 @@ public class Dot implements Runnable {
 	)
 	private boolean includeEnumValues;
 
+	@CommandLine.Option(
+		names = {"--watch"},
+		description = "Keep running and transpile the input file again each time it changes"
+	)
+	private boolean watch;
+
+	/**
+	 * If not null, the input file is parsed through this cache, shared with other commands running in the same
+	 * process
+	 */
+	@Nullable
+	private ParseCache parseCache;
+
 	/**
 	 * true if the graph has at least one {@link GQLInput}
 	 */
@@ -100,23 +119,82 @@ public class Dot implements Runnable {
 	 */
 	private boolean hasFields;
 
+	/**
+	 * @return {@link CommandLine.ExitCode#OK} if the dot code was saved, or {@link CommandLine.ExitCode#SOFTWARE}
+	 * if the input file couldn't be read or parsed, or the output couldn't be saved. With {@link #watch}, the result
+	 * of the last run is returned
+	 */
 	@Override
-	public void run() {
+	public Integer call() {
 		if (inputFile.equals(outputFile))
 			if (!GQLFedUtils.shouldProceed("Input and output files are the same"))
-				return;
+				return CommandLine.ExitCode.SOFTWARE;
 		outputFile = GQLFedUtils.askAltOut(outputFile);
 
+		boolean succeeded = transpile();
+		if (watch)
+			succeeded = watch(succeeded);
+		return succeeded ? CommandLine.ExitCode.OK : CommandLine.ExitCode.SOFTWARE;
+	}
+
+	/**
+	 * Transpiles the input file again each time it changes
+	 * <p>
+	 * This method returns only if the thread is interrupted, or the file couldn't be watched
+	 *
+	 * @param succeeded true if the first run succeeded
+	 * @return true if the last run succeeded, false if it failed or the file couldn't be watched
+	 */
+	private boolean watch(boolean succeeded) {
+		if (Archives.archiveOf(inputFile) != null) {
+			LOGGER.warning("--watch can't be used with files inside archives, --watch is ignored");
+			return succeeded;
+		}
+
+		try (FileWatcher watcher = new FileWatcher()) {
+			watcher.watchFile(inputFile);
+			LOGGER.info("👀 Watching for changes. Press Ctrl+C to stop");
+			while (true) {
+				FileWatcher.Changes changes = watcher.poll();
+				if (changes.isOverflow() || changes.getFiles().contains(inputFile))
+					succeeded = transpile();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return succeeded;
+		} catch (IOException e) {
+			LOGGER.severe("😭 Error while watching " + inputFile.toAbsolutePath() + ". " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Transpiles the {@link #inputFile} and saves the dot code in the {@link #outputFile}
+	 *
+	 * @return true if the dot code was saved successfully
+	 */
+	private boolean transpile() {
+		strBuilder.setLength(0);
+		hasInputs = hasTypes = hasEnums = hasFields = false;
+
 		LOGGER.info("Processing " + inputFile);
 		Map<GQLDataType, List<GQLDataType>> adjList;
+		Path archive = Archives.archiveOf(inputFile);
 		try {
-			adjList = GQL.from(inputFile).getGraph();
+			if (archive == null)
+				adjList = parseCache != null
+					? parseCache.get(inputFile, false).getGraph()
+					: GQL.from(inputFile).getGraph();
+			else
+				try (FileSystem archiveFs = Archives.open(archive)) {
+					adjList = GQL.from(archiveFs.getPath(Archives.entryOf(inputFile))).getGraph();
+				}
 		} catch (IOException e) {
 			LOGGER.severe("😭 Error while reading file " + inputFile.toAbsolutePath() + ". " + e.getMessage());
-			return;
+			return false;
 		} catch (InvalidGQLSyntax e) {
 			LOGGER.severe("😭 Couldn't parse file " + inputFile.toAbsolutePath() + ". " + e.getMessage());
-			return;
+			return false;
 		}
 
 		// open an undirected graph
@@ -155,11 +233,13 @@ public class Dot implements Runnable {
 		LOGGER.info("Saving output in " + outputFile);
 		try {
 			Files.writeString(outputFile, strBuilder.toString());
+			return true;
 		} catch (IOException e) {
 			LOGGER.severe(
 				"😭 Couldn't save output to file " + outputFile.toAbsolutePath() + ". " + e.getMessage()
 			);
 			LOGGER.info("But, here is the generated dot code:\n" + strBuilder);
+			return false;
 		}
 	}
 
@@ -332,4 +412,14 @@ public class Dot implements Runnable {
 	private String dotId(@NotNull GQLDataType dataType) {
 		return dataType.alphaName() + "_" + Math.abs(dataType.hashCode());
 	}
+
+	/**
+	 * Sets a cache to parse the input file with, so files are parsed only once when several commands run in the
+	 * same process
+	 *
+	 * @param parseCache the cache, or null to parse the file without a cache
+	 */
+	public void setParseCache(@Nullable ParseCache parseCache) {
+		this.parseCache = parseCache;
+	}
 }
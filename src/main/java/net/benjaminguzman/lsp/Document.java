@@ -0,0 +1,505 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.benjaminguzman.lsp;
+
+import net.benjaminguzman.parse.DefinitionScanner;
+import net.benjaminguzman.parse.GQL;
+import net.benjaminguzman.parse.GQLDataType;
+import net.benjaminguzman.parse.InvalidGQLSyntax;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A document open in the editor, split into top-level definitions with {@link DefinitionScanner}
+ * <p>
+ * When the document is edited, only the definitions overlapping the edit are scanned and parsed again. The scanned
+ * region goes from the end of the definition before the edit to the start of a definition after the edit that begins
+ * a line, so scanning it on its own splits it exactly as scanning the whole document would. If a definition in the
+ * region is not closed, the region is extended to the end of the document. Definitions after the edit are only
+ * shifted
+ * <p>
+ * Offsets are in UTF-16 code units, as positions in the language server protocol
+ */
+final class Document {
+	@NotNull
+	private final String uri;
+
+	@NotNull
+	private final StringBuilder text;
+
+	/**
+	 * Offset where each line starts
+	 */
+	@NotNull
+	private int[] lineStarts = new int[0];
+
+	/**
+	 * Definitions, sorted by offset
+	 */
+	@NotNull
+	private final List<Definition> definitions = new ArrayList<>();
+
+	/**
+	 * Creates an empty document. Set its text with {@link #setText(String)}
+	 *
+	 * @param uri uri of the document
+	 */
+	Document(@NotNull String uri) {
+		this.uri = uri;
+		this.text = new StringBuilder();
+	}
+
+	@NotNull
+	String getUri() {
+		return uri;
+	}
+
+	@NotNull
+	String getText() {
+		return text.toString();
+	}
+
+	@NotNull
+	List<Definition> getDefinitions() {
+		return Collections.unmodifiableList(definitions);
+	}
+
+	/**
+	 * Replaces the whole text of the document
+	 *
+	 * @param newText the new text
+	 * @return the definitions that were removed and added
+	 */
+	@NotNull
+	Update setText(@NotNull String newText) {
+		List<Definition> removed = new ArrayList<>(definitions);
+		definitions.clear();
+		text.setLength(0);
+		text.append(newText);
+		lineStarts = lineStarts(newText);
+		definitions.addAll(scan(0, text.length()));
+		return new Update(removed, definitions);
+	}
+
+	/**
+	 * Replaces a range of the text, and parses again the definitions overlapping it
+	 *
+	 * @param start       offset where the range starts
+	 * @param end         offset where the range ends (exclusive)
+	 * @param replacement text replacing the range
+	 * @return the definitions that were removed and added
+	 */
+	@NotNull
+	Update replace(int start, int end, @NotNull String replacement) {
+		int delta = replacement.length() - (end - start);
+
+		// definitions overlapping or touching the range
+		int first = firstEndingAtOrAfter(start);
+		int last = first; // exclusive
+		while (last < definitions.size() && definitions.get(last).start <= end)
+			++last;
+		int regionStart = first > 0 ? definitions.get(first - 1).end : 0;
+
+		updateLineStarts(start, end, replacement);
+		text.replace(start, end, replacement);
+		for (int i = last; i < definitions.size(); ++i)
+			definitions.get(i).shift(delta);
+
+		// the region should end at the beginning of a line, so nothing in it can continue after it
+		while (last < definitions.size() && text.charAt(definitions.get(last).start - 1) != '\n')
+			++last;
+		int regionEnd = last < definitions.size() ? definitions.get(last).start : text.length();
+
+		List<Definition> scanned = scan(regionStart, regionEnd);
+		if (scanned == null) {
+			last = definitions.size();
+			scanned = scan(regionStart, text.length());
+			assert scanned != null;
+		}
+
+		List<Definition> replaced = definitions.subList(first, last);
+		List<Definition> removed = new ArrayList<>(replaced);
+		replaced.clear();
+		definitions.addAll(first, scanned);
+		return new Update(removed, scanned);
+	}
+
+	/**
+	 * Scans and parses the definitions in a region of the text
+	 *
+	 * @param from offset where the region starts. Scanning must start there when scanning the whole text
+	 * @param to   offset where the region ends
+	 * @return the definitions, or null if a definition is not closed in the region and the region doesn't reach
+	 * the end of the text. If it does, the rest of the text is returned as an invalid definition
+	 */
+	@Nullable
+	private List<Definition> scan(int from, int to) {
+		List<Definition> scanned = new ArrayList<>();
+		int scannedEnd = from;
+		try (DefinitionScanner scanner = new DefinitionScanner(new StringReader(text.substring(from, to)), false)) {
+			DefinitionScanner.Chunk chunk;
+			while ((chunk = scanner.next()) != null) {
+				if (chunk.getKind() == DefinitionScanner.Chunk.Kind.DEFINITION)
+					scanned.add(new Definition(
+						this, chunk.getText(), from + (int) chunk.getStart(), from + (int) chunk.getEnd(), null
+					));
+				scannedEnd = from + (int) chunk.getEnd();
+			}
+		} catch (InvalidGQLSyntax e) {
+			if (to < text.length())
+				return null;
+
+			while (scannedEnd < to && Character.isWhitespace(text.charAt(scannedEnd)))
+				++scannedEnd;
+			scanned.add(new Definition(this, text.substring(scannedEnd, to), scannedEnd, to, e.getMessage()));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e); // not thrown by StringReader
+		}
+		return scanned;
+	}
+
+	/**
+	 * @return index of the first definition ending at or after the given offset
+	 */
+	private int firstEndingAtOrAfter(int offset) {
+		int lo = 0, hi = definitions.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (definitions.get(mid).end < offset)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * @param offset an offset
+	 * @return the token containing (or ending at) the offset, or null if there is none
+	 */
+	@Nullable
+	Token tokenAt(int offset) {
+		int lo = 0, hi = definitions.size() - 1, idx = -1;
+		while (lo <= hi) { // last definition starting at or before the offset
+			int mid = (lo + hi) >>> 1;
+			if (definitions.get(mid).start <= offset) {
+				idx = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		if (idx == -1)
+			return null;
+
+		Definition definition = definitions.get(idx);
+		if (definition.declaration != null && definition.declaration.contains(offset))
+			return definition.declaration;
+		for (Token reference : definition.references)
+			if (reference.contains(offset))
+				return reference;
+		return null;
+	}
+
+	/**
+	 * @return offset of the given position. Positions past the end of a line are moved to the end of the line
+	 */
+	int offset(int line, int character) {
+		if (line < 0)
+			return 0;
+		if (line >= lineStarts.length)
+			return text.length();
+
+		int lineEnd = line + 1 < lineStarts.length ? lineStarts[line + 1] - 1 : text.length();
+		return Math.max(lineStarts[line], Math.min(lineStarts[line] + character, lineEnd));
+	}
+
+	/**
+	 * @return the position (line and character) of the offset
+	 */
+	@NotNull
+	Map<String, Object> position(int offset) {
+		int line = lineOf(offset);
+		Map<String, Object> position = new LinkedHashMap<>();
+		position.put("line", line);
+		position.put("character", offset - lineStarts[line]);
+		return position;
+	}
+
+	/**
+	 * @return the range between the given offsets
+	 */
+	@NotNull
+	Map<String, Object> range(int start, int end) {
+		Map<String, Object> range = new LinkedHashMap<>();
+		range.put("start", position(start));
+		range.put("end", position(end));
+		return range;
+	}
+
+	/**
+	 * @return index of the line containing the offset
+	 */
+	private int lineOf(int offset) {
+		int lo = 0, hi = lineStarts.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (lineStarts[mid] <= offset)
+				lo = mid;
+			else
+				hi = mid - 1;
+		}
+		return lo;
+	}
+
+	/**
+	 * Updates {@link #lineStarts} before a range of the text is replaced. Lines before the range are kept, lines
+	 * after it are shifted, and only the replacement is searched for line feeds
+	 */
+	private void updateLineStarts(int start, int end, @NotNull String replacement) {
+		int keep = lineOf(start) + 1; // lines starting at or before the range
+		int shiftFrom = lineOf(end) + 1; // lines starting after the range
+		int added = 0;
+		for (int i = replacement.indexOf('\n'); i != -1; i = replacement.indexOf('\n', i + 1))
+			++added;
+
+		int[] newLineStarts = new int[keep + added + lineStarts.length - shiftFrom];
+		System.arraycopy(lineStarts, 0, newLineStarts, 0, keep);
+		int n = keep;
+		for (int i = replacement.indexOf('\n'); i != -1; i = replacement.indexOf('\n', i + 1))
+			newLineStarts[n++] = start + i + 1;
+		int delta = replacement.length() - (end - start);
+		for (int i = shiftFrom; i < lineStarts.length; ++i)
+			newLineStarts[n++] = lineStarts[i] + delta;
+		lineStarts = newLineStarts;
+	}
+
+	@NotNull
+	private static int[] lineStarts(@NotNull String text) {
+		int lines = 1;
+		for (int i = text.indexOf('\n'); i != -1; i = text.indexOf('\n', i + 1))
+			++lines;
+
+		int[] starts = new int[lines];
+		int n = 1;
+		for (int i = text.indexOf('\n'); i != -1; i = text.indexOf('\n', i + 1))
+			starts[n++] = i + 1;
+		return starts;
+	}
+
+	/**
+	 * Definitions removed and added by an edit
+	 */
+	static final class Update {
+		@NotNull
+		final List<Definition> removed;
+
+		@NotNull
+		final List<Definition> added;
+
+		private Update(@NotNull List<Definition> removed, @NotNull List<Definition> added) {
+			this.removed = removed;
+			this.added = added;
+		}
+	}
+
+	/**
+	 * A top-level definition, with the names it declares and references
+	 */
+	static final class Definition {
+		@NotNull
+		final Document document;
+
+		/**
+		 * Offset where the text of the definition starts. It changes when text before it is edited
+		 */
+		int start;
+
+		/**
+		 * Offset where scanning of the next definition starts
+		 */
+		int end;
+
+		@NotNull
+		final String text;
+
+		/**
+		 * First word of the definition, e.g. type
+		 */
+		@Nullable
+		final String keyword;
+
+		/**
+		 * The parsed definition, or null if it couldn't be parsed
+		 */
+		@Nullable
+		final GQLDataType dataType;
+
+		/**
+		 * Error found while scanning or parsing the definition, or null if it is valid
+		 */
+		@Nullable
+		final String error;
+
+		/**
+		 * Name of the definition, or null if it has none (e.g. schema)
+		 */
+		@Nullable
+		final Token declaration;
+
+		/**
+		 * Names of types referenced by fields, params, schema operations or implemented interfaces, and directives
+		 * used by the definition
+		 */
+		@NotNull
+		final List<Token> references = new ArrayList<>();
+
+		private Definition(@NotNull Document document, @NotNull String text, int start, int end,
+		                   @Nullable String error) {
+			this.document = document;
+			this.text = text;
+			this.start = start;
+			this.end = end;
+
+			GQLDataType dataType = null;
+			if (error == null)
+				try {
+					List<GQLDataType> dataTypes = GQL.from(text).getDataTypes();
+					dataType = dataTypes.isEmpty() ? null : dataTypes.get(0);
+				} catch (InvalidGQLSyntax e) {
+					error = e.getMessage();
+				} catch (RuntimeException e) {
+					error = "Invalid definition";
+				}
+			this.dataType = dataType;
+			this.error = error;
+
+			// the text is tokenized even if it couldn't be parsed, so names can be found while it is being edited
+			String keyword = null;
+			Token declaration = null;
+			int i = 0;
+			char prevChar = 0; // previous character that is not a whitespace nor [
+			String prevWord = null;
+			while (i < text.length()) {
+				char c = text.charAt(i);
+				if (text.startsWith(GQL.COMMENT_DELIMITER, i)) {
+					int commentEnd = text.indexOf(GQL.COMMENT_DELIMITER, i + GQL.COMMENT_DELIMITER.length());
+					i = commentEnd == -1 ? text.length() : commentEnd + GQL.COMMENT_DELIMITER.length();
+					continue;
+				}
+				if (c == '"') {
+					for (++i; i < text.length() && text.charAt(i) != '"' && text.charAt(i) != '\n'; ++i)
+						if (text.charAt(i) == '\\')
+							++i;
+					++i;
+					continue;
+				}
+				if (c == '#') {
+					for (; i < text.length() && text.charAt(i) != '\n'; ++i) ;
+					continue;
+				}
+
+				boolean isDirective = c == '@' && i + 1 < text.length() && isNameStart(text.charAt(i + 1));
+				if (isDirective || isNameStart(c)) {
+					int nameStart = isDirective ? i + 1 : i;
+					int nameEnd = nameStart;
+					for (; nameEnd < text.length() && GQLDataType.isNameChar(text.charAt(nameEnd)); ++nameEnd) ;
+					String word = text.substring(i, nameEnd);
+
+					if (keyword == null && !isDirective)
+						keyword = word;
+					else if (declaration == null && isDirective == "directive".equals(keyword)
+						&& !"schema".equals(keyword) && prevChar == 0)
+						declaration = new Token(this, i, word);
+					else if (isDirective || prevChar == ':' || prevChar == '&' || "implements".equals(prevWord))
+						references.add(new Token(this, i, word));
+
+					prevWord = word;
+					prevChar = 0;
+					i = nameEnd;
+					continue;
+				}
+
+				if (!Character.isWhitespace(c) && c != '[') {
+					prevChar = c;
+					prevWord = null;
+				}
+				++i;
+			}
+			this.keyword = keyword;
+			this.declaration = declaration;
+		}
+
+		private static boolean isNameStart(char c) {
+			return Character.isLetter(c) || c == '_';
+		}
+
+		private void shift(int delta) {
+			start += delta;
+			end += delta;
+		}
+	}
+
+	/**
+	 * A name in a definition
+	 */
+	static final class Token {
+		@NotNull
+		final Definition definition;
+
+		/**
+		 * Offset of the name in the text of the definition
+		 */
+		final int offset;
+
+		/**
+		 * The name. Directive names start with @
+		 */
+		@NotNull
+		final String name;
+
+		private Token(@NotNull Definition definition, int offset, @NotNull String name) {
+			this.definition = definition;
+			this.offset = offset;
+			this.name = name;
+		}
+
+		int start() {
+			return definition.start + offset;
+		}
+
+		int end() {
+			return start() + name.length();
+		}
+
+		private boolean contains(int offset) {
+			return start() <= offset && offset <= end();
+		}
+	}
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.benjaminguzman.lsp;
+
+import net.benjaminguzman.GQLFedUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JSON reader and writer for the messages of the language server protocol
+ * <p>
+ * Objects are read as {@link Map}s (keeping the order of their keys), arrays as {@link List}s, numbers as
+ * {@link Long}s or {@link Double}s, and the rest as {@link String}, {@link Boolean} or null. The same types (and any
+ * other {@link Number}) can be written
+ */
+final class Json {
+	private Json() {
+	}
+
+	/**
+	 * Parses a JSON value
+	 *
+	 * @param json the JSON string
+	 * @return the value
+	 * @throws IllegalArgumentException if the string is not valid JSON
+	 */
+	@Nullable
+	static Object parse(@NotNull String json) {
+		Reader reader = new Reader(json);
+		Object value = reader.value();
+		reader.skipWhitespaces();
+		if (reader.pos != json.length())
+			throw reader.error("Unexpected character");
+		return value;
+	}
+
+	/**
+	 * @param value the value, as described in the class documentation
+	 * @return the JSON string of the value
+	 * @throws IllegalArgumentException if the value (or a value inside it) can't be written as JSON
+	 */
+	@NotNull
+	static String write(@Nullable Object value) {
+		StringBuilder builder = new StringBuilder();
+		write(value, builder);
+		return builder.toString();
+	}
+
+	private static void write(@Nullable Object value, @NotNull StringBuilder builder) {
+		if (value == null || value instanceof Boolean || value instanceof Number) {
+			builder.append(value);
+		} else if (value instanceof String) {
+			GQLFedUtils.appendJsonString(builder, (String) value);
+		} else if (value instanceof Map) {
+			builder.append('{');
+			boolean first = true;
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+				if (!first)
+					builder.append(',');
+				first = false;
+				GQLFedUtils.appendJsonString(builder, String.valueOf(entry.getKey()));
+				builder.append(':');
+				write(entry.getValue(), builder);
+			}
+			builder.append('}');
+		} else if (value instanceof List) {
+			builder.append('[');
+			boolean first = true;
+			for (Object element : (List<?>) value) {
+				if (!first)
+					builder.append(',');
+				first = false;
+				write(element, builder);
+			}
+			builder.append(']');
+		} else {
+			throw new IllegalArgumentException("Can't write " + value.getClass().getName() + " as JSON");
+		}
+	}
+
+	private static final class Reader {
+		@NotNull
+		private final String json;
+
+		private int pos;
+
+		private Reader(@NotNull String json) {
+			this.json = json;
+		}
+
+		@Nullable
+		private Object value() {
+			skipWhitespaces();
+			if (pos >= json.length())
+				throw error("Unexpected end of input");
+
+			char c = json.charAt(pos);
+			switch (c) {
+				case '{':
+					return object();
+				case '[':
+					return array();
+				case '"':
+					return string();
+				case 't':
+					return literal("true", Boolean.TRUE);
+				case 'f':
+					return literal("false", Boolean.FALSE);
+				case 'n':
+					return literal("null", null);
+				default:
+					if (c == '-' || (c >= '0' && c <= '9'))
+						return number();
+					throw error("Unexpected character");
+			}
+		}
+
+		@NotNull
+		private Map<String, Object> object() {
+			Map<String, Object> object = new LinkedHashMap<>();
+			++pos; // {
+			skipWhitespaces();
+			if (consume('}'))
+				return object;
+			do {
+				skipWhitespaces();
+				if (pos >= json.length() || json.charAt(pos) != '"')
+					throw error("Expected a key");
+				String key = string();
+				skipWhitespaces();
+				if (!consume(':'))
+					throw error("Expected ':'");
+				object.put(key, value());
+				skipWhitespaces();
+			} while (consume(','));
+			if (!consume('}'))
+				throw error("Expected '}'");
+			return object;
+		}
+
+		@NotNull
+		private List<Object> array() {
+			List<Object> array = new ArrayList<>();
+			++pos; // [
+			skipWhitespaces();
+			if (consume(']'))
+				return array;
+			do {
+				array.add(value());
+				skipWhitespaces();
+			} while (consume(','));
+			if (!consume(']'))
+				throw error("Expected ']'");
+			return array;
+		}
+
+		@NotNull
+		private String string() {
+			++pos; // "
+			StringBuilder builder = new StringBuilder();
+			while (true) {
+				if (pos >= json.length())
+					throw error("Unterminated string");
+				char c = json.charAt(pos++);
+				if (c == '"')
+					return builder.toString();
+				if (c != '\\') {
+					builder.append(c);
+					continue;
+				}
+
+				if (pos >= json.length())
+					throw error("Unterminated string");
+				char escaped = json.charAt(pos++);
+				switch (escaped) {
+					case 'b':
+						builder.append('\b');
+						break;
+					case 'f':
+						builder.append('\f');
+						break;
+					case 'n':
+						builder.append('\n');
+						break;
+					case 'r':
+						builder.append('\r');
+						break;
+					case 't':
+						builder.append('\t');
+						break;
+					case 'u':
+						if (pos + 4 > json.length())
+							throw error("Invalid unicode escape");
+						try {
+							builder.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+						} catch (NumberFormatException e) {
+							throw error("Invalid unicode escape");
+						}
+						pos += 4;
+						break;
+					default: // " \ /
+						builder.append(escaped);
+				}
+			}
+		}
+
+		@NotNull
+		private Number number() {
+			int start = pos;
+			boolean isDecimal = false;
+			while (pos < json.length()) {
+				char c = json.charAt(pos);
+				if (c == '.' || c == 'e' || c == 'E')
+					isDecimal = true;
+				else if (c != '-' && c != '+' && (c < '0' || c > '9'))
+					break;
+				++pos;
+			}
+			String number = json.substring(start, pos);
+			try {
+				if (!isDecimal)
+					try {
+						return Long.parseLong(number);
+					} catch (NumberFormatException ignored) {
+						// too big, it is read as a double
+					}
+				return Double.parseDouble(number);
+			} catch (NumberFormatException e) {
+				throw error("Invalid number");
+			}
+		}
+
+		@Nullable
+		private Object literal(@NotNull String literal, @Nullable Object value) {
+			if (!json.startsWith(literal, pos))
+				throw error("Unexpected character");
+			pos += literal.length();
+			return value;
+		}
+
+		private boolean consume(char c) {
+			if (pos < json.length() && json.charAt(pos) == c) {
+				++pos;
+				return true;
+			}
+			return false;
+		}
+
+		private void skipWhitespaces() {
+			while (pos < json.length() && Character.isWhitespace(json.charAt(pos)))
+				++pos;
+		}
+
+		@NotNull
+		private IllegalArgumentException error(@NotNull String message) {
+			return new IllegalArgumentException(message + " at index " + pos + " of JSON");
+		}
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.benjaminguzman.lsp;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Language server speaking JSON-RPC over a pair of streams, as described by the language server protocol
+ * <p>
+ * Messages are read and answered one at a time. Documents are synchronized incrementally, see {@link Document}
+ */
+final class LanguageServer {
+	private static final Logger LOGGER = Logger.getLogger(LanguageServer.class.getName());
+
+	/**
+	 * Maximum size of a message, to avoid allocating huge buffers if the input is corrupted
+	 */
+	private static final int MAX_CONTENT_LENGTH = 256 * 1024 * 1024;
+
+	// error codes defined by JSON-RPC and the protocol
+	private static final int PARSE_ERROR = -32700;
+	private static final int INVALID_REQUEST = -32600;
+	private static final int METHOD_NOT_FOUND = -32601;
+	private static final int INTERNAL_ERROR = -32603;
+	private static final int SERVER_NOT_INITIALIZED = -32002;
+
+	@NotNull
+	private final InputStream in;
+
+	@NotNull
+	private final OutputStream out;
+
+	@NotNull
+	private final Workspace workspace = new Workspace();
+
+	/**
+	 * Documents whose last published diagnostics were not empty
+	 */
+	@NotNull
+	private final Set<String> withErrors = new HashSet<>();
+
+	private boolean initialized;
+
+	private boolean shutdown;
+
+	/**
+	 * @param in  stream the client writes to
+	 * @param out stream the client reads from
+	 */
+	LanguageServer(@NotNull InputStream in, @NotNull OutputStream out) {
+		this.in = new BufferedInputStream(in);
+		this.out = out;
+	}
+
+	/**
+	 * Serves messages until the client sends the exit notification or closes the input
+	 *
+	 * @return the exit code: 0 if the client requested a shutdown before exiting, 1 otherwise
+	 * @throws IOException if there was an error while reading or writing
+	 */
+	int serve() throws IOException {
+		String content;
+		while ((content = readMessage()) != null) {
+			Map<?, ?> message;
+			try {
+				Object parsed = Json.parse(content);
+				if (!(parsed instanceof Map))
+					throw new IllegalArgumentException("A message must be an object");
+				message = (Map<?, ?>) parsed;
+			} catch (IllegalArgumentException e) {
+				LOGGER.warning("😭 Invalid message. " + e.getMessage());
+				writeError(null, PARSE_ERROR, e.getMessage());
+				continue;
+			}
+
+			Object id = message.get("id");
+			Object method = message.get("method");
+			if (!(method instanceof String))
+				continue; // a response, the server doesn't send requests
+			if ("exit".equals(method))
+				return shutdown ? 0 : 1;
+
+			long startTime = System.nanoTime();
+			try {
+				Map<?, ?> params = message.get("params") instanceof Map ? (Map<?, ?>) message.get("params") : Map.of();
+				Object result = handle((String) method, params, id != null);
+				if (id != null)
+					writeResult(id, result);
+			} catch (ProtocolError e) {
+				if (id != null)
+					writeError(id, e.code, e.getMessage());
+			} catch (RuntimeException e) {
+				LOGGER.warning("😭 Error while handling " + method + ". " + e);
+				if (id != null)
+					writeError(id, INTERNAL_ERROR, String.valueOf(e.getMessage()));
+			}
+			LOGGER.fine(() -> method + " handled in "
+				+ TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startTime) + " µs");
+		}
+		return 1;
+	}
+
+	/**
+	 * @param isRequest true if the message is a request, false if it is a notification
+	 * @return the result of the request
+	 */
+	@Nullable
+	private Object handle(@NotNull String method, @NotNull Map<?, ?> params, boolean isRequest)
+		throws IOException {
+		if (!initialized && !"initialize".equals(method))
+			throw new ProtocolError(SERVER_NOT_INITIALIZED, "The server has not been initialized");
+		if (shutdown)
+			throw new ProtocolError(INVALID_REQUEST, "The server is shutting down");
+
+		switch (method) {
+			case "initialize":
+				initialized = true;
+				return capabilities();
+			case "shutdown":
+				shutdown = true;
+				return null;
+			case "textDocument/didOpen": {
+				Map<?, ?> document = (Map<?, ?>) params.get("textDocument");
+				String uri = (String) document.get("uri");
+				workspace.open(uri, (String) document.get("text"));
+				publishDiagnostics(uri);
+				return null;
+			}
+			case "textDocument/didChange": {
+				String uri = uri(params);
+				for (Object change : (List<?>) params.get("contentChanges")) {
+					Map<?, ?> changeMap = (Map<?, ?>) change;
+					workspace.change(uri, (Map<?, ?>) changeMap.get("range"), (String) changeMap.get("text"));
+				}
+				publishDiagnostics(uri);
+				return null;
+			}
+			case "textDocument/didClose": {
+				String uri = uri(params);
+				workspace.close(uri);
+				if (withErrors.remove(uri))
+					writeDiagnostics(uri, List.of());
+				return null;
+			}
+			case "textDocument/definition":
+				return workspace.definition(uri(params), (Map<?, ?>) params.get("position"));
+			case "textDocument/references": {
+				Map<?, ?> context = (Map<?, ?>) params.get("context");
+				boolean includeDeclaration = context != null && Boolean.TRUE.equals(context.get("includeDeclaration"));
+				return workspace.references(uri(params), (Map<?, ?>) params.get("position"), includeDeclaration);
+			}
+			case "textDocument/hover":
+				return workspace.hover(uri(params), (Map<?, ?>) params.get("position"));
+			case "textDocument/documentSymbol":
+				return workspace.symbols(uri(params));
+			default:
+				if (isRequest)
+					throw new ProtocolError(METHOD_NOT_FOUND, "Method " + method + " is not supported");
+				return null; // unknown notifications are ignored
+		}
+	}
+
+	@NotNull
+	private static Map<String, Object> capabilities() {
+		Map<String, Object> sync = new LinkedHashMap<>();
+		sync.put("openClose", true);
+		sync.put("change", 2); // incremental
+
+		Map<String, Object> capabilities = new LinkedHashMap<>();
+		capabilities.put("textDocumentSync", sync);
+		capabilities.put("definitionProvider", true);
+		capabilities.put("referencesProvider", true);
+		capabilities.put("hoverProvider", true);
+		capabilities.put("documentSymbolProvider", true);
+
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("capabilities", capabilities);
+		result.put("serverInfo", Map.of("name", "gqlfedutils", "version", "0.1"));
+		return result;
+	}
+
+	/**
+	 * Publishes the diagnostics of a document if it has errors, or if it had errors the last time diagnostics were
+	 * published (so the client clears them)
+	 */
+	private void publishDiagnostics(@NotNull String uri) throws IOException {
+		if (workspace.hasErrors(uri)) {
+			withErrors.add(uri);
+			writeDiagnostics(uri, workspace.diagnostics(uri));
+		} else if (withErrors.remove(uri)) {
+			writeDiagnostics(uri, List.of());
+		}
+	}
+
+	private void writeDiagnostics(@NotNull String uri, @NotNull List<Object> diagnostics) throws IOException {
+		Map<String, Object> params = new LinkedHashMap<>();
+		params.put("uri", uri);
+		params.put("diagnostics", diagnostics);
+
+		Map<String, Object> notification = new LinkedHashMap<>();
+		notification.put("jsonrpc", "2.0");
+		notification.put("method", "textDocument/publishDiagnostics");
+		notification.put("params", params);
+		writeMessage(notification);
+	}
+
+	private void writeResult(@NotNull Object id, @Nullable Object result) throws IOException {
+		Map<String, Object> response = new LinkedHashMap<>();
+		response.put("jsonrpc", "2.0");
+		response.put("id", id);
+		response.put("result", result);
+		writeMessage(response);
+	}
+
+	private void writeError(@Nullable Object id, int code, @NotNull String message) throws IOException {
+		Map<String, Object> error = new LinkedHashMap<>();
+		error.put("code", code);
+		error.put("message", message);
+
+		Map<String, Object> response = new LinkedHashMap<>();
+		response.put("jsonrpc", "2.0");
+		response.put("id", id);
+		response.put("error", error);
+		writeMessage(response);
+	}
+
+	private void writeMessage(@NotNull Map<String, Object> message) throws IOException {
+		byte[] content = Json.write(message).getBytes(StandardCharsets.UTF_8);
+		out.write(("Content-Length: " + content.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		out.write(content);
+		out.flush();
+	}
+
+	/**
+	 * @return content of the next message, or null if the input has been closed
+	 */
+	@Nullable
+	private String readMessage() throws IOException {
+		int contentLength = -1;
+		String header;
+		while ((header = readHeaderLine()) != null && !header.isEmpty()) {
+			int colonIdx = header.indexOf(':');
+			if (colonIdx != -1 && header.substring(0, colonIdx).strip().equalsIgnoreCase("Content-Length")) {
+				try {
+					contentLength = Integer.parseInt(header.substring(colonIdx + 1).strip());
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid header " + header);
+				}
+			}
+		}
+		if (header == null)
+			return null;
+		if (contentLength < 0 || contentLength > MAX_CONTENT_LENGTH)
+			throw new IOException("Invalid or missing Content-Length header");
+
+		byte[] content = in.readNBytes(contentLength);
+		if (content.length < contentLength)
+			return null;
+		return new String(content, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @return the next header line without its line terminator, or null if the input has been closed
+	 */
+	@Nullable
+	private String readHeaderLine() throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int b;
+		while ((b = in.read()) != '\n') {
+			if (b == -1)
+				return null;
+			if (b != '\r')
+				line.write(b);
+		}
+		return line.toString(StandardCharsets.US_ASCII);
+	}
+
+	@NotNull
+	private static String uri(@NotNull Map<?, ?> params) {
+		return (String) ((Map<?, ?>) params.get("textDocument")).get("uri");
+	}
+
+	/**
+	 * Error answered to a request
+	 */
+	private static final class ProtocolError extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		private final int code;
+
+		private ProtocolError(int code, @NotNull String message) {
+			super(message);
+			this.code = code;
+		}
+	}
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.benjaminguzman.lsp;
+
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.logging.Logger;
+
+@CommandLine.Command(
+	name = "lsp",
+	description = "Run a language server for GraphQL schemas, speaking the language server protocol over " +
+		"stdin and stdout. It provides go to definition, find references, hover, document symbols and " +
+		"diagnostics for open documents. Edits only parse again the definitions they touch",
+	mixinStandardHelpOptions = true,
+	version = "gqlfedutils lsp 0.1"
+)
+public class Lsp implements Callable<Integer> {
+	private static final Logger LOGGER = Logger.getLogger(Lsp.class.getName());
+
+	/**
+	 * @return 0 if the client requested a shutdown before exiting, as the protocol requires, or 1 if it didn't or
+	 * there was an error while communicating with it
+	 */
+	@Override
+	public Integer call() {
+		// stdout is used by the protocol, logs go to stderr
+		try {
+			return new LanguageServer(System.in, System.out).serve();
+		} catch (IOException e) {
+			LOGGER.severe("😭 Error while communicating with the client. " + e.getMessage());
+			return 1;
+		}
+	}
+}
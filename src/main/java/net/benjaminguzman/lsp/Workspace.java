@@ -0,0 +1,299 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.benjaminguzman.lsp;
+
+import net.benjaminguzman.lsp.Document.Definition;
+import net.benjaminguzman.lsp.Document.Token;
+import net.benjaminguzman.parse.GQL;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Open documents, and the indexes used to answer requests about them
+ * <p>
+ * The indexes map each name to the definitions declaring it and to the definitions referencing it. They're updated
+ * with the definitions changed by each edit, so a request costs a lookup instead of a scan of the workspace.
+ * Offsets in the results are computed when the request is answered, because definitions are shifted by edits
+ * <p>
+ * Results are returned as the objects of the language server protocol, ready to be written with {@link Json}
+ */
+final class Workspace {
+	/**
+	 * Symbol kinds of the language server protocol
+	 */
+	private static final Map<String, Integer> SYMBOL_KINDS = Map.of(
+		"type", 5, // class
+		"input", 23, // struct
+		"enum", 10, // enum
+		"scalar", 26, // type parameter
+		"directive", 24, // event
+		"schema", 2 // module
+	);
+
+	@NotNull
+	private final Map<String, Document> documents = new HashMap<>();
+
+	/**
+	 * Definitions declaring each name
+	 */
+	@NotNull
+	private final Map<String, Set<Definition>> declarations = new HashMap<>();
+
+	/**
+	 * Definitions referencing each name
+	 */
+	@NotNull
+	private final Map<String, Set<Definition>> referrers = new HashMap<>();
+
+	/**
+	 * Opens a document, or replaces its text if it is already open
+	 */
+	void open(@NotNull String uri, @NotNull String text) {
+		index(documents.computeIfAbsent(uri, Document::new).setText(text));
+	}
+
+	/**
+	 * Replaces a range of an open document
+	 *
+	 * @param range the range, as sent by the client, or null to replace the whole text
+	 * @throws IllegalArgumentException if the document is not open
+	 */
+	void change(@NotNull String uri, @Nullable Map<?, ?> range, @NotNull String text) {
+		Document document = document(uri);
+		if (range == null) {
+			index(document.setText(text));
+			return;
+		}
+
+		int start = offset(document, (Map<?, ?>) range.get("start"));
+		int end = Math.max(start, offset(document, (Map<?, ?>) range.get("end")));
+		index(document.replace(start, end, text));
+	}
+
+	void close(@NotNull String uri) {
+		Document document = documents.remove(uri);
+		if (document != null)
+			unindex(document.getDefinitions());
+	}
+
+	/**
+	 * @return locations of the declarations of the name at the given position
+	 */
+	@NotNull
+	List<Object> definition(@NotNull String uri, @NotNull Map<?, ?> position) {
+		Token token = tokenAt(uri, position);
+		List<Object> locations = new ArrayList<>();
+		if (token == null)
+			return locations;
+
+		for (Definition definition : declarations.getOrDefault(token.name, Collections.emptySet()))
+			if (definition.declaration != null)
+				locations.add(location(definition.declaration));
+		return locations;
+	}
+
+	/**
+	 * @return locations of the references to the name at the given position, and of its declarations if
+	 * {@code includeDeclaration} is true
+	 */
+	@NotNull
+	List<Object> references(@NotNull String uri, @NotNull Map<?, ?> position, boolean includeDeclaration) {
+		Token token = tokenAt(uri, position);
+		List<Object> locations = new ArrayList<>();
+		if (token == null)
+			return locations;
+
+		if (includeDeclaration)
+			for (Definition definition : declarations.getOrDefault(token.name, Collections.emptySet()))
+				if (definition.declaration != null)
+					locations.add(location(definition.declaration));
+		for (Definition definition : referrers.getOrDefault(token.name, Collections.emptySet()))
+			for (Token reference : definition.references)
+				if (reference.name.equals(token.name))
+					locations.add(location(reference));
+		return locations;
+	}
+
+	/**
+	 * @return the hover for the name at the given position (its declarations and their comments), or null if
+	 * nothing is declared with that name
+	 */
+	@Nullable
+	Map<String, Object> hover(@NotNull String uri, @NotNull Map<?, ?> position) {
+		Token token = tokenAt(uri, position);
+		if (token == null)
+			return null;
+
+		StringBuilder markdown = new StringBuilder();
+		for (Definition definition : declarations.getOrDefault(token.name, Collections.emptySet())) {
+			if (markdown.length() > 0)
+				markdown.append("\n\n---\n\n");
+			markdown.append("```graphql\n").append(body(definition)).append("\n```");
+			if (definition.dataType != null && definition.dataType.getComment() != null)
+				markdown.append("\n\n").append(definition.dataType.getComment().strip());
+		}
+		if (markdown.length() == 0)
+			return null;
+
+		Map<String, Object> contents = new LinkedHashMap<>();
+		contents.put("kind", "markdown");
+		contents.put("value", markdown.toString());
+
+		Map<String, Object> hover = new LinkedHashMap<>();
+		hover.put("contents", contents);
+		hover.put("range", document(uri).range(token.start(), token.end()));
+		return hover;
+	}
+
+	/**
+	 * @return the symbols declared in a document
+	 */
+	@NotNull
+	List<Object> symbols(@NotNull String uri) {
+		Document document = document(uri);
+		List<Object> symbols = new ArrayList<>();
+		for (Definition definition : document.getDefinitions()) {
+			Integer kind = definition.keyword == null ? null : SYMBOL_KINDS.get(definition.keyword);
+			if (kind == null)
+				continue;
+
+			Token name = definition.declaration;
+			Map<String, Object> symbol = new LinkedHashMap<>();
+			symbol.put("name", name == null ? definition.keyword : name.name);
+			symbol.put("kind", kind);
+			symbol.put("range", document.range(definition.start, definition.start + definition.text.length()));
+			symbol.put("selectionRange", name == null
+				? document.range(definition.start, definition.start)
+				: document.range(name.start(), name.end()));
+			symbols.add(symbol);
+		}
+		return symbols;
+	}
+
+	/**
+	 * @return the diagnostics of a document, i.e. the definitions that couldn't be scanned or parsed
+	 */
+	@NotNull
+	List<Object> diagnostics(@NotNull String uri) {
+		Document document = document(uri);
+		List<Object> diagnostics = new ArrayList<>();
+		for (Definition definition : document.getDefinitions()) {
+			if (definition.error == null)
+				continue;
+
+			Map<String, Object> diagnostic = new LinkedHashMap<>();
+			diagnostic.put("range", document.range(definition.start, definition.start + definition.text.length()));
+			diagnostic.put("severity", 1); // error
+			diagnostic.put("source", "gqlfedutils");
+			diagnostic.put("message", definition.error);
+			diagnostics.add(diagnostic);
+		}
+		return diagnostics;
+	}
+
+	/**
+	 * @return true if the document has definitions that couldn't be scanned or parsed
+	 */
+	boolean hasErrors(@NotNull String uri) {
+		for (Definition definition : document(uri).getDefinitions())
+			if (definition.error != null)
+				return true;
+		return false;
+	}
+
+	private void index(@NotNull Document.Update update) {
+		unindex(update.removed);
+		for (Definition definition : update.added) {
+			if (definition.declaration != null)
+				declarations.computeIfAbsent(definition.declaration.name, k -> new LinkedHashSet<>()).add(definition);
+			for (Token reference : definition.references)
+				referrers.computeIfAbsent(reference.name, k -> new LinkedHashSet<>()).add(definition);
+		}
+	}
+
+	private void unindex(@NotNull List<Definition> definitions) {
+		for (Definition definition : definitions) {
+			if (definition.declaration != null)
+				remove(declarations, definition.declaration.name, definition);
+			for (Token reference : definition.references)
+				remove(referrers, reference.name, definition);
+		}
+	}
+
+	private static void remove(@NotNull Map<String, Set<Definition>> index, @NotNull String name,
+	                           @NotNull Definition definition) {
+		Set<Definition> definitions = index.get(name);
+		if (definitions != null && definitions.remove(definition) && definitions.isEmpty())
+			index.remove(name);
+	}
+
+	@Nullable
+	private Token tokenAt(@NotNull String uri, @NotNull Map<?, ?> position) {
+		Document document = document(uri);
+		return document.tokenAt(offset(document, position));
+	}
+
+	@NotNull
+	private Document document(@NotNull String uri) {
+		Document document = documents.get(uri);
+		if (document == null)
+			throw new IllegalArgumentException("Document " + uri + " is not open");
+		return document;
+	}
+
+	private static int offset(@NotNull Document document, @NotNull Map<?, ?> position) {
+		return document.offset(
+			((Number) position.get("line")).intValue(),
+			((Number) position.get("character")).intValue()
+		);
+	}
+
+	@NotNull
+	private static Map<String, Object> location(@NotNull Token token) {
+		Document document = token.definition.document;
+		Map<String, Object> location = new LinkedHashMap<>();
+		location.put("uri", document.getUri());
+		location.put("range", document.range(token.start(), token.end()));
+		return location;
+	}
+
+	/**
+	 * @return text of the definition without its comment
+	 */
+	@NotNull
+	private static String body(@NotNull Definition definition) {
+		String text = definition.text;
+		if (text.startsWith(GQL.COMMENT_DELIMITER)) {
+			int commentEnd = text.indexOf(GQL.COMMENT_DELIMITER, GQL.COMMENT_DELIMITER.length());
+			if (commentEnd != -1)
+				text = text.substring(commentEnd + GQL.COMMENT_DELIMITER.length());
+		}
+		return text.strip();
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.parse;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Index of the annotations found in comments, e.g. {@code @GK ADMIN}, by annotation name
+ * <p>
+ * Anything in a comment that looks like {@code @Word} is considered an annotation, no matter what precedes it.
+ * Therefore, a comment contains the string {@code "@" + prefix} if and only if it contains an annotation whose
+ * name starts with {@code prefix}
+ * <p>
+ * Like {@link SchemaIndex}, this index reflects the comments at the moment it was built
+ *
+ * @see GQL#from(String, boolean)
+ */
+public class AnnotationIndex {
+	/**
+	 * Annotations by name. Names are sorted to allow prefix lookups
+	 */
+	@NotNull
+	private final NavigableMap<String, List<GQLAnnotation>> annotations = new TreeMap<>();
+
+	/**
+	 * Creates an empty index. Annotations are added by the parser
+	 */
+	AnnotationIndex() {
+	}
+
+	/**
+	 * Creates an index with the annotations in all the given data types
+	 *
+	 * @param dataTypes the data types
+	 */
+	public AnnotationIndex(@NotNull List<GQLDataType> dataTypes) {
+		new GQLWalker(indexer()).walk(dataTypes);
+	}
+
+	/**
+	 * Adds the annotations in the comments of the given data type, its fields, field params and enum values
+	 *
+	 * @param dataType the data type
+	 */
+	void add(@NotNull GQLDataType dataType) {
+		new GQLWalker(indexer()).walk(List.of(dataType));
+	}
+
+	/**
+	 * @return a visitor that adds the annotations in the comments of every visited node to this index.
+	 * The visitor is not thread-safe
+	 */
+	@NotNull
+	GQLVisitor indexer() {
+		return new GQLVisitor() {
+			@Override
+			public boolean visitDataType(@NotNull GQLDataType dataType) {
+				addComment(dataType);
+				return true;
+			}
+
+			@Override
+			public boolean visitField(@NotNull GQLField field) {
+				addComment(field);
+				return true;
+			}
+
+			@Override
+			public void visitFieldParam(@NotNull GQLField.GQLFieldParam param) {
+				addComment(param);
+			}
+
+			@Override
+			public boolean visitEnumValue(@NotNull GQLEnum.EnumValue value) {
+				addComment(value);
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Extracts the annotations in the comment of a single node (children are not considered)
+	 */
+	private void addComment(@NotNull GQLDataType node) {
+		String comment = node.getComment();
+		if (comment == null)
+			return;
+
+		int line = 0;
+		int len = comment.length();
+		for (int i = 0; i < len; ++i) {
+			char c = comment.charAt(i);
+			if (c == '\n') {
+				++line;
+				continue;
+			}
+			if (c != '@' || i + 1 == len || !GQLDataType.isNameChar(comment.charAt(i + 1)))
+				continue;
+
+			int nameEndIdx = i + 1;
+			for (; nameEndIdx < len && GQLDataType.isNameChar(comment.charAt(nameEndIdx)); ++nameEndIdx) ;
+			int lineEndIdx = GQL.lineEndIdx(comment, nameEndIdx);
+
+			String name = comment.substring(i + 1, nameEndIdx);
+			annotations.computeIfAbsent(name, k -> new ArrayList<>()).add(new GQLAnnotation(
+				node,
+				name,
+				line,
+				comment.substring(nameEndIdx, lineEndIdx).strip()
+			));
+
+			// there may be more annotations in the same line
+			i = nameEndIdx - 1;
+		}
+	}
+
+	/**
+	 * @param name name of the annotation, without '@'
+	 * @return all annotations with the given name, in the order they were found
+	 */
+	@NotNull
+	public List<GQLAnnotation> get(@NotNull String name) {
+		return Collections.unmodifiableList(annotations.getOrDefault(name, Collections.emptyList()));
+	}
+
+	/**
+	 * @return names of all the annotations found (without '@'), sorted
+	 */
+	@NotNull
+	public Set<String> getNames() {
+		return Collections.unmodifiableSet(annotations.keySet());
+	}
+
+	/**
+	 * Finds all nodes with at least one annotation whose name starts with any of the given prefixes
+	 *
+	 * @param prefixes the prefixes (without '@')
+	 * @return the nodes. The set compares nodes by identity, since different nodes may be equal
+	 */
+	@NotNull
+	public Set<GQLDataType> getNodes(@NotNull Collection<String> prefixes) {
+		Set<GQLDataType> nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (String prefix : prefixes)
+			annotations.subMap(prefix, prefix + Character.MAX_VALUE)
+				.values()
+				.forEach(list -> list.forEach(annotation -> nodes.add(annotation.getNode())));
+		return nodes;
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.parse;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Splits GraphQL code read from a {@link Reader} into top-level definitions, without parsing them
+ * <p>
+ * Definitions are delimited exactly as {@link GQL#from(String, boolean)} does, so parsing each definition
+ * on its own gives the same data types as parsing the whole string at once. Only the definition being scanned
+ * is kept in memory, i.e. memory is bounded by the largest definition and not by the size of the input
+ */
+public class DefinitionScanner implements Closeable {
+	private static final Logger LOGGER = Logger.getLogger(DefinitionScanner.class.getName());
+
+	private static final String[] BLOCK_KEYWORDS = {
+		GQLKeyword.TYPE.toString(),
+		GQLKeyword.INPUT.toString(),
+		GQLKeyword.ENUM.toString(),
+		GQLKeyword.SCHEMA.toString()
+	};
+
+	private static final String[] LINE_KEYWORDS = {
+		GQLKeyword.SCALAR.toString(),
+		GQLKeyword.DIRECTIVE.toString()
+	};
+
+	@NotNull
+	private final Reader reader;
+
+	/**
+	 * If true, lines that are not recognized are logged
+	 */
+	private final boolean warnUnrecognized;
+
+	/**
+	 * Characters read from {@link #reader} but not consumed yet are in the range [{@link #pos}, {@link #limit})
+	 */
+	@NotNull
+	private char[] buf = new char[8192];
+	private int pos;
+	private int limit;
+
+	/**
+	 * Number of characters read from {@link #reader} before {@code buf[0]}, i.e. {@code base + pos} is the offset of
+	 * the next character in the input
+	 */
+	private long base;
+
+	/**
+	 * Text of the chunk being scanned
+	 */
+	@NotNull
+	private final StringBuilder text = new StringBuilder();
+
+	/**
+	 * @param reader           reader for the GraphQL code. It is closed when the scanner is closed
+	 * @param warnUnrecognized if true, lines that are neither definitions nor comments are logged, just like
+	 *                         {@link GQL#from(String, boolean)} does
+	 */
+	public DefinitionScanner(@NotNull Reader reader, boolean warnUnrecognized) {
+		this.reader = reader;
+		this.warnUnrecognized = warnUnrecognized;
+	}
+
+	/**
+	 * Scans the next chunk
+	 * <p>
+	 * Lines that are neither definitions nor comments are skipped
+	 *
+	 * @return the next chunk or null if the end of the input has been reached
+	 * @throws IOException      if there was an error while reading
+	 * @throws InvalidGQLSyntax if a definition or a comment is not closed
+	 */
+	@Nullable
+	public Chunk next() throws IOException, InvalidGQLSyntax {
+		while (true) {
+			skipWhitespaces(null);
+			if (peek() == -1)
+				return null;
+
+			long start = base + pos;
+			text.setLength(0);
+
+			// a comment is part of the definition following it
+			if (startsWith(GQL.COMMENT_DELIMITER)) {
+				consume(GQL.COMMENT_DELIMITER.length());
+				while (!startsWith(GQL.COMMENT_DELIMITER)) {
+					if (peek() == -1)
+						throw new InvalidGQLSyntax("There is a " + GQL.COMMENT_DELIMITER + " missing in comment "
+							+ text);
+					consume(1);
+				}
+				consume(GQL.COMMENT_DELIMITER.length());
+				skipWhitespaces(text);
+				if (peek() == -1)
+					return null;
+			}
+
+			int bodyIdx = text.length();
+			for (String keyword : BLOCK_KEYWORDS) {
+				if (!startsWith(keyword))
+					continue;
+
+				int c;
+				do {
+					if ((c = peek()) == -1)
+						throw new InvalidGQLSyntax("\"" + text + "\" could not be parsed. There is a '}' missing");
+					consume(1);
+				} while (c != '}');
+				return new Chunk(Chunk.Kind.DEFINITION, text.toString(), start, base + pos);
+			}
+
+			for (String keyword : LINE_KEYWORDS) {
+				if (startsWith(keyword)) {
+					consumeLine();
+					return new Chunk(Chunk.Kind.DEFINITION, text.toString(), start, base + pos);
+				}
+			}
+
+			// the preceding comment (if any) is discarded in both cases, as GQL does
+			boolean isComment = peek() == '#';
+			consumeLine();
+			if (isComment)
+				return new Chunk(Chunk.Kind.COMMENT, text.substring(bodyIdx), start + bodyIdx, base + pos);
+
+			if (warnUnrecognized)
+				LOGGER.warning("String \"" + text.substring(bodyIdx) + "\" was not recognized, it'll be ignored");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+
+	/**
+	 * Consumes characters up to the next line feed (exclusive) or the end of the input. The line feed is
+	 * skipped
+	 */
+	private void consumeLine() throws IOException {
+		int c;
+		while ((c = peek()) != -1 && c != '\n')
+			consume(1);
+		if (c == '\n')
+			++pos;
+	}
+
+	/**
+	 * Skips whitespaces
+	 *
+	 * @param into if not null, skipped whitespaces are appended to it
+	 */
+	private void skipWhitespaces(@Nullable StringBuilder into) throws IOException {
+		int c;
+		while ((c = peek()) != -1 && Character.isWhitespace(c)) {
+			if (into != null)
+				into.append((char) c);
+			++pos;
+		}
+	}
+
+	/**
+	 * Appends the next {@code n} characters to {@link #text}. Callers must make sure they're available
+	 */
+	private void consume(int n) {
+		text.append(buf, pos, n);
+		pos += n;
+	}
+
+	/**
+	 * @return the next character without consuming it, or -1 if the end of the input has been reached
+	 */
+	private int peek() throws IOException {
+		return fill(1) ? buf[pos] : -1;
+	}
+
+	/**
+	 * @return true if the next characters are the given string
+	 */
+	private boolean startsWith(@NotNull String str) throws IOException {
+		if (!fill(str.length()))
+			return false;
+		for (int i = 0; i < str.length(); ++i)
+			if (buf[pos + i] != str.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Reads from {@link #reader} until at least {@code n} characters are available or the end of the input
+	 * has been reached
+	 *
+	 * @return true if at least {@code n} characters are available
+	 */
+	private boolean fill(int n) throws IOException {
+		if (limit - pos >= n)
+			return true;
+
+		// move pending characters to the beginning of the buffer
+		System.arraycopy(buf, pos, buf, 0, limit - pos);
+		limit -= pos;
+		base += pos;
+		pos = 0;
+		if (n > buf.length)
+			buf = Arrays.copyOf(buf, n);
+
+		int read;
+		while (limit < n && (read = reader.read(buf, limit, buf.length - limit)) != -1)
+			limit += read;
+		return limit >= n;
+	}
+
+	/**
+	 * Text of a top-level definition (including its comment), or of a single-line comment starting with #
+	 */
+	public static final class Chunk {
+		public enum Kind {
+			/**
+			 * A definition, which can be parsed with {@link GQL#from(String, boolean)}
+			 */
+			DEFINITION,
+
+			/**
+			 * A line starting with #
+			 */
+			COMMENT
+		}
+
+		@NotNull
+		private final Kind kind;
+
+		@NotNull
+		private final String text;
+
+		private final long start;
+
+		private final long end;
+
+		private Chunk(@NotNull Kind kind, @NotNull String text, long start, long end) {
+			this.kind = kind;
+			this.text = text;
+			this.start = start;
+			this.end = end;
+		}
+
+		@NotNull
+		public Kind getKind() {
+			return kind;
+		}
+
+		@NotNull
+		public String getText() {
+			return text;
+		}
+
+		/**
+		 * @return offset (in characters) of the chunk in the input. The text of the chunk starts there
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/**
+		 * @return offset (in characters) in the input where scanning of the next chunk starts. Whitespaces (and the
+		 * line feed ending single-line definitions) between the text of this chunk and that offset are not part of
+		 * the text
+		 */
+		public long getEnd() {
+			return end;
+		}
+	}
+}
@@ -51,6 +51,18 @@ public class GQL {
 	@Nullable
 	private Map<GQLDataType, List<GQLDataType>> adjList;
 
+	/**
+	 * Annotations found in comments. It is null unless they were requested when parsing
+	 */
+	@Nullable
+	private AnnotationIndex annotations;
+
+	/**
+	 * Cache for {@link #getIndex()}
+	 */
+	@Nullable
+	private SchemaIndex index;
+
 	/**
 	 * Comments indicated with '#'
 	 */
@@ -66,8 +78,22 @@ public class GQL {
 	 * @throws InvalidGQLSyntax if the file has invalid graphql syntax
 	 */
 	public static GQL from(@NotNull Path file) throws IOException, InvalidGQLSyntax {
+		return from(file, false);
+	}
+
+	/**
+	 * Parse contents from the given file
+	 *
+	 * @param file             the file whose contents will be parsed
+	 * @param indexAnnotations if true, annotations in comments are indexed while parsing.
+	 *                         See {@link #getAnnotations()}
+	 * @return a {@link GQL} object
+	 * @throws IOException      if there was an error when reading the file
+	 * @throws InvalidGQLSyntax if the file has invalid graphql syntax
+	 */
+	public static GQL from(@NotNull Path file, boolean indexAnnotations) throws IOException, InvalidGQLSyntax {
 		LOGGER.fine("Parsing file: " + file);
-		return from(Files.readString(file));
+		return from(Files.readString(file), indexAnnotations);
 	}
 
 	/**
@@ -78,7 +104,22 @@ public class GQL {
 	 * @throws InvalidGQLSyntax if the string has invalid GraphQL syntax
 	 */
 	public static GQL from(@NotNull String str) throws InvalidGQLSyntax {
+		return from(str, false);
+	}
+
+	/**
+	 * Parse contents from the given string
+	 *
+	 * @param str              the string whose contents will be parsed
+	 * @param indexAnnotations if true, annotations in comments are indexed while parsing.
+	 *                         See {@link #getAnnotations()}
+	 * @return a {@link GQL} object
+	 * @throws InvalidGQLSyntax if the string has invalid GraphQL syntax
+	 */
+	public static GQL from(@NotNull String str, boolean indexAnnotations) throws InvalidGQLSyntax {
 		GQL gql = new GQL();
+		if (indexAnnotations)
+			gql.annotations = new AnnotationIndex();
 		StringBuilder commentsBuilder = new StringBuilder();
 		String comment;
 
@@ -96,29 +137,30 @@ public class GQL {
 			} else
 				comment = null;
 
+			GQLDataType dataType = null;
 			int endIdx = str.indexOf('}', cursorIdx);
 			if (str.startsWith(GQLKeyword.TYPE.toString(), cursorIdx)) { // parse type
 				if (endIdx == -1)
 					throw new InvalidGQLSyntax(GQLInput.class, str, "There is a '}' missing");
-				gql.dataTypes.add(GQLType.parse(str.substring(cursorIdx, endIdx + 1), comment));
+				dataType = GQLType.parse(str.substring(cursorIdx, endIdx + 1), comment);
 			} else if (str.startsWith(GQLKeyword.INPUT.toString(), cursorIdx)) { // parse input
 				if (endIdx == -1)
 					throw new InvalidGQLSyntax(GQLInput.class, str, "There is a '}' missing");
-				gql.dataTypes.add(GQLInput.parse(str.substring(cursorIdx, endIdx + 1), comment));
+				dataType = GQLInput.parse(str.substring(cursorIdx, endIdx + 1), comment);
 			} else if (str.startsWith(GQLKeyword.ENUM.toString(), cursorIdx)) { // parse enum
 				if (endIdx == -1)
 					throw new InvalidGQLSyntax(GQLEnum.class, str, "There is a '}' missing");
-				gql.dataTypes.add(GQLEnum.parse(str.substring(cursorIdx, endIdx + 1), comment));
+				dataType = GQLEnum.parse(str.substring(cursorIdx, endIdx + 1), comment);
 			} else if (str.startsWith(GQLKeyword.SCALAR.toString(), cursorIdx)) { // parse scalar
 				endIdx = lineEndIdx(str, cursorIdx);
-				gql.dataTypes.add(GQLScalar.parse(str.substring(cursorIdx, endIdx), comment));
+				dataType = GQLScalar.parse(str.substring(cursorIdx, endIdx), comment);
 			} else if (str.startsWith(GQLKeyword.DIRECTIVE.toString(), cursorIdx)) { // parse directive
 				endIdx = lineEndIdx(str, cursorIdx);
-				gql.dataTypes.add(GQLDirective.parse(str.substring(cursorIdx, endIdx), comment));
+				dataType = GQLDirective.parse(str.substring(cursorIdx, endIdx), comment);
 			} else if (str.startsWith(GQLKeyword.SCHEMA.toString(), cursorIdx)) { // parse schema
 				if (endIdx == -1)
 					throw new InvalidGQLSyntax(GQLSchema.class, str, "There is a '}' missing");
-				gql.dataTypes.add(GQLSchema.parse(str.substring(cursorIdx, endIdx + 1), comment));
+				dataType = GQLSchema.parse(str.substring(cursorIdx, endIdx + 1), comment);
 			} else if (str.charAt(cursorIdx) == '#') {
 				endIdx = lineEndIdx(str, cursorIdx);
 				commentsBuilder.append(str, cursorIdx, endIdx).append('\n');
@@ -128,6 +170,12 @@ public class GQL {
 					+ "\" was not recognized, it'll be ignored");
 			}
 
+			if (dataType != null) {
+				gql.dataTypes.add(dataType);
+				if (gql.annotations != null)
+					gql.annotations.add(dataType);
+			}
+
 			cursorIdx = endIdx + 1;
 		}
 
@@ -164,6 +212,8 @@ public class GQL {
 	 * <p>
 	 * Calling multiple times this method has no performance overhead since internally
 	 * the constructed graph is cached
+	 * <p>
+	 * This method is not thread-safe. If the graph needs to be read from multiple threads use {@link #snapshot()}
 	 *
 	 * @return the graph as an adjacency list
 	 */
@@ -175,15 +225,27 @@ public class GQL {
 		if (adjList != null) // we've already computed the graph
 			return adjList;
 
+		return (adjList = buildGraph(dataTypes, getIndex()));
+	}
+
+	/**
+	 * Constructs the graph for the given data types
+	 *
+	 * @param dataTypes the vertices
+	 * @param index     index built from the same data types. It is used to resolve name references
+	 * @return the graph as an adjacency list
+	 * @see #getGraph()
+	 */
+	@NotNull
+	static Map<GQLDataType, List<GQLDataType>> buildGraph(@NotNull List<GQLDataType> dataTypes,
+	                                                      @NotNull SchemaIndex index) {
 		// initialize vertices
-		adjList = new HashMap<>();
+		Map<GQLDataType, List<GQLDataType>> adjList = new HashMap<>();
 		for (GQLDataType dataType : dataTypes)
 			adjList.put(dataType, Collections.emptyList());
 
 		// map to allow fast access to each gql data type by its name
-		Map<String, GQLDataType> mapNameType = new HashMap<>();
-		for (GQLDataType dataType : dataTypes)
-			mapNameType.put(dataType.alphaName(), dataType);
+		Map<String, GQLDataType> mapNameType = index.getTypes();
 
 		// add edges
 		dataTypes.stream()
@@ -216,6 +278,37 @@ public class GQL {
 		return adjList;
 	}
 
+	/**
+	 * Builds an index to look up data types, fields and params by name
+	 * <p>
+	 * Like {@link #getGraph()}, the index is cached and it is not thread-safe to call this method
+	 * concurrently. If the fields of some data type are modified, the cached index will be outdated
+	 *
+	 * @return the index
+	 */
+	@NotNull
+	public SchemaIndex getIndex() {
+		if (index != null)
+			return index;
+
+		return (index = new SchemaIndex(dataTypes));
+	}
+
+	/**
+	 * Creates an immutable snapshot of this object
+	 * <p>
+	 * All data types are deep-copied and frozen, lists are unmodifiable and the graph is built eagerly,
+	 * so the returned object can be shared and read by any number of threads without locking.
+	 * <p>
+	 * Later modifications to this object are not reflected in the snapshot
+	 *
+	 * @return the snapshot
+	 */
+	@NotNull
+	public GQLSnapshot snapshot() {
+		return new GQLSnapshot(this);
+	}
+
 	/**
 	 * @return the data types stored in this object
 	 */
@@ -229,15 +322,48 @@ public class GQL {
 	 */
 	public GQL setDataTypes(@NotNull List<GQLDataType> dataTypes) {
 		this.dataTypes = dataTypes;
+		// the cached graph and index are no longer valid
+		this.adjList = null;
+		this.index = null;
 		return this;
 	}
 
+	/**
+	 * @return the annotations found in comments while parsing, or null if they were not requested
+	 * @see #from(String, boolean)
+	 */
+	@Nullable
+	public AnnotationIndex getAnnotations() {
+		return annotations;
+	}
+
+	/**
+	 * @return comments indicated with '#'. It may be null if there are no comments
+	 */
+	@Nullable
+	public String getComments() {
+		return comments;
+	}
+
 	@Override
 	public String toString() {
-		String dataTypesStr = dataTypes.stream()
-			.map(Object::toString)
+		return toString(GQLView.IDENTITY);
+	}
+
+	/**
+	 * Constructs the GraphQL code as seen through the given view, i.e. nodes not included by the view are not
+	 * printed, and comments are the ones given by the view. Data types are not modified
+	 *
+	 * @param view the view
+	 * @return the GraphQL code
+	 */
+	public String toString(@NotNull GQLView view) {
+		String dataTypesStr = getDataTypes().stream()
+			.filter(view::includes)
+			.map(dataType -> dataType.toString(view))
 			.collect(Collectors.joining("\n\n"));
 
+		String comments = getComments();
 		if (comments == null || comments.isBlank())
 			return dataTypesStr;
 
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.parse;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An annotation found inside the comment (description) of a data type, e.g. {@code @GK ADMIN} in
+ * <p>
+ * {@code """
+ * Some description
+ *
+ * @GK ADMIN
+ * """}
+ * <p>
+ * An annotation is an '@' followed by a name. Its arguments are the rest of the line, split by whitespaces
+ *
+ * @see AnnotationIndex
+ */
+public class GQLAnnotation {
+	/**
+	 * The data type whose comment contains the annotation
+	 */
+	@NotNull
+	private final GQLDataType node;
+
+	/**
+	 * Name of the annotation, without '@'
+	 */
+	@NotNull
+	private final String name;
+
+	/**
+	 * Line (starting from 0) of the comment in which the annotation was found
+	 */
+	private final int line;
+
+	/**
+	 * Everything after the name until the end of the line, stripped
+	 */
+	@NotNull
+	private final String argumentsStr;
+
+	public GQLAnnotation(@NotNull GQLDataType node, @NotNull String name, int line, @NotNull String argumentsStr) {
+		this.node = node;
+		this.name = name;
+		this.line = line;
+		this.argumentsStr = argumentsStr;
+	}
+
+	public @NotNull GQLDataType getNode() {
+		return node;
+	}
+
+	public @NotNull String getName() {
+		return name;
+	}
+
+	public int getLine() {
+		return line;
+	}
+
+	/**
+	 * @return the rest of the line after the annotation name, stripped. It may be empty
+	 */
+	public @NotNull String getArgumentsStr() {
+		return argumentsStr;
+	}
+
+	/**
+	 * @return the arguments of the annotation, i.e. {@link #getArgumentsStr()} split by whitespaces
+	 */
+	@NotNull
+	public List<String> getArguments() {
+		if (argumentsStr.isEmpty())
+			return Collections.emptyList();
+		return Arrays.asList(argumentsStr.split("\\s+"));
+	}
+
+	@Override
+	public String toString() {
+		return "@" + name + (argumentsStr.isEmpty() ? "" : " " + argumentsStr);
+	}
+}
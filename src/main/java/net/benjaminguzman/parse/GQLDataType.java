@@ -21,6 +21,8 @@ package net.benjaminguzman.parse;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -61,6 +63,21 @@ public abstract class GQLDataType {
 	@Nullable
 	protected String alphaName;
 
+	/**
+	 * Just a cache for {@link #getDirectives()}
+	 * <p>
+	 * It may be null if {@link #getDirectives()} has not been called yet
+	 */
+	@Nullable
+	protected List<GQLDirectiveUsage> directives;
+
+	/**
+	 * true if this data type is part of an immutable snapshot (see {@link GQL#snapshot()})
+	 * <p>
+	 * Frozen data types reject any modification by throwing {@link UnsupportedOperationException}
+	 */
+	protected boolean frozen;
+
 	/**
 	 * @param name    The identifier (name) for the data type, NOT the keyword to tell specifically
 	 *                which data type it is, i.e. NOT input, enum, scalar...
@@ -95,6 +112,8 @@ public abstract class GQLDataType {
 	}
 
 	public GQLDataType setComment(@Nullable String comment) {
+		checkMutable();
+
 		// this conditional seems strange, but it is correct actually
 		if (comment != null && comment.strip().isEmpty())
 			this.comment = null;
@@ -104,31 +123,152 @@ public abstract class GQLDataType {
 	}
 
 	/**
-	 * Extracts only the alphanumeric part of the name, starting from index 0
+	 * Extracts only the alphanumeric part of the name, starting from index 0 (or 1 if the name starts with '@')
+	 * <p>
+	 * Underscores are considered part of the name too, since they are allowed in GraphQL names
+	 * (e.g. {@code join__Graph})
 	 *
-	 * @return the substring of {@link #getName()} that consists only of alphanumeric characters
+	 * @return the substring of {@link #getName()} that consists only of alphanumeric characters and underscores
 	 */
 	@NotNull
 	public String alphaName() {
 		if (alphaName != null)
 			return alphaName;
 
-		int nameStartIdx = 0;
-		int nameEndIdx = 0;
-		for (; nameEndIdx < name.length() && Character.isLetterOrDigit(name.charAt(nameEndIdx)); ++nameEndIdx) ;
+		// directive names start with @, e.g. @join__field(...)
+		int nameStartIdx = name.startsWith("@") ? 1 : 0;
+		int nameEndIdx = nameStartIdx;
+		for (; nameEndIdx < name.length() && isNameChar(name.charAt(nameEndIdx)); ++nameEndIdx) ;
 		return (alphaName = name.substring(nameStartIdx, nameEndIdx));
 	}
 
+	/**
+	 * @param c the character
+	 * @return true if the character can be part of a GraphQL name
+	 */
+	public static boolean isNameChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+
 	@NotNull
 	public String getName() {
 		return name;
 	}
 
 	public GQLDataType setName(@NotNull String name) {
+		checkMutable();
 		this.name = name;
+		this.alphaName = null;
+		this.directives = null;
 		return this;
 	}
 
+	/**
+	 * Parses the directives applied to this data type, e.g. {@code @key(fields: "id")} in
+	 * <p>
+	 * {@code type Boxer @key(fields: "id") {...}}
+	 * <p>
+	 * The result is cached
+	 *
+	 * @return the directive usages, in the order they were written. The list is unmodifiable
+	 */
+	@NotNull
+	public List<GQLDirectiveUsage> getDirectives() {
+		if (directives != null)
+			return directives;
+
+		String source = directivesSource();
+		return (directives = source == null
+			? Collections.emptyList()
+			: GQLDirectiveUsage.parseAll(source, this));
+	}
+
+	/**
+	 * @return the string in which directives applied to this data type are written, or null if directives
+	 * can't be applied to this data type. By default, it is {@link #name}, since the parser keeps
+	 * everything between the keyword and the opening brace (directives included) as the name
+	 */
+	@Nullable
+	protected String directivesSource() {
+		return name;
+	}
+
+	/**
+	 * @return true if this data type is part of an immutable snapshot and therefore can't be modified
+	 */
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	/**
+	 * Creates a deep copy of this data type and freezes it, i.e. no setter can be called on the copy
+	 * <p>
+	 * Only top-level data types (type, input, enum, scalar, directive, schema) override this method.
+	 * Fields, params and enum values are copied by their parent, so this implementation just throws
+	 *
+	 * @return the frozen copy
+	 * @see GQL#snapshot()
+	 */
+	@NotNull
+	GQLDataType frozenCopy() {
+		return frozenCopy(comment);
+	}
+
+	/**
+	 * Same as {@link #frozenCopy()}, but the copy has the given comment
+	 * <p>
+	 * Data types without children (scalar, directive, schema) and enum values override this method.
+	 * This implementation just throws
+	 *
+	 * @param comment comment for the copy
+	 * @return the frozen copy
+	 */
+	@NotNull
+	GQLDataType frozenCopy(@Nullable String comment) {
+		throw new UnsupportedOperationException(
+			getClass().getSimpleName() + " " + name + " can only be copied along with its parent"
+		);
+	}
+
+	/**
+	 * Applies the view to this frozen data type, i.e. children not included by the view are removed, and
+	 * comments are the ones given by the view
+	 * <p>
+	 * Nothing is copied unless it changes: if neither the comment nor the children change, this same object is
+	 * returned. Otherwise, a frozen copy sharing the unchanged children is returned
+	 *
+	 * @param view the view. It should include this data type
+	 * @return this object or a frozen copy
+	 * @see GQLSnapshot#filter(GQLView)
+	 */
+	@NotNull
+	GQLDataType filtered(@NotNull GQLView view) {
+		String filteredComment = viewComment(view);
+		return Objects.equals(filteredComment, comment) ? this : frozenCopy(filteredComment);
+	}
+
+	/**
+	 * Marks this data type as frozen
+	 * <p>
+	 * {@link #alphaName()} and {@link #getDirectives()} are computed before freezing so the caches are never
+	 * written after the object has been published
+	 */
+	void freeze() {
+		alphaName();
+		getDirectives();
+		frozen = true;
+	}
+
+	/**
+	 * @throws UnsupportedOperationException if this data type is frozen
+	 */
+	protected void checkMutable() {
+		if (frozen)
+			throw new UnsupportedOperationException(
+				getClass().getSimpleName() + " " + name + " is part of an immutable snapshot"
+			);
+	}
+
 	/**
 	 * Helper to construct the string in {@link #toString()}
 	 * <p>
@@ -144,8 +284,16 @@ public abstract class GQLDataType {
 	 * {@code comment} is {@link #comment} and {@code name} is {@link #name}
 	 */
 	protected StringBuilder toStringTemplateHelper() {
+		return toStringTemplateHelper(GQLView.IDENTITY);
+	}
+
+	/**
+	 * Same as {@link #toStringTemplateHelper()}, but the comment is given by the view
+	 */
+	protected StringBuilder toStringTemplateHelper(@NotNull GQLView view) {
 		StringBuilder builder = new StringBuilder(64);
 
+		String comment = viewComment(view);
 		if (comment != null)
 			builder.append(GQL.COMMENT_DELIMITER)
 				.append(comment)
@@ -176,6 +324,29 @@ public abstract class GQLDataType {
 		return name.equals(other.name) && Objects.equals(getKeyword(), other.getKeyword());
 	}
 
+	/**
+	 * Constructs the string representation of the node as seen through the given view. Children hidden by the
+	 * view are not included. The view doesn't decide if this node is included
+	 *
+	 * @param view the view
+	 * @return the string representation
+	 */
+	public String toString(@NotNull GQLView view) {
+		return toString();
+	}
+
+	/**
+	 * @return the comment given by the view. Like {@link #setComment(String)}, blank comments are null
+	 */
+	@Nullable
+	protected String viewComment(@NotNull GQLView view) {
+		if (view == GQLView.IDENTITY)
+			return comment;
+
+		String comment = view.comment(this);
+		return comment == null || comment.strip().isEmpty() ? null : comment;
+	}
+
 	/**
 	 * All deriving classes that return {@code null} for {@link #getKeyword()} MUST override this method
 	 */
@@ -46,11 +46,32 @@ public class GQLDirective extends GQLDataType {
 		return new GQLDirective(str.substring(startIdx, endIdx), comment);
 	}
 
+	/**
+	 * @return null, since this is the definition of a directive, not a data type directives are applied to
+	 */
+	@Override
+	protected @Nullable String directivesSource() {
+		return null;
+	}
+
 	@Override
 	public String toString() {
 		return toStringTemplateHelper().toString();
 	}
 
+	@Override
+	public String toString(@NotNull GQLView view) {
+		return toStringTemplateHelper(view).toString();
+	}
+
+	@Override
+	@NotNull
+	GQLDirective frozenCopy(@Nullable String comment) {
+		GQLDirective copy = new GQLDirective(name, comment);
+		copy.freeze();
+		return copy;
+	}
+
 	@Override
 	public @Nullable GQLKeyword getKeyword() {
 		return GQLKeyword.DIRECTIVE;
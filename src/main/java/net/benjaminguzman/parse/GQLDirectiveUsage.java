@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.parse;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A directive applied to a data type, field or enum value, e.g. {@code @join__field(graph: USERS)}
+ * or {@code @deprecated}
+ * <p>
+ * Not to be confused with {@link GQLDirective}, which is the definition of a directive.
+ * <p>
+ * Usages are parsed from the string in which they were written (the name of a type or the return type of a field).
+ * Instead of copying text, a usage remembers the spans (start and end indices) of its name and arguments inside
+ * that string
+ *
+ * @see GQLDataType#getDirectives()
+ * @see SchemaIndex#getDirectiveUsages(String)
+ */
+public class GQLDirectiveUsage {
+	/**
+	 * The data type, field or enum value the directive is applied to
+	 */
+	@NotNull
+	private final GQLDataType owner;
+
+	/**
+	 * The string this usage was parsed from
+	 */
+	@NotNull
+	private final String source;
+
+	/**
+	 * Name of the directive, without '@'
+	 */
+	@NotNull
+	private final String name;
+
+	/**
+	 * Index of '@' in {@link #source}
+	 */
+	private final int startIdx;
+
+	/**
+	 * Index right after the name, or right after ')' if the directive has arguments
+	 */
+	private final int endIdx;
+
+	@NotNull
+	private final List<Argument> arguments;
+
+	private GQLDirectiveUsage(@NotNull GQLDataType owner, @NotNull String source, @NotNull String name,
+	                          int startIdx, int endIdx, @NotNull List<Argument> arguments) {
+		this.owner = owner;
+		this.source = source;
+		this.name = name;
+		this.startIdx = startIdx;
+		this.endIdx = endIdx;
+		this.arguments = arguments;
+	}
+
+	/**
+	 * Parses all directive usages in the given string
+	 * <p>
+	 * '@' inside string values is ignored. Parsing is lenient: if a string or a parenthesis is not closed,
+	 * it is assumed to be closed at the end of the source string
+	 *
+	 * @param source the string, e.g. {@code String! @join__field(graph: USERS) @deprecated}
+	 * @param owner  data type the directives are applied to
+	 * @return the usages, in the same order they appear. The list is unmodifiable
+	 */
+	@NotNull
+	static List<GQLDirectiveUsage> parseAll(@NotNull String source, @NotNull GQLDataType owner) {
+		List<GQLDirectiveUsage> usages = null;
+		int len = source.length();
+		int i = 0;
+		while (i < len) {
+			char c = source.charAt(i);
+			if (c == '"') { // ignore strings, e.g. default values
+				i = stringEndIdx(source, i);
+				continue;
+			}
+			if (c != '@' || i + 1 == len || !GQLDataType.isNameChar(source.charAt(i + 1))) {
+				++i;
+				continue;
+			}
+
+			int nameEndIdx = i + 1;
+			for (; nameEndIdx < len && GQLDataType.isNameChar(source.charAt(nameEndIdx)); ++nameEndIdx) ;
+			String name = source.substring(i + 1, nameEndIdx);
+
+			List<Argument> arguments = Collections.emptyList();
+			int endIdx = nameEndIdx;
+			int argsStartIdx = GQL.ignoreWhitespaces(source, nameEndIdx);
+			if (argsStartIdx < len && source.charAt(argsStartIdx) == '(') {
+				endIdx = valueEndIdx(source, argsStartIdx);
+				int argsEndIdx = source.charAt(endIdx - 1) == ')' ? endIdx - 1 : endIdx;
+				arguments = parseArguments(source, argsStartIdx + 1, argsEndIdx);
+			}
+
+			if (usages == null)
+				usages = new ArrayList<>();
+			usages.add(new GQLDirectiveUsage(owner, source, name, i, endIdx, arguments));
+			i = endIdx;
+		}
+
+		return usages == null ? Collections.emptyList() : Collections.unmodifiableList(usages);
+	}
+
+	/**
+	 * Parses arguments of the form {@code name: value} separated by commas or whitespaces
+	 *
+	 * @param str      the string containing the arguments
+	 * @param startIdx index right after '('
+	 * @param endIdx   index of ')'
+	 */
+	@NotNull
+	private static List<Argument> parseArguments(@NotNull String str, int startIdx, int endIdx) {
+		List<Argument> arguments = new ArrayList<>();
+		int i = startIdx;
+		while (true) {
+			for (; i < endIdx && (Character.isWhitespace(str.charAt(i)) || str.charAt(i) == ','); ++i) ;
+			if (i >= endIdx)
+				break;
+
+			int nameStartIdx = i;
+			for (; i < endIdx && GQLDataType.isNameChar(str.charAt(i)); ++i) ;
+			String name = str.substring(nameStartIdx, i);
+
+			i = GQL.ignoreWhitespaces(str, i);
+			if (i >= endIdx || str.charAt(i) != ':') { // not an argument, skip it
+				i = Math.max(i, nameStartIdx + 1);
+				continue;
+			}
+
+			int valueStartIdx = GQL.ignoreWhitespaces(str, i + 1);
+			int valueEndIdx = valueEndIdx(str, valueStartIdx);
+			arguments.add(new Argument(name, str, valueStartIdx, Math.min(valueEndIdx, endIdx)));
+			i = valueEndIdx;
+		}
+		return Collections.unmodifiableList(arguments);
+	}
+
+	/**
+	 * Finds the end of the value that starts at the given index
+	 * <p>
+	 * A value is a string, a (nested) list or object, an argument list (in parenthesis) or any other sequence
+	 * of characters until the next whitespace, ',' or closing bracket
+	 *
+	 * @return the index right after the value, or the length of the string if the value is not closed
+	 */
+	private static int valueEndIdx(@NotNull String str, int startIdx) {
+		int len = str.length();
+		char opening = startIdx < len ? str.charAt(startIdx) : '\0';
+		if (opening == '"')
+			return stringEndIdx(str, startIdx);
+
+		if (opening != '(' && opening != '[' && opening != '{') {
+			int i = startIdx;
+			for (;
+			     i < len && !Character.isWhitespace(str.charAt(i)) && ",)]}".indexOf(str.charAt(i)) == -1;
+			     ++i
+			)
+				;
+			return i;
+		}
+
+		int depth = 0;
+		for (int i = startIdx; i < len; ) {
+			char c = str.charAt(i);
+			if (c == '"') {
+				i = stringEndIdx(str, i);
+				continue;
+			}
+			if (c == '(' || c == '[' || c == '{')
+				++depth;
+			else if ((c == ')' || c == ']' || c == '}') && --depth == 0)
+				return i + 1;
+			++i;
+		}
+		return len;
+	}
+
+	/**
+	 * @param startIdx index of the opening quote of a string or block string
+	 * @return the index right after the closing quote(s), or the length of the string if it is not closed
+	 */
+	private static int stringEndIdx(@NotNull String str, int startIdx) {
+		if (str.startsWith(GQL.COMMENT_DELIMITER, startIdx)) {
+			int endIdx = str.indexOf(GQL.COMMENT_DELIMITER, startIdx + 3);
+			return endIdx == -1 ? str.length() : endIdx + 3;
+		}
+
+		for (int i = startIdx + 1; i < str.length(); ++i) {
+			char c = str.charAt(i);
+			if (c == '\\')
+				++i; // skip escaped char
+			else if (c == '"')
+				return i + 1;
+		}
+		return str.length();
+	}
+
+	public @NotNull GQLDataType getOwner() {
+		return owner;
+	}
+
+	/**
+	 * @return name of the directive, without '@'
+	 */
+	public @NotNull String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the string this usage was parsed from
+	 */
+	public @NotNull String getSource() {
+		return source;
+	}
+
+	/**
+	 * @return index of '@' in {@link #getSource()}
+	 */
+	public int getStartIdx() {
+		return startIdx;
+	}
+
+	/**
+	 * @return index right after the last char of this usage in {@link #getSource()}
+	 */
+	public int getEndIdx() {
+		return endIdx;
+	}
+
+	/**
+	 * @return the arguments, in the same order they were written
+	 */
+	public @NotNull List<Argument> getArguments() {
+		return arguments;
+	}
+
+	/**
+	 * @param name name of the argument
+	 * @return the argument with the given name, or null if the usage doesn't have that argument
+	 */
+	@Nullable
+	public Argument getArgument(@NotNull String name) {
+		for (Argument argument : arguments)
+			if (argument.name.equals(name))
+				return argument;
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return source.substring(startIdx, endIdx);
+	}
+
+	/**
+	 * An argument given to a directive, e.g. {@code graph: USERS}
+	 */
+	public static class Argument {
+		@NotNull
+		private final String name;
+
+		@NotNull
+		private final String source;
+
+		private final int valueStartIdx;
+
+		private final int valueEndIdx;
+
+		private Argument(@NotNull String name, @NotNull String source, int valueStartIdx, int valueEndIdx) {
+			this.name = name;
+			this.source = source;
+			this.valueStartIdx = valueStartIdx;
+			this.valueEndIdx = valueEndIdx;
+		}
+
+		public @NotNull String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the value as it was written, e.g. {@code "id"} (quotes included) or {@code USERS}
+		 */
+		@NotNull
+		public String getValue() {
+			return source.substring(valueStartIdx, valueEndIdx);
+		}
+
+		/**
+		 * @return index of the first char of the value in the source string
+		 */
+		public int getValueStartIdx() {
+			return valueStartIdx;
+		}
+
+		/**
+		 * @return index right after the last char of the value in the source string
+		 */
+		public int getValueEndIdx() {
+			return valueEndIdx;
+		}
+
+		@Override
+		public String toString() {
+			return name + ": " + getValue();
+		}
+	}
+}
@@ -22,7 +22,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 public class GQLEnum extends GQLDataType {
@@ -101,21 +103,67 @@ public class GQLEnum extends GQLDataType {
 	}
 
 	public GQLEnum setValues(@NotNull List<EnumValue> values) {
+		checkMutable();
 		this.values = values;
 		return this;
 	}
 
+	@Override
+	@NotNull
+	GQLEnum frozenCopy() {
+		GQLEnum copy = new GQLEnum(name, comment);
+		List<EnumValue> valueCopies = new ArrayList<>(values.size());
+		for (EnumValue value : values)
+			valueCopies.add(value.frozenCopy(value.getComment()));
+
+		copy.values = Collections.unmodifiableList(valueCopies);
+		copy.freeze();
+		return copy;
+	}
+
+	@Override
+	@NotNull
+	GQLDataType filtered(@NotNull GQLView view) {
+		String filteredComment = viewComment(view);
+		boolean changed = !Objects.equals(filteredComment, comment);
+		List<EnumValue> filteredValues = new ArrayList<>(values.size());
+		for (EnumValue value : values) {
+			if (!view.includes(value)) {
+				changed = true;
+				continue;
+			}
+
+			EnumValue filteredValue = (EnumValue) value.filtered(view);
+			changed |= filteredValue != value;
+			filteredValues.add(filteredValue);
+		}
+		if (!changed)
+			return this;
+
+		GQLEnum copy = new GQLEnum(name, filteredComment);
+		copy.values = Collections.unmodifiableList(filteredValues);
+		copy.freeze();
+		return copy;
+	}
+
 	@Override
 	public @Nullable GQLKeyword getKeyword() {
 		return GQLKeyword.ENUM;
 	}
 
 	public String toString(int indentSize, char indentChar) {
-		StringBuilder builder = this.toStringTemplateHelper();
+		return toString(indentSize, indentChar, GQLView.IDENTITY);
+	}
+
+	public String toString(int indentSize, char indentChar, @NotNull GQLView view) {
+		StringBuilder builder = this.toStringTemplateHelper(view);
 		// builder already has """comment""" enum name
 
 		builder.append(" {\n")
-			.append(values.stream().map(EnumValue::toString).collect(Collectors.joining("\n\n")))
+			.append(values.stream()
+				.filter(view::includes)
+				.map(value -> value.toString(view))
+				.collect(Collectors.joining("\n\n")))
 			.append("\n}");
 
 		return builder.toString();
@@ -126,15 +174,25 @@ public class GQLEnum extends GQLDataType {
 		return toString(GQL.DEFAULT_INDENTATION_SIZE, GQL.DEFAULT_INDENTATION_CHAR);
 	}
 
+	@Override
+	public String toString(@NotNull GQLView view) {
+		return toString(GQL.DEFAULT_INDENTATION_SIZE, GQL.DEFAULT_INDENTATION_CHAR, view);
+	}
+
 	public static class EnumValue extends GQLDataType {
 		public EnumValue(@NotNull String name, @Nullable String comment) {
 			super(name, comment);
 		}
 
 		public String toString(int indentSize, char indentChar) {
+			return toString(indentSize, indentChar, GQLView.IDENTITY);
+		}
+
+		public String toString(int indentSize, char indentChar, @NotNull GQLView view) {
 			StringBuilder builder = new StringBuilder();
 			String indent = this.indentationHelper(indentSize, indentChar);
 
+			String comment = viewComment(view);
 			if (comment != null)
 				builder.append(indent).append(GQL.COMMENT_DELIMITER)
 					.append(comment)
@@ -150,6 +208,19 @@ public class GQLEnum extends GQLDataType {
 			return toString(GQL.DEFAULT_INDENTATION_SIZE, GQL.DEFAULT_INDENTATION_CHAR);
 		}
 
+		@Override
+		public String toString(@NotNull GQLView view) {
+			return toString(GQL.DEFAULT_INDENTATION_SIZE, GQL.DEFAULT_INDENTATION_CHAR, view);
+		}
+
+		@Override
+		@NotNull
+		EnumValue frozenCopy(@Nullable String comment) {
+			EnumValue copy = new EnumValue(name, comment);
+			copy.freeze();
+			return copy;
+		}
+
 		@Override
 		public @Nullable GQLKeyword getKeyword() {
 			return null;
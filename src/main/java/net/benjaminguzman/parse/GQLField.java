@@ -22,9 +22,11 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.StringJoiner;
 
 public class GQLField extends GQLDataType {
 	/**
@@ -79,7 +81,9 @@ public class GQLField extends GQLDataType {
 	}
 
 	public GQLField setReturnType(@NotNull String returnType) {
+		checkMutable();
 		this.returnType = returnType;
+		this.directives = null;
 		return this;
 	}
 
@@ -108,9 +112,9 @@ public class GQLField extends GQLDataType {
 			typeClean = typeClean.substring(0, firstSpaceIdx);
 
 		// remove default value
-		int equalIdx = returnType.indexOf('=');
+		int equalIdx = typeClean.indexOf('=');
 		if (equalIdx > -1)
-			typeClean = typeClean.substring(equalIdx);
+			typeClean = typeClean.substring(0, equalIdx);
 
 		return typeClean.replace("!", "") // remove required modifier !
 			.replace("[", "") // remove array modifier [
@@ -129,6 +133,7 @@ public class GQLField extends GQLDataType {
 	 * @param paramsStr parameters for the field. It may be null if there are no params.
 	 */
 	public GQLField setParams(@Nullable String paramsStr) throws InvalidGQLSyntax {
+		checkMutable();
 		if (paramsStr == null)
 			return this;
 		this.paramsStr = paramsStr;
@@ -136,6 +141,36 @@ public class GQLField extends GQLDataType {
 		return this;
 	}
 
+	/**
+	 * Removes the given parameters
+	 * <p>
+	 * The original parameters string is rebuilt from the remaining parameters, so its format may change
+	 *
+	 * @param removed parameters to be removed
+	 */
+	public GQLField removeParams(@NotNull Collection<GQLFieldParam> removed) {
+		checkMutable();
+		List<GQLFieldParam> remaining = new ArrayList<>(params.size());
+		StringJoiner paramsJoiner = new StringJoiner(", ");
+		for (GQLFieldParam param : params) {
+			if (removed.contains(param))
+				continue;
+
+			remaining.add(param);
+			String type = param.getType(false);
+			if (type.endsWith(",")) // separator
+				type = type.substring(0, type.length() - 1);
+			paramsJoiner.add(
+				(param.getComment() == null ? "" : GQL.COMMENT_DELIMITER + param.getComment() + GQL.COMMENT_DELIMITER + " ")
+					+ param.getName() + ": " + type
+			);
+		}
+
+		params = remaining;
+		paramsStr = remaining.isEmpty() ? null : paramsJoiner.toString();
+		return this;
+	}
+
 	/**
 	 * @return true if this field has parameters
 	 */
@@ -143,6 +178,53 @@ public class GQLField extends GQLDataType {
 		return !params.isEmpty();
 	}
 
+	/**
+	 * Creates a frozen deep copy of this field (params included)
+	 *
+	 * @param parentStruct the (frozen) copy of the struct containing this field
+	 * @return the frozen copy
+	 * @see GQL#snapshot()
+	 */
+	@NotNull
+	GQLField frozenCopy(@NotNull GQLStruct parentStruct) {
+		GQLField copy = new GQLField(name, returnType, comment, parentStruct);
+		copy.paramsStr = paramsStr;
+		if (!params.isEmpty()) {
+			List<GQLFieldParam> paramCopies = new ArrayList<>(params.size());
+			for (GQLFieldParam param : params)
+				paramCopies.add(param.frozenCopy(copy));
+			copy.params = Collections.unmodifiableList(paramCopies);
+		}
+		copy.freeze();
+		return copy;
+	}
+
+	/**
+	 * Creates a frozen copy of this frozen field, with a different comment. Parameters are not copied but shared
+	 *
+	 * @param parentStruct the (frozen) struct containing the copy
+	 * @param comment      comment for the copy
+	 * @return the frozen copy
+	 * @see GQLSnapshot#filter(GQLView)
+	 */
+	@NotNull
+	GQLField frozenCopy(@NotNull GQLStruct parentStruct, @Nullable String comment) {
+		GQLField copy = new GQLField(name, returnType, comment, parentStruct);
+		copy.paramsStr = paramsStr;
+		copy.params = params;
+		copy.freeze();
+		return copy;
+	}
+
+	/**
+	 * @return the return type, since directives are written after it, e.g.
+	 * {@code String! @join__field(graph: USERS)}
+	 */
+	@Override
+	protected @Nullable String directivesSource() {
+		return returnType;
+	}
+
 	/**
 	 * @return {@code null} because a graphql field is not identified by any special keyword
 	 */
@@ -152,9 +234,14 @@ public class GQLField extends GQLDataType {
 	}
 
 	public String toString(int indentSize, char indentChar) {
+		return toString(indentSize, indentChar, GQLView.IDENTITY);
+	}
+
+	public String toString(int indentSize, char indentChar, @NotNull GQLView view) {
 		StringBuilder builder = new StringBuilder(64);
 		String indent = indentationHelper(indentSize, indentChar);
 
+		String comment = viewComment(view);
 		if (comment != null)
 			builder.append(indent).append(GQL.COMMENT_DELIMITER)
 				.append(comment) // the comment must have already some indentation
@@ -175,6 +262,11 @@ public class GQLField extends GQLDataType {
 		return toString(GQL.DEFAULT_INDENTATION_SIZE, GQL.DEFAULT_INDENTATION_CHAR);
 	}
 
+	@Override
+	public String toString(@NotNull GQLView view) {
+		return toString(GQL.DEFAULT_INDENTATION_SIZE, GQL.DEFAULT_INDENTATION_CHAR, view);
+	}
+
 	@Override
 	public boolean equals(Object o) {
 		if (this == o) return true;
@@ -257,10 +349,24 @@ public class GQLField extends GQLDataType {
 			return params;
 		}
 
+		/**
+		 * Creates a frozen copy of this parameter
+		 *
+		 * @param parentField the (frozen) copy of the field containing this parameter
+		 * @return the frozen copy
+		 */
+		@NotNull
+		GQLFieldParam frozenCopy(@NotNull GQLField parentField) {
+			GQLFieldParam copy = new GQLFieldParam(name, comment, type, parentField);
+			copy.freeze();
+			return copy;
+		}
+
 		/**
 		 * Get the type of the parameter
 		 *
-		 * @param clean if true, modifiers like required (!), array ([]), default ( = x) are removed
+		 * @param clean if true, modifiers like required (!), array ([]), default ( = x) and separators (,)
+		 *              are removed
 		 * @return the type
 		 */
 		public String getType(boolean clean) {
@@ -272,11 +378,21 @@ public class GQLField extends GQLDataType {
 			// remove default value
 			int equalIdx = type.indexOf('=');
 			if (equalIdx > -1)
-				typeClean = typeClean.substring(equalIdx);
+				typeClean = typeClean.substring(0, equalIdx);
 
 			return typeClean.replace("!", "") // remove required modifier !
 				.replace("[", "") // remove array modifier [
-				.replace("]", ""); // remove array modifier ]
+				.replace("]", "") // remove array modifier ]
+				.replace(",", ""); // remove separator, e.g. in "(id: ID!, name: String)" type is "ID!,"
+		}
+
+		/**
+		 * @return null, since the parser keeps only the type of the parameter, so directives applied to
+		 * parameters are not available
+		 */
+		@Override
+		protected @Nullable String directivesSource() {
+			return null;
 		}
 
 		/**
@@ -68,6 +68,20 @@ public class GQLInput extends GQLStruct {
 		return gqlInput;
 	}
 
+	@Override
+	@NotNull
+	GQLInput emptyCopy(@Nullable String comment) {
+		return new GQLInput(name, comment);
+	}
+
+	@Override
+	@NotNull
+	GQLInput frozenCopy() {
+		GQLInput copy = new GQLInput(name, comment);
+		copy.freezeFrom(this);
+		return copy;
+	}
+
 	@Override
 	public @Nullable GQLKeyword getKeyword() {
 		return GQLKeyword.INPUT;
@@ -56,13 +56,26 @@ public class GQLScalar extends GQLDataType {
 		return new GQLScalar(name, comment);
 	}
 
+	@Override
+	@NotNull
+	GQLScalar frozenCopy(@Nullable String comment) {
+		GQLScalar copy = new GQLScalar(name, comment);
+		copy.freeze();
+		return copy;
+	}
+
 	@Override
 	public @Nullable GQLKeyword getKeyword() {
 		return GQLKeyword.SCALAR;
 	}
 
 	public String toString() {
-		StringBuilder builder = this.toStringTemplateHelper();
+		return toString(GQLView.IDENTITY);
+	}
+
+	@Override
+	public String toString(@NotNull GQLView view) {
+		StringBuilder builder = this.toStringTemplateHelper(view);
 		// builder already has """comment""" scalar name. No more operations are required
 
 		return builder.toString();
@@ -50,8 +50,14 @@ public class GQLSchema extends GQLDataType {
 
 	@Override
 	public String toString() {
+		return toString(GQLView.IDENTITY);
+	}
+
+	@Override
+	public String toString(@NotNull GQLView view) {
 		StringBuilder builder = new StringBuilder(64);
 
+		String comment = viewComment(view);
 		if (comment != null)
 			builder.append(GQL.COMMENT_DELIMITER)
 				.append(comment)
@@ -64,6 +70,14 @@ public class GQLSchema extends GQLDataType {
 		return builder.toString();
 	}
 
+	@Override
+	@NotNull
+	GQLSchema frozenCopy(@Nullable String comment) {
+		GQLSchema copy = new GQLSchema(name, comment);
+		copy.freeze();
+		return copy;
+	}
+
 	@Override
 	public @Nullable GQLKeyword getKeyword() {
 		return GQLKeyword.SCHEMA;
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.parse;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Immutable version of {@link GQL}
+ * <p>
+ * All data types inside a snapshot are frozen (see {@link GQLDataType#isFrozen()}) and every list or map returned
+ * by this class is unmodifiable. Since all the state is stored in final fields and built inside the constructor,
+ * a snapshot is safely published and can be read concurrently by any number of threads without locking
+ *
+ * @see GQL#snapshot()
+ */
+public final class GQLSnapshot extends GQL {
+	@NotNull
+	private final List<GQLDataType> dataTypes;
+
+	/**
+	 * The graph (adjacency list). Unlike {@link GQL#getGraph()} this is built once, when the snapshot is created
+	 */
+	@NotNull
+	private final Map<GQLDataType, List<GQLDataType>> graph;
+
+	@NotNull
+	private final SchemaIndex index;
+
+	/**
+	 * Annotations in the snapshot data types. Null if the original object didn't index them
+	 */
+	@Nullable
+	private final AnnotationIndex annotations;
+
+	@Nullable
+	private final String comments;
+
+	/**
+	 * Creates a snapshot of the given {@link GQL} object
+	 *
+	 * @param gql the object to be frozen
+	 */
+	GQLSnapshot(@NotNull GQL gql) {
+		this(frozenCopies(gql.getDataTypes()), gql.getAnnotations() != null, gql.getComments());
+	}
+
+	/**
+	 * @param dataTypes        frozen data types
+	 * @param indexAnnotations if true, annotations in the data types are indexed
+	 * @param comments         comments indicated with '#'
+	 */
+	private GQLSnapshot(@NotNull List<GQLDataType> dataTypes, boolean indexAnnotations, @Nullable String comments) {
+		this.dataTypes = Collections.unmodifiableList(dataTypes);
+
+		// index and annotations are built in a single traversal
+		SchemaIndex.Builder indexBuilder = new SchemaIndex.Builder();
+		AnnotationIndex annotations = indexAnnotations ? new AnnotationIndex() : null;
+		if (annotations == null)
+			new GQLWalker(indexBuilder).walk(dataTypes);
+		else
+			new GQLWalker(indexBuilder, annotations.indexer()).walk(dataTypes);
+		this.index = indexBuilder.build();
+		this.annotations = annotations;
+
+		Map<GQLDataType, List<GQLDataType>> adjList = buildGraph(dataTypes, index);
+		adjList.replaceAll((vertex, edges) -> Collections.unmodifiableList(edges));
+		this.graph = Collections.unmodifiableMap(adjList);
+
+		this.comments = comments;
+	}
+
+	@NotNull
+	private static List<GQLDataType> frozenCopies(@NotNull List<GQLDataType> dataTypes) {
+		List<GQLDataType> copies = new ArrayList<>(dataTypes.size());
+		for (GQLDataType dataType : dataTypes)
+			copies.add(dataType.frozenCopy());
+		return copies;
+	}
+
+	/**
+	 * Creates a new snapshot with only the nodes included by the view, and the comments given by it.
+	 * This snapshot is not modified
+	 * <p>
+	 * The new snapshot shares nodes with this one: only nodes whose comment changes, and data types whose fields or
+	 * values change, are copied. Everything else (data types, fields, params and enum values) is the same object in
+	 * both snapshots. That way, many variants of a large schema cost memory only for the nodes that actually change
+	 * (plus the index and graph of each variant, which only hold references)
+	 * <p>
+	 * Shared fields still consider the data type of this snapshot as their parent
+	 *
+	 * @param view the view
+	 * @return the new snapshot, or this same object if the view doesn't change anything.
+	 * {@code filter(view).toString()} is the same as {@code toString(view)}
+	 */
+	@NotNull
+	public GQLSnapshot filter(@NotNull GQLView view) {
+		List<GQLDataType> filtered = new ArrayList<>(dataTypes.size());
+		boolean changed = false;
+		for (GQLDataType dataType : dataTypes) {
+			if (!view.includes(dataType)) {
+				changed = true;
+				continue;
+			}
+
+			GQLDataType filteredDataType = dataType.filtered(view);
+			changed |= filteredDataType != dataType;
+			filtered.add(filteredDataType);
+		}
+
+		return changed ? new GQLSnapshot(filtered, annotations != null, comments) : this;
+	}
+
+	/**
+	 * @return the (unmodifiable) graph as an adjacency list. It is never computed again
+	 */
+	@Override
+	public Map<GQLDataType, List<GQLDataType>> getGraph() {
+		return graph;
+	}
+
+	/**
+	 * @return the index. Like the graph, it is built once, when the snapshot is created
+	 */
+	@Override
+	public @NotNull SchemaIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the (unmodifiable) data types stored in this snapshot
+	 */
+	@Override
+	public @NotNull List<GQLDataType> getDataTypes() {
+		return dataTypes;
+	}
+
+	/**
+	 * Snapshots are immutable, this method always throws
+	 *
+	 * @throws UnsupportedOperationException always
+	 */
+	@Override
+	public GQL setDataTypes(@NotNull List<GQLDataType> dataTypes) {
+		throw new UnsupportedOperationException("Data types of a snapshot can't be modified");
+	}
+
+	@Override
+	public @Nullable AnnotationIndex getAnnotations() {
+		return annotations;
+	}
+
+	@Override
+	public @Nullable String getComments() {
+		return comments;
+	}
+
+	/**
+	 * @return this same object, since it is already immutable
+	 */
+	@Override
+	public @NotNull GQLSnapshot snapshot() {
+		return this;
+	}
+}
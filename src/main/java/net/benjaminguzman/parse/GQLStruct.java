@@ -24,6 +24,7 @@ import org.jetbrains.annotations.Nullable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 /**
@@ -126,18 +127,79 @@ public abstract class GQLStruct extends GQLDataType {
 	 *               The list can be empty but that's not recommended
 	 */
 	public GQLStruct setFields(@NotNull List<GQLField> fields) {
+		checkMutable();
 		this.fields = fields;
 		return this;
 	}
 
+	/**
+	 * Makes a frozen copy of each field in {@code original}, stores them in this struct and then
+	 * freezes this struct
+	 *
+	 * @param original struct whose fields will be copied
+	 */
+	void freezeFrom(@NotNull GQLStruct original) {
+		List<GQLField> copies = new ArrayList<>(original.fields.size());
+		for (GQLField field : original.fields)
+			copies.add(field.frozenCopy(this));
+
+		fields = Collections.unmodifiableList(copies);
+		freeze();
+	}
+
+	/**
+	 * @param comment comment for the new struct
+	 * @return a new struct of the same kind (type or input) with the same name, and without fields
+	 */
+	@NotNull
+	abstract GQLStruct emptyCopy(@Nullable String comment);
+
+	@Override
+	@NotNull
+	GQLDataType filtered(@NotNull GQLView view) {
+		String filteredComment = viewComment(view);
+		boolean changed = !Objects.equals(filteredComment, comment);
+		boolean[] included = new boolean[fields.size()];
+		String[] fieldComments = new String[fields.size()];
+		for (int i = 0; i < fields.size(); ++i) {
+			GQLField field = fields.get(i);
+			included[i] = view.includes(field);
+			if (included[i])
+				fieldComments[i] = field.viewComment(view);
+			changed |= !included[i] || !Objects.equals(fieldComments[i], field.getComment());
+		}
+		if (!changed)
+			return this;
+
+		// fields are copied only if their comment changes, otherwise they're shared
+		GQLStruct copy = emptyCopy(filteredComment);
+		List<GQLField> filteredFields = new ArrayList<>(fields.size());
+		for (int i = 0; i < fields.size(); ++i) {
+			GQLField field = fields.get(i);
+			if (!included[i])
+				continue;
+			filteredFields.add(
+				Objects.equals(fieldComments[i], field.getComment()) ? field : field.frozenCopy(copy, fieldComments[i])
+			);
+		}
+		copy.fields = Collections.unmodifiableList(filteredFields);
+		copy.freeze();
+		return copy;
+	}
+
 	public String toString(int indentSize, char indentChar) {
-		StringBuilder builder = this.toStringTemplateHelper();
+		return toString(indentSize, indentChar, GQLView.IDENTITY);
+	}
+
+	public String toString(int indentSize, char indentChar, @NotNull GQLView view) {
+		StringBuilder builder = this.toStringTemplateHelper(view);
 		// builder already has """comment""" input/type name
 
 		builder.append(" {\n");
 
 		String fieldsString = fields.stream()
-			.map(field -> field.toString(indentSize, indentChar))
+			.filter(view::includes)
+			.map(field -> field.toString(indentSize, indentChar, view))
 			.collect(Collectors.joining("\n\n"));
 
 		builder.append(fieldsString).append("\n}");
@@ -149,4 +211,9 @@ public abstract class GQLStruct extends GQLDataType {
 	public String toString() {
 		return toString(GQL.DEFAULT_INDENTATION_SIZE, GQL.DEFAULT_INDENTATION_CHAR);
 	}
+
+	@Override
+	public String toString(@NotNull GQLView view) {
+		return toString(GQL.DEFAULT_INDENTATION_SIZE, GQL.DEFAULT_INDENTATION_CHAR, view);
+	}
 }
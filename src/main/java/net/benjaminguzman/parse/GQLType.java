@@ -67,6 +67,20 @@ public class GQLType extends GQLStruct {
 		return gqlType;
 	}
 
+	@Override
+	@NotNull
+	GQLType emptyCopy(@Nullable String comment) {
+		return new GQLType(name, comment);
+	}
+
+	@Override
+	@NotNull
+	GQLType frozenCopy() {
+		GQLType copy = new GQLType(name, comment);
+		copy.freezeFrom(this);
+		return copy;
+	}
+
 	@Override
 	public @Nullable GQLKeyword getKeyword() {
 		return GQLKeyword.TYPE;
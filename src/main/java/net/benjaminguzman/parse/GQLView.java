@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.parse;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A view of the data types, used to print them without modifying (or copying) them
+ * <p>
+ * A view can hide nodes and replace their comments. For instance, several purged versions of the same
+ * {@link GQL} object can be printed, each one with its own view
+ *
+ * @see GQL#toString(GQLView)
+ */
+public interface GQLView {
+	/**
+	 * View that shows all nodes as they are
+	 */
+	GQLView IDENTITY = new GQLView() {
+	};
+
+	/**
+	 * @param node a data type, field or enum value
+	 * @return true if the node should be printed
+	 */
+	default boolean includes(@NotNull GQLDataType node) {
+		return true;
+	}
+
+	/**
+	 * @param node a data type, field or enum value
+	 * @return the comment to be printed for the node. Null (or blank) if it shouldn't have a comment
+	 */
+	@Nullable
+	default String comment(@NotNull GQLDataType node) {
+		return node.getComment();
+	}
+}
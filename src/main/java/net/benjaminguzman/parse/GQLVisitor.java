@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.parse;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Visitor for the data types of a {@link GQL} object, their fields, field params and enum values
+ * <p>
+ * Visitors are run by a {@link GQLWalker}, which can run several visitors in a single traversal.
+ * All methods have an empty default implementation, so a visitor only overrides what it is interested in.
+ * <p>
+ * Visit methods return whether the node should be kept. The return value is only considered by
+ * {@link GQLWalker#transform(java.util.List)}, which removes every node for which at least one visitor
+ * returned false. Every visitor visits every node, even nodes another visitor decided to remove
+ */
+public interface GQLVisitor {
+	/**
+	 * Called for each top-level data type that is not a {@link GQLStruct} nor a {@link GQLEnum}
+	 * (i.e. scalar, directive, schema). {@link #visitStruct(GQLStruct)} and {@link #visitEnum(GQLEnum)}
+	 * call this method by default
+	 *
+	 * @param dataType the data type
+	 * @return true if the data type should be kept
+	 */
+	default boolean visitDataType(@NotNull GQLDataType dataType) {
+		return true;
+	}
+
+	/**
+	 * Called for each type or input, before its fields are visited
+	 *
+	 * @param struct the type or input
+	 * @return true if the struct should be kept
+	 */
+	default boolean visitStruct(@NotNull GQLStruct struct) {
+		return visitDataType(struct);
+	}
+
+	/**
+	 * Called for each enum, before its values are visited
+	 *
+	 * @param gqlEnum the enum
+	 * @return true if the enum should be kept
+	 */
+	default boolean visitEnum(@NotNull GQLEnum gqlEnum) {
+		return visitDataType(gqlEnum);
+	}
+
+	/**
+	 * Called for each field of a type or input, before its params are visited
+	 *
+	 * @param field the field
+	 * @return true if the field should be kept
+	 */
+	default boolean visitField(@NotNull GQLField field) {
+		return true;
+	}
+
+	/**
+	 * Called for each param of a field
+	 * <p>
+	 * Params can't be removed by a transformation
+	 *
+	 * @param param the param
+	 */
+	default void visitFieldParam(@NotNull GQLField.GQLFieldParam param) {
+	}
+
+	/**
+	 * Called for each value of an enum
+	 *
+	 * @param value the enum value
+	 * @return true if the value should be kept
+	 */
+	default boolean visitEnumValue(@NotNull GQLEnum.EnumValue value) {
+		return true;
+	}
+
+	/**
+	 * Called after the data type and all its children have been visited
+	 *
+	 * @param dataType the data type
+	 */
+	default void leaveDataType(@NotNull GQLDataType dataType) {
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.parse;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Traverses data types and calls one or more {@link GQLVisitor}s on each node
+ * <p>
+ * All visitors are fused in a single traversal, i.e. each node is touched once and every visitor is called on it
+ * (in the order visitors were given) before moving to the next node. Nodes are visited depth-first,
+ * in the same order they appear in the schema
+ * <p>
+ * Data types can also be walked in parallel, one task per data type. In that case visitors must be thread-safe.
+ * Nodes belonging to the same data type are still visited sequentially and in order
+ */
+public class GQLWalker {
+	@NotNull
+	private final GQLVisitor[] visitors;
+
+	/**
+	 * @param visitors visitors that will be called on each node
+	 */
+	public GQLWalker(@NotNull GQLVisitor... visitors) {
+		this.visitors = visitors;
+	}
+
+	/**
+	 * Visits the given data types and their children. Nothing is removed
+	 *
+	 * @param dataTypes the data types
+	 */
+	public void walk(@NotNull List<GQLDataType> dataTypes) {
+		for (GQLDataType dataType : dataTypes)
+			walkDataType(dataType, false);
+	}
+
+	/**
+	 * Same as {@link #walk(List)}, but data types are visited in parallel
+	 *
+	 * @param dataTypes the data types
+	 */
+	public void walkParallel(@NotNull List<GQLDataType> dataTypes) {
+		dataTypes.parallelStream().forEach(dataType -> walkDataType(dataType, false));
+	}
+
+	/**
+	 * Visits the given data types and their children, and removes every node for which at least one visitor
+	 * returned false
+	 * <p>
+	 * Fields and enum values are removed in place (fields of frozen data types can't be removed).
+	 * Removed data types are not removed from the given list; instead, a new list with the data types
+	 * that were kept is returned
+	 *
+	 * @param dataTypes the data types
+	 * @return the data types that were kept, in the same order
+	 */
+	@NotNull
+	public List<GQLDataType> transform(@NotNull List<GQLDataType> dataTypes) {
+		List<GQLDataType> kept = new ArrayList<>(dataTypes.size());
+		for (GQLDataType dataType : dataTypes)
+			if (walkDataType(dataType, true))
+				kept.add(dataType);
+		return kept;
+	}
+
+	/**
+	 * Same as {@link #transform(List)}, but data types are visited (and transformed) in parallel
+	 *
+	 * @param dataTypes the data types
+	 * @return the data types that were kept, in the same order
+	 */
+	@NotNull
+	public List<GQLDataType> transformParallel(@NotNull List<GQLDataType> dataTypes) {
+		boolean[] keep = new boolean[dataTypes.size()];
+		IntStream.range(0, keep.length)
+			.parallel()
+			.forEach(i -> keep[i] = walkDataType(dataTypes.get(i), true));
+
+		List<GQLDataType> kept = new ArrayList<>(dataTypes.size());
+		for (int i = 0; i < keep.length; ++i)
+			if (keep[i])
+				kept.add(dataTypes.get(i));
+		return kept;
+	}
+
+	/**
+	 * Visits a single data type and its children
+	 *
+	 * @param dataType the data type
+	 * @param remove   if true, children for which some visitor returned false are removed
+	 * @return true if all visitors returned true for the data type
+	 */
+	private boolean walkDataType(@NotNull GQLDataType dataType, boolean remove) {
+		boolean keep = true;
+		if (dataType instanceof GQLStruct) {
+			GQLStruct struct = (GQLStruct) dataType;
+			for (GQLVisitor visitor : visitors)
+				keep &= visitor.visitStruct(struct);
+
+			List<GQLField> fields = struct.getFields();
+			boolean[] keepFields = new boolean[fields.size()];
+			for (int i = 0; i < keepFields.length; ++i)
+				keepFields[i] = walkField(fields.get(i));
+			if (remove)
+				removeIfNotKept(fields, keepFields);
+		} else if (dataType instanceof GQLEnum) {
+			GQLEnum gqlEnum = (GQLEnum) dataType;
+			for (GQLVisitor visitor : visitors)
+				keep &= visitor.visitEnum(gqlEnum);
+
+			List<GQLEnum.EnumValue> values = gqlEnum.getValues();
+			boolean[] keepValues = new boolean[values.size()];
+			for (int i = 0; i < keepValues.length; ++i) {
+				keepValues[i] = true;
+				for (GQLVisitor visitor : visitors)
+					keepValues[i] &= visitor.visitEnumValue(values.get(i));
+			}
+			if (remove)
+				removeIfNotKept(values, keepValues);
+		} else
+			for (GQLVisitor visitor : visitors)
+				keep &= visitor.visitDataType(dataType);
+
+		for (GQLVisitor visitor : visitors)
+			visitor.leaveDataType(dataType);
+
+		return keep;
+	}
+
+	/**
+	 * Visits a field and its params
+	 *
+	 * @param field the field
+	 * @return true if all visitors returned true for the field
+	 */
+	private boolean walkField(@NotNull GQLField field) {
+		boolean keep = true;
+		for (GQLVisitor visitor : visitors)
+			keep &= visitor.visitField(field);
+
+		for (GQLField.GQLFieldParam param : field.getParams())
+			for (GQLVisitor visitor : visitors)
+				visitor.visitFieldParam(param);
+
+		return keep;
+	}
+
+	/**
+	 * Removes the elements at the indices where keep is false
+	 *
+	 * @param list the list to modify
+	 * @param keep one flag per element of the list
+	 */
+	private static <T> void removeIfNotKept(@NotNull List<T> list, boolean[] keep) {
+		Iterator<T> it = list.iterator();
+		for (boolean k : keep) {
+			it.next();
+			if (!k)
+				it.remove();
+		}
+	}
+}
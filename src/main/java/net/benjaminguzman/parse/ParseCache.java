@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.parse;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of parsed files, so a file read by several commands in the same process (e.g. by the jobs of a batch)
+ * is parsed only once
+ * <p>
+ * Files are parsed into {@link GQLSnapshot}s, which can be shared by any number of threads. An entry is reused only
+ * while the size and modification time of the file don't change, so files written by a command are parsed again
+ * when another command reads them. If several threads request the same file at the same time, it is parsed once
+ * <p>
+ * Memory can be bounded by the total size of the cached files. When the bound is exceeded, the least recently used
+ * files are evicted
+ * <p>
+ * This class is thread-safe
+ */
+public class ParseCache {
+	@NotNull
+	private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+	@NotNull
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+	/**
+	 * Clock used to know which entries were used least recently
+	 */
+	@NotNull
+	private final AtomicLong clock = new AtomicLong();
+
+	/**
+	 * Maximum total size (in bytes) of the cached files
+	 */
+	private final long maxBytes;
+
+	/**
+	 * Total size of the cached files. Guarded by {@code this}
+	 */
+	private long bytes;
+
+	/**
+	 * Creates a cache without a bound
+	 */
+	public ParseCache() {
+		this(Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param maxBytes maximum total size (in bytes) of the cached files. The most recently parsed file is kept even if
+	 *                 it is bigger
+	 */
+	public ParseCache(long maxBytes) {
+		if (maxBytes < 1)
+			throw new IllegalArgumentException("maxBytes should be positive");
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Gets the parsed file, parsing it if it isn't cached or it has been modified
+	 *
+	 * @param file             the file
+	 * @param indexAnnotations if true, annotations in comments are indexed. See {@link GQL#from(String, boolean)}
+	 * @return the parsed file
+	 * @throws IOException      if there was an error when reading the file
+	 * @throws InvalidGQLSyntax if the file has invalid graphql syntax
+	 */
+	@NotNull
+	public GQLSnapshot get(@NotNull Path file, boolean indexAnnotations) throws IOException, InvalidGQLSyntax {
+		Path absFile = file.toAbsolutePath().normalize();
+		BasicFileAttributes attrs = Files.readAttributes(absFile, BasicFileAttributes.class);
+		Key key = new Key(absFile, indexAnnotations);
+		while (true) {
+			Entry entry = entries.get(key);
+			if (entry != null && entry.size == attrs.size() && entry.modified.equals(attrs.lastModifiedTime())) {
+				hits.incrementAndGet();
+				entry.lastUsed = clock.incrementAndGet();
+				return entry.join();
+			}
+
+			Entry newEntry = new Entry(attrs.size(), attrs.lastModifiedTime());
+			newEntry.lastUsed = clock.incrementAndGet();
+			boolean added = entry == null
+				? entries.putIfAbsent(key, newEntry) == null
+				: entries.replace(key, entry, newEntry);
+			if (!added)
+				continue; // another thread is parsing it
+			if (entry != null)
+				removed(entry);
+
+			misses.incrementAndGet();
+			try {
+				GQLSnapshot snapshot = GQL.from(Files.readString(absFile), indexAnnotations).snapshot();
+				newEntry.future.complete(snapshot);
+				added(key, newEntry);
+				return snapshot;
+			} catch (IOException | InvalidGQLSyntax | RuntimeException e) {
+				entries.remove(key, newEntry);
+				newEntry.future.completeExceptionally(e);
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Accounts the size of a parsed file and evicts the least recently used files if the cache is too big
+	 *
+	 * @param key   key of the entry
+	 * @param entry the entry, already parsed
+	 */
+	private synchronized void added(@NotNull Key key, @NotNull Entry entry) {
+		if (entries.get(key) != entry)
+			return; // it was replaced while being parsed
+
+		entry.counted = true;
+		bytes += entry.size;
+		while (bytes > maxBytes) {
+			Map.Entry<Key, Entry> lru = null;
+			for (Map.Entry<Key, Entry> e : entries.entrySet())
+				if (e.getValue() != entry && e.getValue().counted
+					&& (lru == null || e.getValue().lastUsed < lru.getValue().lastUsed))
+					lru = e;
+
+			if (lru == null)
+				return;
+			if (entries.remove(lru.getKey(), lru.getValue()))
+				removed(lru.getValue());
+		}
+	}
+
+	/**
+	 * Stops accounting the size of an entry that is no longer cached
+	 *
+	 * @param entry the entry
+	 */
+	private synchronized void removed(@NotNull Entry entry) {
+		if (entry.counted) {
+			entry.counted = false;
+			bytes -= entry.size;
+		}
+	}
+
+	/**
+	 * @return number of cached files
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return number of times a parsed file was reused
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return number of times a file was parsed
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	private static final class Entry {
+		private final long size;
+
+		@NotNull
+		private final FileTime modified;
+
+		@NotNull
+		private final CompletableFuture<GQLSnapshot> future = new CompletableFuture<>();
+
+		/**
+		 * Value of the cache clock when this entry was last used
+		 */
+		private volatile long lastUsed;
+
+		/**
+		 * Whether the size of the file is accounted in the cache size. Guarded by the cache
+		 */
+		private boolean counted;
+
+		private Entry(long size, @NotNull FileTime modified) {
+			this.size = size;
+			this.modified = modified;
+		}
+
+		@NotNull
+		private GQLSnapshot join() throws IOException, InvalidGQLSyntax {
+			try {
+				return future.join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				if (e.getCause() instanceof InvalidGQLSyntax)
+					throw (InvalidGQLSyntax) e.getCause();
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				throw e;
+			}
+		}
+	}
+
+	private static final class Key {
+		@NotNull
+		private final Path file;
+
+		private final boolean indexAnnotations;
+
+		private Key(@NotNull Path file, boolean indexAnnotations) {
+			this.file = file;
+			this.indexAnnotations = indexAnnotations;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Key key = (Key) o;
+			return indexAnnotations == key.indexAnnotations && file.equals(key.file);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(file, indexAnnotations);
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.parse;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Index to look up data types, fields and field parameters by their name in constant time
+ * <p>
+ * Names are compared using {@link GQLDataType#alphaName()}, so directives or modifiers attached to a name
+ * (e.g. {@code type Admin @join__owner(graph: USERS)}) don't need to be given
+ * <p>
+ * The index reflects the data types at the moment it was built. If data types (or their fields) are modified
+ * later, the index should be built again. Once built, the index is never modified, therefore an index built
+ * from a {@link GQLSnapshot} can be read concurrently
+ *
+ * @see GQL#getIndex()
+ */
+public class SchemaIndex {
+	/**
+	 * Data types by name
+	 * <p>
+	 * If two data types have the same name, the last one wins
+	 */
+	@NotNull
+	private final Map<String, GQLDataType> types;
+
+	/**
+	 * Fields (and their params) by struct name and field name
+	 */
+	@NotNull
+	private final Map<String, Map<String, FieldEntry>> fields;
+
+	/**
+	 * Data types grouped by keyword
+	 */
+	@NotNull
+	private final Map<GQLKeyword, List<GQLDataType>> typesByKeyword;
+
+	/**
+	 * Directive usages by directive name (without '@')
+	 */
+	@NotNull
+	private final Map<String, List<GQLDirectiveUsage>> directiveUsages;
+
+	/**
+	 * Builds the index for the given data types
+	 *
+	 * @param dataTypes data types to be indexed
+	 */
+	public SchemaIndex(@NotNull List<GQLDataType> dataTypes) {
+		this(build(dataTypes));
+	}
+
+	private SchemaIndex(@NotNull Builder builder) {
+		builder.typesByKeyword.replaceAll((keyword, list) -> Collections.unmodifiableList(list));
+		builder.directiveUsages.replaceAll((name, list) -> Collections.unmodifiableList(list));
+
+		this.types = Collections.unmodifiableMap(builder.types);
+		this.fields = builder.fields;
+		this.typesByKeyword = Collections.unmodifiableMap(builder.typesByKeyword);
+		this.directiveUsages = builder.directiveUsages;
+	}
+
+	@NotNull
+	private static Builder build(@NotNull List<GQLDataType> dataTypes) {
+		Builder builder = new Builder();
+		new GQLWalker(builder).walk(dataTypes);
+		return builder;
+	}
+
+	/**
+	 * @param name name of the data type
+	 * @return the data type with the given name, or null if there is no such data type
+	 */
+	@Nullable
+	public GQLDataType getType(@NotNull String name) {
+		return types.get(name);
+	}
+
+	/**
+	 * @param typeName  name of the type or input containing the field
+	 * @param fieldName name of the field
+	 * @return the field, or null if there is no such field
+	 */
+	@Nullable
+	public GQLField getField(@NotNull String typeName, @NotNull String fieldName) {
+		FieldEntry entry = fieldEntry(typeName, fieldName);
+		return entry == null ? null : entry.field;
+	}
+
+	/**
+	 * @param typeName  name of the type or input containing the field
+	 * @param fieldName name of the field containing the parameter
+	 * @param paramName name of the parameter (argument)
+	 * @return the parameter, or null if there is no such parameter
+	 */
+	@Nullable
+	public GQLField.GQLFieldParam getParam(@NotNull String typeName, @NotNull String fieldName,
+	                                       @NotNull String paramName) {
+		FieldEntry entry = fieldEntry(typeName, fieldName);
+		return entry == null ? null : entry.params.get(paramName);
+	}
+
+	/**
+	 * @param keyword the keyword
+	 * @return an unmodifiable list with all data types with the given keyword, in the same order they were given
+	 */
+	@NotNull
+	public List<GQLDataType> getTypes(@NotNull GQLKeyword keyword) {
+		return typesByKeyword.getOrDefault(keyword, Collections.emptyList());
+	}
+
+	/**
+	 * Finds all the places where a directive is used, e.g. {@code getDirectiveUsages("key")} returns the
+	 * {@code @key} usages (entities), and {@code getDirectiveUsages("deprecated")} returns the usages
+	 * on deprecated fields and enum values. See {@link GQLDirectiveUsage#getOwner()}
+	 *
+	 * @param name name of the directive, without '@'
+	 * @return the usages of the directive, in the same order they were written
+	 */
+	@NotNull
+	public List<GQLDirectiveUsage> getDirectiveUsages(@NotNull String name) {
+		return directiveUsages.getOrDefault(name, Collections.emptyList());
+	}
+
+	/**
+	 * @return names (without '@') of all the directives used at least once
+	 */
+	@NotNull
+	public Set<String> getUsedDirectives() {
+		return Collections.unmodifiableSet(directiveUsages.keySet());
+	}
+
+	/**
+	 * @return an unmodifiable map with all data types indexed by name
+	 */
+	@NotNull
+	public Map<String, GQLDataType> getTypes() {
+		return types;
+	}
+
+	@Nullable
+	private FieldEntry fieldEntry(@NotNull String typeName, @NotNull String fieldName) {
+		Map<String, FieldEntry> fieldsByName = fields.get(typeName);
+		return fieldsByName == null ? null : fieldsByName.get(fieldName);
+	}
+
+	/**
+	 * Visitor that collects the nodes to be indexed. It can be fused with other visitors in a single traversal,
+	 * but it is not thread-safe, so it shouldn't be used with {@link GQLWalker#walkParallel(List)}
+	 */
+	static final class Builder implements GQLVisitor {
+		@NotNull
+		private final Map<String, GQLDataType> types = new HashMap<>();
+
+		@NotNull
+		private final Map<String, Map<String, FieldEntry>> fields = new HashMap<>();
+
+		@NotNull
+		private final Map<GQLKeyword, List<GQLDataType>> typesByKeyword = new EnumMap<>(GQLKeyword.class);
+
+		@NotNull
+		private final Map<String, List<GQLDirectiveUsage>> directiveUsages = new HashMap<>();
+
+		/**
+		 * Fields of the struct being visited
+		 */
+		private Map<String, FieldEntry> structFields;
+
+		@Override
+		public boolean visitDataType(@NotNull GQLDataType dataType) {
+			types.put(dataType.alphaName(), dataType);
+			if (dataType.getKeyword() != null)
+				typesByKeyword.computeIfAbsent(dataType.getKeyword(), k -> new ArrayList<>()).add(dataType);
+			addDirectiveUsages(dataType);
+			return true;
+		}
+
+		@Override
+		public boolean visitStruct(@NotNull GQLStruct struct) {
+			visitDataType(struct);
+			structFields = new HashMap<>(struct.getFields().size() * 2);
+			fields.put(struct.alphaName(), structFields);
+			return true;
+		}
+
+		@Override
+		public boolean visitField(@NotNull GQLField field) {
+			structFields.put(field.alphaName(), new FieldEntry(field));
+			addDirectiveUsages(field);
+			return true;
+		}
+
+		@Override
+		public boolean visitEnumValue(@NotNull GQLEnum.EnumValue value) {
+			addDirectiveUsages(value);
+			return true;
+		}
+
+		private void addDirectiveUsages(@NotNull GQLDataType node) {
+			for (GQLDirectiveUsage usage : node.getDirectives())
+				directiveUsages.computeIfAbsent(usage.getName(), k -> new ArrayList<>()).add(usage);
+		}
+
+		/**
+		 * @return the index with all the nodes visited so far. The builder shouldn't be used afterwards
+		 */
+		@NotNull
+		SchemaIndex build() {
+			return new SchemaIndex(this);
+		}
+	}
+
+	/**
+	 * A field and its parameters indexed by name
+	 */
+	private static final class FieldEntry {
+		@NotNull
+		private final GQLField field;
+
+		@NotNull
+		private final Map<String, GQLField.GQLFieldParam> params;
+
+		private FieldEntry(@NotNull GQLField field) {
+			this.field = field;
+			if (!field.hasParams()) {
+				this.params = Collections.emptyMap();
+				return;
+			}
+
+			Map<String, GQLField.GQLFieldParam> params = new HashMap<>(field.getParams().size() * 2);
+			for (GQLField.GQLFieldParam param : field.getParams())
+				params.put(param.alphaName(), param);
+			this.params = params;
+		}
+	}
+}
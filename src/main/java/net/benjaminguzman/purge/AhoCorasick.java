@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Aho–Corasick automaton to find all occurrences of several patterns in a single pass over a text
+ * <p>
+ * The automaton is immutable once built, so it can be shared between threads
+ */
+class AhoCorasick {
+	/**
+	 * Consumer of matches
+	 */
+	@FunctionalInterface
+	interface MatchConsumer {
+		/**
+		 * @param pattern  index of the pattern that matched (as given in the constructor)
+		 * @param startIdx index in the text where the match starts (inclusive)
+		 * @param endIdx   index in the text where the match ends (exclusive)
+		 */
+		void accept(int pattern, int startIdx, int endIdx);
+	}
+
+	/**
+	 * Transition characters of each state, sorted
+	 */
+	@NotNull
+	private final char[][] edgeChars;
+
+	/**
+	 * Target state of each transition, in the same order as {@link #edgeChars}
+	 */
+	@NotNull
+	private final int[][] edgeTargets;
+
+	/**
+	 * Failure link of each state, i.e. the state for the longest proper suffix that is also in the trie
+	 */
+	@NotNull
+	private final int[] fail;
+
+	/**
+	 * Index of the pattern ending at each state, or -1
+	 */
+	@NotNull
+	private final int[] output;
+
+	/**
+	 * Nearest state (following failure links) that ends a pattern, or -1
+	 */
+	@NotNull
+	private final int[] dictLink;
+
+	/**
+	 * Length of each pattern
+	 */
+	@NotNull
+	private final int[] patternLengths;
+
+	/**
+	 * Builds the automaton
+	 * <p>
+	 * Empty patterns are never reported. If the same pattern is given more than once, only the last index is
+	 * reported
+	 *
+	 * @param patterns the patterns to search
+	 */
+	AhoCorasick(@NotNull List<String> patterns) {
+		// build the trie
+		List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+		List<Integer> outputs = new ArrayList<>();
+		trie.add(new TreeMap<>());
+		outputs.add(-1);
+		patternLengths = new int[patterns.size()];
+		for (int p = 0; p < patterns.size(); ++p) {
+			String pattern = patterns.get(p);
+			patternLengths[p] = pattern.length();
+			if (pattern.isEmpty())
+				continue;
+
+			int state = 0;
+			for (int i = 0; i < pattern.length(); ++i) {
+				Integer next = trie.get(state).get(pattern.charAt(i));
+				if (next == null) {
+					next = trie.size();
+					trie.add(new TreeMap<>());
+					outputs.add(-1);
+					trie.get(state).put(pattern.charAt(i), next);
+				}
+				state = next;
+			}
+			outputs.set(state, p);
+		}
+
+		int nStates = trie.size();
+		edgeChars = new char[nStates][];
+		edgeTargets = new int[nStates][];
+		output = new int[nStates];
+		for (int s = 0; s < nStates; ++s) {
+			TreeMap<Character, Integer> edges = trie.get(s);
+			edgeChars[s] = new char[edges.size()];
+			edgeTargets[s] = new int[edges.size()];
+			int i = 0;
+			for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+				edgeChars[s][i] = edge.getKey();
+				edgeTargets[s][i++] = edge.getValue();
+			}
+			output[s] = outputs.get(s);
+		}
+
+		// compute failure and dictionary links (BFS, so shallower states are ready first)
+		fail = new int[nStates];
+		dictLink = new int[nStates];
+		dictLink[0] = -1;
+		Deque<Integer> queue = new ArrayDeque<>();
+		for (int child : edgeTargets[0]) {
+			fail[child] = 0;
+			dictLink[child] = -1;
+			queue.add(child);
+		}
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			for (int i = 0; i < edgeChars[state].length; ++i) {
+				char c = edgeChars[state][i];
+				int child = edgeTargets[state][i];
+
+				int f = fail[state];
+				while (f != 0 && transition(f, c) == -1)
+					f = fail[f];
+				int next = transition(f, c);
+				fail[child] = next == -1 ? 0 : next;
+				dictLink[child] = output[fail[child]] != -1 ? fail[child] : dictLink[fail[child]];
+				queue.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Reports every occurrence (overlapping ones included) of every pattern in the text, ordered by end index
+	 *
+	 * @param text     the text
+	 * @param consumer consumer of matches
+	 */
+	void scan(@NotNull CharSequence text, @NotNull MatchConsumer consumer) {
+		int state = 0;
+		for (int i = 0, len = text.length(); i < len; ++i) {
+			char c = text.charAt(i);
+			int next;
+			while ((next = transition(state, c)) == -1 && state != 0)
+				state = fail[state];
+			state = next == -1 ? 0 : next;
+
+			for (int s = output[state] != -1 ? state : dictLink[state]; s != -1; s = dictLink[s])
+				consumer.accept(output[s], i + 1 - patternLengths[output[s]], i + 1);
+		}
+	}
+
+	/**
+	 * Checks if some pattern occurs in the text. Unlike {@link #scan(CharSequence, MatchConsumer)}, it stops at the
+	 * first occurrence
+	 *
+	 * @param text the text
+	 * @return true if any pattern occurs in the text
+	 */
+	boolean containsAny(@NotNull CharSequence text) {
+		int state = 0;
+		for (int i = 0, len = text.length(); i < len; ++i) {
+			char c = text.charAt(i);
+			int next;
+			while ((next = transition(state, c)) == -1 && state != 0)
+				state = fail[state];
+			state = next == -1 ? 0 : next;
+
+			if (output[state] != -1 || dictLink[state] != -1)
+				return true;
+		}
+		return false;
+	}
+
+	private int transition(int state, char c) {
+		int idx = Arrays.binarySearch(edgeChars[state], c);
+		return idx < 0 ? -1 : edgeTargets[state][idx];
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import net.benjaminguzman.parse.GQLDataType;
+import net.benjaminguzman.parse.GQLField;
+import net.benjaminguzman.parse.GQLStruct;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Removes references to data types that were purged, so the purged schema is still valid
+ * <p>
+ * Fields returning a removed data type are removed, and so are arguments whose type was removed.
+ * Types (and inputs) left without fields as a result are removed too, and references to them are removed
+ * in the same way.
+ * <p>
+ * Instead of repeatedly scanning the whole schema until nothing changes, a reverse index of references (which
+ * fields and arguments reference each data type, resolved by name like {@link net.benjaminguzman.parse.GQL#getGraph()}
+ * does) is built once, and a worklist of removed data types is processed. Each reference is visited at most once,
+ * so the cost is linear in the number of nodes and references
+ */
+class Cascade {
+	/**
+	 * Description of each removal, in the same order they were done
+	 */
+	@NotNull
+	private final List<String> report = new ArrayList<>();
+
+	/**
+	 * Removes the dangling references
+	 *
+	 * @param dataTypes all data types, as they were before purging
+	 * @param kept      data types kept by the purge, in the same order. Fields and arguments are removed from them
+	 * @param forceKept data types that are not removed even if all their fields are removed, e.g. Query
+	 * @return kept data types after removing the ones left without fields
+	 */
+	@NotNull
+	List<GQLDataType> apply(@NotNull List<GQLDataType> dataTypes, @NotNull List<GQLDataType> kept,
+	                        @NotNull Collection<GQLDataType> forceKept) {
+		// reverse index: data type name -> fields and arguments referencing it
+		Map<String, List<Reference>> references = new HashMap<>();
+		Map<GQLStruct, Integer> remainingFields = new IdentityHashMap<>();
+		Set<String> keptNames = new HashSet<>();
+		for (GQLDataType dataType : kept) {
+			keptNames.add(dataType.alphaName());
+			if (!(dataType instanceof GQLStruct))
+				continue;
+
+			GQLStruct struct = (GQLStruct) dataType;
+			remainingFields.put(struct, struct.getFields().size());
+			for (GQLField field : struct.getFields()) {
+				references.computeIfAbsent(field.getReturnType(true), k -> new ArrayList<>())
+					.add(new Reference(struct, field, null));
+				for (GQLField.GQLFieldParam param : field.getParams())
+					references.computeIfAbsent(param.getType(true), k -> new ArrayList<>())
+						.add(new Reference(struct, field, param));
+			}
+		}
+
+		// worklist of names of removed data types
+		Deque<String> removedNames = new ArrayDeque<>();
+		for (GQLDataType dataType : dataTypes)
+			if (!keptNames.contains(dataType.alphaName()) && references.containsKey(dataType.alphaName()))
+				removedNames.add(dataType.alphaName());
+
+		Set<GQLField> removedFields = Collections.newSetFromMap(new IdentityHashMap<>());
+		Map<GQLField, List<GQLField.GQLFieldParam>> removedParams = new IdentityHashMap<>();
+		Set<GQLStruct> removedStructs = Collections.newSetFromMap(new IdentityHashMap<>());
+		while (!removedNames.isEmpty()) {
+			String removedName = removedNames.poll();
+			for (Reference reference : references.getOrDefault(removedName, Collections.emptyList())) {
+				if (removedStructs.contains(reference.struct) || removedFields.contains(reference.field))
+					continue;
+
+				if (reference.param != null) {
+					removedParams.computeIfAbsent(reference.field, k -> new ArrayList<>()).add(reference.param);
+					report.add("Removed argument " + reference.struct.alphaName() + "." + reference.field.getName()
+						+ "(" + reference.param.getName() + "), its type " + removedName + " was removed");
+					continue;
+				}
+
+				removedFields.add(reference.field);
+				report.add("Removed field " + reference.struct.alphaName() + "." + reference.field.getName()
+					+ ", its type " + removedName + " was removed");
+
+				int remaining = remainingFields.merge(reference.struct, -1, Integer::sum);
+				if (remaining == 0 && !forceKept.contains(reference.struct)) {
+					removedStructs.add(reference.struct);
+					report.add("Removed " + reference.struct.alphaName() + ", all its fields were removed");
+					removedNames.add(reference.struct.alphaName());
+				}
+			}
+		}
+
+		// apply removals
+		for (Map.Entry<GQLField, List<GQLField.GQLFieldParam>> entry : removedParams.entrySet())
+			if (!removedFields.contains(entry.getKey()))
+				entry.getKey().removeParams(entry.getValue());
+		for (GQLStruct struct : remainingFields.keySet())
+			if (!removedStructs.contains(struct))
+				struct.getFields().removeIf(removedFields::contains);
+
+		List<GQLDataType> cascaded = new ArrayList<>(kept.size() - removedStructs.size());
+		for (GQLDataType dataType : kept)
+			if (!removedStructs.contains(dataType))
+				cascaded.add(dataType);
+		return cascaded;
+	}
+
+	/**
+	 * @return description of each removal, in the same order they were done
+	 */
+	@NotNull
+	List<String> getReport() {
+		return report;
+	}
+
+	/**
+	 * A field, or an argument of a field, referencing a data type
+	 */
+	private static final class Reference {
+		@NotNull
+		private final GQLStruct struct;
+
+		@NotNull
+		private final GQLField field;
+
+		/**
+		 * The argument, or null if the field references the data type by its return type
+		 */
+		@Nullable
+		private final GQLField.GQLFieldParam param;
+
+		private Reference(@NotNull GQLStruct struct, @NotNull GQLField field, @Nullable GQLField.GQLFieldParam param) {
+			this.struct = struct;
+			this.field = field;
+			this.param = param;
+		}
+	}
+}
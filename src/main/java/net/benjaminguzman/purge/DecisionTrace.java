@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import net.benjaminguzman.GQLFedUtils;
+import net.benjaminguzman.parse.GQLDataType;
+import net.benjaminguzman.parse.GQLEnum;
+import net.benjaminguzman.parse.GQLStruct;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records why each node was kept or removed by {@link PurgeVisitor}, for the {@code --explain} option of
+ * {@link Purge}
+ * <p>
+ * Records are stored column-wise in arrays preallocated for the number of nodes of the graph
+ * (see {@link #nodeCount(List)}), and they're only formatted, as JSON lines, when written.
+ * Records only reference the patterns and nodes, so the comment line is the only string copied while purging
+ * <p>
+ * This class is not thread-safe, use one trace per graph
+ */
+class DecisionTrace {
+	/**
+	 * Why a node was kept or removed
+	 */
+	enum Reason {
+		ALWAYS_KEPT(true, "scalars, directives, schema, Query and Mutation are always kept"),
+		KEPT(true, "first and second keep patterns found in the same line"),
+		RULE_MATCHED(true, "a rule matched"),
+		NO_COMMENT(false, "no comment"),
+		NO_FIRST_PATTERN(false, "no first keep pattern in the comment"),
+		NO_SECOND_PATTERN(false, "no second keep pattern after the first keep pattern, in the same line"),
+		NO_RULE_MATCHED(false, "no rule matched");
+
+		private final boolean kept;
+
+		@NotNull
+		private final String description;
+
+		Reason(boolean kept, @NotNull String description) {
+			this.kept = kept;
+			this.description = description;
+		}
+	}
+
+	/**
+	 * Recorded nodes, and the data type of the fields and enum values (null for data types)
+	 */
+	@NotNull
+	private GQLDataType[] nodes, parents;
+
+	@NotNull
+	private Reason[] reasons;
+
+	/**
+	 * First keep pattern (or rule) found, the line of the comment containing it, and the second keep pattern
+	 * found in that line. Any of them may be null
+	 */
+	@NotNull
+	private String[] firsts, lines, seconds;
+
+	private int size;
+
+	/**
+	 * @param capacity expected number of records. More records can be added, at the cost of copying the arrays
+	 */
+	DecisionTrace(int capacity) {
+		capacity = Math.max(capacity, 1);
+		nodes = new GQLDataType[capacity];
+		parents = new GQLDataType[capacity];
+		reasons = new Reason[capacity];
+		firsts = new String[capacity];
+		lines = new String[capacity];
+		seconds = new String[capacity];
+	}
+
+	/**
+	 * @param dataTypes data types of a graph
+	 * @return number of data types, fields and enum values
+	 */
+	static int nodeCount(@NotNull List<GQLDataType> dataTypes) {
+		int count = dataTypes.size();
+		for (GQLDataType dataType : dataTypes)
+			if (dataType instanceof GQLStruct)
+				count += ((GQLStruct) dataType).getFields().size();
+			else if (dataType instanceof GQLEnum)
+				count += ((GQLEnum) dataType).getValues().size();
+		return count;
+	}
+
+	/**
+	 * Records a decision
+	 *
+	 * @param node   the node
+	 * @param parent the data type of the node if it is a field or enum value, null otherwise
+	 * @param reason why the node was kept or removed
+	 * @param first  first keep pattern or rule that was found
+	 * @param line   line of the comment containing the first keep pattern
+	 * @param second second keep pattern that was found
+	 */
+	void record(@NotNull GQLDataType node, @Nullable GQLDataType parent, @NotNull Reason reason,
+	            @Nullable String first, @Nullable String line, @Nullable String second) {
+		if (size == nodes.length) {
+			int capacity = size * 2;
+			nodes = Arrays.copyOf(nodes, capacity);
+			parents = Arrays.copyOf(parents, capacity);
+			reasons = Arrays.copyOf(reasons, capacity);
+			firsts = Arrays.copyOf(firsts, capacity);
+			lines = Arrays.copyOf(lines, capacity);
+			seconds = Arrays.copyOf(seconds, capacity);
+		}
+
+		nodes[size] = node;
+		parents[size] = parent;
+		reasons[size] = reason;
+		firsts[size] = first;
+		lines[size] = line;
+		seconds[size] = second;
+		++size;
+	}
+
+	/**
+	 * @return number of records
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Writes each record as a JSON object in its own line, e.g.
+	 * <pre>
+	 * {"file":"a.graphql","node":"User.email","kind":"field","kept":false,"reason":"...","first":"@GK","line":"# @GK"}
+	 * </pre>
+	 *
+	 * @param out  where the records are written
+	 * @param file file the graph was read from
+	 * @throws IOException if the records couldn't be written
+	 */
+	void writeTo(@NotNull Writer out, @NotNull String file) throws IOException {
+		StringBuilder json = new StringBuilder(256);
+		for (int i = 0; i < size; ++i) {
+			GQLDataType node = nodes[i];
+			json.setLength(0);
+			json.append("{\"file\":");
+			GQLFedUtils.appendJsonString(json, file);
+			json.append(",\"node\":");
+			GQLFedUtils.appendJsonString(json, parents[i] == null ? name(node) : name(parents[i]) + "." + name(node));
+			json.append(",\"kind\":");
+			GQLFedUtils.appendJsonString(json, node.getKeyword() != null
+				? node.getKeyword().toString()
+				: parents[i] instanceof GQLEnum ? "value" : "field");
+			json.append(",\"kept\":").append(reasons[i].kept);
+			json.append(",\"reason\":");
+			GQLFedUtils.appendJsonString(json, reasons[i].description);
+			appendField(json, "first", firsts[i]);
+			appendField(json, "line", lines[i]);
+			appendField(json, "second", seconds[i]);
+			out.write(json.append("}\n").toString());
+		}
+	}
+
+	@NotNull
+	private static String name(@NotNull GQLDataType node) {
+		return node.getName().isEmpty() ? String.valueOf(node.getKeyword()) : node.getName();
+	}
+
+	private static void appendField(@NotNull StringBuilder json, @NotNull String name, @Nullable String value) {
+		if (value == null)
+			return;
+
+		json.append(",\"").append(name).append("\":");
+		GQLFedUtils.appendJsonString(json, value);
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Logger;
+
+/**
+ * Finds the files inside input directories, considering exclusions and inclusions
+ * <p>
+ * Exclusions are either:
+ * <ul>
+ *     <li>globs, if they contain any of {@code *?[{}, e.g. {@code **}{@code /generated/**} or {@code *.bak}.
+ *     Globs without a {@code /} are matched against the file name, other globs against the whole path</li>
+ *     <li>plain strings, e.g. {@code node_modules}. The file is excluded if its path contains the string.
+ *     All plain strings are compiled into a single {@link AhoCorasick} automaton, so each path is scanned once</li>
+ * </ul>
+ * Excluded directories are not traversed at all. Inclusions are globs too: if there is any, only files matching
+ * some inclusion are returned
+ * <p>
+ * Subdirectories are listed in parallel, in the common {@link ForkJoinPool}.
+ * Symbolic links to files are returned, but symbolic links to directories are not followed
+ * <p>
+ * This class is thread-safe
+ */
+class InputScanner {
+	private static final Logger LOGGER = Logger.getLogger(InputScanner.class.getName());
+
+	@Nullable
+	private final AhoCorasick excludedStrings;
+
+	/**
+	 * True if some exclusion is the empty string, i.e. everything is excluded
+	 */
+	private final boolean excludesEverything;
+
+	@NotNull
+	private final List<PathMatcher> excludedNames = new ArrayList<>(), excludedPaths = new ArrayList<>();
+
+	@NotNull
+	private final List<PathMatcher> includedNames = new ArrayList<>(), includedPaths = new ArrayList<>();
+
+	/**
+	 * Maximum depth of the returned files. Files directly inside an input directory have depth 1
+	 */
+	private final int maxDepth;
+
+	/**
+	 * @param exclusions exclusions, as described in the class documentation
+	 * @param inclusions globs for the files to be returned. If empty, any file that is not excluded is returned
+	 * @param maxDepth   maximum depth of the returned files. Files directly inside an input directory have depth 1
+	 * @throws IllegalArgumentException if some glob is not valid
+	 */
+	InputScanner(@NotNull List<String> exclusions, @NotNull List<String> inclusions, int maxDepth) {
+		FileSystem fs = FileSystems.getDefault();
+		List<String> strings = new ArrayList<>();
+		for (String exclusion : exclusions)
+			if (isGlob(exclusion))
+				(hasSeparator(exclusion) ? excludedPaths : excludedNames).add(fs.getPathMatcher("glob:" + exclusion));
+			else
+				strings.add(exclusion);
+
+		for (String inclusion : inclusions)
+			(hasSeparator(inclusion) ? includedPaths : includedNames).add(fs.getPathMatcher("glob:" + inclusion));
+
+		this.excludesEverything = strings.contains("");
+		strings.removeIf(String::isEmpty);
+		this.excludedStrings = strings.isEmpty() ? null : new AhoCorasick(strings);
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Finds the files inside a directory
+	 *
+	 * @param dir the directory
+	 * @return files that are not excluded, sorted
+	 */
+	@NotNull
+	List<Path> scan(@NotNull Path dir) {
+		if (isExcluded(dir) || maxDepth < 1)
+			return Collections.emptyList();
+
+		List<Path> files = ForkJoinPool.commonPool().invoke(new DirectoryTask(dir, 1));
+		Collections.sort(files); // so the order doesn't depend on the file system nor the threads
+		return files;
+	}
+
+	/**
+	 * Checks whether {@link #scan(Path)} would return a file, without listing any directory
+	 *
+	 * @param dir  the input directory
+	 * @param file a regular file, in the same form (e.g. relative) it would be found when scanning the directory
+	 * @return true if the file is inside the directory, not too deep, and neither it nor the directories between
+	 * them are excluded
+	 */
+	boolean accepts(@NotNull Path dir, @NotNull Path file) {
+		if (!file.startsWith(dir) || file.equals(dir))
+			return false;
+
+		Path relative = dir.relativize(file);
+		if (relative.getNameCount() > maxDepth || isExcluded(dir))
+			return false;
+
+		Path path = dir;
+		for (Path name : relative) {
+			path = path.resolve(name);
+			if (isExcluded(path))
+				return false;
+		}
+		return isIncluded(file);
+	}
+
+	/**
+	 * @return true if the path (a file or directory) is excluded. Files inside an excluded directory are excluded too
+	 */
+	boolean isExcluded(@NotNull Path path) {
+		if (excludesEverything || (excludedStrings != null && excludedStrings.containsAny(path.toString())))
+			return true;
+
+		Path name = path.getFileName();
+		if (name != null)
+			for (PathMatcher matcher : excludedNames)
+				if (matcher.matches(name))
+					return true;
+		for (PathMatcher matcher : excludedPaths)
+			if (matcher.matches(path))
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return true if the file (which is not excluded) should be returned
+	 */
+	private boolean isIncluded(@NotNull Path file) {
+		if (includedNames.isEmpty() && includedPaths.isEmpty())
+			return true;
+
+		Path name = file.getFileName();
+		if (name != null)
+			for (PathMatcher matcher : includedNames)
+				if (matcher.matches(name))
+					return true;
+		for (PathMatcher matcher : includedPaths)
+			if (matcher.matches(file))
+				return true;
+		return false;
+	}
+
+	private static boolean isGlob(@NotNull String pattern) {
+		for (int i = 0; i < pattern.length(); ++i)
+			switch (pattern.charAt(i)) {
+				case '*':
+				case '?':
+				case '[':
+				case '{':
+					return true;
+			}
+		return false;
+	}
+
+	private static boolean hasSeparator(@NotNull String glob) {
+		return glob.indexOf('/') != -1 || glob.indexOf(FileSystems.getDefault().getSeparator().charAt(0)) != -1;
+	}
+
+	/**
+	 * Lists a directory (which is not excluded) and forks a task for each subdirectory that is not excluded
+	 */
+	private final class DirectoryTask extends RecursiveTask<List<Path>> {
+		private static final long serialVersionUID = 1L;
+
+		@NotNull
+		private final Path dir;
+
+		/**
+		 * Depth of the entries of the directory
+		 */
+		private final int depth;
+
+		private DirectoryTask(@NotNull Path dir, int depth) {
+			this.dir = dir;
+			this.depth = depth;
+		}
+
+		@Override
+		protected List<Path> compute() {
+			List<Path> files = new ArrayList<>();
+			List<DirectoryTask> subtasks = new ArrayList<>();
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+				for (Path entry : entries) {
+					if (isExcluded(entry))
+						continue; // excluded directories are not traversed
+
+					// an entry that can't be read is skipped, its siblings are still processed
+					BasicFileAttributes attrs;
+					try {
+						attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+					} catch (IOException e) {
+						LOGGER.warning("Error while processing " + entry + ". " + e.getMessage());
+						continue;
+					}
+					if (attrs.isDirectory()) {
+						if (depth < maxDepth)
+							subtasks.add(new DirectoryTask(entry, depth + 1));
+					} else if ((attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(entry)))
+						&& isIncluded(entry)) {
+						files.add(entry);
+					}
+				}
+			} catch (IOException | DirectoryIteratorException e) {
+				LOGGER.warning("Error while processing " + dir + ". " + e.getMessage());
+			}
+
+			invokeAll(subtasks);
+			for (DirectoryTask subtask : subtasks)
+				files.addAll(subtask.join());
+			return files;
+		}
+	}
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import net.benjaminguzman.parse.GQL;
+import net.benjaminguzman.parse.GQLDataType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decides if a comment contains the keep patterns of a {@link PurgeConfig}
+ * <p>
+ * First and second keep patterns are compiled into a single {@link AhoCorasick} automaton,
+ * so each comment is scanned once no matter how many patterns there are.
+ * Decisions are memoized by comment, since the same comment is usually repeated many times in a schema
+ * (e.g. {@code @GK PUBLIC})
+ * <p>
+ * This class is thread-safe
+ */
+class KeepMatcher {
+	/**
+	 * Maximum number of memoized decisions. Once reached, new decisions are not memoized
+	 */
+	private static final int MAX_MEMOIZED = 1 << 16;
+
+	@NotNull
+	private final AhoCorasick automaton;
+
+	/**
+	 * Distinct first and second patterns, indexed by their id in the {@link #automaton}
+	 */
+	@NotNull
+	private final String[] patterns;
+
+	/**
+	 * Whether each (distinct) pattern is a first and/or a second keep pattern
+	 */
+	private final boolean[] isFirst, isSecond;
+
+	/**
+	 * True if some first pattern is the empty string, i.e. it is found at the beginning of any comment
+	 */
+	private final boolean hasEmptyFirst;
+
+	/**
+	 * True if some second pattern is the empty string, i.e. it is found in any line
+	 */
+	private final boolean hasEmptySecond;
+
+	/**
+	 * True if there are no second patterns, in which case nothing is kept
+	 */
+	private final boolean noSecond;
+
+	/**
+	 * Memoized decisions by comment. An empty value means the node should be removed
+	 */
+	@NotNull
+	private final Map<String, Optional<String>> decisions = new ConcurrentHashMap<>();
+
+	KeepMatcher(@NotNull List<String> firstPatterns, @NotNull List<String> secondPatterns) {
+		// the same pattern may be both a first and a second pattern
+		Map<String, Integer> ids = new LinkedHashMap<>();
+		firstPatterns.forEach(pattern -> ids.putIfAbsent(pattern, ids.size()));
+		secondPatterns.forEach(pattern -> ids.putIfAbsent(pattern, ids.size()));
+
+		isFirst = new boolean[ids.size()];
+		isSecond = new boolean[ids.size()];
+		firstPatterns.forEach(pattern -> isFirst[ids.get(pattern)] = true);
+		secondPatterns.forEach(pattern -> isSecond[ids.get(pattern)] = true);
+
+		patterns = ids.keySet().toArray(new String[0]);
+		automaton = new AhoCorasick(Arrays.asList(patterns));
+		hasEmptyFirst = firstPatterns.contains("");
+		hasEmptySecond = secondPatterns.contains("");
+		noSecond = secondPatterns.isEmpty();
+	}
+
+	/**
+	 * Checks if a node with the given comment should be kept
+	 * <p>
+	 * A node is kept if, in the line where the first occurrence of some first pattern is found, there is also
+	 * a second pattern after it
+	 *
+	 * @param comment the comment of the node
+	 * @return the comment without the lines containing the first patterns (the "keep me" lines),
+	 * or null if the node should be removed
+	 */
+	@Nullable
+	String purgedComment(@NotNull String comment) {
+		Optional<String> decision = decisions.get(comment);
+		if (decision == null) {
+			decision = Optional.ofNullable(decide(comment));
+			if (decisions.size() < MAX_MEMOIZED)
+				decisions.put(comment, decision);
+		}
+		return decision.orElse(null);
+	}
+
+	@Nullable
+	private String decide(@NotNull String comment) {
+		if (noSecond)
+			return null;
+
+		// start index of the first occurrence of each first pattern
+		int[] firstStarts = new int[isFirst.length];
+		Arrays.fill(firstStarts, -1);
+		// start and end indices of every occurrence of second patterns
+		List<int[]> secondMatches = new ArrayList<>();
+		automaton.scan(comment, (pattern, startIdx, endIdx) -> {
+			if (isFirst[pattern] && firstStarts[pattern] == -1)
+				firstStarts[pattern] = startIdx;
+			if (isSecond[pattern])
+				secondMatches.add(new int[]{startIdx, endIdx});
+		});
+
+		SortedSet<Integer> starts = new TreeSet<>();
+		for (int start : firstStarts)
+			if (start != -1)
+				starts.add(start);
+		if (hasEmptyFirst)
+			starts.add(0);
+
+		boolean keep = false;
+		for (int start : starts) {
+			if (hasEmptySecond) {
+				keep = true;
+				break;
+			}
+
+			// find any second pattern after the first match, but within the same line
+			int lineEndIdx = GQL.lineEndIdx(comment, start + 1);
+			for (int[] match : secondMatches)
+				if (match[0] >= start && match[1] <= lineEndIdx) {
+					keep = true;
+					break;
+				}
+			if (keep)
+				break;
+		}
+		if (!keep)
+			return null;
+
+		// remove the "keep me" lines
+		SortedSet<Integer> lineStarts = new TreeSet<>();
+		for (int start : starts)
+			lineStarts.add(comment.lastIndexOf('\n', start) + 1); // this right even if lastIndexOf returns -1
+
+		StringBuilder purged = new StringBuilder(comment.length());
+		int copiedIdx = 0;
+		for (int lineStartIdx : lineStarts) {
+			int lineEndIdx = Math.min(GQL.lineEndIdx(comment, lineStartIdx) + 1, comment.length());
+			purged.append(comment, copiedIdx, lineStartIdx);
+			copiedIdx = lineEndIdx;
+		}
+		return purged.append(comment, copiedIdx, comment.length()).toString();
+	}
+
+	/**
+	 * Records why {@link #purgedComment(String)} keeps or removes a node with the given comment.
+	 * Explanations are not memoized, this is intended only for {@link DecisionTrace}s
+	 *
+	 * @param comment the comment of the node
+	 * @param node    the node
+	 * @param parent  the data type of the node if it is a field or enum value
+	 * @param trace   where the explanation is recorded
+	 */
+	void explain(@NotNull String comment, @NotNull GQLDataType node, @Nullable GQLDataType parent,
+	             @NotNull DecisionTrace trace) {
+		// first pattern found at each start index, and start and end indices and pattern of second patterns
+		SortedMap<Integer, String> firstsByStart = new TreeMap<>();
+		List<int[]> secondMatches = new ArrayList<>();
+		boolean[] found = new boolean[patterns.length];
+		automaton.scan(comment, (pattern, startIdx, endIdx) -> {
+			if (isFirst[pattern] && !found[pattern]) {
+				found[pattern] = true;
+				firstsByStart.putIfAbsent(startIdx, patterns[pattern]);
+			}
+			if (isSecond[pattern])
+				secondMatches.add(new int[]{startIdx, endIdx, pattern});
+		});
+		if (hasEmptyFirst)
+			firstsByStart.putIfAbsent(0, "");
+
+		if (firstsByStart.isEmpty()) {
+			trace.record(node, parent, DecisionTrace.Reason.NO_FIRST_PATTERN, null, null, null);
+			return;
+		}
+
+		if (!noSecond)
+			for (Map.Entry<Integer, String> first : firstsByStart.entrySet()) {
+				int start = first.getKey();
+				int lineEndIdx = GQL.lineEndIdx(comment, start + 1);
+				String second = hasEmptySecond ? "" : null;
+				for (int i = 0; second == null && i < secondMatches.size(); ++i) {
+					int[] match = secondMatches.get(i);
+					if (match[0] >= start && match[1] <= lineEndIdx)
+						second = patterns[match[2]];
+				}
+
+				if (second != null) {
+					trace.record(node, parent, DecisionTrace.Reason.KEPT, first.getValue(), line(comment, start), second);
+					return;
+				}
+			}
+
+		int start = firstsByStart.firstKey();
+		trace.record(
+			node,
+			parent,
+			DecisionTrace.Reason.NO_SECOND_PATTERN,
+			firstsByStart.get(start),
+			line(comment, start),
+			null
+		);
+	}
+
+	/**
+	 * @return the line of the comment containing the given index
+	 */
+	@NotNull
+	static String line(@NotNull String comment, int idx) {
+		int lineStartIdx = comment.lastIndexOf('\n', idx - 1) + 1;
+		return comment.substring(lineStartIdx, GQL.lineEndIdx(comment, idx));
+	}
+}
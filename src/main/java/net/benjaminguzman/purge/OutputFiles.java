@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes output files only if their content changes, so their modification time is not bumped in vain
+ * (which would trigger rebuilds, watchers, etc.)
+ * <p>
+ * The existing file is compared by size first and then by SHA-256 hash, reading it in chunks.
+ * Files are written atomically: the content is written to a temporary file in the same directory, which
+ * then replaces the output file
+ */
+final class OutputFiles {
+	/**
+	 * What happened with an output file
+	 */
+	enum Result {
+		WRITTEN,
+		UNCHANGED
+	}
+
+	private OutputFiles() {
+	}
+
+	/**
+	 * Writes the content to the file, unless the file already has that content
+	 *
+	 * @param file    the output file
+	 * @param content the content
+	 * @param sha256  SHA-256 hash of the content
+	 * @return whether the file was written or it was unchanged
+	 * @throws IOException if the file couldn't be written
+	 */
+	@NotNull
+	static Result write(@NotNull Path file, @NotNull byte[] content, @NotNull byte[] sha256) throws IOException {
+		if (hasContent(file, content.length, sha256))
+			return Result.UNCHANGED;
+
+		Path tmpFile = createTempFile(file);
+		try {
+			Files.write(tmpFile, content);
+			replace(tmpFile, file);
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+		return Result.WRITTEN;
+	}
+
+	/**
+	 * Checks if the file exists and has the given content
+	 *
+	 * @param file   the file
+	 * @param size   size of the content, in bytes
+	 * @param sha256 SHA-256 hash of the content
+	 * @return true if the file has the same size and hash
+	 * @throws IOException if the file couldn't be read
+	 */
+	static boolean hasContent(@NotNull Path file, long size, @NotNull byte[] sha256) throws IOException {
+		BasicFileAttributes attrs;
+		try {
+			attrs = Files.readAttributes(file, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			return false;
+		}
+		if (!attrs.isRegularFile() || attrs.size() != size)
+			return false;
+
+		MessageDigest digest = PurgeManifest.newSha256();
+		byte[] buffer = new byte[8192];
+		try (InputStream in = Files.newInputStream(file)) {
+			int n;
+			while ((n = in.read(buffer)) != -1)
+				digest.update(buffer, 0, n);
+		}
+		return MessageDigest.isEqual(digest.digest(), sha256);
+	}
+
+	/**
+	 * Creates an empty temporary file next to the given file, to be moved later with
+	 * {@link #replace(Path, Path)}. Unlike {@code Files.createTempFile}, the temporary file has the default
+	 * permissions, as any other new file
+	 *
+	 * @param file the file
+	 * @return the temporary file
+	 * @throws IOException if the temporary file couldn't be created
+	 */
+	@NotNull
+	static Path createTempFile(@NotNull Path file) throws IOException {
+		Path dir = file.toAbsolutePath().getParent();
+		String prefix = "." + file.getFileName() + ".";
+		while (true) {
+			String name = prefix + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp";
+			try {
+				return Files.createFile(dir.resolve(name));
+			} catch (FileAlreadyExistsException ignored) {
+			}
+		}
+	}
+
+	/**
+	 * Atomically replaces the file with the temporary file, keeping the permissions of the file if it exists.
+	 * If the file system doesn't support atomic moves, the file is just replaced
+	 *
+	 * @param tmpFile the temporary file, see {@link #createTempFile(Path)}
+	 * @param file    the file
+	 * @throws IOException if the file couldn't be replaced
+	 */
+	static void replace(@NotNull Path tmpFile, @NotNull Path file) throws IOException {
+		try {
+			Files.setPosixFilePermissions(tmpFile, Files.getPosixFilePermissions(file));
+		} catch (UnsupportedOperationException | IOException ignored) { // e.g. the file doesn't exist
+		}
+
+		try {
+			Files.move(tmpFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Sequence of stages connected by bounded queues
+ * <p>
+ * Each stage has its own workers, which take items from the queue in front of the stage, process them and put
+ * them in the queue of the next stage. If a queue is full, workers of the previous stage wait
+ * (backpressure), so a slow stage doesn't make the others pile up items in memory.
+ * Items for which a stage fails skip the remaining stages
+ * <p>
+ * Statistics for each stage are collected to tune the number of workers and queue depths, see {@link #getStats()}
+ *
+ * @param <T> type of the items
+ */
+class Pipeline<T> {
+	/**
+	 * Marks the end of the items in a queue
+	 */
+	private static final Object END = new Object();
+
+	@NotNull
+	private final List<Stage<T>> stages = new ArrayList<>();
+
+	/**
+	 * Called when a stage throws an exception or an error while processing an item
+	 */
+	@NotNull
+	private final BiConsumer<T, Throwable> errorHandler;
+
+	/**
+	 * @param errorHandler called when a stage throws an exception or an error (e.g. {@link StackOverflowError} with
+	 *                     a deeply nested schema) while processing an item. The item is treated as if the stage
+	 *                     had failed
+	 */
+	Pipeline(@NotNull BiConsumer<T, Throwable> errorHandler) {
+		this.errorHandler = errorHandler;
+	}
+
+	/**
+	 * Appends a stage
+	 *
+	 * @param name       name of the stage, for the statistics
+	 * @param workers    number of threads processing items in this stage
+	 * @param queueDepth capacity of the queue in front of this stage
+	 * @param action     processes an item. Returns false if the item should skip the remaining stages
+	 * @return this pipeline
+	 */
+	@NotNull
+	Pipeline<T> addStage(@NotNull String name, int workers, int queueDepth, @NotNull Predicate<T> action) {
+		stages.add(new Stage<>(name, Math.max(1, workers), Math.max(1, queueDepth), action));
+		return this;
+	}
+
+	/**
+	 * Runs all items through the stages and blocks until all of them are done
+	 * <p>
+	 * The executor must be able to run a thread for each worker, plus one feeding the items
+	 *
+	 * @param items    the items
+	 * @param executor executor to run the workers
+	 * @param sink     called in the current thread for each item, once it goes through all stages or a stage fails.
+	 *                 Items may be given in a different order
+	 * @throws InterruptedException if the current thread is interrupted while waiting
+	 */
+	void run(@NotNull List<T> items, @NotNull ExecutorService executor,
+	         @NotNull Consumer<T> sink) throws InterruptedException {
+		BlockingQueue<Object> done = new LinkedBlockingQueue<>();
+		for (Stage<T> stage : stages)
+			stage.reset();
+
+		if (stages.isEmpty()) {
+			items.forEach(sink);
+			return;
+		}
+
+		executor.submit(() -> {
+			Stage<T> first = stages.get(0);
+			for (T item : items)
+				first.offer(item);
+			first.end();
+			return null;
+		});
+		for (int i = 0; i < stages.size(); ++i) {
+			Stage<T> stage = stages.get(i);
+			Stage<T> next = i + 1 < stages.size() ? stages.get(i + 1) : null;
+			for (int j = 0; j < stage.workers; ++j)
+				executor.submit(() -> {
+					work(stage, next, done);
+					return null;
+				});
+		}
+
+		Object item;
+		while ((item = done.take()) != END) {
+			@SuppressWarnings("unchecked")
+			T t = (T) item;
+			sink.accept(t);
+		}
+	}
+
+	/**
+	 * Loop for a worker of the given stage
+	 *
+	 * @param next the next stage, or null if this is the last one
+	 * @param done queue for items that are done
+	 */
+	private void work(@NotNull Stage<T> stage, @Nullable Stage<T> next,
+	                  @NotNull BlockingQueue<Object> done) throws InterruptedException {
+		Object item;
+		while ((item = stage.queue.take()) != END) {
+			@SuppressWarnings("unchecked")
+			T t = (T) item;
+
+			boolean succeeded;
+			long startTime = System.nanoTime();
+			try {
+				succeeded = stage.action.test(t);
+			} catch (Throwable e) { // otherwise the item would never be done, and run() would wait forever
+				errorHandler.accept(t, e);
+				succeeded = false;
+			}
+			stage.busyNanos.addAndGet(System.nanoTime() - startTime);
+			stage.processed.incrementAndGet();
+
+			if (succeeded && next != null)
+				next.offer(t);
+			else
+				done.put(t);
+		}
+
+		// the last worker to finish tells the next stage there are no more items
+		if (stage.remainingWorkers.decrementAndGet() == 0) {
+			if (next != null)
+				next.end();
+			else
+				done.put(END);
+		}
+	}
+
+	/**
+	 * @return statistics of each stage, in the same order stages were added
+	 */
+	@NotNull
+	List<Stage<T>> getStats() {
+		return Collections.unmodifiableList(stages);
+	}
+
+	/**
+	 * A stage and its statistics. Statistics are reset on each {@link #run(List, ExecutorService, Consumer)}
+	 */
+	static final class Stage<T> {
+		@NotNull
+		private final String name;
+
+		private final int workers;
+
+		@NotNull
+		private final BlockingQueue<Object> queue;
+
+		private final int queueDepth;
+
+		@NotNull
+		private final Predicate<T> action;
+
+		@NotNull
+		private final AtomicInteger remainingWorkers = new AtomicInteger();
+
+		@NotNull
+		private final AtomicLong processed = new AtomicLong();
+
+		@NotNull
+		private final AtomicLong busyNanos = new AtomicLong();
+
+		@NotNull
+		private final AtomicInteger maxQueued = new AtomicInteger();
+
+		@NotNull
+		private final AtomicLong blocked = new AtomicLong();
+
+		private Stage(@NotNull String name, int workers, int queueDepth, @NotNull Predicate<T> action) {
+			this.name = name;
+			this.workers = workers;
+			this.queue = new ArrayBlockingQueue<>(queueDepth);
+			this.queueDepth = queueDepth;
+			this.action = action;
+		}
+
+		private void reset() {
+			queue.clear();
+			remainingWorkers.set(workers);
+			processed.set(0);
+			busyNanos.set(0);
+			maxQueued.set(0);
+			blocked.set(0);
+		}
+
+		/**
+		 * Puts an item in the queue of this stage, waiting if it is full
+		 */
+		private void offer(@NotNull T item) throws InterruptedException {
+			if (!queue.offer(item)) {
+				blocked.incrementAndGet();
+				queue.put(item);
+			}
+			maxQueued.accumulateAndGet(queue.size(), Math::max);
+		}
+
+		/**
+		 * Tells all workers of this stage there are no more items
+		 */
+		private void end() throws InterruptedException {
+			for (int i = 0; i < workers; ++i)
+				queue.put(END);
+		}
+
+		@NotNull
+		String getName() {
+			return name;
+		}
+
+		int getWorkers() {
+			return workers;
+		}
+
+		int getQueueDepth() {
+			return queueDepth;
+		}
+
+		/**
+		 * @return number of items processed by this stage
+		 */
+		long getProcessed() {
+			return processed.get();
+		}
+
+		/**
+		 * @return total time workers of this stage spent processing items
+		 */
+		long getBusyNanos() {
+			return busyNanos.get();
+		}
+
+		/**
+		 * @return maximum number of items that were waiting in the queue of this stage
+		 */
+		int getMaxQueued() {
+			return maxQueued.get();
+		}
+
+		/**
+		 * @return number of times an item couldn't be put in the queue of this stage right away because it was full,
+		 * i.e. number of times the previous stage had to wait for this one
+		 */
+		long getBlocked() {
+			return blocked.get();
+		}
+
+		/**
+		 * @return items per second this stage can process with its workers, if they were never idle
+		 */
+		double getThroughput() {
+			long busy = busyNanos.get();
+			return busy == 0 ? 0 : processed.get() * workers * 1e9 / busy;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import net.benjaminguzman.parse.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Visitor that decides which nodes are kept by each one of several profiles (see
+ * {@link PurgeConfig#getProfiles()}), in a single traversal
+ * <p>
+ * Nodes are not modified. Instead, a bitmask with the profiles keeping each node, and the purged comment
+ * for each of those profiles, are recorded. Then, each purged version can be printed with {@link #view(int)}
+ * <p>
+ * A field or enum value is only checked for the profiles keeping its data type.
+ * This visitor keeps track of the data type being visited, so it is not thread-safe
+ */
+class ProfilesVisitor implements GQLVisitor {
+	/**
+	 * Maximum number of profiles, i.e. number of bits in the bitmask
+	 */
+	static final int MAX_PROFILES = Long.SIZE;
+
+	@NotNull
+	private final PurgeVisitor[] profiles;
+
+	/**
+	 * Decisions for the nodes kept by at least one profile
+	 */
+	@NotNull
+	private final Map<GQLDataType, Decision> decisions = new IdentityHashMap<>();
+
+	/**
+	 * Profiles keeping the data type being visited
+	 */
+	private long dataTypeMask;
+
+	/**
+	 * @param profiles visitor for each profile. Only {@link PurgeVisitor#purgedComment(GQLDataType)} is used
+	 */
+	ProfilesVisitor(@NotNull List<PurgeVisitor> profiles) {
+		if (profiles.size() > MAX_PROFILES)
+			throw new IllegalArgumentException("At most " + MAX_PROFILES + " profiles are supported");
+		this.profiles = profiles.toArray(new PurgeVisitor[0]);
+	}
+
+	@Override
+	public boolean visitDataType(@NotNull GQLDataType dataType) {
+		dataTypeMask = decide(dataType, -1L);
+		return true;
+	}
+
+	@Override
+	public boolean visitField(@NotNull GQLField field) {
+		decide(field, dataTypeMask);
+		return true;
+	}
+
+	@Override
+	public boolean visitEnumValue(@NotNull GQLEnum.EnumValue value) {
+		decide(value, dataTypeMask);
+		return true;
+	}
+
+	/**
+	 * Decides which profiles keep the node
+	 *
+	 * @param node       the node
+	 * @param parentMask profiles to be checked
+	 * @return profiles keeping the node
+	 */
+	private long decide(@NotNull GQLDataType node, long parentMask) {
+		long mask = 0;
+		String[] comments = null;
+		for (int i = 0; i < profiles.length; ++i) {
+			if ((parentMask & (1L << i)) == 0)
+				continue;
+
+			String comment = profiles[i].purgedComment(node);
+			if (comment == null)
+				continue;
+
+			mask |= 1L << i;
+			if (comments == null)
+				comments = new String[profiles.length];
+			comments[i] = comment;
+		}
+
+		if (mask != 0)
+			decisions.put(node, new Decision(mask, comments));
+		return mask;
+	}
+
+	/**
+	 * @param profile index of the profile
+	 * @return a view showing only the nodes kept by the profile, with their purged comments
+	 */
+	@NotNull
+	GQLView view(int profile) {
+		long bit = 1L << profile;
+		return new GQLView() {
+			@Override
+			public boolean includes(@NotNull GQLDataType node) {
+				Decision decision = decisions.get(node);
+				return decision != null && (decision.mask & bit) != 0;
+			}
+
+			@Override
+			public @Nullable String comment(@NotNull GQLDataType node) {
+				Decision decision = decisions.get(node);
+				return decision == null ? null : decision.comments[profile];
+			}
+		};
+	}
+
+	private static final class Decision {
+		/**
+		 * Profiles keeping the node
+		 */
+		private final long mask;
+
+		/**
+		 * Purged comment for each profile keeping the node
+		 */
+		@NotNull
+		private final String[] comments;
+
+		private Decision(long mask, @NotNull String[] comments) {
+			this.mask = mask;
+			this.comments = comments;
+		}
+	}
+}
@@ -18,6 +18,9 @@
 
 package net.benjaminguzman.purge;
 
+import net.benjaminguzman.Archives;
+import net.benjaminguzman.ConfigurationException;
+import net.benjaminguzman.FileWatcher;
 import net.benjaminguzman.GQLFedUtils;
 import net.benjaminguzman.parse.*;
 import org.jetbrains.annotations.NotNull;
@@ -25,16 +28,38 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 import picocli.CommandLine;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
-import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @CommandLine.Command(
 	name = "purge",
@@ -43,18 +68,38 @@ import java.util.stream.Stream;
 	mixinStandardHelpOptions = true,
 	version = "gqlfedutils purge 0.1"
 )
-public class Purge implements Runnable {
+public class Purge implements Callable<Integer> {
 	private static final Logger LOGGER = Logger.getLogger(Purge.class.getName());
 
+	@CommandLine.Spec
+	private CommandLine.Model.CommandSpec spec;
+
 	@CommandLine.Option(
 		names = {"-e", "--exclude"},
 		description = "List of files to exclude from processing. " +
 			"Exclusion files have more precedence than input files, i.e. if you provide the same file as" +
-			" input and exclusion, it'll be excluded"
+			" input and exclusion, it'll be excluded. Files (and directories) whose path contains an exclusion " +
+			"are excluded. If the exclusion has any of *?[{ it is a glob instead, e.g. *.bak or **/generated",
+		converter = ExclusionConverter.class
 	)
 	@NotNull
 	private final List<Path> excludeFiles = Collections.emptyList();
 
+	@CommandLine.Option(
+		names = {"--include"},
+		description = "Globs for the files to process inside input directories, e.g. *.graphql. " +
+			"If not given, all files that are not excluded are processed"
+	)
+	@NotNull
+	private final List<String> includeGlobs = Collections.emptyList();
+
+	@CommandLine.Option(
+		names = {"--max-depth"},
+		description = "Maximum depth when traversing input directories. Default: 5",
+		defaultValue = "5"
+	)
+	private int maxDepth = 5;
+
 	@CommandLine.Option(
 		names = {"-c", "--config"},
 		description = "Path to the config file. The configuration should be a YAML-formatted file with " +
@@ -65,7 +110,9 @@ public class Purge implements Runnable {
 			"keepPatterns: All types/inputs/enums/fields whose comments do not include any of these " +
 			"patterns will be removed.\n" +
 			"secondKeepPatterns: All types/inputs/enums/fields whose comments do not include any of " +
-			"these patterns in the same line the first pattern was found will be removed",
+			"these patterns in the same line the first pattern was found will be removed\n" +
+			"Instead of keepPatterns, a list of rules (keep: expression, on: kinds of nodes) can be given, " +
+			"e.g. keep: (@GK ADMIN or @GK OPS) and not @Internal. See README for more info",
 		required = true,
 		converter = PurgeConfigConverter.class
 	)
@@ -89,10 +136,173 @@ public class Purge implements Runnable {
 	)
 	private boolean hasConfirmedOverwrite;
 
+	@CommandLine.Option(
+		names = {"-j", "--jobs"},
+		description = "Number of files to be processed concurrently. Default: 1.\n" +
+			"Logs are still printed in the same order files are given",
+		defaultValue = "1"
+	)
+	private int jobs = 1;
+
+	@CommandLine.Option(
+		names = {"--virtual-threads"},
+		description = "Process files with virtual threads instead of a pool of --jobs threads. " +
+			"At most --jobs files are still processed at the same time. Requires Java 21 or newer"
+	)
+	private boolean useVirtualThreads;
+
+	@CommandLine.Option(
+		names = {"-m", "--manifest"},
+		description = "Path to a manifest file. The manifest records the hashes of input files, configuration and " +
+			"output files. Files whose input, configuration, output files and --cascade didn't change since the " +
+			"last run (and whose output wasn't modified) are skipped. The manifest is created if it doesn't exist"
+	)
+	@Nullable
+	private Path manifestFile;
+
+	@CommandLine.Option(
+		names = {"--cascade"},
+		description = "Also remove fields returning a removed type, arguments whose type was removed, and types " +
+			"left without fields as a result, so the purged schema has no dangling references. " +
+			"Each removal is logged. It can't be used with profiles nor --stream"
+	)
+	private boolean cascade;
+
+	@CommandLine.Option(
+		names = {"--pipeline"},
+		description = "Purge files in stages (read, parse, purge and write) connected by bounded queues, so " +
+			"reading and writing files overlaps with parsing and purging other files. " +
+			"Parse and purge stages use --jobs threads. Statistics for each stage are printed at the end"
+	)
+	private boolean pipeline;
+
+	@CommandLine.Option(
+		names = {"--io-threads"},
+		description = "Number of threads reading files and number of threads writing files with --pipeline. " +
+			"Higher values may help on network filesystems. Default: 1",
+		defaultValue = "1"
+	)
+	private int ioThreads = 1;
+
+	@CommandLine.Option(
+		names = {"--queue-depth"},
+		description = "Maximum number of files waiting in front of each stage with --pipeline. " +
+			"If a queue is full, the previous stage waits. Default: 4",
+		defaultValue = "4"
+	)
+	private int queueDepth = 4;
+
+	@CommandLine.Option(
+		names = {"--stream"},
+		description = "Purge each definition as soon as it is read, instead of parsing the whole file first. " +
+			"Memory is bounded by the largest definition instead of the file size. Output is the same"
+	)
+	private boolean stream;
+
+	@CommandLine.Option(
+		names = {"--explain"},
+		description = "Path to a file where the reason each node was kept or removed is written, as JSON lines " +
+			"(file, node, kind, kept, reason and, if found, the first keep pattern or rule, the comment line " +
+			"containing it and the second keep pattern). It can't be used with profiles nor --stream"
+	)
+	@Nullable
+	private Path explainFile;
+
+	@CommandLine.Option(
+		names = {"--output-archive"},
+		description = "Save all outputs in this zip archive instead of saving each one in its own file. " +
+			"Entries are named as the output files would be. Required to purge files inside archives. " +
+			"It can't be used with --manifest nor --stream"
+	)
+	@Nullable
+	private Path outputArchive;
+
+	@CommandLine.Option(
+		names = {"--watch"},
+		description = "Keep running and purge input files again when they or the configuration file change. " +
+			"Only the changed files are processed. It can't be used with --output-archive nor when input files " +
+			"are overwritten"
+	)
+	private boolean watch;
+
+	/**
+	 * Output files of each input file, if {@link #watch} is true. Outputs are determined once, so the user is not
+	 * asked again for alternative output files (see {@link GQLFedUtils#askAltOut(Path)}) each time a file changes
+	 */
+	@Nullable
+	private Map<Path, List<Path>> watchedOutputs;
+
+	/**
+	 * All output files in {@link #watchedOutputs}, as absolute paths. Changes in these files are ignored
+	 */
+	@NotNull
+	private final Set<Path> watchedOutputFiles = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Archives opened to read input files in place, see {@link #resolveInput(Path)}
+	 */
+	@NotNull
+	private final List<FileSystem> inputArchives = new ArrayList<>();
+
+	/**
+	 * Stream of the {@link #outputArchive}, which is written to {@link #outputArchiveTmpFile} until all outputs are
+	 * saved. Access is synchronized on the stream itself
+	 */
+	@Nullable
+	private ZipOutputStream outputArchiveStream;
+
+	@Nullable
+	private Path outputArchiveTmpFile;
+
+	/**
+	 * If not null, files are parsed through this cache, shared with other commands running in the same process.
+	 * It is not used if the graph has to be modified (e.g. with --cascade), see {@link #usesParseCache()}
+	 */
+	@Nullable
+	private ParseCache parseCache;
+
+	/**
+	 * Number of output files that were written, and that were not written because they already had the same content
+	 */
+	@NotNull
+	private final AtomicInteger writtenOutputs = new AtomicInteger(), unchangedOutputs = new AtomicInteger();
+
+	/**
+	 * Decisions recorded for each file during the current run, if {@link #explainFile} is given
+	 */
+	@NotNull
+	private final Map<Path, DecisionTrace> traces = new ConcurrentHashMap<>();
+
+	/**
+	 * Formatted decisions of each file, in the order they're written to the {@link #explainFile}.
+	 * With {@link #watch}, the decisions of files that didn't change are kept from previous runs
+	 */
+	@NotNull
+	private final Map<Path, String> explanations = new LinkedHashMap<>();
+
+	/**
+	 * Manifest loaded from {@link #manifestFile}. Null if no manifest is used
+	 */
+	@Nullable
+	private PurgeManifest manifest;
+
+	/**
+	 * Purger built from the {@link #config}
+	 */
+	@Nullable
+	private Purger purger;
+
+	/**
+	 * Hash of the {@link #config} and of the options affecting the purged code (i.e. {@link #cascade}), to be
+	 * recorded in the {@link #manifest}
+	 */
+	@Nullable
+	private String configHash;
+
 	@CommandLine.Parameters(
 		paramLabel = "FILE",
 		description = "Input files. If a directory is given instead of a file, " +
-			"all files inside it will be processed. Maximum depth when traversing the directory is 5",
+			"all files inside it will be processed. See --max-depth and --include",
 		arity = "1..*"
 	)
 	@NotNull
@@ -101,43 +311,685 @@ public class Purge implements Runnable {
 	public Purge() {
 	}
 
+	/**
+	 * @return {@link CommandLine.ExitCode#OK} if all input files were purged and saved, or
+	 * {@link CommandLine.ExitCode#SOFTWARE} if an input file is missing or couldn't be purged, or the outputs
+	 * couldn't be saved. With {@link #watch}, the result of the last run is returned
+	 */
 	@Override
-	public void run() {
-		// if no suffix, input files will be overwritten. Warn the user
-		if (outSuffix == null || outSuffix.isEmpty())
+	public Integer call() {
+		try {
+			purger = new Purger(config);
+		} catch (ConfigurationException e) {
+			LOGGER.severe("😭 Invalid configuration. " + e.getMessage());
+			return CommandLine.ExitCode.SOFTWARE;
+		}
+
+		// if no suffix, input files will be overwritten (unless there are profiles). Warn the user
+		if ((outSuffix == null || outSuffix.isEmpty()) && config.getProfiles().isEmpty() && outputArchive == null)
 			if (!handleNoSuffix())
-				return;
+				return CommandLine.ExitCode.SOFTWARE;
 
 		if (outSuffix != null && hasConfirmedOverwrite) {
 			LOGGER.warning("--suffix and --overwrite can't be used together, --overwrite is ignored");
 			hasConfirmedOverwrite = true;
 		}
 
+		if (jobs < 1) {
+			LOGGER.warning("--jobs should be at least 1, using 1");
+			jobs = 1;
+		}
+
+		if (cascade && (stream || !config.getProfiles().isEmpty())) {
+			LOGGER.warning("--cascade can't be used with profiles nor --stream, --cascade is ignored");
+			cascade = false;
+		}
+		if (explainFile != null && (stream || !config.getProfiles().isEmpty())) {
+			LOGGER.warning("--explain can't be used with profiles nor --stream, --explain is ignored");
+			explainFile = null;
+		}
+		if (outputArchive != null && stream) {
+			LOGGER.warning("--stream can't be used with --output-archive, --stream is ignored");
+			stream = false;
+		}
+		if (outputArchive != null && manifestFile != null) {
+			LOGGER.warning("--manifest can't be used with --output-archive, --manifest is ignored");
+			manifestFile = null;
+		}
+		if (pipeline && stream) {
+			LOGGER.warning("--pipeline can't be used with --stream, --pipeline is ignored");
+			pipeline = false;
+		}
+		if (ioThreads < 1) {
+			LOGGER.warning("--io-threads should be at least 1, using 1");
+			ioThreads = 1;
+		}
+		if (maxDepth < 1) {
+			LOGGER.warning("--max-depth should be at least 1, using 1");
+			maxDepth = 1;
+		}
+		if (queueDepth < 1) {
+			LOGGER.warning("--queue-depth should be at least 1, using 1");
+			queueDepth = 1;
+		}
+		if (watch && outputArchive != null) {
+			LOGGER.warning("--watch can't be used with --output-archive, --watch is ignored");
+			watch = false;
+		}
+		if (watch && (outSuffix == null || outSuffix.isEmpty()) && config.getProfiles().isEmpty()) {
+			LOGGER.warning("--watch can't be used when input files are overwritten, --watch is ignored");
+			watch = false;
+		}
+		if (watch) {
+			watchedOutputs = new ConcurrentHashMap<>();
+			// unchanged files are not parsed again when the configuration changes
+			if (parseCache == null)
+				parseCache = new ParseCache();
+		}
+
+		InputScanner scanner;
+		try {
+			scanner = new InputScanner(
+				excludeFiles.stream().map(Path::toString).collect(Collectors.toList()),
+				includeGlobs,
+				maxDepth
+			);
+		} catch (IllegalArgumentException e) {
+			LOGGER.severe("😭 Invalid --exclude or --include glob. " + e.getMessage());
+			return CommandLine.ExitCode.SOFTWARE;
+		}
+
+		if (outputArchive != null && !openOutputArchive())
+			return CommandLine.ExitCode.SOFTWARE;
+		boolean succeeded;
+		try {
+			succeeded = purgeInputs(scanner);
+			if (watch)
+				succeeded = watch(scanner, succeeded);
+		} finally {
+			for (FileSystem archive : inputArchives) {
+				try {
+					archive.close();
+				} catch (IOException ignored) {
+				}
+			}
+			inputArchives.clear();
+			if (outputArchiveStream != null && !closeOutputArchive())
+				succeeded = false;
+		}
+		return succeeded ? CommandLine.ExitCode.OK : CommandLine.ExitCode.SOFTWARE;
+	}
+
+	/**
+	 * Purges all input files
+	 *
+	 * @param scanner scanner for input directories
+	 * @return true if all input files exist and were purged and saved successfully
+	 */
+	private boolean purgeInputs(@NotNull InputScanner scanner) {
 		// process all input files with exclusions
-		inputFiles.stream()
-			.peek(file -> {
-				if (!Files.exists(file))
-					LOGGER.warning(file + " doesn't exist, skipping.");
+		int[] missing = {0};
+		List<Path> files = inputFiles.stream()
+			.map(this::resolveInput) // files inside archives are read in place
+			.filter(file -> {
+				if (file == null) {
+					++missing[0];
+					return false;
+				}
+				if (!Files.exists(file)) {
+					LOGGER.warning(Archives.toString(file) + " doesn't exist, skipping.");
+					++missing[0];
+					return false;
+				}
+				return true; // just work with files that do exist
 			})
-			.filter(Files::exists) // just work with files that do exist
 			.flatMap(file -> { // "unpack" directories
 				if (Files.isRegularFile(file))
 					return Stream.of(file);
 
 				// if file is directory, traverse it and consider exclusions
+				return scanner.scan(file).stream();
+			})
+			.collect(Collectors.toList());
+
+		if (outputArchiveStream != null && !hasUniqueEntryNames(files)) {
+			discardOutputArchive();
+			return false;
+		}
+		explanations.clear(); // all inputs are purged again
+		return purgeFiles(files) && missing[0] == 0;
+	}
+
+	/**
+	 * Checks that no two outputs would be saved as the same entry of the {@link #outputArchive}, which happens
+	 * when inputs with the same relative path are given in different archives or directories
+	 *
+	 * @param files the input files
+	 * @return true if all entry names are different. Otherwise, the collisions are logged
+	 */
+	private boolean hasUniqueEntryNames(@NotNull List<Path> files) {
+		Map<String, Path> inputsByEntry = new HashMap<>();
+		boolean unique = true;
+		for (Path file : files) {
+			for (Path outFile : outputFiles(file)) {
+				String entryName = Archives.entryName(outFile);
+				Path other = inputsByEntry.putIfAbsent(entryName, file);
+				if (other != null) {
+					LOGGER.severe("😭 Outputs of " + Archives.toString(other) + " and " + Archives.toString(file)
+						+ " would both be saved as " + entryName + " in " + outputArchive);
+					unique = false;
+				}
+			}
+		}
+		return unique;
+	}
+
+	/**
+	 * Purges the given files, and logs a summary
+	 *
+	 * @param files the files
+	 * @return true if all files were purged and saved successfully, along with the manifest and the explanations
+	 */
+	private boolean purgeFiles(@NotNull List<Path> files) {
+		long startTime = System.nanoTime();
+		writtenOutputs.set(0);
+		unchangedOutputs.set(0);
+
+		// skip files that are up-to-date
+		int skipped = 0;
+		if (manifestFile != null) {
+			manifest = PurgeManifest.load(manifestFile);
+			// output files are compared by the manifest, options changing the outputs' contents are hashed
+			configHash = PurgeManifest.sha256(config + "\ncascade: " + cascade);
+
+			int nFiles = files.size();
+			files = files.stream()
+				.filter(file -> {
+					// the manifest knows if the user chose other files, so the user isn't asked here
+					boolean upToDate = manifest.isUpToDate(file, configHash, defaultOutputFiles(file));
+					if (upToDate)
+						LOGGER.fine("Skipping " + file + ", it is up-to-date");
+					return !upToDate;
+				})
+				.collect(Collectors.toList());
+			skipped = nFiles - files.size();
+		}
+
+		int failed;
+		if (pipeline)
+			failed = purgePipelined(files);
+		else
+			failed = jobs == 1 ? purgeSequentially(files) : purgeConcurrently(files);
+
+		boolean succeeded = failed == 0;
+		if (explainFile != null && !writeExplanations(files))
+			succeeded = false;
+
+		if (manifest != null) {
+			try {
+				manifest.save(manifestFile);
+			} catch (IOException e) {
+				LOGGER.severe("😭 Error while trying to save manifest " + manifestFile.toAbsolutePath() + ". "
+					+ e.getMessage());
+				succeeded = false;
+			}
+		}
+
+		long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+		LOGGER.info("Purged " + (files.size() - failed) + " file(s)"
+			+ (skipped > 0 ? ", " + skipped + " skipped (up-to-date)" : "")
+			+ (failed > 0 ? ", " + failed + " failed" : "")
+			+ " in " + elapsedMillis + " ms"
+			+ " (" + writtenOutputs.get() + " output(s) written, " + unchangedOutputs.get() + " unchanged)");
+		return succeeded;
+	}
+
+	/**
+	 * Watches the input files and the configuration file, and purges the files that change. If the configuration
+	 * changes, it is loaded again and all input files are purged, reusing the parsed files that didn't change
+	 * <p>
+	 * This method returns only if the thread is interrupted, or the files couldn't be watched
+	 *
+	 * @param scanner   scanner for input directories
+	 * @param succeeded true if the first run succeeded
+	 * @return true if the last run succeeded, false if it failed or the files couldn't be watched
+	 */
+	private boolean watch(@NotNull InputScanner scanner, boolean succeeded) {
+		Path configFile = Path.of(spec.findOption("--config").stringValues().get(0));
+		try (FileWatcher watcher = new FileWatcher()) {
+			for (Path input : inputFiles)
+				if (Files.isDirectory(input))
+					watcher.watchTree(input, maxDepth, dir -> !scanner.isExcluded(dir));
+				else
+					watcher.watchFile(input);
+			watcher.watchFile(configFile);
+			LOGGER.info("👀 Watching for changes. Press Ctrl+C to stop");
+
+			while (true) {
+				FileWatcher.Changes changes = watcher.poll();
+				boolean configChanged = changes.getFiles().contains(configFile);
+				if (configChanged && !reloadConfig(configFile))
+					continue;
+
+				if (configChanged || changes.isOverflow()) {
+					succeeded = purgeInputs(scanner);
+					continue;
+				}
+
+				List<Path> files = changes.getFiles().stream()
+					.filter(file -> isInput(file, scanner))
+					.collect(Collectors.toList());
+				if (!files.isEmpty())
+					succeeded = purgeFiles(files);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return succeeded;
+		} catch (IOException e) {
+			LOGGER.severe("😭 Error while watching input files. " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * @param file    a changed file
+	 * @param scanner scanner for input directories
+	 * @return true if the file is an input file, either given directly or found inside an input directory
+	 */
+	private boolean isInput(@NotNull Path file, @NotNull InputScanner scanner) {
+		if (watchedOutputFiles.contains(file.toAbsolutePath().normalize()))
+			return false; // written by this command
+		if (inputFiles.contains(file))
+			return true;
+		for (Path input : inputFiles)
+			if (scanner.accepts(input, file))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Loads the configuration file again
+	 *
+	 * @param configFile the configuration file
+	 * @return true if the configuration was loaded. Otherwise, the previous configuration is kept
+	 */
+	private boolean reloadConfig(@NotNull Path configFile) {
+		assert watchedOutputs != null;
+		PurgeConfig newConfig;
+		try {
+			newConfig = new PurgeConfigConverter().convert(configFile.toString());
+			purger = new Purger(newConfig);
+		} catch (IOException | ConfigurationException | RuntimeException e) {
+			LOGGER.severe("😭 Couldn't load configuration " + configFile + ", the previous one is kept. "
+				+ e.getMessage());
+			return false;
+		}
+
+		// output files depend on the profiles
+		if (!newConfig.getProfiles().keySet().equals(config.getProfiles().keySet())) {
+			watchedOutputs.clear();
+			watchedOutputFiles.clear();
+		}
+		config = newConfig;
+		LOGGER.info("Loaded configuration " + configFile);
+		return true;
+	}
+
+	/**
+	 * Resolves an input file that may be (or be inside) a zip or jar archive, see {@link Archives}.
+	 * Archives are kept open in {@link #inputArchives} until all files are purged
+	 *
+	 * @param file the input file, as given by the user
+	 * @return the file, its path inside the archive, or null if it should be skipped
+	 */
+	@Nullable
+	private Path resolveInput(@NotNull Path file) {
+		Path archive = Archives.archiveOf(file);
+		if (archive == null)
+			return file;
+
+		if (outputArchive == null) {
+			LOGGER.severe("😭 Outputs of files inside archives can only be saved with --output-archive. Skipping "
+				+ file);
+			return null;
+		}
+
+		try {
+			FileSystem archiveFs = Archives.open(archive);
+			inputArchives.add(archiveFs);
+			return archiveFs.getPath(Archives.entryOf(file));
+		} catch (IOException e) {
+			LOGGER.warning("Error while opening archive " + archive + ". " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Opens the {@link #outputArchive}. Outputs are written to a temporary file, which replaces the archive once
+	 * all of them are saved
+	 *
+	 * @return true if the archive was opened successfully
+	 */
+	private boolean openOutputArchive() {
+		assert outputArchive != null;
+		if (!hasConfirmedOverwrite)
+			outputArchive = GQLFedUtils.askAltOut(outputArchive);
+
+		try {
+			outputArchiveTmpFile = OutputFiles.createTempFile(outputArchive);
+			outputArchiveStream = new ZipOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(outputArchiveTmpFile)
+			));
+			return true;
+		} catch (IOException e) {
+			LOGGER.severe("😭 Error while trying to create archive " + outputArchive.toAbsolutePath() + ". "
+				+ e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the {@link #outputArchive} without saving it. The archive is left as it was
+	 */
+	private void discardOutputArchive() {
+		assert outputArchive != null && outputArchiveStream != null && outputArchiveTmpFile != null;
+		LOGGER.severe("😭 Nothing was saved in " + outputArchive.toAbsolutePath());
+		try {
+			outputArchiveStream.close();
+		} catch (IOException ignored) {
+		}
+		outputArchiveStream = null;
+		try {
+			Files.deleteIfExists(outputArchiveTmpFile);
+		} catch (IOException ignored) {
+		}
+	}
+
+	/**
+	 * Closes the {@link #outputArchive} and moves it into place
+	 *
+	 * @return true if the archive was saved successfully
+	 */
+	private boolean closeOutputArchive() {
+		assert outputArchive != null && outputArchiveStream != null && outputArchiveTmpFile != null;
+		try {
+			outputArchiveStream.close();
+			OutputFiles.replace(outputArchiveTmpFile, outputArchive);
+			LOGGER.info("Saved outputs in " + outputArchive);
+			return true;
+		} catch (IOException e) {
+			LOGGER.severe("😭 Error while trying to save archive " + outputArchive.toAbsolutePath() + ". "
+				+ e.getMessage());
+			return false;
+		} finally {
+			outputArchiveStream = null;
+			try {
+				Files.deleteIfExists(outputArchiveTmpFile);
+			} catch (IOException ignored) {
+			}
+		}
+	}
+
+	/**
+	 * Merges the decisions recorded for the given files into {@link #explanations}, and writes the explanations of
+	 * all inputs to the {@link #explainFile}
+	 * <p>
+	 * The recorded {@link #traces} are cleared, so their nodes aren't kept after the run
+	 *
+	 * @param files the purged files, in the order their decisions should be written
+	 * @return true if the explanations were saved successfully
+	 */
+	private boolean writeExplanations(@NotNull List<Path> files) {
+		assert explainFile != null;
+		try {
+			for (Path file : files) {
+				DecisionTrace trace = traces.get(file);
+				if (trace == null) { // the file couldn't be purged
+					explanations.remove(file);
+					continue;
+				}
+				StringWriter explanation = new StringWriter();
+				trace.writeTo(explanation, file.toString());
+				explanations.put(file, explanation.toString());
+			}
+		} catch (IOException e) { // writing to a StringWriter doesn't fail
+			throw new UncheckedIOException(e);
+		} finally {
+			traces.clear();
+		}
+
+		try (Writer out = Files.newBufferedWriter(explainFile, StandardCharsets.UTF_8)) {
+			for (String explanation : explanations.values())
+				out.write(explanation);
+			return true;
+		} catch (IOException e) {
+			LOGGER.severe("😭 Error while trying to save explanations " + explainFile.toAbsolutePath() + ". "
+				+ e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Purges the files one after another, in the current thread
+	 *
+	 * @param files the files to be purged
+	 * @return number of files that couldn't be purged
+	 */
+	private int purgeSequentially(@NotNull List<Path> files) {
+		int failed = 0;
+		for (Path file : files)
+			if (!handleSingleFile(file, outputFiles(file), LOGGER::log))
+				++failed;
+		return failed;
+	}
+
+	/**
+	 * Purges at most {@link #jobs} files at the same time
+	 * <p>
+	 * Output files are determined before processing any file, because the user may need to be asked for an
+	 * alternative output file (see {@link GQLFedUtils#askAltOut(Path)}), and that can't be done by workers.
+	 * Logs of each file are buffered and printed in the same order the files were given
+	 *
+	 * @param files the files to be purged
+	 * @return number of files that couldn't be purged
+	 */
+	private int purgeConcurrently(@NotNull List<Path> files) {
+		List<List<Path>> outFiles = files.stream().map(this::outputFiles).collect(Collectors.toList());
+
+		ExecutorService executor = newExecutor(jobs);
+
+		// bounds the number of files being processed if threads are not pooled
+		Semaphore permits = new Semaphore(jobs);
+		List<Future<PurgeResult>> results = new ArrayList<>(files.size());
+		try {
+			for (int i = 0; i < files.size(); ++i) {
+				Path file = files.get(i);
+				List<Path> fileOutFiles = outFiles.get(i);
+				results.add(executor.submit(() -> {
+					permits.acquire();
+					try {
+						PurgeResult result = new PurgeResult();
+						result.succeeded = handleSingleFile(file, fileOutFiles, result.logs::add);
+						return result;
+					} finally {
+						permits.release();
+					}
+				}));
+			}
+
+			int failed = 0;
+			for (int i = 0; i < results.size(); ++i) {
 				try {
-					return Files.walk(file, 5)
-						.filter(p -> p.toFile().isFile() && excludeFiles.stream().noneMatch(
-							// this is a naive criteria to exclude files,
-							// but it is ok for now
-							exclusion -> p.toString().contains(exclusion.toString())
-						));
-				} catch (IOException e) {
-					LOGGER.warning("Error while processing " + file + ". " + e.getMessage());
-					return Stream.empty();
+					PurgeResult result = results.get(i).get();
+					result.logs.forEach(LOGGER::log);
+					if (!result.succeeded)
+						++failed;
+				} catch (ExecutionException e) {
+					LOGGER.severe("😭 Error while processing " + files.get(i) + ". " + e.getCause());
+					++failed;
 				}
-			})
-			.forEach(this::handleSingleFile);
+			}
+			return failed;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.severe("😭 Interrupted while purging files");
+			return files.size();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Purges the files with a {@link Pipeline} of stages: {@link #read(PurgeJob)}, {@link #parse(PurgeJob)},
+	 * {@link #purge(PurgeJob)} and {@link #write(PurgeJob)}, so reading and writing files overlaps with parsing
+	 * and purging other files
+	 * <p>
+	 * Reading and writing stages have {@link #ioThreads} threads, parsing and purging stages have {@link #jobs}
+	 * threads. Each stage has a queue of {@link #queueDepth} files in front of it.
+	 * Logs of each file are buffered and printed in the same order the files were given, as soon as possible.
+	 * Statistics for each stage are printed at the end
+	 *
+	 * @param files the files to be purged
+	 * @return number of files that couldn't be purged
+	 */
+	private int purgePipelined(@NotNull List<Path> files) {
+		List<PurgeResult> results = new ArrayList<>(files.size());
+		List<PurgeJob> purgeJobs = new ArrayList<>(files.size());
+		for (int i = 0; i < files.size(); ++i) {
+			PurgeResult result = new PurgeResult();
+			results.add(result);
+			purgeJobs.add(new PurgeJob(i, files.get(i), outputFiles(files.get(i)), result.logs::add));
+		}
+
+		Pipeline<PurgeJob> pipeline = new Pipeline<PurgeJob>(
+			(job, e) -> job.log(Level.SEVERE, "😭 Error while processing " + job.file + ". " + e)
+		)
+			.addStage("read", ioThreads, queueDepth, this::read)
+			.addStage("parse", jobs, queueDepth, this::parse)
+			.addStage("purge", jobs, queueDepth, this::purge)
+			.addStage("write", ioThreads, queueDepth, this::write);
+
+		ExecutorService executor = newExecutor(1 + 2 * ioThreads + 2 * jobs);
+		boolean[] isDone = new boolean[files.size()];
+		int[] nextToPrint = {0};
+		try {
+			pipeline.run(purgeJobs, executor, job -> {
+				results.get(job.index).succeeded = job.succeeded;
+				isDone[job.index] = true;
+				for (; nextToPrint[0] < isDone.length && isDone[nextToPrint[0]]; ++nextToPrint[0])
+					results.get(nextToPrint[0]).logs.forEach(LOGGER::log);
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			LOGGER.severe("😭 Interrupted while purging files");
+			return files.size();
+		} finally {
+			executor.shutdownNow();
+		}
+
+		for (Pipeline.Stage<PurgeJob> stage : pipeline.getStats())
+			LOGGER.info(String.format(
+				"Stage %s: %d file(s) in %d ms with %d thread(s) (~%.1f files/s), queue peak %d/%d, full %d time(s)",
+				stage.getName(),
+				stage.getProcessed(),
+				TimeUnit.NANOSECONDS.toMillis(stage.getBusyNanos()),
+				stage.getWorkers(),
+				stage.getThroughput(),
+				stage.getMaxQueued(),
+				stage.getQueueDepth(),
+				stage.getBlocked()
+			));
+
+		return (int) results.stream().filter(result -> !result.succeeded).count();
+	}
+
+	/**
+	 * @param nThreads number of threads, if virtual threads are not used
+	 * @return an executor with virtual threads if {@link #useVirtualThreads} is true and they are available,
+	 * or a pool of {@code nThreads} threads otherwise
+	 */
+	@NotNull
+	private ExecutorService newExecutor(int nThreads) {
+		if (useVirtualThreads) {
+			ExecutorService executor = GQLFedUtils.newVirtualThreadExecutor();
+			if (executor != null)
+				return executor;
+			LOGGER.warning("Virtual threads are not available in this JVM, using a pool of threads instead");
+		}
+		return Executors.newFixedThreadPool(nThreads);
+	}
+
+	/**
+	 * Exclusions are patterns matched against paths, not paths themselves, so they're taken as given even when other
+	 * paths are resolved against another working directory (e.g. by the daemon)
+	 */
+	public static final class ExclusionConverter implements CommandLine.ITypeConverter<Path> {
+		@Override
+		public Path convert(String value) {
+			return Path.of(value);
+		}
+	}
+
+	/**
+	 * Logs buffered while purging a single file, and whether it succeeded
+	 */
+	private static final class PurgeResult {
+		@NotNull
+		private final List<LogRecord> logs = new ArrayList<>();
+
+		private boolean succeeded;
+	}
+
+	/**
+	 * State of a file being purged, as it goes through the stages
+	 * {@link #read(PurgeJob)}, {@link #parse(PurgeJob)}, {@link #purge(PurgeJob)} and {@link #write(PurgeJob)}
+	 * <p>
+	 * Each stage releases what the previous one produced, so only the current representation of the file
+	 * is kept in memory
+	 */
+	private static final class PurgeJob {
+		/**
+		 * Position of the file in the list of files being purged
+		 */
+		private final int index;
+
+		@NotNull
+		private final Path file;
+
+		@NotNull
+		private final List<Path> outFiles;
+
+		@NotNull
+		private final Consumer<LogRecord> log;
+
+		@Nullable
+		private BasicFileAttributes attrs;
+
+		@Nullable
+		private byte[] contents;
+
+		@Nullable
+		private String inputHash;
+
+		@Nullable
+		private GQL abstractSyntaxGraph;
+
+		@Nullable
+		private List<String> outputs;
+
+		private boolean succeeded;
+
+		private PurgeJob(int index, @NotNull Path file, @NotNull List<Path> outFiles,
+		                 @NotNull Consumer<LogRecord> log) {
+			this.index = index;
+			this.file = file;
+			this.outFiles = outFiles;
+			this.log = log;
+		}
+
+		private void log(@NotNull Level level, @NotNull String message) {
+			log.accept(logRecord(level, message));
+		}
 	}
 
 	/**
@@ -160,152 +1012,441 @@ public class Purge implements Runnable {
 		return true;
 	}
 
+	/**
+	 * Determines the output files for the given input file, with {@link #outSuffix} and
+	 * {@link #outputFileWSuffix(Path, String)}
+	 * <p>
+	 * If the configuration has profiles, there is an output file for each profile, whose suffix also contains
+	 * the profile name, e.g. {@code file-purged.admin.graphql}
+	 * <p>
+	 * If {@link #hasConfirmedOverwrite} is false, the user may be asked for alternative files. With {@link #watch},
+	 * that happens only the first time the outputs of a file are determined
+	 *
+	 * @param file the input file
+	 * @return the output files
+	 */
+	@NotNull
+	private List<Path> outputFiles(@NotNull Path file) {
+		if (watchedOutputs == null)
+			return newOutputFiles(file);
+
+		List<Path> outFiles = watchedOutputs.get(file);
+		if (outFiles == null) {
+			outFiles = newOutputFiles(file);
+			watchedOutputs.put(file, outFiles);
+			outFiles.forEach(outFile -> watchedOutputFiles.add(outFile.toAbsolutePath().normalize()));
+		}
+		return outFiles;
+	}
+
+	@NotNull
+	private List<Path> newOutputFiles(@NotNull Path file) {
+		List<Path> outFiles = defaultOutputFiles(file);
+		if (hasConfirmedOverwrite || outputArchive != null)
+			return outFiles;
+
+		List<Path> altOutFiles = new ArrayList<>(outFiles.size());
+		for (Path outFile : outFiles)
+			altOutFiles.add(GQLFedUtils.askAltOut(outFile));
+		return altOutFiles;
+	}
+
+	/**
+	 * Same as {@link #outputFiles(Path)}, but the user is never asked for alternative files
+	 *
+	 * @param file the input file
+	 * @return the output files
+	 */
+	@NotNull
+	private List<Path> defaultOutputFiles(@NotNull Path file) {
+		if (config.getProfiles().isEmpty())
+			return List.of(outSuffix == null ? file : outputFileWSuffix(file, outSuffix));
+
+		List<Path> outFiles = new ArrayList<>(config.getProfiles().size());
+		for (String profile : config.getProfiles().keySet())
+			outFiles.add(outputFileWSuffix(file, (outSuffix == null ? "" : outSuffix) + "." + profile));
+		return outFiles;
+	}
+
 	/**
 	 * Purges and saves a single file
 	 * <p>
-	 * The output file is determined with {@link #outSuffix} and {@link #outputFileWSuffix(Path)}
+	 * This method can be called concurrently, as long as different files are given
 	 *
-	 * @param file the file to be purged
+	 * @param file     the file to be purged
+	 * @param outFiles the output files, one for each profile (or a single one if there are no profiles)
+	 * @param log      consumer of the log records
+	 * @return true if the file was purged and saved successfully
 	 */
-	private void handleSingleFile(@NotNull Path file) {
-		LOGGER.info("Processing " + file);
+	private boolean handleSingleFile(@NotNull Path file, @NotNull List<Path> outFiles,
+	                                 @NotNull Consumer<LogRecord> log) {
+		if (stream) {
+			log.accept(logRecord(Level.INFO, "Processing " + file));
+			return handleSingleFileStreaming(file, outFiles, log);
+		}
+
+		PurgeJob job = new PurgeJob(-1, file, outFiles, log);
+		return read(job) && parse(job) && purge(job) && write(job);
+	}
 
-		// parse file
-		GQL abstractSyntaxGraph;
+	/**
+	 * First stage to purge a file: reads its contents
+	 *
+	 * @param job the file being purged
+	 * @return true if the file was read successfully
+	 */
+	private boolean read(@NotNull PurgeJob job) {
+		job.log(Level.INFO, "Processing " + Archives.toString(job.file));
+		if (usesParseCache())
+			return true; // the file is read by the cache, if it isn't cached already
 		try {
-			abstractSyntaxGraph = GQL.from(file);
+			if (manifest != null) // attributes before reading, in case the file is modified meanwhile
+				job.attrs = Files.readAttributes(job.file, BasicFileAttributes.class);
+			job.contents = Files.readAllBytes(job.file);
+			return true;
 		} catch (IOException e) {
-			LOGGER.severe("😭 Error while reading file " + file.toAbsolutePath() + ". " + e.getMessage());
-			return;
+			job.log(Level.SEVERE, "😭 Error while reading file " + job.file.toAbsolutePath() + ". " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Second stage to purge a file: parses its contents
+	 *
+	 * @param job the file being purged, already read
+	 * @return true if the file was parsed successfully
+	 */
+	private boolean parse(@NotNull PurgeJob job) {
+		if (usesParseCache()) {
+			assert parseCache != null;
+			try {
+				job.abstractSyntaxGraph = parseCache.get(job.file, purger.indexesAnnotations());
+				return true;
+			} catch (IOException e) {
+				job.log(Level.SEVERE, "😭 Error while reading file " + job.file.toAbsolutePath() + ". " + e.getMessage());
+			} catch (InvalidGQLSyntax e) {
+				job.log(Level.SEVERE, "😭 Couldn't parse file " + job.file.toAbsolutePath() + ". " + e.getMessage());
+			}
+			return false;
+		}
+
+		assert job.contents != null;
+		try {
+			if (manifest != null)
+				job.inputHash = PurgeManifest.sha256(job.contents);
+			job.abstractSyntaxGraph = GQL.from(new String(job.contents, StandardCharsets.UTF_8), purger.indexesAnnotations());
+			return true;
 		} catch (InvalidGQLSyntax e) {
-			LOGGER.severe("😭 Couldn't parse file " + file.toAbsolutePath() + ". " + e.getMessage());
-			return;
-		}
-
-		// purge its contents
-		List<String> firstPatterns = config.getKeepPatterns();
-		List<String> secondPatterns = config.getSecondKeepPatterns();
-		Predicate<String> shouldBeKept = (String comment) -> firstPatterns.stream().anyMatch(pattern -> {
-			// find first pattern
-			int firstMatchIdx = comment.indexOf(pattern);
-			if (firstMatchIdx == -1)
-				return false;
-
-			// find any second pattern after the first match, but within the same line
-			int lineEndIdx = GQL.lineEndIdx(comment, firstMatchIdx + 1);
-			String lineOfInterest = comment.substring(firstMatchIdx, lineEndIdx);
-			return secondPatterns.stream().anyMatch(lineOfInterest::contains);
-		});
-		Consumer<GQLDataType> removePattern = dataType -> {
-			// remove the "keep me" comment
-			String comment = dataType.getComment();
-			assert comment != null;
-			firstPatterns.forEach(pattern -> {
-				int firstMatchIdx = comment.indexOf(pattern);
-				if (firstMatchIdx == -1)
-					return;
-
-				// this right even if lastIndexOf returns -1
-				int lineStartIdx = comment.lastIndexOf('\n', firstMatchIdx) + 1;
-				int lineEndIdx = Math.min(GQL.lineEndIdx(comment, lineStartIdx) + 1, comment.length());
-				dataType.setComment(
-					comment.substring(0, lineStartIdx) + comment.substring(lineEndIdx)
+			job.log(Level.SEVERE, "😭 Couldn't parse file " + job.file.toAbsolutePath() + ". " + e.getMessage());
+			return false;
+		} finally {
+			job.contents = null;
+		}
+	}
+
+	/**
+	 * Third stage to purge a file: purges the syntax graph
+	 *
+	 * @param job the file being purged, already parsed
+	 * @return true
+	 */
+	private boolean purge(@NotNull PurgeJob job) {
+		assert job.abstractSyntaxGraph != null;
+		job.outputs = config.getProfiles().isEmpty()
+			? List.of(purge(job.file, job.abstractSyntaxGraph, job.log))
+			: purgeProfiles(job.abstractSyntaxGraph);
+		job.abstractSyntaxGraph = null;
+		return true;
+	}
+
+	/**
+	 * Last stage to purge a file: saves the purged GraphQL code and records the file in the {@link #manifest}
+	 *
+	 * @param job the file being purged, already purged
+	 * @return true if all output files were saved successfully
+	 */
+	private boolean write(@NotNull PurgeJob job) {
+		List<String> outputs = Objects.requireNonNull(job.outputs);
+		job.outputs = null;
+		if (outputArchiveStream != null)
+			return job.succeeded = writeToArchive(job, outputs);
+
+		// Now that the graph is completely purged, we just need to save the graphql files
+		boolean succeeded = true;
+		List<String> outputHashes = new ArrayList<>(outputs.size());
+		for (int i = 0; i < job.outFiles.size(); ++i) {
+			Path outFile = job.outFiles.get(i);
+			byte[] output = outputs.get(i).getBytes(StandardCharsets.UTF_8);
+			byte[] outputHash = PurgeManifest.newSha256().digest(output);
+			outputHashes.add(PurgeManifest.hex(outputHash));
+			try {
+				if (OutputFiles.write(outFile, output, outputHash) == OutputFiles.Result.UNCHANGED) {
+					job.log(Level.INFO, outFile + " is unchanged, not saving it");
+					unchangedOutputs.incrementAndGet();
+				} else {
+					job.log(Level.INFO, "Saving output in " + outFile);
+					writtenOutputs.incrementAndGet();
+				}
+			} catch (IOException e) {
+				job.log(
+					Level.SEVERE,
+					"😭 Error while trying to save file " + outFile.toAbsolutePath() + ". " + e.getMessage()
 				);
-			});
-		};
-
-		List<GQLDataType> purgedGraph = abstractSyntaxGraph.getDataTypes()
-			.stream()
-			.peek(dataType -> {
-				// gql directive and schema are always kept
-				if (dataType.getKeyword() == null)
-					return;
-
-				switch (dataType.getKeyword()) {
-					case TYPE:
-						// Query and Mutation types should always be kept
-						String typeName = dataType.getName();
-						if (!typeName.equals("Query") && !typeName.equals("Mutation"))
-							return;
-						// yes, don't use break here. We need to keep Query and Mutation types
-						// TODO but don't add keep comment if it already has it
-						//  usually this isn't the case so won't add more code
-					case DIRECTIVE:
-					case SCHEMA:
-					case SCALAR:
-						String keepComment = firstPatterns.get(0);
-						if (!secondPatterns.isEmpty())
-							keepComment += " " + secondPatterns.get(0);
-
-						if (dataType.getComment() != null)
-							dataType.setComment(keepComment + "\n" + dataType.getComment());
-						else
-							dataType.setComment(keepComment + "\n");
+				job.log(Level.INFO, "But, here is the output:\n" + outputs.get(i).stripTrailing());
+				succeeded = false;
+			}
+		}
+
+		if (manifest != null && succeeded) {
+			assert job.attrs != null && job.inputHash != null;
+			record(
+				job.file,
+				job.inputHash,
+				job.attrs,
+				job.outFiles,
+				outputHashes,
+				job.log
+			);
+		}
+		job.succeeded = succeeded;
+		return succeeded;
+	}
+
+	/**
+	 * Saves the purged GraphQL code in the {@link #outputArchive}, one entry for each output file
+	 *
+	 * @param job     the file being purged
+	 * @param outputs the purged GraphQL code for each output file
+	 * @return true if all outputs were saved successfully
+	 */
+	private boolean writeToArchive(@NotNull PurgeJob job, @NotNull List<String> outputs) {
+		assert outputArchiveStream != null;
+		boolean succeeded = true;
+		for (int i = 0; i < job.outFiles.size(); ++i) {
+			String entryName = Archives.entryName(job.outFiles.get(i));
+			job.log(Level.INFO, "Saving output in " + outputArchive + Archives.ENTRY_SEPARATOR + entryName);
+			byte[] output = outputs.get(i).getBytes(StandardCharsets.UTF_8);
+			try {
+				synchronized (outputArchiveStream) {
+					outputArchiveStream.putNextEntry(new ZipEntry(entryName));
+					outputArchiveStream.write(output);
+					outputArchiveStream.closeEntry();
 				}
-			})
-			.filter(dataType -> dataType.getComment() != null && shouldBeKept.test(dataType.getComment()))
-			.peek(removePattern)
-			.collect(Collectors.toList());
+				writtenOutputs.incrementAndGet();
+			} catch (IOException e) {
+				job.log(
+					Level.SEVERE,
+					"😭 Error while trying to save " + entryName + " in " + outputArchive + ". " + e.getMessage()
+				);
+				succeeded = false;
+			}
+		}
+		return succeeded;
+	}
 
-		// by now the graph has not been completely purged.
-		// We still need to purge fields and enum values (above we only removed data types)
-		purgedGraph.forEach(dataType -> { // now it's time to process fields. level 2
-			if (!(dataType instanceof GQLStruct))
-				return;
+	/**
+	 * Same as {@link #handleSingleFile(Path, List, Consumer)}, but the file is purged with a
+	 * {@link StreamingPurge}, i.e. it is never completely loaded in memory
+	 * <p>
+	 * Outputs are written to temporary files, which are moved to the output files only if the whole input
+	 * was purged successfully. That way the input can also be the output
+	 */
+	private boolean handleSingleFileStreaming(@NotNull Path file, @NotNull List<Path> outFiles,
+	                                          @NotNull Consumer<LogRecord> log) {
+		StreamingPurge streamingPurge = new StreamingPurge(Objects.requireNonNull(purger));
 
-			// doing this is ok since GQLStruct just returns a reference to the list
-			((GQLStruct) dataType).getFields().removeIf(
-				field -> field.getComment() == null || !shouldBeKept.test(field.getComment())
-			);
-			((GQLStruct) dataType).getFields().forEach(removePattern);
-		});
-		purgedGraph.forEach(dataType -> { // now it's time to process enum values. level 2
-			if (!(dataType instanceof GQLEnum))
-				return;
-
-			// doing this is ok since GQLStruct just returns a reference to the list
-			((GQLEnum) dataType).getValues().removeIf(
-				val -> val.getComment() == null || !shouldBeKept.test(val.getComment())
-			);
-			((GQLEnum) dataType).getValues().forEach(removePattern);
-		});
+		MessageDigest inputDigest = manifest != null ? PurgeManifest.newSha256() : null;
+		List<MessageDigest> outputDigests = new ArrayList<>(outFiles.size());
+		List<String> outputHashes = new ArrayList<>(outFiles.size());
+		List<Path> tmpFiles = new ArrayList<>(outFiles.size());
+		List<Writer> writers = new ArrayList<>(outFiles.size());
+		BasicFileAttributes attrs = null;
+		try {
+			if (manifest != null) // attributes before reading, in case the file is modified meanwhile
+				attrs = Files.readAttributes(file, BasicFileAttributes.class);
 
-		abstractSyntaxGraph.setDataTypes(purgedGraph);
+			for (Path outFile : outFiles) {
+				Path tmpFile = OutputFiles.createTempFile(outFile);
+				tmpFiles.add(tmpFile);
 
-		// Now that the graph is completely purged, we just need to reconstruct the graphql file
-		Path outFile = file;
-		if (outSuffix != null)
-			outFile = outputFileWSuffix(file);
-		if (!hasConfirmedOverwrite)
-			outFile = GQLFedUtils.askAltOut(outFile);
-		LOGGER.info("Saving output in " + outFile);
+				MessageDigest outputDigest = PurgeManifest.newSha256();
+				outputDigests.add(outputDigest);
+				writers.add(new BufferedWriter(new OutputStreamWriter(
+					new DigestOutputStream(Files.newOutputStream(tmpFile), outputDigest),
+					StandardCharsets.UTF_8
+				)));
+			}
+
+			streamingPurge.purge(file, inputDigest, writers);
+
+			for (Writer writer : writers)
+				writer.close();
+			for (int i = 0; i < outFiles.size(); ++i) {
+				Path outFile = outFiles.get(i);
+				byte[] outputHash = outputDigests.get(i).digest();
+				outputHashes.add(PurgeManifest.hex(outputHash));
+				if (OutputFiles.hasContent(outFile, Files.size(tmpFiles.get(i)), outputHash)) {
+					log.accept(logRecord(Level.INFO, outFile + " is unchanged, not saving it"));
+					unchangedOutputs.incrementAndGet();
+					continue;
+				}
+
+				log.accept(logRecord(Level.INFO, "Saving output in " + outFile));
+				OutputFiles.replace(tmpFiles.get(i), outFile);
+				writtenOutputs.incrementAndGet();
+			}
+		} catch (IOException e) {
+			log.accept(logRecord(
+				Level.SEVERE,
+				"😭 Error while purging file " + file.toAbsolutePath() + ". " + e.getMessage()
+			));
+			return false;
+		} catch (InvalidGQLSyntax e) {
+			log.accept(logRecord(
+				Level.SEVERE,
+				"😭 Couldn't parse file " + file.toAbsolutePath() + ". " + e.getMessage()
+			));
+			return false;
+		} finally {
+			for (Writer writer : writers) {
+				try {
+					writer.close();
+				} catch (IOException ignored) {
+				}
+			}
+			for (Path tmpFile : tmpFiles) {
+				try {
+					Files.deleteIfExists(tmpFile);
+				} catch (IOException ignored) {
+				}
+			}
+		}
+
+		if (manifest != null) {
+			assert attrs != null && inputDigest != null;
+			record(
+				file,
+				PurgeManifest.hex(inputDigest.digest()),
+				attrs,
+				outFiles,
+				outputHashes,
+				log
+			);
+		}
+		return true;
+	}
+
+	/**
+	 * Records the purged file in the {@link #manifest}
+	 */
+	private void record(@NotNull Path file, @NotNull String inputHash, @NotNull BasicFileAttributes attrs,
+	                    @NotNull List<Path> outFiles, @NotNull List<String> outputHashes,
+	                    @NotNull Consumer<LogRecord> log) {
+		assert manifest != null && configHash != null;
 		try {
-			Files.writeString(outFile, abstractSyntaxGraph + "\n");
+			manifest.record(file, inputHash, attrs, configHash, outFiles, defaultOutputFiles(file), outputHashes);
 		} catch (IOException e) {
-			LOGGER.severe("😭 Error while trying to save file " + outFile.toAbsolutePath() + ". "
-				+ e.getMessage());
-			LOGGER.info("But, here is the output:\n" + abstractSyntaxGraph);
+			log.accept(logRecord(
+				Level.WARNING,
+				"Couldn't record " + file + " in the manifest. " + e.getMessage()
+			));
+		}
+	}
+
+	/**
+	 * Purges the given graph with the {@link #config}. The graph is modified
+	 * <p>
+	 * If {@link #cascade} is true, references to removed data types are removed too, see {@link Cascade}.
+	 * If {@link #explainFile} is given, decisions are recorded in {@link #traces}
+	 *
+	 * @param file                file the graph was read from
+	 * @param abstractSyntaxGraph the graph
+	 * @param log                 consumer of the log records
+	 * @return the purged GraphQL code
+	 */
+	@NotNull
+	private String purge(@NotNull Path file, @NotNull GQL abstractSyntaxGraph, @NotNull Consumer<LogRecord> log) {
+		assert purger != null;
+		if (abstractSyntaxGraph instanceof GQLSnapshot) // shared by the parse cache, it can't be modified
+			return purger.purge(abstractSyntaxGraph) + "\n";
+
+		Cascade cascade = this.cascade ? new Cascade() : null;
+		DecisionTrace trace = null;
+		if (explainFile != null) {
+			trace = new DecisionTrace(DecisionTrace.nodeCount(abstractSyntaxGraph.getDataTypes()));
+			traces.put(file, trace);
 		}
+		abstractSyntaxGraph.setDataTypes(purger.purgeInPlace(abstractSyntaxGraph, cascade, trace));
+		if (cascade != null)
+			cascade.getReport().forEach(removal -> log.accept(logRecord(Level.INFO, removal)));
+
+		return abstractSyntaxGraph + "\n";
 	}
 
 	/**
-	 * Replaces the name "*.graphql" with "*{@link #outSuffix}.graphql"
+	 * Purges the given graph with each profile of the {@link #config}
 	 * <p>
-	 * If the file name doesn't have ".graphql", {@link #outSuffix} is added at the end of the string
+	 * The graph is traversed only once and it is not modified nor copied.
+	 * Each output is printed through a {@link net.benjaminguzman.parse.GQLView}
+	 *
+	 * @param abstractSyntaxGraph the graph
+	 * @return the purged GraphQL code for each profile, in the same order profiles were given
+	 */
+	@NotNull
+	private List<String> purgeProfiles(@NotNull GQL abstractSyntaxGraph) {
+		assert purger != null;
+		ProfilesVisitor profilesVisitor = purger.decide(abstractSyntaxGraph);
+
+		List<String> outputs = new ArrayList<>(purger.getProfileNames().size());
+		for (int i = 0; i < purger.getProfileNames().size(); ++i)
+			outputs.add(abstractSyntaxGraph.toString(profilesVisitor.view(i)) + "\n");
+		return outputs;
+	}
+
+	/**
+	 * @return true if files are parsed through the {@link #parseCache}. That's the case if there is a cache and
+	 * the graph doesn't need to be modified nor the file contents are needed (e.g. to be hashed for the manifest)
+	 */
+	private boolean usesParseCache() {
+		return parseCache != null && manifest == null && !cascade && explainFile == null && !stream;
+	}
+
+	/**
+	 * Sets a cache to parse files with, so files are parsed only once when several commands run in the same
+	 * process. The cache is not used if the graph has to be modified (e.g. with --cascade)
+	 *
+	 * @param parseCache the cache, or null to parse files without a cache
+	 */
+	public void setParseCache(@Nullable ParseCache parseCache) {
+		this.parseCache = parseCache;
+	}
+
+	@NotNull
+	private static LogRecord logRecord(@NotNull Level level, @NotNull String message) {
+		LogRecord record = new LogRecord(level, message);
+		record.setLoggerName(LOGGER.getName());
+		return record;
+	}
+
+	/**
+	 * Replaces the name "*.graphql" with "*{@code suffix}.graphql"
+	 * <p>
+	 * If the file name doesn't have ".graphql", {@code suffix} is added at the end of the string
 	 * <p>
-	 * For example if the original file name is "dir/graph.graphql" and {@link #outSuffix} is ".out",
+	 * For example if the original file name is "dir/graph.graphql" and {@code suffix} is ".out",
 	 * Then the returned path name will be "dir/graph.out.graphql"
 	 *
-	 * @param path original path
+	 * @param path   original path
+	 * @param suffix the suffix, usually {@link #outSuffix}
 	 * @return an instance of {@link Path} with name as specified above
 	 */
 	@NotNull
-	private Path outputFileWSuffix(@NotNull Path path) {
+	private static Path outputFileWSuffix(@NotNull Path path, @NotNull String suffix) {
 		String pathStr = path.toString();
 		if (pathStr.endsWith(".graphql"))
-			return Path.of(pathStr.substring(0, pathStr.lastIndexOf(".graphql")) + outSuffix + ".graphql");
+			return Path.of(pathStr.substring(0, pathStr.lastIndexOf(".graphql")) + suffix + ".graphql");
 
-		return Path.of(path + outSuffix);
+		return Path.of(path + suffix);
 	}
 
 	/**
@@ -347,4 +1488,12 @@ public class Purge implements Runnable {
 	public @NotNull List<Path> getExcludeFiles() {
 		return excludeFiles;
 	}
+
+	/**
+	 * Call from testing code only
+	 */
+	@TestOnly
+	public int getJobs() {
+		return jobs;
+	}
 }
@@ -18,10 +18,15 @@
 
 package net.benjaminguzman.purge;
 
+import net.benjaminguzman.ConfigurationException;
+import net.benjaminguzman.parse.GQLDataType;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 public class PurgeConfig {
 	/**
@@ -46,6 +51,34 @@ public class PurgeConfig {
 	@NotNull
 	private List<String> secondKeepPatterns;
 
+	/**
+	 * Rules to decide which nodes are kept. If given, {@link #keepPatterns} and {@link #secondKeepPatterns}
+	 * are ignored
+	 *
+	 * @see PurgeRule
+	 */
+	@NotNull
+	private List<PurgeRule> rules = Collections.emptyList();
+
+	/**
+	 * Named profiles, each with its own keep patterns or rules. If given, a purged output is produced
+	 * for each profile, and the keep patterns and rules of this configuration are ignored
+	 */
+	@NotNull
+	private Map<String, PurgeConfig> profiles = Collections.emptyMap();
+
+	/**
+	 * Compiled rules. Lazily created
+	 */
+	@Nullable
+	private volatile RuleSet ruleSet;
+
+	/**
+	 * Compiled patterns. Lazily created
+	 */
+	@Nullable
+	private volatile KeepMatcher matcher;
+
 	public PurgeConfig(@NotNull List<String> keepPatterns, @NotNull List<String> secondKeepPatterns) {
 		this.keepPatterns = keepPatterns;
 		this.secondKeepPatterns = secondKeepPatterns;
@@ -73,6 +106,7 @@ public class PurgeConfig {
 
 	public void setKeepPatterns(@NotNull List<String> keepPatterns) {
 		this.keepPatterns = keepPatterns;
+		this.matcher = null;
 	}
 
 	public @NotNull List<String> getSecondKeepPatterns() {
@@ -81,6 +115,94 @@ public class PurgeConfig {
 
 	public void setSecondKeepPatterns(@NotNull List<String> secondKeepPatterns) {
 		this.secondKeepPatterns = secondKeepPatterns;
+		this.matcher = null;
+	}
+
+	public @NotNull List<PurgeRule> getRules() {
+		return rules;
+	}
+
+	public void setRules(@NotNull List<PurgeRule> rules) {
+		this.rules = rules;
+		this.ruleSet = null;
+	}
+
+	public @NotNull Map<String, PurgeConfig> getProfiles() {
+		return profiles;
+	}
+
+	public void setProfiles(@NotNull Map<String, PurgeConfig> profiles) {
+		this.profiles = profiles;
+	}
+
+	/**
+	 * Compiles the {@link #rules}, so syntax errors can be reported before purging anything
+	 *
+	 * @return the compiled rules, or null if there are no rules
+	 * @throws ConfigurationException if some rule is not valid
+	 */
+	@Nullable
+	RuleSet compileRules() throws ConfigurationException {
+		if (rules.isEmpty())
+			return null;
+
+		RuleSet ruleSet = this.ruleSet;
+		if (ruleSet == null)
+			this.ruleSet = ruleSet = RuleSet.compile(rules);
+		return ruleSet;
+	}
+
+	/**
+	 * @return the compiled rules, or null if there are no rules
+	 * @throws IllegalArgumentException if some rule is not valid
+	 */
+	@Nullable
+	RuleSet ruleSet() {
+		try {
+			return compileRules();
+		} catch (ConfigurationException e) {
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Obtains the annotation names the {@link #keepPatterns} look for, e.g. {@code GK} for {@code @GK}
+	 * <p>
+	 * If all keep patterns are annotations, only nodes with a matching annotation (see
+	 * {@link net.benjaminguzman.parse.AnnotationIndex}) may be kept, and the rest can be discarded
+	 * without looking at their comments
+	 *
+	 * @return the annotation names (without '@'), or null if some keep pattern is not of the form {@code @Word}
+	 * or {@link #rules} are given
+	 */
+	@Nullable
+	public List<String> keepAnnotationNames() {
+		if (!rules.isEmpty())
+			return null;
+
+		List<String> names = new ArrayList<>(keepPatterns.size());
+		for (String pattern : keepPatterns) {
+			if (pattern.length() < 2 || pattern.charAt(0) != '@')
+				return null;
+			for (int i = 1; i < pattern.length(); ++i)
+				if (!GQLDataType.isNameChar(pattern.charAt(i)))
+					return null;
+
+			names.add(pattern.substring(1));
+		}
+		return names;
+	}
+
+	/**
+	 * @return the keep patterns compiled into a matcher. It is compiled only once, so decisions memoized by the
+	 * matcher are shared by every file purged with this configuration
+	 */
+	@NotNull
+	KeepMatcher matcher() {
+		KeepMatcher matcher = this.matcher;
+		if (matcher == null)
+			this.matcher = matcher = new KeepMatcher(keepPatterns, secondKeepPatterns);
+		return matcher;
 	}
 
 	@Override
@@ -88,6 +210,8 @@ public class PurgeConfig {
 		return "PurgeConfig{" +
 			"keepPatterns=" + keepPatterns +
 			", secondKeepPatterns=" + secondKeepPatterns +
+			", rules=" + rules +
+			", profiles=" + profiles +
 			'}';
 	}
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.benjaminguzman.purge;
+
+import net.benjaminguzman.ConfigurationException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of loaded (and validated) configuration files, so a long-running process doesn't parse the same
+ * configuration and compile its rules for every command
+ * <p>
+ * Entries are keyed by the absolute path of the file, and are reused only while the SHA-256 of the file content
+ * doesn't change. Configuration files are small, so hashing them is cheaper than parsing them and, unlike the
+ * modification time, it doesn't miss changes made within the resolution of the file system clock
+ * <p>
+ * The least recently used entries are evicted when there are more than a maximum number of entries
+ * <p>
+ * This class is thread-safe
+ */
+public class PurgeConfigCache {
+	private final int maxEntries;
+
+	/**
+	 * Entries in access order, i.e. the least recently used is the first one. Guarded by {@code this}
+	 */
+	@NotNull
+	private final LinkedHashMap<Path, CachedConfig> entries;
+
+	/**
+	 * @param maxEntries maximum number of configurations to keep
+	 */
+	public PurgeConfigCache(int maxEntries) {
+		if (maxEntries < 1)
+			throw new IllegalArgumentException("maxEntries should be at least 1");
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Path, CachedConfig> eldest) {
+				return size() > PurgeConfigCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Gets the configuration in the given file, loading it if it isn't cached or its content changed
+	 *
+	 * @param file the configuration file
+	 * @return the configuration
+	 * @throws IOException            if there was an error when reading the file
+	 * @throws ConfigurationException if the file has an invalid configuration
+	 */
+	@NotNull
+	public PurgeConfig get(@NotNull Path file) throws IOException, ConfigurationException {
+		Path absFile = file.toAbsolutePath().normalize();
+		byte[] content = Files.readAllBytes(absFile);
+		String hash = PurgeManifest.sha256(content);
+		synchronized (this) {
+			CachedConfig entry = entries.get(absFile);
+			if (entry != null && entry.hash.equals(hash))
+				return entry.config;
+		}
+
+		// the same file may be loaded twice concurrently, but that's harmless
+		PurgeConfig config = PurgeConfigConverter.parse(new String(content, StandardCharsets.UTF_8), file.toString());
+		synchronized (this) {
+			entries.put(absFile, new CachedConfig(hash, config));
+		}
+		return config;
+	}
+
+	/**
+	 * @return number of cached configurations
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private static final class CachedConfig {
+		@NotNull
+		private final String hash;
+
+		@NotNull
+		private final PurgeConfig config;
+
+		private CachedConfig(@NotNull String hash, @NotNull PurgeConfig config) {
+			this.hash = hash;
+			this.config = config;
+		}
+	}
+}
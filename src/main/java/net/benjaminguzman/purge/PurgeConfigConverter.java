@@ -20,19 +20,40 @@ package net.benjaminguzman.purge;
 
 import net.benjaminguzman.ConfigurationException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.constructor.Constructor;
 import picocli.CommandLine;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
 import java.util.logging.Logger;
 
 public class PurgeConfigConverter implements CommandLine.ITypeConverter<PurgeConfig> {
 	private static final Logger LOGGER = Logger.getLogger(PurgeConfigConverter.class.getName());
 
+	@Nullable
+	private final PurgeConfigCache cache;
+
+	@Nullable
+	private final Path workingDir;
+
+	public PurgeConfigConverter() {
+		this(null, null);
+	}
+
+	/**
+	 * @param cache      if not null, configurations are taken from this cache
+	 * @param workingDir if not null, relative file paths are resolved against this directory instead of the
+	 *                   working directory of the process
+	 */
+	public PurgeConfigConverter(@Nullable PurgeConfigCache cache, @Nullable Path workingDir) {
+		this.cache = cache;
+		this.workingDir = workingDir;
+	}
+
 	/**
 	 * Converts the specified command line argument value to some domain object.
 	 * More specifically, this reads the given file and parses it to a {@link PurgeConfig} object
@@ -44,16 +65,68 @@ public class PurgeConfigConverter implements CommandLine.ITypeConverter<PurgeCon
 	 */
 	@Override
 	public PurgeConfig convert(@NotNull String fileStr) throws IOException, ConfigurationException {
-		// read and parse the yaml file
-		try (BufferedReader bufferedReader = Files.newBufferedReader(Path.of(fileStr))) {
-			PurgeConfig config = new Yaml(new Constructor(PurgeConfig.class)).load(bufferedReader);
-			if (config.getKeepPatterns().isEmpty())
+		Path file = workingDir == null ? Path.of(fileStr) : workingDir.resolve(fileStr);
+		if (cache != null)
+			return cache.get(file);
+		return parse(Files.readString(file), fileStr);
+	}
+
+	/**
+	 * Parses and validates a configuration
+	 *
+	 * @param yaml    content of the configuration file
+	 * @param fileStr name of the configuration file, for logs
+	 * @return the configuration
+	 * @throws ConfigurationException if the configuration is not valid
+	 */
+	@NotNull
+	static PurgeConfig parse(@NotNull String yaml, @NotNull String fileStr) throws ConfigurationException {
+		PurgeConfig config = new Yaml(new Constructor(PurgeConfig.class)).load(yaml);
+		if (config.getProfiles().isEmpty())
+			validate(config, "Configuration file");
+		else
+			validateProfiles(config);
+
+		LOGGER.config("Loaded configuration from " + fileStr + ": " + config);
+		return config;
+	}
+
+	/**
+	 * Checks the configuration has keep patterns or rules, and that rules are valid
+	 *
+	 * @param config the configuration
+	 * @param name   name of the configuration, for error messages
+	 * @throws ConfigurationException if the configuration is not valid
+	 */
+	private static void validate(@NotNull PurgeConfig config, @NotNull String name) throws ConfigurationException {
+		if (config.getKeepPatterns().isEmpty() && config.getRules().isEmpty())
+			throw new ConfigurationException(name + " should contain a key named 'keepPatterns' or 'rules'");
+		if (!config.getRules().isEmpty() && !config.getKeepPatterns().isEmpty())
+			LOGGER.warning(name + ": 'keepPatterns' and 'secondKeepPatterns' are ignored since 'rules' are given");
+
+		// report invalid rules now
+		config.compileRules();
+	}
+
+	private static void validateProfiles(@NotNull PurgeConfig config) throws ConfigurationException {
+		if (!config.getKeepPatterns().isEmpty() || !config.getRules().isEmpty())
+			LOGGER.warning("'keepPatterns' and 'rules' are ignored since 'profiles' are given");
+		if (config.getProfiles().size() > ProfilesVisitor.MAX_PROFILES)
+			throw new ConfigurationException("At most " + ProfilesVisitor.MAX_PROFILES + " profiles are supported");
+
+		for (Map.Entry<String, PurgeConfig> profile : config.getProfiles().entrySet()) {
+			// the name is part of output file names
+			if (profile.getKey() == null || !profile.getKey().matches("[A-Za-z0-9_-]+"))
 				throw new ConfigurationException(
-					"Configuration file should contain a key named 'keepPatterns'"
+					"Invalid profile name '" + profile.getKey() + "'. " +
+						"Only letters, digits, '_' and '-' are allowed"
 				);
+			if (profile.getValue() == null)
+				throw new ConfigurationException("Profile '" + profile.getKey() + "' is empty");
+			if (!profile.getValue().getProfiles().isEmpty())
+				throw new ConfigurationException("Profile '" + profile.getKey() + "' can't contain profiles");
 
-			LOGGER.config("Loaded configuration from " + fileStr + ": " + config);
-			return config;
+			validate(profile.getValue(), "Profile '" + profile.getKey() + "'");
 		}
 	}
 }
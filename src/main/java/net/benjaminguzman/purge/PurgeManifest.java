@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Records, for each purged file, the hashes of the input, configuration and output
+ * <p>
+ * This is used to skip files that don't need to be purged again, i.e. files whose input and configuration
+ * didn't change and whose output is still the same that was written.
+ * To avoid hashing every file on each run, file size and modification time are also recorded.
+ * If they didn't change, the file is assumed to be unchanged
+ * <p>
+ * The manifest is a YAML file with the following structure:
+ * <pre>
+ * files:
+ *   path/to/input.graphql:
+ *     inputHash: sha-256 of the input
+ *     inputSize: 1234
+ *     inputModified: 1634567890123
+ *     configHash: sha-256 of the configuration
+ *     outputs: # one per profile, or a single one
+ *       - path: path/to/output.graphql
+ *         defaultPath: path/to/input.out.graphql # only if the user chose another output file
+ *         hash: sha-256 of the output
+ *         size: 567
+ *         modified: 1634567890456
+ * </pre>
+ * <p>
+ * Entries can be recorded concurrently
+ */
+class PurgeManifest {
+	private static final Logger LOGGER = Logger.getLogger(PurgeManifest.class.getName());
+
+	private static final String INPUT_HASH = "inputHash";
+	private static final String INPUT_SIZE = "inputSize";
+	private static final String INPUT_MODIFIED = "inputModified";
+	private static final String CONFIG_HASH = "configHash";
+	private static final String OUTPUTS = "outputs";
+	private static final String PATH = "path";
+	private static final String DEFAULT_PATH = "defaultPath";
+	private static final String HASH = "hash";
+	private static final String SIZE = "size";
+	private static final String MODIFIED = "modified";
+
+	/**
+	 * Entries by input file
+	 */
+	@NotNull
+	private final Map<String, Map<String, Object>> entries;
+
+	@SuppressWarnings("unchecked")
+	private PurgeManifest(@NotNull Map<String, ?> entries) {
+		this.entries = new ConcurrentHashMap<>(entries.size());
+		entries.forEach((input, entry) -> {
+			if (input != null && entry instanceof Map)
+				this.entries.put(input, new LinkedHashMap<>((Map<String, Object>) entry));
+		});
+	}
+
+	/**
+	 * Loads a manifest
+	 * <p>
+	 * If the file doesn't exist or it is not a valid manifest, an empty manifest is returned
+	 *
+	 * @param file the manifest file
+	 * @return the manifest
+	 */
+	@NotNull
+	@SuppressWarnings("unchecked")
+	static PurgeManifest load(@NotNull Path file) {
+		if (!Files.exists(file))
+			return new PurgeManifest(Collections.emptyMap());
+
+		try (BufferedReader reader = Files.newBufferedReader(file)) {
+			Object manifest = new Yaml().load(reader);
+			if (manifest instanceof Map && ((Map<String, Object>) manifest).get("files") instanceof Map)
+				return new PurgeManifest((Map<String, ?>) ((Map<String, Object>) manifest).get("files"));
+		} catch (IOException | YAMLException e) {
+			LOGGER.warning("Couldn't read manifest " + file + ". " + e.getMessage());
+			return new PurgeManifest(Collections.emptyMap());
+		}
+
+		LOGGER.warning(file + " is not a valid manifest, it'll be overwritten");
+		return new PurgeManifest(Collections.emptyMap());
+	}
+
+	/**
+	 * Saves the manifest. Entries are sorted by input file, so the manifest can be versioned
+	 * <p>
+	 * The manifest is written to a temporary file first, so an interrupted run doesn't leave it truncated
+	 *
+	 * @param file the manifest file
+	 * @throws IOException if there was an error while writing the file
+	 */
+	void save(@NotNull Path file) throws IOException {
+		DumperOptions options = new DumperOptions();
+		options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+		Path tmpFile = OutputFiles.createTempFile(file);
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(tmpFile)) {
+				new Yaml(options).dump(Map.of("files", new TreeMap<>(entries)), writer);
+			}
+			OutputFiles.replace(tmpFile, file);
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+	}
+
+	/**
+	 * Checks if the input file doesn't need to be purged again, i.e. the input file and configuration didn't
+	 * change since the last time the file was purged, and the output files are the expected ones and still have
+	 * the contents written
+	 * <p>
+	 * If the user chose other output files (see {@link net.benjaminguzman.GQLFedUtils#askAltOut(Path)}), the
+	 * default output files they replaced are compared instead, and the chosen ones are checked
+	 *
+	 * @param input       the input file
+	 * @param configHash  hash of the configuration, and of the options affecting the output
+	 * @param defaultOuts the default output files of the input, i.e. the ones the user is not asked about
+	 * @return true if the file is up-to-date
+	 */
+	boolean isUpToDate(@NotNull Path input, @NotNull String configHash, @NotNull List<Path> defaultOuts) {
+		Map<String, Object> entry = entries.get(input.toString());
+		if (entry == null || !configHash.equals(entry.get(CONFIG_HASH)) || !(entry.get(OUTPUTS) instanceof List))
+			return false;
+
+		try {
+			List<?> outputs = (List<?>) entry.get(OUTPUTS);
+			if (outputs.size() != defaultOuts.size())
+				return false;
+
+			boolean overwritten = false;
+			for (int i = 0; i < outputs.size(); ++i) {
+				Map<?, ?> output = (Map<?, ?>) outputs.get(i);
+				Path outputPath = Path.of((String) output.get(PATH));
+				Object defaultPath = output.get(DEFAULT_PATH);
+				if (!(defaultPath == null ? outputPath : Path.of((String) defaultPath)).equals(defaultOuts.get(i)))
+					return false; // e.g. the suffix or the profiles changed
+				if (!isUnchanged(outputPath, output.get(SIZE), output.get(MODIFIED), output.get(HASH)))
+					return false;
+				overwritten |= outputPath.equals(input);
+			}
+
+			// if the input was overwritten, it is the output
+			return overwritten
+				|| isUnchanged(input, entry.get(INPUT_SIZE), entry.get(INPUT_MODIFIED), entry.get(INPUT_HASH));
+		} catch (IOException | RuntimeException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Records that the input file has been purged
+	 *
+	 * @param input        the input file
+	 * @param inputHash    hash of the input contents, as they were read before purging. See {@link #sha256(byte[])}
+	 * @param inputAttrs   attributes of the input, as they were before reading it
+	 * @param configHash   hash of the configuration
+	 * @param outputs      the output files, already written
+	 * @param defaultOuts  the default output files, which differ from the outputs if the user chose other files
+	 * @param outputHashes hash of the contents written to each output file
+	 * @throws IOException if the attributes of some output file can't be read
+	 */
+	void record(@NotNull Path input, @NotNull String inputHash, @NotNull BasicFileAttributes inputAttrs,
+	            @NotNull String configHash, @NotNull List<Path> outputs, @NotNull List<Path> defaultOuts,
+	            @NotNull List<String> outputHashes) throws IOException {
+		List<Map<String, Object>> outputEntries = new ArrayList<>(outputs.size());
+		for (int i = 0; i < outputs.size(); ++i) {
+			BasicFileAttributes outputAttrs = Files.readAttributes(outputs.get(i), BasicFileAttributes.class);
+
+			Map<String, Object> outputEntry = new LinkedHashMap<>();
+			outputEntry.put(PATH, outputs.get(i).toString());
+			if (!outputs.get(i).equals(defaultOuts.get(i)))
+				outputEntry.put(DEFAULT_PATH, defaultOuts.get(i).toString());
+			outputEntry.put(HASH, outputHashes.get(i));
+			outputEntry.put(SIZE, outputAttrs.size());
+			outputEntry.put(MODIFIED, outputAttrs.lastModifiedTime().toMillis());
+			outputEntries.add(outputEntry);
+		}
+
+		Map<String, Object> entry = new LinkedHashMap<>();
+		entry.put(INPUT_HASH, inputHash);
+		entry.put(INPUT_SIZE, inputAttrs.size());
+		entry.put(INPUT_MODIFIED, inputAttrs.lastModifiedTime().toMillis());
+		entry.put(CONFIG_HASH, configHash);
+		entry.put(OUTPUTS, outputEntries);
+		entries.put(input.toString(), entry);
+	}
+
+	/**
+	 * Checks if a file still has the recorded contents.
+	 * If size and modification time are the same, the file is not read
+	 */
+	private static boolean isUnchanged(@NotNull Path file, @Nullable Object size, @Nullable Object modified,
+	                                   @Nullable Object hash) throws IOException {
+		if (!Files.exists(file) || !(size instanceof Number))
+			return false;
+
+		BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+		if (attrs.size() != ((Number) size).longValue())
+			return false;
+		if (modified instanceof Number && attrs.lastModifiedTime().toMillis() == ((Number) modified).longValue())
+			return true;
+
+		return sha256(Files.readAllBytes(file)).equals(hash);
+	}
+
+	/**
+	 * @param str the string
+	 * @return hex-encoded SHA-256 hash of the UTF-8 encoded string
+	 */
+	@NotNull
+	static String sha256(@NotNull String str) {
+		return sha256(str.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @param bytes the bytes
+	 * @return hex-encoded SHA-256 hash of the bytes
+	 */
+	@NotNull
+	static String sha256(@NotNull byte[] bytes) {
+		return hex(newSha256().digest(bytes));
+	}
+
+	/**
+	 * @return a new SHA-256 digest, for contents that are not completely in memory
+	 */
+	@NotNull
+	static MessageDigest newSha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) { // every JVM must support SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @param hash the hash
+	 * @return hex-encoded hash
+	 */
+	@NotNull
+	static String hex(@NotNull byte[] hash) {
+		StringBuilder hex = new StringBuilder(hash.length * 2);
+		for (byte b : hash)
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		return hex.toString();
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * A purge rule, as written in the configuration file
+ * <p>
+ * Example:
+ * <pre>
+ * rules:
+ *   - keep: (@GK ADMIN or @GK OPS) and not @Internal
+ *     on: [type, field]
+ *   - keep: /@GK\s+(PUBLIC|GUEST)/
+ * </pre>
+ * <p>
+ * A node is kept if the comment of the node satisfies the {@link #keep} expression of any rule that applies
+ * to the node. The expression language supports:
+ * <ul>
+ *     <li>{@code and}, {@code or}, {@code not} and parentheses</li>
+ *     <li>phrases: bare words, e.g. {@code @GK ADMIN}. A phrase matches if all its words are found
+ *     in the same line, in the given order (similar to {@link PurgeConfig#getKeepPatterns()} and
+ *     {@link PurgeConfig#getSecondKeepPatterns()})</li>
+ *     <li>quoted strings, e.g. {@code "@GK ADMIN"}. Matches if the comment contains exactly the given string.
+ *     Use {@code \"} to include a double quote</li>
+ *     <li>regular expressions, e.g. {@code /@GK\s+ADMIN/} or {@code /@gk admin/i} (case insensitive).
+ *     Use {@code \/} to include a slash</li>
+ * </ul>
+ * <p>
+ * When a node is kept, the first line matched by each satisfied (and not negated) phrase, string or
+ * regular expression is removed from its comment
+ */
+public class PurgeRule {
+	/**
+	 * Expression the comment of the node should satisfy to be kept
+	 */
+	@NotNull
+	private String keep;
+
+	/**
+	 * Kinds of nodes the rule applies to: any {@link net.benjaminguzman.parse.GQLKeyword}
+	 * (e.g. {@code type}, {@code input}, {@code enum}), {@code field} or {@code value} (enum values).
+	 * If null or empty, the rule applies to any node
+	 */
+	@Nullable
+	private List<String> on;
+
+	public PurgeRule(@NotNull String keep, @Nullable List<String> on) {
+		this.keep = keep;
+		this.on = on;
+	}
+
+	/**
+	 * No args constructor INTENDED TO BE USED ONLY by SnakeYAML
+	 */
+	public PurgeRule() {
+		this("", null);
+	}
+
+	public @NotNull String getKeep() {
+		return keep;
+	}
+
+	public void setKeep(@NotNull String keep) {
+		this.keep = keep;
+	}
+
+	public @Nullable List<String> getOn() {
+		return on;
+	}
+
+	public void setOn(@Nullable List<String> on) {
+		this.on = on;
+	}
+
+	@Override
+	public String toString() {
+		return "PurgeRule{" +
+			"keep='" + keep + '\'' +
+			", on=" + on +
+			'}';
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import net.benjaminguzman.parse.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Visitor that decides which nodes are kept by {@link Purge}
+ * <p>
+ * A node is kept if its comment contains a first keep pattern and, in the same line, a second keep pattern.
+ * The line containing the first pattern is removed from the comment of kept nodes.
+ * If the configuration has {@link PurgeRule}s, they're used instead.
+ * Scalars, directives, schema, Query and Mutation are always kept
+ * <p>
+ * Children of removed data types are not checked. This visitor keeps track of the data type being visited,
+ * so it is not thread-safe
+ */
+class PurgeVisitor implements GQLVisitor {
+	@NotNull
+	private final List<String> firstPatterns;
+
+	@NotNull
+	private final List<String> secondPatterns;
+
+	@NotNull
+	private final KeepMatcher matcher;
+
+	/**
+	 * If not null, rules are used instead of the keep patterns
+	 */
+	@Nullable
+	private final RuleSet rules;
+
+	/**
+	 * Nodes that may be kept. Any other node doesn't have a keep pattern in its comment.
+	 * If null, every node is a candidate
+	 */
+	@Nullable
+	private final Set<GQLDataType> candidates;
+
+	/**
+	 * If not null, decisions are recorded in it
+	 */
+	@Nullable
+	private final DecisionTrace trace;
+
+	/**
+	 * Whether the data type being visited is kept
+	 */
+	private boolean keepingDataType;
+
+	/**
+	 * The data type being visited. Only tracked if there is a {@link #trace}
+	 */
+	@Nullable
+	private GQLDataType dataType;
+
+	/**
+	 * @param config     purge configuration
+	 * @param candidates nodes that may be kept, or null if any node may be kept
+	 */
+	PurgeVisitor(@NotNull PurgeConfig config, @Nullable Set<GQLDataType> candidates) {
+		this(config, candidates, null);
+	}
+
+	/**
+	 * @param config     purge configuration
+	 * @param candidates nodes that may be kept, or null if any node may be kept
+	 * @param trace      if not null, why each visited node is kept or removed is recorded in it
+	 */
+	PurgeVisitor(@NotNull PurgeConfig config, @Nullable Set<GQLDataType> candidates,
+	             @Nullable DecisionTrace trace) {
+		this.firstPatterns = config.getKeepPatterns();
+		this.secondPatterns = config.getSecondKeepPatterns();
+		this.matcher = config.matcher();
+		this.rules = config.ruleSet();
+		this.candidates = candidates;
+		this.trace = trace;
+	}
+
+	@Override
+	public boolean visitDataType(@NotNull GQLDataType dataType) {
+		if (trace != null)
+			this.dataType = dataType;
+		return keepingDataType = keep(dataType, null);
+	}
+
+	@Override
+	public boolean visitField(@NotNull GQLField field) {
+		// fields of removed data types are removed anyway
+		return keepingDataType && keep(field, dataType);
+	}
+
+	@Override
+	public boolean visitEnumValue(@NotNull GQLEnum.EnumValue value) {
+		return keepingDataType && keep(value, dataType);
+	}
+
+	/**
+	 * Checks if the node should be kept and, if so, removes the "keep me" comment
+	 *
+	 * @param parent the data type of the node if it is a field or enum value. Only used by the {@link #trace}
+	 * @return true if the node should be kept
+	 */
+	private boolean keep(@NotNull GQLDataType node, @Nullable GQLDataType parent) {
+		String purgedComment = purgedComment(node);
+		if (trace != null)
+			explain(node, parent, trace);
+		if (purgedComment == null)
+			return false;
+
+		node.setComment(purgedComment);
+		return true;
+	}
+
+	/**
+	 * Decides if the node should be kept. The node is not modified, nor its children are checked
+	 *
+	 * @param node a data type, field or enum value
+	 * @return the comment the node should have once purged (blank if it shouldn't have a comment),
+	 * or null if the node should be removed
+	 */
+	@Nullable
+	String purgedComment(@NotNull GQLDataType node) {
+		String comment = node.getComment();
+		if (shouldBeForceKept(node)) {
+			if (rules != null)
+				return comment == null ? "" : comment;
+
+			// TODO but don't add keep comment if it already has it
+			//  usually this isn't the case so won't add more code
+			String keepComment = firstPatterns.get(0);
+			if (!secondPatterns.isEmpty())
+				keepComment += " " + secondPatterns.get(0);
+
+			return matcher.purgedComment(comment != null ? keepComment + "\n" + comment : keepComment + "\n");
+		}
+
+		// rules may keep nodes without comment, e.g. "not @Internal"
+		if (rules != null)
+			return rules.purgedComment(node, comment == null ? "" : comment);
+
+		if ((candidates != null && !candidates.contains(node)) || comment == null)
+			return null;
+
+		return matcher.purgedComment(comment);
+	}
+
+	/**
+	 * Records why the node is kept or removed, following the same steps as {@link #purgedComment(GQLDataType)}.
+	 * It should be called before the comment of the node is modified
+	 */
+	private void explain(@NotNull GQLDataType node, @Nullable GQLDataType parent, @NotNull DecisionTrace trace) {
+		String comment = node.getComment();
+		if (shouldBeForceKept(node)) {
+			trace.record(node, parent, DecisionTrace.Reason.ALWAYS_KEPT, null, null, null);
+		} else if (rules != null) {
+			String rule = rules.matchingRule(node, comment == null ? "" : comment);
+			trace.record(
+				node,
+				parent,
+				rule != null ? DecisionTrace.Reason.RULE_MATCHED : DecisionTrace.Reason.NO_RULE_MATCHED,
+				rule,
+				null,
+				null
+			);
+		} else if (comment == null) {
+			trace.record(node, parent, DecisionTrace.Reason.NO_COMMENT, null, null, null);
+		} else if (candidates != null && !candidates.contains(node)) {
+			trace.record(node, parent, DecisionTrace.Reason.NO_FIRST_PATTERN, null, null, null);
+		} else {
+			matcher.explain(comment, node, parent, trace);
+		}
+	}
+
+	/**
+	 * gql directive, schema, scalars, Query and Mutation are always kept
+	 */
+	private static boolean shouldBeForceKept(@NotNull GQLDataType dataType) {
+		if (dataType.getKeyword() == null)
+			return false;
+
+		switch (dataType.getKeyword()) {
+			case TYPE:
+				return isQueryOrMutation(dataType);
+			case DIRECTIVE:
+			case SCHEMA:
+			case SCALAR:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Decided by each node, so if there are several Query (or Mutation) types, all of them are kept
+	 *
+	 * @return true if the data type is a Query or Mutation type
+	 */
+	static boolean isQueryOrMutation(@NotNull GQLDataType dataType) {
+		if (dataType.getKeyword() != GQLKeyword.TYPE)
+			return false;
+		String name = dataType.alphaName();
+		return "Query".equals(name) || "Mutation".equals(name);
+	}
+}
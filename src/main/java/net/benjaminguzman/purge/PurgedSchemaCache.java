@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import net.benjaminguzman.parse.GQL;
+import net.benjaminguzman.parse.GQLSnapshot;
+import net.benjaminguzman.parse.InvalidGQLSyntax;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+/**
+ * Cache of purged schemas, keyed by schema version and profile (e.g. the role of the caller)
+ * <p>
+ * Schemas are purged with a {@link Purger} the first time they're requested. If several threads request the same
+ * missing schema at the same time, it is purged only once and all of them wait for it (single-flight).
+ * <p>
+ * The least recently used schemas are evicted when there are more than a maximum number of entries, or when the
+ * purged SDL of all entries exceeds a maximum number of characters. Schemas being purged are never evicted.
+ * Hits, misses and evictions are counted, see {@link #getStats()}
+ * <p>
+ * This class is thread-safe
+ */
+public class PurgedSchemaCache {
+	@NotNull
+	private final Purger purger;
+
+	private final int maxEntries;
+
+	private final long maxChars;
+
+	/**
+	 * Entries in access order, i.e. the least recently used is the first one. Guarded by {@code this}
+	 */
+	@NotNull
+	private final LinkedHashMap<Key, CompletableFuture<PurgedSchema>> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	/**
+	 * Number of characters of the SDL of all purged (completed) entries. Guarded by {@code this}
+	 */
+	private long chars;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param purger     purger for the schemas
+	 * @param maxEntries maximum number of purged schemas to keep
+	 * @param maxChars   maximum number of characters of the SDL of all purged schemas. Use {@link Long#MAX_VALUE}
+	 *                   to only limit the number of entries
+	 */
+	public PurgedSchemaCache(@NotNull Purger purger, int maxEntries, long maxChars) {
+		if (maxEntries < 1 || maxChars < 1)
+			throw new IllegalArgumentException("maxEntries and maxChars should be at least 1");
+		this.purger = purger;
+		this.maxEntries = maxEntries;
+		this.maxChars = maxChars;
+	}
+
+	/**
+	 * @param sdl GraphQL code of a schema
+	 * @return a version that identifies the schema, i.e. the hex-encoded SHA-256 hash of its code
+	 */
+	@NotNull
+	public static String versionOf(@NotNull CharSequence sdl) {
+		return PurgeManifest.sha256(sdl.toString());
+	}
+
+	/**
+	 * Gets a purged schema, purging it if it isn't cached
+	 *
+	 * @param version version of the schema, e.g. {@link #versionOf(CharSequence)} or the version given by a
+	 *                schema registry
+	 * @param profile profile the schema is purged with, or null if the configuration of the {@link Purger} has no
+	 *                profiles
+	 * @param schema  supplies the (complete) schema. It is called only if the purged schema isn't cached.
+	 *                Exceptions are thrown to every caller waiting for this schema, and nothing is cached
+	 * @return the purged schema
+	 * @throws IllegalArgumentException if the profile doesn't exist
+	 */
+	@NotNull
+	public PurgedSchema get(@NotNull String version, @Nullable String profile,
+	                        @NotNull Supplier<? extends GQL> schema) {
+		Key key = new Key(version, profile);
+		CompletableFuture<PurgedSchema> future;
+		boolean isLoader = false;
+		synchronized (this) {
+			future = entries.get(key);
+			if (future == null) {
+				future = new CompletableFuture<>();
+				entries.put(key, future);
+				isLoader = true;
+				++misses;
+			} else
+				++hits;
+		}
+
+		if (!isLoader)
+			return join(future);
+
+		PurgedSchema purged;
+		try {
+			GQL gql = schema.get();
+			GQLSnapshot purgedGraph = profile == null ? purger.purge(gql) : purger.purgeProfile(gql, profile);
+			purged = new PurgedSchema(version, profile, purgedGraph, purgedGraph + "\n");
+		} catch (RuntimeException | Error e) {
+			synchronized (this) {
+				entries.remove(key, future);
+			}
+			future.completeExceptionally(e);
+			throw e;
+		}
+
+		// completed under the lock, so evict() and invalidate() don't subtract the weight of an entry that wasn't
+		// added to chars yet
+		synchronized (this) {
+			future.complete(purged);
+			if (entries.get(key) == future) { // it may have been invalidated meanwhile
+				chars += purged.sdl.length();
+				evict();
+			}
+		}
+		return purged;
+	}
+
+	/**
+	 * Same as {@link #get(String, String, Supplier)}, but the schema is given as GraphQL code.
+	 * The version of the schema is {@link #versionOf(CharSequence)}
+	 *
+	 * @param sdl     GraphQL code of the schema. It is parsed only if the purged schema isn't cached
+	 * @param profile profile the schema is purged with, or null if the configuration has no profiles
+	 * @return the purged schema
+	 * @throws InvalidGQLSyntax if the code has invalid GraphQL syntax
+	 */
+	@NotNull
+	public PurgedSchema get(@NotNull CharSequence sdl, @Nullable String profile) throws InvalidGQLSyntax {
+		try {
+			return get(versionOf(sdl), profile, () -> {
+				try {
+					return GQL.from(sdl.toString(), purger.indexesAnnotations());
+				} catch (InvalidGQLSyntax e) {
+					throw new CompletionException(e);
+				}
+			});
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof InvalidGQLSyntax)
+				throw (InvalidGQLSyntax) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Removes all the purged schemas of the given version, e.g. when a new version of the schema is deployed
+	 *
+	 * @param version version of the schema
+	 */
+	public synchronized void invalidate(@NotNull String version) {
+		Iterator<Map.Entry<Key, CompletableFuture<PurgedSchema>>> it = entries.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Key, CompletableFuture<PurgedSchema>> entry = it.next();
+			if (entry.getKey().version.equals(version)) {
+				chars -= weight(entry.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Removes all purged schemas. Statistics are not reset
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		chars = 0;
+	}
+
+	/**
+	 * @return current statistics
+	 */
+	@NotNull
+	public synchronized Stats getStats() {
+		return new Stats(hits, misses, evictions, entries.size(), chars);
+	}
+
+	/**
+	 * Evicts the least recently used entries until the limits are met. Entries being purged are skipped
+	 */
+	private void evict() {
+		assert Thread.holdsLock(this);
+		Iterator<CompletableFuture<PurgedSchema>> it = entries.values().iterator();
+		while ((entries.size() > maxEntries || chars > maxChars) && it.hasNext()) {
+			CompletableFuture<PurgedSchema> future = it.next();
+			if (!future.isDone())
+				continue;
+
+			chars -= weight(future);
+			it.remove();
+			++evictions;
+		}
+	}
+
+	/**
+	 * @return number of characters of the purged SDL, or 0 if the schema is still being purged or failed
+	 */
+	private static long weight(@NotNull CompletableFuture<PurgedSchema> future) {
+		PurgedSchema purged = future.getNow(null);
+		return purged == null ? 0 : purged.sdl.length();
+	}
+
+	@NotNull
+	private static PurgedSchema join(@NotNull CompletableFuture<PurgedSchema> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			if (e.getCause() instanceof Error)
+				throw (Error) e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * A purged schema, both as a graph and as GraphQL code
+	 */
+	public static final class PurgedSchema {
+		@NotNull
+		private final String version;
+
+		@Nullable
+		private final String profile;
+
+		@NotNull
+		private final GQLSnapshot schema;
+
+		@NotNull
+		private final String sdl;
+
+		private PurgedSchema(@NotNull String version, @Nullable String profile, @NotNull GQLSnapshot schema,
+		                     @NotNull String sdl) {
+			this.version = version;
+			this.profile = profile;
+			this.schema = schema;
+			this.sdl = sdl;
+		}
+
+		/**
+		 * @return version of the (complete) schema
+		 */
+		@NotNull
+		public String getVersion() {
+			return version;
+		}
+
+		/**
+		 * @return profile the schema was purged with, or null if the configuration has no profiles
+		 */
+		@Nullable
+		public String getProfile() {
+			return profile;
+		}
+
+		/**
+		 * @return the purged schema
+		 */
+		@NotNull
+		public GQLSnapshot getSchema() {
+			return schema;
+		}
+
+		/**
+		 * @return GraphQL code of the purged schema, exactly as the purge command would write it
+		 */
+		@NotNull
+		public String getSdl() {
+			return sdl;
+		}
+	}
+
+	/**
+	 * Statistics of the cache at some point in time
+	 */
+	public static final class Stats {
+		private final long hits;
+		private final long misses;
+		private final long evictions;
+		private final int size;
+		private final long chars;
+
+		private Stats(long hits, long misses, long evictions, int size, long chars) {
+			this.hits = hits;
+			this.misses = misses;
+			this.evictions = evictions;
+			this.size = size;
+			this.chars = chars;
+		}
+
+		/**
+		 * @return number of requests served from the cache, including the ones that waited for another request to
+		 * purge the schema
+		 */
+		public long getHits() {
+			return hits;
+		}
+
+		/**
+		 * @return number of requests that purged a schema
+		 */
+		public long getMisses() {
+			return misses;
+		}
+
+		/**
+		 * @return number of schemas evicted to meet the limits
+		 */
+		public long getEvictions() {
+			return evictions;
+		}
+
+		/**
+		 * @return number of cached schemas, including the ones being purged
+		 */
+		public int getSize() {
+			return size;
+		}
+
+		/**
+		 * @return number of characters of the SDL of all cached schemas
+		 */
+		public long getChars() {
+			return chars;
+		}
+
+		@Override
+		public String toString() {
+			return "Stats{" +
+				"hits=" + hits +
+				", misses=" + misses +
+				", evictions=" + evictions +
+				", size=" + size +
+				", chars=" + chars +
+				'}';
+		}
+	}
+
+	private static final class Key {
+		@NotNull
+		private final String version;
+
+		@Nullable
+		private final String profile;
+
+		private Key(@NotNull String version, @Nullable String profile) {
+			this.version = version;
+			this.profile = profile;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			Key key = (Key) o;
+			return version.equals(key.version) && Objects.equals(profile, key.profile);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(version, profile);
+		}
+	}
+}
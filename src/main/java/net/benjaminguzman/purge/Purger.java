@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import net.benjaminguzman.ConfigurationException;
+import net.benjaminguzman.parse.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Purges schemas in memory, for in-process use (e.g. inside a gateway)
+ * <p>
+ * A purger is built once from a {@link PurgeConfig}: keep patterns and rules are compiled by the constructor, so
+ * configuration errors are reported up front. After that, purging doesn't touch the file system nor stdin.
+ * <p>
+ * Purging is not silent, though: parsing with {@link GQL#from(String, boolean)} logs through
+ * {@code java.util.logging} (e.g. the {@code net.benjaminguzman.parse} loggers warn about unrecognized code), and
+ * so does {@link PurgeConfigConverter} when loading a configuration file. Configure those loggers to silence them
+ * <p>
+ * A purger is thread-safe and can be reused for any number of schemas, as long as the configuration is not modified
+ * after building it. Decisions memoized while purging a schema are reused for the next ones
+ * <p>
+ * Example:
+ * <pre>{@code
+ * Purger purger = new Purger(new PurgeConfig(List.of("@GK")));
+ * String purged = purger.purge(sdl);
+ * }</pre>
+ */
+public final class Purger {
+	/**
+	 * Configuration for each profile, or a single configuration if there are no profiles
+	 */
+	@NotNull
+	private final List<PurgeConfig> profiles;
+
+	/**
+	 * Name of each profile. Empty if there are no profiles
+	 */
+	@NotNull
+	private final List<String> profileNames;
+
+	/**
+	 * If true, annotations are indexed while parsing, so only annotated nodes are checked
+	 */
+	private final boolean indexAnnotations;
+
+	/**
+	 * Builds a purger and compiles the configuration
+	 *
+	 * @param config the configuration. It may have profiles, see {@link PurgeConfig#getProfiles()}
+	 * @throws ConfigurationException if some rule is not valid or there are too many profiles
+	 */
+	public Purger(@NotNull PurgeConfig config) throws ConfigurationException {
+		if (config.getProfiles().size() > ProfilesVisitor.MAX_PROFILES)
+			throw new ConfigurationException("At most " + ProfilesVisitor.MAX_PROFILES + " profiles are supported");
+
+		if (config.getProfiles().isEmpty()) {
+			this.profiles = List.of(config);
+			this.profileNames = Collections.emptyList();
+		} else {
+			this.profiles = List.copyOf(config.getProfiles().values());
+			this.profileNames = List.copyOf(config.getProfiles().keySet());
+		}
+
+		for (PurgeConfig profile : profiles) {
+			profile.compileRules();
+			profile.matcher();
+		}
+		this.indexAnnotations = profiles.stream().anyMatch(profile -> profile.keepAnnotationNames() != null);
+	}
+
+	/**
+	 * Purges GraphQL code
+	 *
+	 * @param sdl the GraphQL code
+	 * @return the purged GraphQL code, exactly as the purge command would write it
+	 * @throws InvalidGQLSyntax      if the code has invalid GraphQL syntax
+	 * @throws IllegalStateException if the configuration has profiles. Use {@link #purgeProfiles(CharSequence)}
+	 */
+	@NotNull
+	public String purge(@NotNull CharSequence sdl) throws InvalidGQLSyntax {
+		requireNoProfiles();
+		GQL abstractSyntaxGraph = GQL.from(sdl.toString(), indexAnnotations);
+		abstractSyntaxGraph.setDataTypes(purgeInPlace(abstractSyntaxGraph, null, null));
+		return abstractSyntaxGraph + "\n";
+	}
+
+	/**
+	 * Purges a graph. The graph is not modified
+	 * <p>
+	 * The result shares all the nodes that are not modified with a snapshot of the graph
+	 * (see {@link GQLSnapshot#filter(GQLView)}), so purging a snapshot costs memory only for the modified nodes
+	 *
+	 * @param abstractSyntaxGraph the graph. If its annotations were indexed, only annotated nodes are checked
+	 * @return the purged graph
+	 * @throws IllegalStateException if the configuration has profiles. Use {@link #purgeProfiles(GQL)}
+	 */
+	@NotNull
+	public GQLSnapshot purge(@NotNull GQL abstractSyntaxGraph) {
+		requireNoProfiles();
+		GQLSnapshot snapshot = abstractSyntaxGraph.snapshot();
+		return snapshot.filter(decide(snapshot).view(0));
+	}
+
+	/**
+	 * Purges GraphQL code with each profile
+	 *
+	 * @param sdl the GraphQL code
+	 * @return the purged GraphQL code by profile name, in the same order profiles were given
+	 * @throws InvalidGQLSyntax      if the code has invalid GraphQL syntax
+	 * @throws IllegalStateException if the configuration has no profiles. Use {@link #purge(CharSequence)}
+	 */
+	@NotNull
+	public Map<String, String> purgeProfiles(@NotNull CharSequence sdl) throws InvalidGQLSyntax {
+		requireProfiles();
+		GQL abstractSyntaxGraph = GQL.from(sdl.toString(), indexAnnotations);
+		ProfilesVisitor profilesVisitor = decide(abstractSyntaxGraph);
+
+		Map<String, String> outputs = new LinkedHashMap<>();
+		for (int i = 0; i < profileNames.size(); ++i)
+			outputs.put(profileNames.get(i), abstractSyntaxGraph.toString(profilesVisitor.view(i)) + "\n");
+		return outputs;
+	}
+
+	/**
+	 * Purges a graph with each profile. The graph is not modified
+	 * <p>
+	 * All the purged graphs share the nodes they don't modify with a single snapshot of the graph
+	 *
+	 * @param abstractSyntaxGraph the graph. If its annotations were indexed, only annotated nodes are checked
+	 * @return the purged graph by profile name, in the same order profiles were given
+	 * @throws IllegalStateException if the configuration has no profiles. Use {@link #purge(GQL)}
+	 */
+	@NotNull
+	public Map<String, GQLSnapshot> purgeProfiles(@NotNull GQL abstractSyntaxGraph) {
+		requireProfiles();
+		GQLSnapshot snapshot = abstractSyntaxGraph.snapshot();
+		ProfilesVisitor profilesVisitor = decide(snapshot);
+
+		Map<String, GQLSnapshot> outputs = new LinkedHashMap<>();
+		for (int i = 0; i < profileNames.size(); ++i)
+			outputs.put(profileNames.get(i), snapshot.filter(profilesVisitor.view(i)));
+		return outputs;
+	}
+
+	/**
+	 * Purges a graph with a single profile. The graph is not modified
+	 * <p>
+	 * Same as {@code purgeProfiles(abstractSyntaxGraph).get(profile)}, but only the given profile is checked
+	 *
+	 * @param abstractSyntaxGraph the graph. If its annotations were indexed, only annotated nodes are checked
+	 * @param profile             name of the profile
+	 * @return the purged graph
+	 * @throws IllegalArgumentException if there is no such profile
+	 */
+	@NotNull
+	public GQLSnapshot purgeProfile(@NotNull GQL abstractSyntaxGraph, @NotNull String profile) {
+		int profileIdx = profileNames.indexOf(profile);
+		if (profileIdx == -1)
+			throw new IllegalArgumentException("There is no profile named '" + profile + "'");
+
+		GQLSnapshot snapshot = abstractSyntaxGraph.snapshot();
+		return snapshot.filter(decide(snapshot, List.of(profiles.get(profileIdx))).view(0));
+	}
+
+	/**
+	 * @return names of the profiles, in the same order they were given. Empty if there are no profiles
+	 */
+	@NotNull
+	public List<String> getProfileNames() {
+		return profileNames;
+	}
+
+	/**
+	 * @return true if annotations should be indexed while parsing, so only annotated nodes are checked
+	 * @see GQL#from(String, boolean)
+	 */
+	public boolean indexesAnnotations() {
+		return indexAnnotations;
+	}
+
+	/**
+	 * Purges the given graph in place, i.e. comments, fields and enum values of the data types are modified.
+	 * The data types of the graph are not replaced
+	 *
+	 * @param abstractSyntaxGraph the graph, it must be mutable
+	 * @param cascade             if not null, references to removed data types are removed too
+	 * @param trace               if not null, why each node is kept or removed is recorded in it
+	 * @return the data types that were kept
+	 */
+	@NotNull
+	List<GQLDataType> purgeInPlace(@NotNull GQL abstractSyntaxGraph, @Nullable Cascade cascade,
+	                               @Nullable DecisionTrace trace) {
+		requireNoProfiles();
+		PurgeConfig config = profiles.get(0);
+
+		PurgeVisitor purgeVisitor = new PurgeVisitor(config, candidates(abstractSyntaxGraph, config), trace);
+		List<GQLDataType> kept = new GQLWalker(purgeVisitor).transform(abstractSyntaxGraph.getDataTypes());
+
+		if (cascade != null)
+			kept = cascade.apply(
+				abstractSyntaxGraph.getDataTypes(),
+				kept,
+				// Query and Mutation types should always be kept
+				abstractSyntaxGraph.getDataTypes()
+					.stream()
+					.filter(PurgeVisitor::isQueryOrMutation)
+					.collect(Collectors.toList())
+			);
+		return kept;
+	}
+
+	/**
+	 * Decides which nodes each profile keeps, without modifying the graph
+	 * <p>
+	 * If there are no profiles, the configuration is the only profile
+	 *
+	 * @param abstractSyntaxGraph the graph
+	 * @return the decisions. {@link ProfilesVisitor#view(int)} shows what each profile keeps
+	 */
+	@NotNull
+	ProfilesVisitor decide(@NotNull GQL abstractSyntaxGraph) {
+		return decide(abstractSyntaxGraph, profiles);
+	}
+
+	@NotNull
+	private static ProfilesVisitor decide(@NotNull GQL abstractSyntaxGraph, @NotNull List<PurgeConfig> profiles) {
+		List<PurgeVisitor> profileVisitors = new ArrayList<>(profiles.size());
+		for (PurgeConfig profile : profiles)
+			profileVisitors.add(new PurgeVisitor(profile, candidates(abstractSyntaxGraph, profile)));
+
+		ProfilesVisitor profilesVisitor = new ProfilesVisitor(profileVisitors);
+		new GQLWalker(profilesVisitor).walk(abstractSyntaxGraph.getDataTypes());
+		return profilesVisitor;
+	}
+
+	/**
+	 * @return nodes that may be kept with the given configuration. Any other node doesn't have a keep pattern
+	 * in its comment. Null if any node may be kept, or if annotations of the graph were not indexed
+	 */
+	@Nullable
+	private static Set<GQLDataType> candidates(@NotNull GQL abstractSyntaxGraph, @NotNull PurgeConfig config) {
+		List<String> keepAnnotations = config.keepAnnotationNames();
+		AnnotationIndex annotations = abstractSyntaxGraph.getAnnotations();
+		return keepAnnotations == null || annotations == null ? null : annotations.getNodes(keepAnnotations);
+	}
+
+	private void requireNoProfiles() {
+		if (!profileNames.isEmpty())
+			throw new IllegalStateException("The configuration has profiles, purge each one of them instead");
+	}
+
+	private void requireProfiles() {
+		if (profileNames.isEmpty())
+			throw new IllegalStateException("The configuration has no profiles");
+	}
+}
@@ -0,0 +1,470 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import net.benjaminguzman.ConfigurationException;
+import net.benjaminguzman.parse.GQL;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled expression of a {@link PurgeRule}
+ * <p>
+ * Literals (phrase words and quoted strings) are not searched by the expression itself. Instead, all literals
+ * of all rules are found in a single scan (see {@link RuleSet}) and expressions only look at the positions of
+ * the occurrences, which are given by a {@link Subject}
+ * <p>
+ * Children of {@code and} and {@code or} are sorted by their cost, so cheap checks short-circuit
+ * expensive ones (e.g. regular expressions)
+ */
+abstract class RuleExpression {
+	/**
+	 * @param subject the comment being evaluated
+	 * @return true if the comment satisfies the expression
+	 */
+	abstract boolean matches(@NotNull Subject subject);
+
+	/**
+	 * Adds the start index of the first line matched by each satisfied, not negated, literal or regular
+	 * expression. Only meaningful if the expression matches
+	 *
+	 * @param subject    the comment being evaluated
+	 * @param lineStarts where line start indices are added
+	 */
+	abstract void matchedLines(@NotNull Subject subject, @NotNull Collection<Integer> lineStarts);
+
+	/**
+	 * @return estimated cost of evaluating the expression
+	 */
+	abstract int cost();
+
+	/**
+	 * A comment and the occurrences of every literal in it
+	 */
+	static final class Subject {
+		@NotNull
+		final String comment;
+
+		/**
+		 * Start indices of the occurrences of each literal, sorted
+		 */
+		@NotNull
+		private final int[][] starts;
+
+		/**
+		 * Number of occurrences of each literal
+		 */
+		@NotNull
+		private final int[] counts;
+
+		@NotNull
+		private final int[] literalLengths;
+
+		/**
+		 * Start index of the first match of each regular expression. -1 if it doesn't match,
+		 * -2 if it has not been evaluated
+		 */
+		@NotNull
+		private final int[] regexMatches;
+
+		Subject(@NotNull String comment, @NotNull int[] literalLengths, int nRegexes) {
+			this.comment = comment;
+			this.literalLengths = literalLengths;
+			this.starts = new int[literalLengths.length][];
+			this.counts = new int[literalLengths.length];
+			this.regexMatches = new int[nRegexes];
+			Arrays.fill(regexMatches, -2);
+		}
+
+		void addOccurrence(int literal, int startIdx) {
+			int[] literalStarts = starts[literal];
+			if (literalStarts == null)
+				starts[literal] = literalStarts = new int[4];
+			else if (counts[literal] == literalStarts.length)
+				starts[literal] = literalStarts = Arrays.copyOf(literalStarts, literalStarts.length * 2);
+			literalStarts[counts[literal]++] = startIdx;
+		}
+
+		/**
+		 * @return start index of the first occurrence of the literal at or after the given index, or -1
+		 */
+		private int occurrenceFrom(int literal, int fromIdx) {
+			if (counts[literal] == 0)
+				return -1;
+			int idx = Arrays.binarySearch(starts[literal], 0, counts[literal], fromIdx);
+			if (idx < 0)
+				idx = -idx - 1;
+			return idx < counts[literal] ? starts[literal][idx] : -1;
+		}
+
+		private int regexMatch(int regex, @NotNull Pattern pattern) {
+			if (regexMatches[regex] == -2) {
+				Matcher matcher = pattern.matcher(comment);
+				regexMatches[regex] = matcher.find() ? matcher.start() : -1;
+			}
+			return regexMatches[regex];
+		}
+
+		private int lineStart(int idx) {
+			return comment.lastIndexOf('\n', idx - 1) + 1;
+		}
+	}
+
+	/**
+	 * Parses an expression
+	 *
+	 * @param expression the expression
+	 * @param literals   literals found so far (in any rule) by id. New literals are added
+	 * @param regexes    regular expressions found so far (in any rule). New ones are added
+	 * @return the compiled expression
+	 * @throws ConfigurationException if the expression is not valid
+	 */
+	@NotNull
+	static RuleExpression parse(@NotNull String expression, @NotNull Map<String, Integer> literals,
+	                            @NotNull List<Pattern> regexes) throws ConfigurationException {
+		return new Parser(expression, literals, regexes).parse();
+	}
+
+	/**
+	 * Words in the same line, in order
+	 */
+	private static final class Phrase extends RuleExpression {
+		private final int[] words;
+
+		private Phrase(int[] words) {
+			this.words = words;
+		}
+
+		@Override
+		boolean matches(@NotNull Subject subject) {
+			return firstMatch(subject) != -1;
+		}
+
+		/**
+		 * @return start index of the first match, or -1
+		 */
+		private int firstMatch(@NotNull Subject subject) {
+			for (int i = 0; i < subject.counts[words[0]]; ++i) {
+				int startIdx = subject.starts[words[0]][i];
+				int lineEndIdx = GQL.lineEndIdx(subject.comment, startIdx);
+				int idx = startIdx + subject.literalLengths[words[0]];
+				boolean found = true;
+				for (int w = 1; w < words.length && found; ++w) {
+					int wordIdx = subject.occurrenceFrom(words[w], idx);
+					found = wordIdx != -1 && wordIdx + subject.literalLengths[words[w]] <= lineEndIdx;
+					idx = wordIdx + subject.literalLengths[words[w]];
+				}
+				if (found)
+					return startIdx;
+			}
+			return -1;
+		}
+
+		@Override
+		void matchedLines(@NotNull Subject subject, @NotNull Collection<Integer> lineStarts) {
+			int startIdx = firstMatch(subject);
+			if (startIdx != -1)
+				lineStarts.add(subject.lineStart(startIdx));
+		}
+
+		@Override
+		int cost() {
+			return words.length;
+		}
+	}
+
+	/**
+	 * Regular expression
+	 */
+	private static final class Regex extends RuleExpression {
+		private final int id;
+
+		@NotNull
+		private final Pattern pattern;
+
+		private Regex(int id, @NotNull Pattern pattern) {
+			this.id = id;
+			this.pattern = pattern;
+		}
+
+		@Override
+		boolean matches(@NotNull Subject subject) {
+			return subject.regexMatch(id, pattern) != -1;
+		}
+
+		@Override
+		void matchedLines(@NotNull Subject subject, @NotNull Collection<Integer> lineStarts) {
+			int startIdx = subject.regexMatch(id, pattern);
+			if (startIdx != -1)
+				lineStarts.add(subject.lineStart(startIdx));
+		}
+
+		@Override
+		int cost() {
+			return 16;
+		}
+	}
+
+	private static final class Not extends RuleExpression {
+		@NotNull
+		private final RuleExpression expression;
+
+		private Not(@NotNull RuleExpression expression) {
+			this.expression = expression;
+		}
+
+		@Override
+		boolean matches(@NotNull Subject subject) {
+			return !expression.matches(subject);
+		}
+
+		@Override
+		void matchedLines(@NotNull Subject subject, @NotNull Collection<Integer> lineStarts) {
+			// negated expressions don't match lines
+		}
+
+		@Override
+		int cost() {
+			return expression.cost();
+		}
+	}
+
+	/**
+	 * {@code and} or {@code or}
+	 */
+	private static final class Junction extends RuleExpression {
+		private final boolean isAnd;
+
+		@NotNull
+		private final RuleExpression[] expressions;
+
+		private final int cost;
+
+		private Junction(boolean isAnd, @NotNull List<RuleExpression> expressions) {
+			this.isAnd = isAnd;
+			this.expressions = expressions.toArray(new RuleExpression[0]);
+			// cheapest expressions first
+			Arrays.sort(this.expressions, Comparator.comparingInt(RuleExpression::cost));
+			this.cost = expressions.stream().mapToInt(RuleExpression::cost).sum();
+		}
+
+		@Override
+		boolean matches(@NotNull Subject subject) {
+			for (RuleExpression expression : expressions)
+				if (expression.matches(subject) != isAnd)
+					return !isAnd;
+			return isAnd;
+		}
+
+		@Override
+		void matchedLines(@NotNull Subject subject, @NotNull Collection<Integer> lineStarts) {
+			for (RuleExpression expression : expressions)
+				if (expression.matches(subject))
+					expression.matchedLines(subject, lineStarts);
+		}
+
+		@Override
+		int cost() {
+			return cost;
+		}
+	}
+
+	/**
+	 * Recursive descent parser. Grammar:
+	 * <pre>
+	 * or     := and ("or" and)*
+	 * and    := unary ("and" unary)*
+	 * unary  := "not" unary | "(" or ")" | STRING | REGEX | WORD+
+	 * </pre>
+	 */
+	private static final class Parser {
+		@NotNull
+		private final String src;
+
+		@NotNull
+		private final Map<String, Integer> literals;
+
+		@NotNull
+		private final List<Pattern> regexes;
+
+		private int idx;
+
+		private Parser(@NotNull String src, @NotNull Map<String, Integer> literals, @NotNull List<Pattern> regexes) {
+			this.src = src;
+			this.literals = literals;
+			this.regexes = regexes;
+		}
+
+		@NotNull
+		private RuleExpression parse() throws ConfigurationException {
+			RuleExpression expression = parseOr();
+			skipWhitespace();
+			if (idx < src.length())
+				throw error("Unexpected '" + src.charAt(idx) + "'");
+			return expression;
+		}
+
+		@NotNull
+		private RuleExpression parseOr() throws ConfigurationException {
+			List<RuleExpression> expressions = new ArrayList<>();
+			expressions.add(parseAnd());
+			while (consumeKeyword("or"))
+				expressions.add(parseAnd());
+			return expressions.size() == 1 ? expressions.get(0) : new Junction(false, expressions);
+		}
+
+		@NotNull
+		private RuleExpression parseAnd() throws ConfigurationException {
+			List<RuleExpression> expressions = new ArrayList<>();
+			expressions.add(parseUnary());
+			while (consumeKeyword("and"))
+				expressions.add(parseUnary());
+			return expressions.size() == 1 ? expressions.get(0) : new Junction(true, expressions);
+		}
+
+		@NotNull
+		private RuleExpression parseUnary() throws ConfigurationException {
+			if (consumeKeyword("not"))
+				return new Not(parseUnary());
+
+			skipWhitespace();
+			if (idx == src.length())
+				throw error("Expression expected");
+
+			char c = src.charAt(idx);
+			if (c == '(') {
+				++idx;
+				RuleExpression expression = parseOr();
+				skipWhitespace();
+				if (idx == src.length() || src.charAt(idx) != ')')
+					throw error("')' expected");
+				++idx;
+				return expression;
+			}
+			if (c == '"')
+				return new Phrase(new int[]{literal(parseQuoted('"'))});
+			if (c == '/')
+				return parseRegex();
+
+			// phrase: words until an operator, a parenthesis, a string or a regex
+			List<Integer> words = new ArrayList<>();
+			while (true) {
+				skipWhitespace();
+				if (idx == src.length() || isKeyword("and") || isKeyword("or") || isKeyword("not"))
+					break;
+				c = src.charAt(idx);
+				if (c == '(' || c == ')' || c == '"' || c == '/')
+					break;
+
+				int startIdx = idx;
+				while (idx < src.length() && !isDelimiter(src.charAt(idx)))
+					++idx;
+				words.add(literal(src.substring(startIdx, idx)));
+			}
+			if (words.isEmpty())
+				throw error("Expression expected");
+
+			return new Phrase(words.stream().mapToInt(Integer::intValue).toArray());
+		}
+
+		@NotNull
+		private RuleExpression parseRegex() throws ConfigurationException {
+			String regex = parseQuoted('/');
+			int flags = 0;
+			if (idx < src.length() && src.charAt(idx) == 'i') {
+				flags = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+				++idx;
+			}
+
+			try {
+				Pattern pattern = Pattern.compile(regex, flags);
+				regexes.add(pattern);
+				return new Regex(regexes.size() - 1, pattern);
+			} catch (PatternSyntaxException e) {
+				throw error("Invalid regular expression /" + regex + "/. " + e.getDescription());
+			}
+		}
+
+		/**
+		 * Parses a string delimited by the given char. Inside the string, the delimiter can be escaped with '\'
+		 */
+		@NotNull
+		private String parseQuoted(char delimiter) throws ConfigurationException {
+			int startIdx = idx++;
+			StringBuilder builder = new StringBuilder();
+			while (idx < src.length() && src.charAt(idx) != delimiter) {
+				char c = src.charAt(idx++);
+				if (c != '\\' || idx == src.length()) {
+					builder.append(c);
+					continue;
+				}
+
+				char next = src.charAt(idx++);
+				if (next == delimiter || (delimiter == '"' && next == '\\'))
+					builder.append(next);
+				else // keep other escape sequences, e.g. \s in regular expressions
+					builder.append(c).append(next);
+			}
+			if (idx == src.length()) {
+				idx = startIdx;
+				throw error("Unterminated " + (delimiter == '"' ? "string" : "regular expression"));
+			}
+			++idx;
+
+			if (builder.length() == 0)
+				throw error("Empty " + (delimiter == '"' ? "string" : "regular expression"));
+			return builder.toString();
+		}
+
+		private int literal(@NotNull String literal) {
+			return literals.computeIfAbsent(literal, k -> literals.size());
+		}
+
+		private boolean consumeKeyword(@NotNull String keyword) {
+			skipWhitespace();
+			if (!isKeyword(keyword))
+				return false;
+			idx += keyword.length();
+			return true;
+		}
+
+		private boolean isKeyword(@NotNull String keyword) {
+			return src.startsWith(keyword, idx)
+				&& (idx + keyword.length() == src.length() || isDelimiter(src.charAt(idx + keyword.length())));
+		}
+
+		private static boolean isDelimiter(char c) {
+			return Character.isWhitespace(c) || c == '(' || c == ')' || c == '"';
+		}
+
+		private void skipWhitespace() {
+			while (idx < src.length() && Character.isWhitespace(src.charAt(idx)))
+				++idx;
+		}
+
+		@NotNull
+		private ConfigurationException error(@NotNull String message) {
+			return new ConfigurationException(message + " at index " + idx + " of rule \"" + src + "\"");
+		}
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import net.benjaminguzman.ConfigurationException;
+import net.benjaminguzman.parse.GQLDataType;
+import net.benjaminguzman.parse.GQLField;
+import net.benjaminguzman.parse.GQLKeyword;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * {@link PurgeRule}s compiled to be evaluated efficiently
+ * <p>
+ * Expressions are parsed and regular expressions are compiled only once. Literals of all rules are compiled
+ * into a single {@link AhoCorasick} automaton, so each comment is scanned only once no matter how many rules
+ * or literals there are. Like {@link KeepMatcher}, decisions are memoized by comment (and kind of node)
+ * <p>
+ * This class is thread-safe
+ */
+class RuleSet {
+	/**
+	 * Maximum number of memoized decisions per kind of node
+	 */
+	private static final int MAX_MEMOIZED = 1 << 16;
+
+	/**
+	 * Kinds of nodes rules can be applied to. Keywords use their ordinal
+	 */
+	private static final int FIELD = GQLKeyword.values().length, ENUM_VALUE = FIELD + 1, N_KINDS = FIELD + 2;
+
+	@NotNull
+	private final RuleExpression[] expressions;
+
+	/**
+	 * Expression of each rule, as written in the configuration
+	 */
+	@NotNull
+	private final String[] sources;
+
+	/**
+	 * Bitmask with the kinds of nodes each rule applies to
+	 */
+	@NotNull
+	private final int[] kinds;
+
+	@NotNull
+	private final AhoCorasick automaton;
+
+	@NotNull
+	private final int[] literalLengths;
+
+	private final int nRegexes;
+
+	/**
+	 * Memoized decisions by kind and comment. An empty value means the node should be removed
+	 */
+	@NotNull
+	private final List<Map<String, Optional<String>>> decisions = new ArrayList<>(N_KINDS);
+
+	private RuleSet(@NotNull RuleExpression[] expressions, @NotNull String[] sources, @NotNull int[] kinds,
+	                @NotNull List<String> literals, int nRegexes) {
+		this.expressions = expressions;
+		this.sources = sources;
+		this.kinds = kinds;
+		this.automaton = new AhoCorasick(literals);
+		this.literalLengths = literals.stream().mapToInt(String::length).toArray();
+		this.nRegexes = nRegexes;
+		for (int i = 0; i < N_KINDS; ++i)
+			decisions.add(new ConcurrentHashMap<>());
+	}
+
+	/**
+	 * Compiles the given rules
+	 *
+	 * @param rules the rules
+	 * @return the compiled rules
+	 * @throws ConfigurationException if some rule is not valid
+	 */
+	@NotNull
+	static RuleSet compile(@NotNull List<PurgeRule> rules) throws ConfigurationException {
+		Map<String, Integer> literals = new LinkedHashMap<>();
+		List<Pattern> regexes = new ArrayList<>();
+		RuleExpression[] expressions = new RuleExpression[rules.size()];
+		String[] sources = new String[rules.size()];
+		int[] kinds = new int[rules.size()];
+		for (int i = 0; i < rules.size(); ++i) {
+			PurgeRule rule = rules.get(i);
+			expressions[i] = RuleExpression.parse(rule.getKeep(), literals, regexes);
+			sources[i] = rule.getKeep();
+			kinds[i] = parseKinds(rule.getOn());
+		}
+
+		return new RuleSet(expressions, sources, kinds, new ArrayList<>(literals.keySet()), regexes.size());
+	}
+
+	private static int parseKinds(@Nullable List<String> on) throws ConfigurationException {
+		if (on == null || on.isEmpty())
+			return (1 << N_KINDS) - 1;
+
+		int mask = 0;
+		for (String kind : on) {
+			switch (kind) {
+				case "field":
+					mask |= 1 << FIELD;
+					continue;
+				case "value":
+					mask |= 1 << ENUM_VALUE;
+					continue;
+			}
+
+			GQLKeyword keyword = Arrays.stream(GQLKeyword.values())
+				.filter(k -> k.toString().equals(kind))
+				.findFirst()
+				.orElseThrow(() -> new ConfigurationException(
+					"Unknown kind of node \"" + kind + "\" in rule. Valid kinds are: "
+						+ Arrays.toString(GQLKeyword.values()) + ", field, value"
+				));
+			mask |= 1 << keyword.ordinal();
+		}
+		return mask;
+	}
+
+	/**
+	 * Checks if the given node should be kept
+	 *
+	 * @param node    the node. Only its kind is considered
+	 * @param comment comment of the node. Use an empty string if the node doesn't have a comment
+	 * @return the comment without the lines matched by the rule that kept the node,
+	 * or null if the node should be removed
+	 */
+	@Nullable
+	String purgedComment(@NotNull GQLDataType node, @NotNull String comment) {
+		int kind = kind(node);
+		Map<String, Optional<String>> kindDecisions = decisions.get(kind);
+		Optional<String> decision = kindDecisions.get(comment);
+		if (decision == null) {
+			decision = Optional.ofNullable(decide(kind, comment));
+			if (kindDecisions.size() < MAX_MEMOIZED)
+				kindDecisions.put(comment, decision);
+		}
+		return decision.orElse(null);
+	}
+
+	/**
+	 * Finds the rule that keeps the given node. Results are not memoized, this is intended only for
+	 * {@link DecisionTrace}s
+	 *
+	 * @param node    the node. Only its kind is considered
+	 * @param comment comment of the node. Use an empty string if the node doesn't have a comment
+	 * @return the expression of the first rule that keeps the node, or null if the node should be removed
+	 */
+	@Nullable
+	String matchingRule(@NotNull GQLDataType node, @NotNull String comment) {
+		int i = matchingRule(kind(node), subject(comment));
+		return i == -1 ? null : sources[i];
+	}
+
+	private static int kind(@NotNull GQLDataType node) {
+		return node.getKeyword() != null
+			? node.getKeyword().ordinal()
+			: node instanceof GQLField ? FIELD : ENUM_VALUE;
+	}
+
+	@NotNull
+	private RuleExpression.Subject subject(@NotNull String comment) {
+		RuleExpression.Subject subject = new RuleExpression.Subject(comment, literalLengths, nRegexes);
+		automaton.scan(comment, (literal, startIdx, endIdx) -> subject.addOccurrence(literal, startIdx));
+		return subject;
+	}
+
+	/**
+	 * @return index of the first rule that applies to the kind of node and matches, or -1 if there is none
+	 */
+	private int matchingRule(int kind, @NotNull RuleExpression.Subject subject) {
+		for (int i = 0; i < expressions.length; ++i)
+			if ((kinds[i] & (1 << kind)) != 0 && expressions[i].matches(subject))
+				return i;
+		return -1;
+	}
+
+	@Nullable
+	private String decide(int kind, @NotNull String comment) {
+		RuleExpression.Subject subject = subject(comment);
+		int i = matchingRule(kind, subject);
+		if (i != -1) {
+			// remove the matched lines
+			SortedSet<Integer> lineStarts = new TreeSet<>();
+			expressions[i].matchedLines(subject, lineStarts);
+
+			StringBuilder purged = new StringBuilder(comment.length());
+			int copiedIdx = 0;
+			for (int lineStartIdx : lineStarts) {
+				int lineEndIdx = comment.indexOf('\n', lineStartIdx);
+				purged.append(comment, copiedIdx, lineStartIdx);
+				copiedIdx = lineEndIdx == -1 ? comment.length() : lineEndIdx + 1;
+			}
+			return purged.append(comment, copiedIdx, comment.length()).toString();
+		}
+		return null;
+	}
+}
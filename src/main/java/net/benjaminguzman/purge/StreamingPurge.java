@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.purge;
+
+import net.benjaminguzman.parse.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Purges a file without building the syntax graph of the whole file
+ * <p>
+ * The input is split into definitions with a {@link DefinitionScanner}. Each definition is parsed, purged
+ * and written to the outputs before reading the next one, so memory is bounded by the largest definition
+ * (plus the # comments, which are printed before any definition).
+ * The output is the same {@link Purge} produces when the whole file is parsed
+ * <p>
+ * The input is read twice: first to collect the # comments and then to purge the definitions
+ */
+class StreamingPurge {
+	@NotNull
+	private final Purger purger;
+
+	/**
+	 * @param purger purger deciding what is kept in each definition
+	 */
+	StreamingPurge(@NotNull Purger purger) {
+		this.purger = purger;
+	}
+
+	/**
+	 * Purges the input and writes the purged code for each profile
+	 *
+	 * @param input       the file to be purged
+	 * @param inputDigest if not null, the input contents are fed to this digest
+	 * @param outputs     writer for each profile, in the same order profiles were given (or a single writer if there
+	 *                    are no profiles). Writers are not closed
+	 * @throws IOException      if there was an error while reading or writing
+	 * @throws InvalidGQLSyntax if the input has invalid GraphQL syntax
+	 */
+	void purge(@NotNull Path input, @Nullable MessageDigest inputDigest,
+	           @NotNull List<? extends Writer> outputs) throws IOException, InvalidGQLSyntax {
+		// # comments are printed at the top of the file, followed by a blank line
+		StringBuilder comments = new StringBuilder();
+		InputStream inputStream = Files.newInputStream(input);
+		if (inputDigest != null)
+			inputStream = new DigestInputStream(inputStream, inputDigest);
+		try (DefinitionScanner scanner = new DefinitionScanner(reader(inputStream), false)) {
+			DefinitionScanner.Chunk chunk;
+			while ((chunk = scanner.next()) != null)
+				if (chunk.getKind() == DefinitionScanner.Chunk.Kind.COMMENT)
+					comments.append(chunk.getText()).append('\n');
+		}
+		if (comments.length() > 0)
+			for (Writer output : outputs)
+				output.append(comments).append('\n');
+
+		boolean[] isEmpty = new boolean[outputs.size()];
+		Arrays.fill(isEmpty, true);
+		try (DefinitionScanner scanner = new DefinitionScanner(reader(Files.newInputStream(input)), true)) {
+			DefinitionScanner.Chunk chunk;
+			while ((chunk = scanner.next()) != null) {
+				if (chunk.getKind() != DefinitionScanner.Chunk.Kind.DEFINITION)
+					continue;
+
+				GQL definition = GQL.from(chunk.getText(), purger.indexesAnnotations());
+				ProfilesVisitor profilesVisitor = purger.decide(definition);
+
+				for (int i = 0; i < outputs.size(); ++i) {
+					GQLView view = profilesVisitor.view(i);
+					for (GQLDataType dataType : definition.getDataTypes()) {
+						if (!view.includes(dataType))
+							continue;
+
+						if (!isEmpty[i])
+							outputs.get(i).write("\n\n");
+						outputs.get(i).write(dataType.toString(view));
+						isEmpty[i] = false;
+					}
+				}
+			}
+		}
+
+		for (Writer output : outputs)
+			output.write('\n');
+	}
+
+	@NotNull
+	private static Reader reader(@NotNull InputStream inputStream) {
+		return new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+	}
+}
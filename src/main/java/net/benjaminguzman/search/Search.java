@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.search;
+
+import net.benjaminguzman.parse.GQL;
+import net.benjaminguzman.parse.InvalidGQLSyntax;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.logging.Logger;
+
+@CommandLine.Command(
+	name = "search",
+	description = "Search types, fields, arguments and enum values by name or description. " +
+		"Names are split in camelCase and snake_case words, and query words also match as prefixes",
+	mixinStandardHelpOptions = true,
+	version = "gqlfedutils search 0.1"
+)
+public class Search implements Callable<Integer> {
+	private static final Logger LOGGER = Logger.getLogger(Search.class.getName());
+
+	/**
+	 * Extension added to the schema file name to obtain the file in which the index is persisted
+	 */
+	public static final String INDEX_EXTENSION = ".idx";
+
+	@CommandLine.Spec
+	private CommandLine.Model.CommandSpec spec;
+
+	@CommandLine.Parameters(
+		index = "0",
+		paramLabel = "FILE",
+		description = "Schema file to search in."
+	)
+	private Path inputFile;
+
+	@CommandLine.Parameters(
+		index = "1..*",
+		paramLabel = "QUERY",
+		description = "Words to search for.",
+		arity = "1..*"
+	)
+	private List<String> query;
+
+	@CommandLine.Option(
+		names = {"-n", "--limit"},
+		description = "Maximum number of results. Default: ${DEFAULT-VALUE}",
+		defaultValue = "10"
+	)
+	private int limit;
+
+	@CommandLine.Option(
+		names = {"--persist"},
+		description = "Save the index next to the schema file (FILE" + INDEX_EXTENSION + ") and reuse it on " +
+			"later searches, as long as the schema file has not been modified."
+	)
+	private boolean persist;
+
+	/**
+	 * @return {@link CommandLine.ExitCode#OK} if the search was done (even if nothing was found), or
+	 * {@link CommandLine.ExitCode#SOFTWARE} if the schema file couldn't be read or parsed
+	 */
+	@Override
+	public Integer call() {
+		if (limit < 1) {
+			LOGGER.warning("--limit should be at least 1, using 1");
+			limit = 1;
+		}
+
+		SearchIndex index = persist ? loadOrBuildIndex() : buildIndex();
+		if (index == null)
+			return CommandLine.ExitCode.SOFTWARE;
+
+		PrintWriter out = spec.commandLine().getOut();
+		List<SearchIndex.Result> results = index.search(String.join(" ", query), limit);
+		if (results.isEmpty())
+			out.println("No results for \"" + String.join(" ", query) + "\"");
+
+		for (SearchIndex.Result result : results) {
+			SearchIndex.Document doc = result.getDocument();
+			out.printf("%-10s %s%n", doc.getKind(), doc.getPath());
+			if (doc.getDescription() != null)
+				out.printf("%-10s %s%n", "", firstLine(doc.getDescription()));
+		}
+		out.flush();
+		return CommandLine.ExitCode.OK;
+	}
+
+	/**
+	 * Parses {@link #inputFile} and builds its index
+	 *
+	 * @return the index, or null if the file couldn't be parsed
+	 */
+	@Nullable
+	private SearchIndex buildIndex() {
+		LOGGER.info("Indexing " + inputFile);
+		try {
+			return SearchIndex.build(GQL.from(inputFile).getDataTypes());
+		} catch (IOException e) {
+			LOGGER.severe("😭 Error while reading file " + inputFile.toAbsolutePath() + ". " + e.getMessage());
+		} catch (InvalidGQLSyntax e) {
+			LOGGER.severe("😭 Couldn't parse file " + inputFile.toAbsolutePath() + ". " + e.getMessage());
+		}
+		return null;
+	}
+
+	/**
+	 * Loads the persisted index if it is up-to-date, otherwise it builds the index and persists it
+	 *
+	 * @return the index, or null if it couldn't be loaded nor built
+	 */
+	@Nullable
+	private SearchIndex loadOrBuildIndex() {
+		Path indexFile = Path.of(inputFile + INDEX_EXTENSION);
+		String stamp;
+		try {
+			stamp = Files.size(inputFile) + ":" + Files.getLastModifiedTime(inputFile).toMillis();
+		} catch (IOException e) {
+			LOGGER.severe("😭 Error while reading file " + inputFile.toAbsolutePath() + ". " + e.getMessage());
+			return null;
+		}
+
+		if (Files.exists(indexFile))
+			try {
+				SearchIndex index = SearchIndex.load(indexFile, stamp);
+				if (index != null) {
+					LOGGER.fine("Loaded index from " + indexFile);
+					return index;
+				}
+				LOGGER.info("Index " + indexFile + " is outdated, it'll be built again");
+			} catch (IOException e) {
+				LOGGER.warning("Couldn't load index " + indexFile + ". " + e.getMessage());
+			}
+
+		SearchIndex index = buildIndex();
+		if (index == null)
+			return null;
+
+		try {
+			index.save(indexFile, stamp);
+			LOGGER.info("Index saved in " + indexFile);
+		} catch (IOException e) {
+			LOGGER.warning("Couldn't save index in " + indexFile + ". " + e.getMessage());
+		}
+		return index;
+	}
+
+	@NotNull
+	private static String firstLine(@NotNull String str) {
+		int lineEndIdx = str.indexOf('\n');
+		return lineEndIdx == -1 ? str : str.substring(0, lineEndIdx).strip();
+	}
+}
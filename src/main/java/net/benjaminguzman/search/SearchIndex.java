@@ -0,0 +1,420 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.search;
+
+import net.benjaminguzman.parse.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory inverted index over the names and descriptions of types, fields, arguments and enum values
+ * <p>
+ * Each named element is a {@link Document}. Names and descriptions are split into terms with {@link Tokenizer},
+ * and each term points to the documents containing it (postings). Terms are stored in a sorted map, so prefix
+ * queries are just a range scan
+ * <p>
+ * Once built, the index is not modified, and it can be queried concurrently
+ */
+public class SearchIndex {
+	/**
+	 * Weight of a term found in the name of a document
+	 */
+	private static final float NAME_WEIGHT = 4f;
+
+	/**
+	 * Weight of a term found in the description of a document
+	 */
+	private static final float DESCRIPTION_WEIGHT = 1f;
+
+	/**
+	 * Score multiplier for a query term that only matched as a prefix
+	 */
+	private static final float PREFIX_FACTOR = 0.5f;
+
+	private static final int MAGIC = 0x47514C58; // "GQLX"
+	private static final int FORMAT_VERSION = 1;
+
+	@NotNull
+	private final List<Document> documents;
+
+	/**
+	 * Postings for each term, sorted by term
+	 */
+	@NotNull
+	private final NavigableMap<String, Postings> postings;
+
+	private SearchIndex(@NotNull List<Document> documents, @NotNull NavigableMap<String, Postings> postings) {
+		this.documents = documents;
+		this.postings = postings;
+	}
+
+	/**
+	 * Builds the index for the given data types
+	 * <p>
+	 * Each data type is indexed in parallel and the partial results are merged afterwards,
+	 * so the resulting index is the same as if it was built sequentially
+	 *
+	 * @param dataTypes data types to be indexed
+	 * @return the index
+	 */
+	@NotNull
+	public static SearchIndex build(@NotNull List<GQLDataType> dataTypes) {
+		List<PartialIndex> partials = dataTypes.parallelStream()
+			.map(PartialIndex::new)
+			.collect(Collectors.toList());
+
+		// merge, assigning global ids to documents in the same order data types were given
+		List<Document> documents = new ArrayList<>();
+		Map<String, Postings> postings = new HashMap<>();
+		for (PartialIndex partial : partials) {
+			int docIdOffset = documents.size();
+			documents.addAll(partial.documents);
+			partial.postings.forEach((term, partialPostings) -> postings
+				.computeIfAbsent(term, t -> new Postings())
+				.addAll(partialPostings, docIdOffset)
+			);
+		}
+
+		postings.values().forEach(Postings::trim);
+		return new SearchIndex(Collections.unmodifiableList(documents), new TreeMap<>(postings));
+	}
+
+	/**
+	 * Searches the index
+	 * <p>
+	 * The query is tokenized the same way names and descriptions are. Each query term matches documents
+	 * containing the same term, or a term starting with it (with a lower score). Documents matching more
+	 * query terms rank first, then documents with higher score
+	 *
+	 * @param query the query
+	 * @param limit maximum number of results
+	 * @return the results, best match first
+	 */
+	@NotNull
+	public List<Result> search(@NotNull String query, int limit) {
+		Set<String> queryTerms = new LinkedHashSet<>(Tokenizer.tokenize(query));
+		Map<Integer, Result> results = new HashMap<>();
+		int nDocs = documents.size();
+
+		for (String queryTerm : queryTerms) {
+			// best score obtained by each document for this query term
+			Map<Integer, Float> termScores = new HashMap<>();
+			for (Map.Entry<String, Postings> entry : prefixRange(queryTerm).entrySet()) {
+				Postings termPostings = entry.getValue();
+				float idf = (float) Math.log(1 + (double) nDocs / termPostings.size);
+				float factor = entry.getKey().equals(queryTerm) ? idf : idf * PREFIX_FACTOR;
+				for (int i = 0; i < termPostings.size; ++i)
+					termScores.merge(termPostings.docIds[i], termPostings.weights[i] * factor, Math::max);
+			}
+
+			termScores.forEach((docId, score) -> {
+				Result result = results.computeIfAbsent(docId, id -> new Result(documents.get(id)));
+				result.score += score;
+				++result.matchedTerms;
+			});
+		}
+
+		return results.values()
+			.stream()
+			.sorted(Comparator.comparingInt((Result r) -> -r.matchedTerms)
+				.thenComparing(r -> -r.score)
+				.thenComparing(r -> r.document.path))
+			.limit(limit)
+			.collect(Collectors.toList());
+	}
+
+	/**
+	 * @return all terms starting with the given prefix (including the prefix itself, if it is a term)
+	 */
+	@NotNull
+	private SortedMap<String, Postings> prefixRange(@NotNull String prefix) {
+		return postings.subMap(prefix, prefix + Character.MAX_VALUE);
+	}
+
+	/**
+	 * @return the indexed documents
+	 */
+	@NotNull
+	public List<Document> getDocuments() {
+		return documents;
+	}
+
+	/**
+	 * Saves the index to the given file, so it can be loaded later with {@link #load(Path, String)}
+	 *
+	 * @param file         the file in which the index will be saved
+	 * @param sourceStamp a string identifying the version of the schema the index was built from
+	 * @throws IOException if the file couldn't be written
+	 */
+	public void save(@NotNull Path file, @NotNull String sourceStamp) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			writeString(out, sourceStamp);
+
+			out.writeInt(documents.size());
+			for (Document doc : documents) {
+				writeString(out, doc.kind);
+				writeString(out, doc.path);
+				writeString(out, doc.description == null ? "" : doc.description);
+			}
+
+			out.writeInt(postings.size());
+			for (Map.Entry<String, Postings> entry : postings.entrySet()) {
+				writeString(out, entry.getKey());
+				Postings termPostings = entry.getValue();
+				out.writeInt(termPostings.size);
+				for (int i = 0; i < termPostings.size; ++i) {
+					out.writeInt(termPostings.docIds[i]);
+					out.writeFloat(termPostings.weights[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Loads an index saved with {@link #save(Path, String)}
+	 *
+	 * @param file        the file containing the index
+	 * @param sourceStamp the string identifying the current version of the schema
+	 * @return the index, or null if the file was saved for a different version of the schema
+	 * (i.e. stamps don't match) or with an incompatible format
+	 * @throws IOException if the file couldn't be read
+	 */
+	@Nullable
+	public static SearchIndex load(@NotNull Path file, @NotNull String sourceStamp) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !sourceStamp.equals(readString(in)))
+				return null;
+
+			int nDocs = in.readInt();
+			List<Document> documents = new ArrayList<>(nDocs);
+			for (int i = 0; i < nDocs; ++i) {
+				String kind = readString(in);
+				String path = readString(in);
+				String description = readString(in);
+				documents.add(new Document(kind, path, description.isEmpty() ? null : description));
+			}
+
+			int nTerms = in.readInt();
+			NavigableMap<String, Postings> postings = new TreeMap<>();
+			for (int i = 0; i < nTerms; ++i) {
+				String term = readString(in);
+				Postings termPostings = new Postings(in.readInt());
+				for (int j = 0; j < termPostings.docIds.length; ++j)
+					termPostings.add(in.readInt(), in.readFloat());
+				postings.put(term, termPostings);
+			}
+
+			return new SearchIndex(Collections.unmodifiableList(documents), postings);
+		}
+	}
+
+	private static void writeString(@NotNull DataOutputStream out, @NotNull String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	@NotNull
+	private static String readString(@NotNull DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * A searchable element: type, input, enum, scalar, directive, field, argument or enum value
+	 */
+	public static class Document {
+		/**
+		 * Human-readable kind of element, e.g. "type", "field", "argument"
+		 */
+		@NotNull
+		private final String kind;
+
+		/**
+		 * Path to the element, e.g. {@code Query.boxer(id)}
+		 */
+		@NotNull
+		private final String path;
+
+		/**
+		 * The description (comment) of the element, stripped. It may be null if the element has no description
+		 */
+		@Nullable
+		private final String description;
+
+		public Document(@NotNull String kind, @NotNull String path, @Nullable String description) {
+			this.kind = kind;
+			this.path = path;
+			this.description = description;
+		}
+
+		public @NotNull String getKind() {
+			return kind;
+		}
+
+		public @NotNull String getPath() {
+			return path;
+		}
+
+		public @Nullable String getDescription() {
+			return description;
+		}
+	}
+
+	/**
+	 * A document matching a query
+	 */
+	public static class Result {
+		@NotNull
+		private final Document document;
+
+		private float score;
+
+		/**
+		 * Number of distinct query terms matched by the document
+		 */
+		private int matchedTerms;
+
+		private Result(@NotNull Document document) {
+			this.document = document;
+		}
+
+		public @NotNull Document getDocument() {
+			return document;
+		}
+
+		public float getScore() {
+			return score;
+		}
+
+		public int getMatchedTerms() {
+			return matchedTerms;
+		}
+	}
+
+	/**
+	 * Documents containing a term, along with the weight of the term in each document
+	 * <p>
+	 * Document ids are stored in ascending order
+	 */
+	private static final class Postings {
+		private int[] docIds;
+		private float[] weights;
+		private int size;
+
+		private Postings() {
+			this(4);
+		}
+
+		private Postings(int capacity) {
+			docIds = new int[capacity];
+			weights = new float[capacity];
+		}
+
+		/**
+		 * Adds a document, or increments its weight if it was the last one added
+		 */
+		private void add(int docId, float weight) {
+			if (size > 0 && docIds[size - 1] == docId) {
+				weights[size - 1] += weight;
+				return;
+			}
+
+			if (size == docIds.length) {
+				docIds = Arrays.copyOf(docIds, size * 2);
+				weights = Arrays.copyOf(weights, size * 2);
+			}
+			docIds[size] = docId;
+			weights[size] = weight;
+			++size;
+		}
+
+		private void addAll(@NotNull Postings other, int docIdOffset) {
+			for (int i = 0; i < other.size; ++i)
+				add(other.docIds[i] + docIdOffset, other.weights[i]);
+		}
+
+		private void trim() {
+			docIds = Arrays.copyOf(docIds, size);
+			weights = Arrays.copyOf(weights, size);
+		}
+	}
+
+	/**
+	 * Index for a single data type (and its fields, arguments, or values), with local document ids
+	 */
+	private static final class PartialIndex {
+		@NotNull
+		private final List<Document> documents = new ArrayList<>();
+
+		@NotNull
+		private final Map<String, Postings> postings = new HashMap<>();
+
+		private PartialIndex(@NotNull GQLDataType dataType) {
+			// there is nothing to search in the schema definition
+			if (dataType.getKeyword() == GQLKeyword.SCHEMA)
+				return;
+
+			String typeName = dataType.alphaName();
+			String typePath = dataType.getKeyword() == GQLKeyword.DIRECTIVE ? "@" + typeName : typeName;
+			addDocument(String.valueOf(dataType.getKeyword()), typePath, typeName, dataType.getComment());
+
+			if (dataType instanceof GQLStruct)
+				for (GQLField field : ((GQLStruct) dataType).getFields()) {
+					String fieldPath = typeName + "." + field.alphaName();
+					addDocument("field", fieldPath, field.alphaName(), field.getComment());
+
+					for (GQLField.GQLFieldParam param : field.getParams())
+						addDocument(
+							"argument",
+							fieldPath + "(" + param.alphaName() + ")",
+							param.alphaName(),
+							param.getComment()
+						);
+				}
+			else if (dataType instanceof GQLEnum)
+				for (GQLEnum.EnumValue value : ((GQLEnum) dataType).getValues())
+					addDocument("enum value", typeName + "." + value.alphaName(), value.alphaName(),
+						value.getComment());
+		}
+
+		private void addDocument(@NotNull String kind, @NotNull String path, @NotNull String name,
+		                         @Nullable String comment) {
+			String description = comment == null || comment.isBlank() ? null : comment.strip();
+			int docId = documents.size();
+			documents.add(new Document(kind, path, description));
+
+			for (String term : Tokenizer.tokenize(name))
+				postings.computeIfAbsent(term, t -> new Postings()).add(docId, NAME_WEIGHT);
+			if (description != null)
+				for (String term : Tokenizer.tokenize(description))
+					postings.computeIfAbsent(term, t -> new Postings()).add(docId, DESCRIPTION_WEIGHT);
+		}
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.search;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits names and descriptions into lowercase terms
+ * <p>
+ * Words are delimited by any non-alphanumeric character. Besides the whole word, camelCase, PascalCase,
+ * snake_case and digit boundaries produce additional terms, e.g. {@code userEmailV2} produces
+ * {@code useremailv2}, {@code user}, {@code email}, {@code v} and {@code 2}
+ */
+final class Tokenizer {
+	private Tokenizer() {
+	}
+
+	/**
+	 * Tokenizes the given string
+	 *
+	 * @param str the string to be tokenized
+	 * @return the terms, in the order they were found. Terms may be repeated
+	 */
+	@NotNull
+	static List<String> tokenize(@NotNull String str) {
+		List<String> terms = new ArrayList<>();
+		int len = str.length();
+		int i = 0;
+		while (i < len) {
+			// skip delimiters
+			for (; i < len && !isWordChar(str.charAt(i)); ++i) ;
+			if (i == len)
+				break;
+
+			int wordStartIdx = i;
+			for (; i < len && isWordChar(str.charAt(i)); ++i) ;
+
+			addWord(str, wordStartIdx, i, terms);
+		}
+		return terms;
+	}
+
+	/**
+	 * Adds the word {@code str[startIdx, endIdx)} and its camelCase/snake_case parts to the list of terms
+	 */
+	private static void addWord(@NotNull String str, int startIdx, int endIdx, @NotNull List<String> terms) {
+		String word = str.substring(startIdx, endIdx);
+		String lowerWord = word.toLowerCase(Locale.ROOT).replace("_", "");
+		if (!lowerWord.isEmpty())
+			terms.add(lowerWord);
+
+		int partStartIdx = startIdx;
+		int nParts = 0;
+		int firstPartIdx = terms.size();
+		for (int i = startIdx + 1; i <= endIdx; ++i) {
+			if (i < endIdx && !isBoundary(str, i))
+				continue;
+
+			if (str.charAt(partStartIdx) == '_')
+				++partStartIdx;
+			if (partStartIdx < i) {
+				terms.add(str.substring(partStartIdx, i).toLowerCase(Locale.ROOT));
+				++nParts;
+			}
+			partStartIdx = i;
+		}
+
+		// a word without boundaries has a single part, which is the word itself
+		if (nParts == 1)
+			terms.remove(firstPartIdx);
+	}
+
+	/**
+	 * @return true if a new part of a word starts at index i
+	 */
+	private static boolean isBoundary(@NotNull String str, int i) {
+		char prev = str.charAt(i - 1);
+		char curr = str.charAt(i);
+		if (curr == '_')
+			return true;
+		if (Character.isDigit(prev) != Character.isDigit(curr))
+			return prev != '_';
+		if (Character.isLowerCase(prev) && Character.isUpperCase(curr)) // camelCase
+			return true;
+
+		// acronyms, e.g. the W in HTTPWorker
+		return Character.isUpperCase(prev) && Character.isUpperCase(curr)
+			&& i + 1 < str.length() && Character.isLowerCase(str.charAt(i + 1));
+	}
+
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_';
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.benjaminguzman.batch;
+
+import net.benjaminguzman.ConfigurationException;
+import net.benjaminguzman.GQLFedUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchTest {
+	@AfterAll
+	static void deleteFiles() throws IOException {
+		Files.deleteIfExists(Path.of("src/test/resources/batch/schema.actual.graphql"));
+		Files.deleteIfExists(Path.of("src/test/resources/batch/schema.actual.ok.graphql"));
+		Files.deleteIfExists(Path.of("src/test/resources/batch/schema.actual.admin.graphql"));
+		Files.deleteIfExists(Path.of("src/test/resources/batch/schema.actual.dot"));
+		Files.deleteIfExists(Path.of("src/test/resources/batch/never.actual.dot"));
+		Files.deleteIfExists(Path.of("src/test/resources/batch/blocked.actual.dot"));
+	}
+
+	@DisplayName("Testing batch manifest")
+	@Test
+	void run() throws IOException {
+		deleteFiles();
+		List<String> logs = Collections.synchronizedList(new ArrayList<>());
+		int exitCode = execute(logs, "batch", "--jobs", "2", "src/test/resources/batch/batch.yaml");
+		assertEquals(CommandLine.ExitCode.SOFTWARE, exitCode); // a job failed and another one was skipped
+
+		String expected = Files.readString(Path.of("src/test/resources/purge/purge.expected.graphql"));
+		assertEquals(expected, Files.readString(Path.of("src/test/resources/batch/schema.actual.graphql")));
+		assertEquals(expected, Files.readString(Path.of("src/test/resources/batch/schema.actual.ok.graphql")));
+		assertTrue(Files.exists(Path.of("src/test/resources/batch/schema.actual.dot")));
+		assertFalse(Files.exists(Path.of("src/test/resources/batch/never.actual.dot")));
+
+		assertTrue(logs.stream().anyMatch(log -> log.startsWith("Job dot (dot): completed in ")));
+		assertTrue(logs.stream().anyMatch(log -> log.startsWith("Job unknown (nope): failed")));
+		assertTrue(logs.contains("Job after-unknown (dot): skipped, a job it depends on didn't complete"));
+
+		// both purge jobs share the parsed schema, the dot job parses the purged one
+		String summary = logs.get(logs.size() - 1);
+		assertTrue(summary.startsWith("Ran 4 job(s), 1 failed, 1 skipped in "), summary);
+		assertTrue(summary.endsWith("Parsed 2 file(s), reused 1 parsed file(s)"), summary);
+	}
+
+	@DisplayName("Testing jobs depending on a failed job")
+	@Test
+	void failedDependency() throws IOException {
+		deleteFiles();
+		List<String> logs = Collections.synchronizedList(new ArrayList<>());
+		int exitCode = execute(logs, "batch", "src/test/resources/batch/batch.failed.yaml");
+		assertEquals(CommandLine.ExitCode.SOFTWARE, exitCode);
+
+		// the input of the purge job doesn't exist
+		assertTrue(logs.stream().anyMatch(log -> log.startsWith("Job purge-missing (purge): failed (exit code 1)")));
+		assertTrue(logs.contains("Job dot (dot): skipped, a job it depends on didn't complete"));
+		assertFalse(Files.exists(Path.of("src/test/resources/batch/blocked.actual.dot")));
+	}
+
+	@DisplayName("Testing jobs with --watch are rejected")
+	@Test
+	void watch() {
+		List<String> logs = Collections.synchronizedList(new ArrayList<>());
+		int exitCode = assertTimeoutPreemptively(
+			Duration.ofSeconds(10),
+			() -> execute(logs, "batch", "src/test/resources/batch/batch.watch.yaml")
+		);
+		assertEquals(CommandLine.ExitCode.SOFTWARE, exitCode);
+		assertTrue(logs.stream().anyMatch(log -> log.startsWith("Job watch (purge): failed (exit code 2)")));
+	}
+
+	@DisplayName("Testing invalid batch manifests")
+	@Test
+	void invalidManifest() {
+		assertThrows(
+			ConfigurationException.class,
+			() -> BatchManifest.load(Path.of("src/test/resources/batch/batch.cycle.yaml"))
+		);
+		assertThrows(
+			ConfigurationException.class,
+			() -> BatchManifest.load(Path.of("src/test/resources/batch/batch.nocommand.yaml"))
+		);
+	}
+
+	/**
+	 * Executes the command line, collecting the messages logged by {@link Batch}
+	 *
+	 * @return the exit code
+	 */
+	private static int execute(List<String> logs, String... args) {
+		CommandLine cmd = new CommandLine(new GQLFedUtils());
+		cmd.setOut(new PrintWriter(new StringWriter()));
+
+		Handler handler = new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				logs.add(record.getMessage());
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		Logger logger = Logger.getLogger(Batch.class.getName());
+		logger.addHandler(handler);
+		try {
+			return cmd.execute(args);
+		} finally {
+			logger.removeHandler(handler);
+		}
+	}
+}
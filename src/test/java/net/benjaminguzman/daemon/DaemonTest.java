@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.benjaminguzman.daemon;
+
+import net.benjaminguzman.GQLFedUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DaemonTest {
+	private static final Path STATE_FILE = Path.of("target/daemon-test/state");
+
+	@AfterAll
+	static void deleteFiles() throws IOException {
+		Files.deleteIfExists(Path.of("src/test/resources/purge/purge.daemon.graphql"));
+		Files.deleteIfExists(Path.of("src/test/resources/purge/purge.daemon2.graphql"));
+		Files.deleteIfExists(Path.of("src/test/resources/purge/purge.daemon3.graphql"));
+		Files.deleteIfExists(STATE_FILE);
+	}
+
+	@DisplayName("Testing commands sent to the daemon")
+	@Test
+	void run() throws IOException, InterruptedException {
+		deleteFiles();
+		CommandLine cmd = new CommandLine(new GQLFedUtils());
+		cmd.setOut(new PrintWriter(new StringWriter()));
+		Thread daemon = new Thread(() -> cmd.execute(
+			"daemon", "--state-file", STATE_FILE.toString(), "--idle-timeout", "1"
+		));
+		daemon.start();
+		for (int i = 0; i < 100 && !Files.exists(STATE_FILE); ++i)
+			Thread.sleep(50);
+		Thread.sleep(100); // let the daemon write the state
+
+		// paths are relative to the client working directory
+		Path workingDir = Path.of("src/test/resources/purge");
+		String expected = Files.readString(Path.of("src/test/resources/purge/purge.expected.graphql"));
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+		assertEquals(0, DaemonClient.run(
+			DaemonClient.connect(STATE_FILE), workingDir,
+			new String[]{"purge", "--config", "purge.ok.yaml", "--suffix", ".daemon", "purge.graphql"},
+			InputStream.nullInputStream(), new ByteArrayOutputStream(), err
+		));
+		assertEquals(expected, Files.readString(Path.of("src/test/resources/purge/purge.daemon.graphql")));
+		assertTrue(err.toString(StandardCharsets.UTF_8).contains("Purged 1 file(s)"));
+
+		assertEquals(0, DaemonClient.run(
+			DaemonClient.connect(STATE_FILE), workingDir,
+			new String[]{"purge", "--config", "purge.ok.yaml", "--suffix", ".daemon2", "purge.graphql"},
+			InputStream.nullInputStream(), new ByteArrayOutputStream(), new ByteArrayOutputStream()
+		));
+		assertEquals(expected, Files.readString(Path.of("src/test/resources/purge/purge.daemon2.graphql")));
+
+		// failures are reported through the exit code, as when the command runs directly
+		assertEquals(CommandLine.ExitCode.SOFTWARE, DaemonClient.run(
+			DaemonClient.connect(STATE_FILE), workingDir,
+			new String[]{"purge", "--config", "purge.ok.yaml", "--suffix", ".daemon", "missing.graphql"},
+			InputStream.nullInputStream(), new ByteArrayOutputStream(), new ByteArrayOutputStream()
+		));
+
+		// a connection that doesn't send the token doesn't hold other clients
+		Properties state = new Properties();
+		try (Reader reader = Files.newBufferedReader(STATE_FILE)) {
+			state.load(reader);
+		}
+		try (Socket idle = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(state.getProperty("port")))) {
+			long startTime = System.nanoTime();
+			assertEquals(0, DaemonClient.run(
+				DaemonClient.connect(STATE_FILE), workingDir,
+				new String[]{"purge", "--config", "purge.ok.yaml", "--suffix", ".daemon3", "purge.graphql"},
+				InputStream.nullInputStream(), new ByteArrayOutputStream(), new ByteArrayOutputStream()
+			));
+			assertTrue(System.nanoTime() - startTime < TimeUnit.SECONDS.toNanos(5));
+		}
+
+		// commands that start other processes or jobs are not served
+		assertEquals(CommandLine.ExitCode.USAGE, DaemonClient.run(
+			DaemonClient.connect(STATE_FILE), workingDir, new String[]{"batch", "batch.yaml"},
+			InputStream.nullInputStream(), new ByteArrayOutputStream(), new ByteArrayOutputStream()
+		));
+
+		// the daemon exits after the idle timeout, and removes its state file
+		daemon.join(10_000);
+		assertFalse(daemon.isAlive());
+		assertFalse(Files.exists(STATE_FILE));
+	}
+}
@@ -29,8 +29,12 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
 class DotTest {
 	@AfterAll
@@ -84,4 +88,51 @@ class DotTest {
 
 		assertEquals(0, exitCode);
 	}
+
+	@DisplayName("Testing --watch transpiles the input file again when it changes")
+	@Test
+	void runWatch() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("dot-watch");
+		Path input = dir.resolve("input.graphql"), output = dir.resolve("output.dot");
+		Path expected1 = dir.resolve("expected1.dot"), expected2 = dir.resolve("expected2.dot");
+		assertEquals(0, new CommandLine(new GQLFedUtils()).execute(
+			"dot", "--output", expected1.toString(), "src/test/resources/dot/dot.graphql"
+		));
+		assertEquals(0, new CommandLine(new GQLFedUtils()).execute(
+			"dot", "--output", expected2.toString(), "src/test/resources/dot/dot2.graphql"
+		));
+		Files.copy(Path.of("src/test/resources/dot/dot.graphql"), input);
+
+		CommandLine cmd = new CommandLine(new GQLFedUtils());
+		cmd.setOut(new PrintWriter(new StringWriter()));
+		Thread watcher = new Thread(() -> cmd.execute(
+			"dot",
+			"--watch",
+			"--output", output.toString(),
+			input.toString()
+		));
+		watcher.start();
+		try {
+			awaitContent(output, Files.readString(expected1));
+
+			Files.copy(Path.of("src/test/resources/dot/dot2.graphql"), input, StandardCopyOption.REPLACE_EXISTING);
+			awaitContent(output, Files.readString(expected2));
+		} finally {
+			watcher.interrupt();
+			watcher.join(10_000);
+			try (Stream<Path> paths = Files.walk(dir)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+		assertFalse(watcher.isAlive());
+	}
+
+	/**
+	 * Waits (at most 10 seconds) until the file has the expected content
+	 */
+	private static void awaitContent(Path file, String expected) throws IOException, InterruptedException {
+		for (int i = 0; i < 200 && !(Files.exists(file) && expected.equals(Files.readString(file))); ++i)
+			Thread.sleep(50);
+		assertEquals(expected, Files.readString(file));
+	}
 }
\ No newline at end of file
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package net.benjaminguzman.lsp;
+
+import net.benjaminguzman.GQLFedUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LspTest {
+	private static final String URI = "file:///schema.graphql";
+
+	@DisplayName("Testing a session with the language server")
+	@Test
+	void serve() throws IOException {
+		String text = "\"\"\"\nA user\n\"\"\"\n" +
+			"type User @key(fields: \"id\") {\n" +
+			"  id: ID!\n" +
+			"  posts: [Post!]!\n" +
+			"}\n" +
+			"\n" +
+			"type Post {\n" +
+			"  author: User\n" +
+			"}\n";
+		String textDocument = "{\"uri\":\"" + URI + "\"}";
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		LanguageServer server = new LanguageServer(new ByteArrayInputStream(frame(
+			"{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\",\"params\":{}}",
+			"{\"jsonrpc\":\"2.0\",\"method\":\"initialized\",\"params\":{}}",
+			"{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didOpen\",\"params\":{\"textDocument\":{\"uri\":\"" + URI
+				+ "\",\"languageId\":\"graphql\",\"version\":1,\"text\":" + Json.write(text) + "}}}",
+			// definition of User, from author: User
+			"{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"textDocument/definition\",\"params\":{\"textDocument\":"
+				+ textDocument + ",\"position\":{\"line\":9,\"character\":12}}}",
+			"{\"jsonrpc\":\"2.0\",\"id\":3,\"method\":\"textDocument/references\",\"params\":{\"textDocument\":"
+				+ textDocument + ",\"position\":{\"line\":3,\"character\":6},"
+				+ "\"context\":{\"includeDeclaration\":true}}}",
+			"{\"jsonrpc\":\"2.0\",\"id\":4,\"method\":\"textDocument/hover\",\"params\":{\"textDocument\":"
+				+ textDocument + ",\"position\":{\"line\":9,\"character\":10}}}",
+			// rename Post to Article
+			"{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didChange\",\"params\":{\"textDocument\":"
+				+ textDocument + ",\"contentChanges\":["
+				+ "{\"range\":{\"start\":{\"line\":8,\"character\":5},\"end\":{\"line\":8,\"character\":9}},"
+				+ "\"text\":\"Article\"},"
+				+ "{\"range\":{\"start\":{\"line\":5,\"character\":10},\"end\":{\"line\":5,\"character\":14}},"
+				+ "\"text\":\"Article\"}]}}",
+			"{\"jsonrpc\":\"2.0\",\"id\":5,\"method\":\"textDocument/definition\",\"params\":{\"textDocument\":"
+				+ textDocument + ",\"position\":{\"line\":5,\"character\":12}}}",
+			// unclosed definition
+			"{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didChange\",\"params\":{\"textDocument\":"
+				+ textDocument + ",\"contentChanges\":["
+				+ "{\"range\":{\"start\":{\"line\":11,\"character\":0},\"end\":{\"line\":11,\"character\":0}},"
+				+ "\"text\":\"type Broken {\"}]}}",
+			"{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/didChange\",\"params\":{\"textDocument\":"
+				+ textDocument + ",\"contentChanges\":["
+				+ "{\"range\":{\"start\":{\"line\":11,\"character\":12},\"end\":{\"line\":11,\"character\":13}},"
+				+ "\"text\":\"{}\"}]}}",
+			"{\"jsonrpc\":\"2.0\",\"id\":6,\"method\":\"textDocument/documentSymbol\",\"params\":{\"textDocument\":"
+				+ textDocument + "}}",
+			"{\"jsonrpc\":\"2.0\",\"id\":7,\"method\":\"nope\",\"params\":{}}",
+			"{\"jsonrpc\":\"2.0\",\"id\":8,\"method\":\"shutdown\"}",
+			"{\"jsonrpc\":\"2.0\",\"method\":\"exit\"}"
+		)), out);
+		assertEquals(0, server.serve());
+
+		Map<Object, Map<?, ?>> responses = new HashMap<>();
+		List<Map<?, ?>> notifications = new ArrayList<>();
+		for (String message : unframe(out.toByteArray())) {
+			Map<?, ?> map = (Map<?, ?>) Json.parse(message);
+			if (map.containsKey("id"))
+				responses.put(map.get("id"), map);
+			else
+				notifications.add(map);
+		}
+
+		Map<?, ?> capabilities = (Map<?, ?>) ((Map<?, ?>) responses.get(1L).get("result")).get("capabilities");
+		assertEquals(true, capabilities.get("definitionProvider"));
+		assertEquals(
+			"[{\"uri\":\"" + URI + "\",\"range\":{\"start\":{\"line\":3,\"character\":5},"
+				+ "\"end\":{\"line\":3,\"character\":9}}}]",
+			Json.write(responses.get(2L).get("result"))
+		);
+		assertEquals(
+			"[{\"uri\":\"" + URI + "\",\"range\":{\"start\":{\"line\":3,\"character\":5},"
+				+ "\"end\":{\"line\":3,\"character\":9}}},"
+				+ "{\"uri\":\"" + URI + "\",\"range\":{\"start\":{\"line\":9,\"character\":10},"
+				+ "\"end\":{\"line\":9,\"character\":14}}}]",
+			Json.write(responses.get(3L).get("result"))
+		);
+		String hover = (String) ((Map<?, ?>) ((Map<?, ?>) responses.get(4L).get("result")).get("contents"))
+			.get("value");
+		assertTrue(hover.contains("type User @key(fields: \"id\") {"), hover);
+		assertTrue(hover.contains("A user"), hover);
+		assertEquals(
+			"[{\"uri\":\"" + URI + "\",\"range\":{\"start\":{\"line\":8,\"character\":5},"
+				+ "\"end\":{\"line\":8,\"character\":12}}}]",
+			Json.write(responses.get(5L).get("result"))
+		);
+
+		List<?> symbols = (List<?>) responses.get(6L).get("result");
+		assertEquals(3, symbols.size());
+		assertEquals("Broken", ((Map<?, ?>) symbols.get(2)).get("name"));
+		assertEquals(-32601L, ((Map<?, ?>) responses.get(7L).get("error")).get("code"));
+
+		// diagnostics are published for the unclosed definition, and cleared when it is closed
+		assertEquals(2, notifications.size());
+		List<?> diagnostics = (List<?>) ((Map<?, ?>) notifications.get(0).get("params")).get("diagnostics");
+		assertEquals(1, diagnostics.size());
+		assertEquals(
+			"{\"start\":{\"line\":11,\"character\":0},\"end\":{\"line\":11,\"character\":13}}",
+			Json.write(((Map<?, ?>) diagnostics.get(0)).get("range"))
+		);
+		assertEquals(List.of(), ((Map<?, ?>) notifications.get(1).get("params")).get("diagnostics"));
+	}
+
+	@DisplayName("Testing the lsp command returns the exit code of the server")
+	@Test
+	void command() {
+		InputStream stdin = System.in;
+		PrintStream stdout = System.out;
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			System.setOut(new PrintStream(out, true, StandardCharsets.UTF_8));
+			System.setIn(new ByteArrayInputStream(frame(
+				"{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"initialize\",\"params\":{}}",
+				"{\"jsonrpc\":\"2.0\",\"id\":2,\"method\":\"shutdown\"}",
+				"{\"jsonrpc\":\"2.0\",\"method\":\"exit\"}"
+			)));
+			assertEquals(0, new CommandLine(new GQLFedUtils()).execute("lsp"));
+
+			// exit without shutdown
+			System.setIn(new ByteArrayInputStream(frame("{\"jsonrpc\":\"2.0\",\"method\":\"exit\"}")));
+			assertEquals(1, new CommandLine(new GQLFedUtils()).execute("lsp"));
+		} finally {
+			System.setIn(stdin);
+			System.setOut(stdout);
+		}
+		assertEquals(2, unframe(out.toByteArray()).size());
+	}
+
+	@DisplayName("Testing incremental edits give the same definitions as parsing the whole document")
+	@Test
+	void incremental() throws IOException {
+		String[] fragments = {
+			"", "\n", " ", "}", "{", "\"\"\"", "#", "type Foo {\n  bar: Bar\n}\n", "scalar Baz\n",
+			"directive @qux on FIELD_DEFINITION\n", "  field: Int @qux\n", "input", "enum E { A B }"
+		};
+		String text = Files.readString(Path.of("src/test/resources/purge/purge.graphql"));
+		Document document = new Document(URI);
+		document.setText(text);
+
+		Random random = new Random(42);
+		for (int i = 0; i < 3000; ++i) {
+			int start = random.nextInt(text.length() + 1);
+			int end = Math.min(text.length(), start + random.nextInt(40));
+			String replacement = fragments[random.nextInt(fragments.length)];
+			text = text.substring(0, start) + replacement + text.substring(end);
+			document.replace(start, end, replacement);
+
+			Document expected = new Document(URI);
+			expected.setText(text);
+			assertEquals(text, document.getText());
+			assertEquals(describe(expected), describe(document), "Edit " + i);
+			for (int offset = 0; offset <= text.length(); offset += 37)
+				assertEquals(expected.position(offset), document.position(offset));
+		}
+	}
+
+	private static List<String> describe(Document document) {
+		List<String> definitions = new ArrayList<>();
+		for (Document.Definition definition : document.getDefinitions()) {
+			StringBuilder description = new StringBuilder()
+				.append(definition.start).append('-').append(definition.end).append(' ')
+				.append(definition.error != null).append(' ').append(definition.text);
+			if (definition.declaration != null)
+				description.append(" declares ").append(definition.declaration.name)
+					.append('@').append(definition.declaration.start());
+			for (Document.Token reference : definition.references)
+				description.append(" references ").append(reference.name).append('@').append(reference.start());
+			definitions.add(description.toString());
+		}
+		return definitions;
+	}
+
+	private static byte[] frame(String... messages) {
+		StringBuilder framed = new StringBuilder();
+		for (String message : messages)
+			framed.append("Content-Length: ").append(message.getBytes(StandardCharsets.UTF_8).length)
+				.append("\r\n\r\n").append(message);
+		return framed.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static List<String> unframe(byte[] bytes) {
+		List<String> messages = new ArrayList<>();
+		String str = new String(bytes, StandardCharsets.UTF_8);
+		int idx = 0;
+		while (idx < str.length()) {
+			int headerEnd = str.indexOf("\r\n\r\n", idx);
+			int length = Integer.parseInt(str.substring(idx + "Content-Length: ".length(), headerEnd));
+			messages.add(str.substring(headerEnd + 4, headerEnd + 4 + length)); // contents are ASCII
+			idx = headerEnd + 4 + length;
+		}
+		return messages;
+	}
+}
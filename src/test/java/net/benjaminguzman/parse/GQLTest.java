@@ -18,6 +18,321 @@
 
 package net.benjaminguzman.parse;
 
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 class GQLTest {
+	private static GQL gql;
+
+	@BeforeAll
+	static void beforeAll() throws IOException, InvalidGQLSyntax {
+		gql = GQL.from(Path.of("src/test/resources/parse/parse.graphql"));
+	}
+
+	@DisplayName("Testing snapshots are immutable and independent from the original object")
+	@Test
+	void snapshotIsImmutable() {
+		GQLSnapshot snapshot = gql.snapshot();
+
+		assertEquals(gql.toString(), snapshot.toString());
+		assertSame(snapshot, snapshot.snapshot());
+		assertThrows(UnsupportedOperationException.class, () -> snapshot.getDataTypes().clear());
+		assertThrows(UnsupportedOperationException.class, () -> snapshot.setDataTypes(new ArrayList<>()));
+		assertThrows(UnsupportedOperationException.class, () -> snapshot.getGraph().clear());
+
+		for (GQLDataType dataType : snapshot.getDataTypes()) {
+			assertTrue(dataType.isFrozen());
+			assertThrows(UnsupportedOperationException.class, () -> dataType.setComment("modified"));
+
+			if (dataType instanceof GQLStruct) {
+				List<GQLField> fields = ((GQLStruct) dataType).getFields();
+				assertThrows(UnsupportedOperationException.class, () -> fields.removeIf(field -> true));
+				fields.forEach(field -> assertThrows(
+					UnsupportedOperationException.class,
+					() -> field.setReturnType("String")
+				));
+			} else if (dataType instanceof GQLEnum) {
+				List<GQLEnum.EnumValue> values = ((GQLEnum) dataType).getValues();
+				assertThrows(UnsupportedOperationException.class, () -> values.removeIf(value -> true));
+			}
+		}
+
+		// the original object is still mutable and not affected by the snapshot
+		assertFalse(gql.getDataTypes().get(0).isFrozen());
+		assertNotSame(gql.getDataTypes().get(0), snapshot.getDataTypes().get(0));
+	}
+
+	@DisplayName("Testing filtered snapshots share the nodes that don't change")
+	@Test
+	void snapshotFilter() {
+		GQLSnapshot snapshot = gql.snapshot();
+		SchemaIndex index = snapshot.getIndex();
+		GQLField stance = index.getField("Boxer", "stance");
+		GQLField birthDate = index.getField("Boxer", "birthDate");
+		GQLDataType boxerFilter = index.getType("BoxerFilter");
+		GQLView view = new GQLView() {
+			@Override
+			public boolean includes(@NotNull GQLDataType node) {
+				return node != birthDate && node != boxerFilter;
+			}
+
+			@Override
+			public String comment(@NotNull GQLDataType node) {
+				return node == stance ? "Use stances instead" : node.getComment();
+			}
+		};
+
+		GQLSnapshot filtered = snapshot.filter(view);
+		assertEquals(snapshot.toString(view), filtered.toString());
+		assertEquals(gql.toString(), snapshot.toString());
+		assertSame(filtered, filtered.filter(GQLView.IDENTITY));
+
+		// only Boxer and its stance field are copied
+		SchemaIndex filteredIndex = filtered.getIndex();
+		assertNotSame(index.getType("Boxer"), filteredIndex.getType("Boxer"));
+		assertTrue(filteredIndex.getType("Boxer").isFrozen());
+		assertEquals("Use stances instead", filteredIndex.getField("Boxer", "stance").getComment());
+		assertNull(filteredIndex.getField("Boxer", "birthDate"));
+		assertNull(filteredIndex.getType("BoxerFilter"));
+
+		assertSame(index.getField("Boxer", "id"), filteredIndex.getField("Boxer", "id"));
+		assertSame(index.getType("Stance"), filteredIndex.getType("Stance"));
+		assertSame(index.getType("Query"), filteredIndex.getType("Query"));
+		assertSame(index.getType("Mutation"), filteredIndex.getType("Mutation"));
+	}
+
+	@DisplayName("Testing snapshots can be read concurrently")
+	@Test
+	void snapshotConcurrentReads() throws InterruptedException, ExecutionException {
+		GQLSnapshot snapshot = gql.snapshot();
+		Map<GQLDataType, List<GQLDataType>> expectedGraph = gql.getGraph();
+		String expectedStr = gql.toString();
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < 16; ++i)
+				results.add(executor.submit(
+					() -> expectedGraph.equals(snapshot.getGraph()) && expectedStr.equals(snapshot.toString())
+				));
+
+			for (Future<Boolean> result : results)
+				assertTrue(result.get());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@DisplayName("Testing lookups by name with SchemaIndex")
+	@Test
+	void schemaIndex() {
+		SchemaIndex index = gql.getIndex();
+
+		GQLDataType boxer = index.getType("Boxer");
+		assertNotNull(boxer);
+		assertEquals(GQLKeyword.TYPE, boxer.getKeyword());
+		assertNull(index.getType("Unknown"));
+
+		GQLField fullName = index.getField("Boxer", "fullName");
+		assertNotNull(fullName);
+		assertEquals("String", fullName.getReturnType(true));
+		assertNull(index.getField("Boxer", "unknown"));
+		assertNull(index.getField("Unknown", "fullName"));
+
+		GQLField.GQLFieldParam limit = index.getParam("Query", "boxers", "limit");
+		assertNotNull(limit);
+		assertEquals("Int", limit.getType(true));
+		assertEquals("BoxerFilter", index.getParam("Query", "boxers", "filter").getType(true));
+		assertNull(index.getParam("Query", "boxer", "limit"));
+
+		assertEquals(List.of("Stance"), names(index.getTypes(GQLKeyword.ENUM)));
+		assertEquals(List.of("BoxerFilter"), names(index.getTypes(GQLKeyword.INPUT)));
+		assertEquals(List.of("Boxer", "Query", "Mutation"), names(index.getTypes(GQLKeyword.TYPE)));
+
+		// names with underscores are not truncated, directives don't need @
+		assertEquals(GQLKeyword.DIRECTIVE, index.getType("join__field").getKeyword());
+
+		// the index is cached, and snapshots have their own
+		assertSame(index, gql.getIndex());
+		GQLSnapshot snapshot = gql.snapshot();
+		assertSame(snapshot.getDataTypes().get(snapshot.getDataTypes().size() - 1),
+			snapshot.getIndex().getType("Mutation"));
+	}
+
+	@DisplayName("Testing annotations are indexed while parsing")
+	@Test
+	void annotationIndex() throws IOException, InvalidGQLSyntax {
+		assertNull(gql.getAnnotations());
+
+		GQL annotated = GQL.from(Path.of("src/test/resources/parse/parse.graphql"), true);
+		AnnotationIndex annotations = annotated.getAnnotations();
+		assertNotNull(annotations);
+		assertEquals(Set.of("GK"), annotations.getNames());
+
+		List<GQLAnnotation> gk = annotations.get("GK");
+		assertEquals(9, gk.size());
+
+		// annotations are sorted in the same order they appear
+		GQLAnnotation boxer = gk.get(2);
+		assertEquals("Boxer", boxer.getNode().alphaName());
+		assertEquals(2, boxer.getLine());
+		assertEquals(List.of("ADMIN", "PUBLIC"), boxer.getArguments());
+
+		Set<GQLDataType> nodes = annotations.getNodes(List.of("G"));
+		assertEquals(9, nodes.size());
+		assertTrue(nodes.contains(annotated.getIndex().getField("Query", "boxers")));
+		assertFalse(nodes.contains(annotated.getIndex().getField("Boxer", "birthDate")));
+		assertTrue(annotations.getNodes(List.of("GKeep")).isEmpty());
+
+		// snapshots keep annotations, but they point to frozen nodes
+		GQLSnapshot snapshot = annotated.snapshot();
+		assertSame(
+			snapshot.getIndex().getType("Stance"),
+			snapshot.getAnnotations().get("GK").get(0).getNode()
+		);
+	}
+
+	@DisplayName("Testing directive usages are parsed and indexed")
+	@Test
+	void directiveUsages() {
+		SchemaIndex index = gql.getIndex();
+		assertEquals(
+			Set.of("core", "join__owner", "join__field", "key", "external", "deprecated"),
+			index.getUsedDirectives()
+		);
+
+		// type-level directives
+		List<GQLDirectiveUsage> keys = index.getDirectiveUsages("key");
+		assertEquals(1, keys.size());
+		assertSame(index.getType("Boxer"), keys.get(0).getOwner());
+		assertEquals("\"id\"", keys.get(0).getArgument("fields").getValue());
+		assertEquals("@key(fields: \"id\")", keys.get(0).toString());
+		assertEquals(2, index.getDirectiveUsages("core").size());
+
+		// field and enum value directives
+		List<GQLDirectiveUsage> deprecated = index.getDirectiveUsages("deprecated");
+		assertEquals(2, deprecated.size());
+		assertEquals("SWITCH", deprecated.get(0).getOwner().alphaName());
+		assertSame(index.getField("Boxer", "stance"), deprecated.get(1).getOwner());
+		assertEquals("\"Use stances\"", deprecated.get(1).getArgument("reason").getValue());
+
+		GQLField id = index.getField("Boxer", "id");
+		assertEquals(1, id.getDirectives().size());
+		assertEquals("external", id.getDirectives().get(0).getName());
+		assertTrue(id.getDirectives().get(0).getArguments().isEmpty());
+
+		GQLField fullName = index.getField("Boxer", "fullName");
+		GQLDirectiveUsage joinField = fullName.getDirectives().get(0);
+		assertEquals("graph", joinField.getArguments().get(0).getName());
+		assertEquals("BOXERS", joinField.getArguments().get(0).getValue());
+		assertEquals(
+			"BOXERS",
+			fullName.getReturnType().substring(
+				joinField.getArguments().get(0).getValueStartIdx(),
+				joinField.getArguments().get(0).getValueEndIdx()
+			)
+		);
+
+		// directive definitions are not usages
+		assertTrue(index.getType("join__field").getDirectives().isEmpty());
+	}
+
+	@DisplayName("Testing several visitors are run in a single traversal, sequentially and in parallel")
+	@Test
+	void walker() throws IOException, InvalidGQLSyntax {
+		List<String> visited = new ArrayList<>();
+		List<String> fieldsVisited = new ArrayList<>();
+		GQLVisitor nodeCollector = new GQLVisitor() {
+			@Override
+			public boolean visitDataType(@NotNull GQLDataType dataType) {
+				visited.add(dataType.alphaName());
+				return true;
+			}
+
+			@Override
+			public boolean visitField(@NotNull GQLField field) {
+				visited.add(field.alphaName());
+				return true;
+			}
+		};
+		GQLVisitor fieldCollector = new GQLVisitor() {
+			@Override
+			public boolean visitField(@NotNull GQLField field) {
+				fieldsVisited.add(field.alphaName());
+				return true;
+			}
+
+			@Override
+			public void leaveDataType(@NotNull GQLDataType dataType) {
+				// fields are visited before leaving the data type
+				fieldsVisited.add("/" + dataType.alphaName());
+			}
+		};
+		new GQLWalker(nodeCollector, fieldCollector).walk(gql.getDataTypes());
+
+		// one "/" entry per data type
+		assertEquals(visited.size(), fieldsVisited.size());
+		assertEquals(List.of("Boxer", "id", "fullName"), visited.subList(visited.indexOf("Boxer"),
+			visited.indexOf("Boxer") + 3));
+		assertTrue(fieldsVisited.indexOf("fullName") < fieldsVisited.indexOf("/Boxer"));
+		assertTrue(fieldsVisited.indexOf("/Stance") < fieldsVisited.indexOf("fullName"));
+
+		// thread-safe visitor
+		Map<String, Integer> counts = new ConcurrentHashMap<>();
+		GQLVisitor counter = new GQLVisitor() {
+			@Override
+			public boolean visitDataType(@NotNull GQLDataType dataType) {
+				counts.merge("types", 1, Integer::sum);
+				return true;
+			}
+
+			@Override
+			public boolean visitField(@NotNull GQLField field) {
+				counts.merge("fields", 1, Integer::sum);
+				return true;
+			}
+		};
+		new GQLWalker(counter).walkParallel(gql.getDataTypes());
+		assertEquals(gql.getDataTypes().size(), counts.get("types"));
+		assertEquals(visited.size() - gql.getDataTypes().size(), counts.get("fields"));
+
+		// transformation: remove enums and fields named "id"
+		GQLVisitor remover = new GQLVisitor() {
+			@Override
+			public boolean visitEnum(@NotNull GQLEnum gqlEnum) {
+				return false;
+			}
+
+			@Override
+			public boolean visitField(@NotNull GQLField field) {
+				return !field.alphaName().equals("id");
+			}
+		};
+		GQL copy = GQL.from(Path.of("src/test/resources/parse/parse.graphql"));
+		List<GQLDataType> kept = new GQLWalker(remover).transformParallel(copy.getDataTypes());
+		assertTrue(kept.stream().noneMatch(dataType -> dataType instanceof GQLEnum));
+		assertTrue(kept.size() < copy.getDataTypes().size());
+		copy.setDataTypes(kept);
+		assertNull(copy.getIndex().getField("Boxer", "id"));
+		assertNotNull(copy.getIndex().getField("Boxer", "fullName"));
+	}
 
-}
\ No newline at end of file
+	private static List<String> names(List<GQLDataType> dataTypes) {
+		List<String> names = new ArrayList<>();
+		for (GQLDataType dataType : dataTypes)
+			names.add(dataType.alphaName());
+		return names;
+	}
+}
@@ -19,21 +19,56 @@
 package net.benjaminguzman.purge;
 
 import net.benjaminguzman.GQLFedUtils;
+import net.benjaminguzman.ConfigurationException;
+import net.benjaminguzman.parse.GQL;
+import net.benjaminguzman.parse.GQLDataType;
+import net.benjaminguzman.parse.GQLEnum;
+import net.benjaminguzman.parse.GQLType;
+import net.benjaminguzman.parse.InvalidGQLSyntax;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import picocli.CommandLine;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class PurgeTest {
 	@AfterEach
@@ -47,8 +82,18 @@ class PurgeTest {
 	}
 
 	static void deleteFiles() throws IOException {
+		Files.deleteIfExists(Path.of("src/test/resources/purge/purge.actual.ok.graphql"));
+		Files.deleteIfExists(Path.of("src/test/resources/purge/purge.actual.admin.graphql"));
+		Files.deleteIfExists(Path.of("src/test/resources/purge/purge.actual-admin.graphql"));
+		Files.deleteIfExists(Path.of("src/test/resources/purge/manifest.actual.yaml"));
 		Files.deleteIfExists(Path.of("src/test/resources/purge/purge.actual.graphql"));
+		Files.deleteIfExists(Path.of("src/test/resources/purge/cascade.actual.graphql"));
+		Files.deleteIfExists(Path.of("src/test/resources/purge/queries.actual.graphql"));
+		Files.deleteIfExists(Path.of("src/test/resources/purge/explain.actual.graphql"));
+		Files.deleteIfExists(Path.of("src/test/resources/purge/explain.actual.jsonl"));
 		Files.deleteIfExists(Path.of("src/test/resources/purge/purge2.actual.graphql"));
+		Files.deleteIfExists(Path.of("src/test/resources/purge/purge.actual2.graphql"));
+		Files.deleteIfExists(Path.of("src/test/resources/purge/purge2.actual2.graphql"));
 		Files.deleteIfExists(Path.of("src/test/resources/purge/dir/1.actual.graphql"));
 		Files.deleteIfExists(Path.of("src/test/resources/purge/dir/2.actual.graphql"));
 	}
@@ -179,4 +224,865 @@ class PurgeTest {
 
 		assertEquals(0, exitCode);
 	}
-}
\ No newline at end of file
+
+	@DisplayName("Testing compiled keep patterns take the same decisions as plain string searches")
+	@Test
+	void keepMatcher() {
+		List<String> firstPatterns = List.of("@GK", "@GKeep", "K");
+		List<String> secondPatterns = List.of("KEEP", "EE", "@GK");
+		KeepMatcher matcher = new KeepMatcher(firstPatterns, secondPatterns);
+
+		Random random = new Random(42);
+		String alphabet = "@GKeEP \n";
+		for (int n = 0; n < 5_000; ++n) {
+			StringBuilder comment = new StringBuilder();
+			for (int i = random.nextInt(30); i > 0; --i)
+				comment.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			String str = comment.toString();
+
+			boolean expected = firstPatterns.stream().anyMatch(pattern -> {
+				int firstMatchIdx = str.indexOf(pattern);
+				if (firstMatchIdx == -1)
+					return false;
+				String lineOfInterest = str.substring(firstMatchIdx, GQL.lineEndIdx(str, firstMatchIdx + 1));
+				return secondPatterns.stream().anyMatch(lineOfInterest::contains);
+			});
+			assertEquals(expected, matcher.purgedComment(str) != null, str);
+			// memoized decision
+			assertEquals(expected, matcher.purgedComment(str) != null, str);
+		}
+
+		// "keep me" lines are removed
+		assertEquals(
+			"Description\nmore\n",
+			new KeepMatcher(List.of("@GK"), List.of("ADMIN")).purgedComment("Description\n@GK ADMIN\nmore\n")
+		);
+		assertNull(new KeepMatcher(List.of("@GK"), List.of()).purgedComment("@GK ADMIN"));
+	}
+
+	@DisplayName("Testing rules equivalent to keep patterns purge the same")
+	@Test
+	void runRules() throws IOException {
+		GQLFedUtils app = new GQLFedUtils();
+		CommandLine cmd = new CommandLine(app);
+
+		StringWriter sw = new StringWriter();
+		cmd.setOut(new PrintWriter(sw));
+
+		int exitCode = cmd.execute(
+			"purge",
+			"--suffix", ".actual",
+			"--config", "src/test/resources/purge/purge2.rules.yaml",
+			"src/test/resources/purge/purge2.graphql"
+		);
+
+		String expected = Files.readString(Path.of("src/test/resources/purge/purge2.expected.graphql"));
+		String actual = Files.readString(Path.of("src/test/resources/purge/purge2.actual.graphql"));
+		assertEquals(expected, actual);
+
+		assertEquals(0, exitCode);
+	}
+
+	@DisplayName("Testing rule expressions")
+	@Test
+	void rules() throws ConfigurationException {
+		RuleSet rules = RuleSet.compile(List.of(
+			new PurgeRule("(@GK ADMIN or @GK OPS) and not @Internal", List.of("type", "field")),
+			new PurgeRule("/@gk\\s+(public|guest)/i or \"keep \\\"me\\\"\"", List.of("enum"))
+		));
+		GQLDataType type = new GQLType("Boxer", null);
+		GQLDataType gqlEnum = new GQLEnum("Stance", null);
+
+		assertEquals("Description\n", rules.purgedComment(type, "Description\n@GK PUBLIC ADMIN\n"));
+		assertEquals("", rules.purgedComment(type, "@GK OPS"));
+		assertNull(rules.purgedComment(type, "@GK OPS\n@Internal"));
+		assertNull(rules.purgedComment(type, "@GK\nADMIN")); // not in the same line
+		assertNull(rules.purgedComment(type, "ADMIN @GK"));  // not in order
+		assertNull(rules.purgedComment(gqlEnum, "@GK ADMIN")); // rule doesn't apply to enums
+
+		assertEquals("a\n", rules.purgedComment(gqlEnum, "a\n@GK   Public\n"));
+		assertEquals("", rules.purgedComment(gqlEnum, "keep \"me\""));
+		assertNull(rules.purgedComment(gqlEnum, "keep me"));
+		assertNull(rules.purgedComment(type, "@GK PUBLIC"));
+
+		// nodes without comments
+		assertEquals("", RuleSet.compile(List.of(new PurgeRule("not @Internal", null))).purgedComment(type, ""));
+
+		assertThrows(ConfigurationException.class, () -> RuleSet.compile(List.of(new PurgeRule("(@GK", null))));
+		assertThrows(ConfigurationException.class, () -> RuleSet.compile(List.of(new PurgeRule("@GK and", null))));
+		assertThrows(ConfigurationException.class, () -> RuleSet.compile(List.of(new PurgeRule("/(/", null))));
+		assertThrows(
+			ConfigurationException.class,
+			() -> RuleSet.compile(List.of(new PurgeRule("@GK", List.of("union"))))
+		);
+	}
+
+	@DisplayName("Testing concurrent purge produces the same files and logs in input order")
+	@Test
+	void runConcurrently() throws IOException {
+		GQLFedUtils app = new GQLFedUtils();
+		CommandLine cmd = new CommandLine(app);
+
+		StringWriter sw = new StringWriter();
+		cmd.setOut(new PrintWriter(sw));
+
+		List<String> logs = new ArrayList<>();
+		int exitCode = executeWithLogs(
+			cmd,
+			logs,
+			"purge",
+			"--suffix", ".actual",
+			"--jobs", "3",
+			"--config", "src/test/resources/purge/purge.ok.yaml",
+			"--exclude", "expected",
+			"--exclude", "actual",
+			"src/test/resources/purge/dir", "src/test/resources/purge/purge.graphql"
+		);
+
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/purge.expected.graphql")),
+			Files.readString(Path.of("src/test/resources/purge/purge.actual.graphql"))
+		);
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/dir/1.expected.graphql")),
+			Files.readString(Path.of("src/test/resources/purge/dir/1.actual.graphql"))
+		);
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/dir/2.expected.graphql")),
+			Files.readString(Path.of("src/test/resources/purge/dir/2.actual.graphql"))
+		);
+
+		assertEquals(
+			List.of(
+				"Processing " + Path.of("src/test/resources/purge/dir/1.graphql"),
+				"Saving output in " + Path.of("src/test/resources/purge/dir/1.actual.graphql"),
+				"Processing " + Path.of("src/test/resources/purge/dir/2.graphql"),
+				"Saving output in " + Path.of("src/test/resources/purge/dir/2.actual.graphql"),
+				"Processing " + Path.of("src/test/resources/purge/purge.graphql"),
+				"Saving output in " + Path.of("src/test/resources/purge/purge.actual.graphql")
+			),
+			logs.subList(0, 6)
+		);
+		assertTrue(logs.get(6).startsWith("Purged 3 file(s) in"));
+
+		assertEquals(0, exitCode);
+	}
+
+	@DisplayName("Testing in-memory purge with a reusable purger")
+	@Test
+	void purger() throws Exception {
+		String sdl = Files.readString(Path.of("src/test/resources/purge/purge.graphql"));
+		String expected = Files.readString(Path.of("src/test/resources/purge/purge.expected.graphql"));
+
+		Purger purger = new Purger(new PurgeConfigConverter().convert("src/test/resources/purge/purge.ok.yaml"));
+		assertEquals(expected, purger.purge(sdl));
+
+		// the graph is not modified
+		GQL gql = GQL.from(sdl, true);
+		String original = gql.toString();
+		assertEquals(expected, purger.purge(gql) + "\n");
+		assertEquals(original, gql.toString());
+
+		// purgers can be shared by several threads
+		List<String> outputs = IntStream.range(0, 32)
+			.parallel()
+			.mapToObj(i -> {
+				try {
+					return purger.purge(sdl);
+				} catch (InvalidGQLSyntax e) {
+					throw new RuntimeException(e);
+				}
+			})
+			.collect(Collectors.toList());
+		outputs.forEach(output -> assertEquals(expected, output));
+
+		// profiles
+		Purger profilesPurger = new Purger(
+			new PurgeConfigConverter().convert("src/test/resources/purge/purge.profiles.yaml")
+		);
+		assertEquals(List.of("ok", "admin"), profilesPurger.getProfileNames());
+		assertEquals(expected, profilesPurger.purgeProfiles(sdl).get("ok"));
+		assertEquals(expected, profilesPurger.purgeProfiles(gql).get("ok") + "\n");
+		assertThrows(IllegalStateException.class, () -> profilesPurger.purge(sdl));
+		assertThrows(IllegalStateException.class, () -> purger.purgeProfiles(sdl));
+
+		// invalid configurations are reported when the purger is built
+		PurgeConfig invalid = new PurgeConfig();
+		invalid.setRules(List.of(new PurgeRule("(@GK", null)));
+		assertThrows(ConfigurationException.class, () -> new Purger(invalid));
+	}
+
+	@DisplayName("Testing the cache of purged schemas")
+	@Test
+	void purgedSchemaCache() throws Exception {
+		String sdl = Files.readString(Path.of("src/test/resources/purge/purge.graphql"));
+		String expected = Files.readString(Path.of("src/test/resources/purge/purge.expected.graphql"));
+		Purger purger = new Purger(
+			new PurgeConfigConverter().convert("src/test/resources/purge/purge.profiles.yaml")
+		);
+		PurgedSchemaCache cache = new PurgedSchemaCache(purger, 2, Long.MAX_VALUE);
+
+		// concurrent misses purge the schema only once
+		AtomicInteger loads = new AtomicInteger();
+		GQL gql = GQL.from(sdl, true);
+		List<PurgedSchemaCache.PurgedSchema> purged = IntStream.range(0, 32)
+			.parallel()
+			.mapToObj(i -> cache.get("v1", "ok", () -> {
+				loads.incrementAndGet();
+				return gql;
+			}))
+			.collect(Collectors.toList());
+		assertEquals(1, loads.get());
+		purged.forEach(schema -> assertEquals(expected, schema.getSdl()));
+		assertEquals(1, cache.getStats().getMisses());
+		assertEquals(31, cache.getStats().getHits());
+
+		// least recently used schemas are evicted
+		assertEquals(expected, cache.get(sdl, "ok").getSdl());
+		cache.get("v1", "ok", gql::snapshot); // v1 is now the most recently used
+		cache.get("v1", "admin", gql::snapshot);
+		assertEquals(1, cache.getStats().getEvictions());
+		assertEquals(2, cache.getStats().getSize());
+		cache.get("v1", "ok", () -> {
+			throw new AssertionError("v1 should be cached");
+		});
+
+		cache.invalidate("v1");
+		assertEquals(0, cache.getStats().getSize());
+		assertEquals(0, cache.getStats().getChars());
+		assertThrows(IllegalArgumentException.class, () -> cache.get(sdl, "none"));
+		assertEquals(0, cache.getStats().getSize());
+
+		// the size is accounted even if schemas are invalidated or evicted while they're purged
+		PurgedSchemaCache small = new PurgedSchemaCache(purger, 4, expected.length() * 2L);
+		IntStream.range(0, 256)
+			.parallel()
+			.forEach(i -> {
+				small.get("v" + i % 8, "ok", gql::snapshot);
+				small.invalidate("v" + (i + 1) % 8);
+			});
+		for (int i = 0; i < 8; ++i)
+			small.invalidate("v" + i);
+		assertEquals(0, small.getStats().getChars());
+	}
+
+	@DisplayName("Testing purge with a pipeline of stages")
+	@Test
+	void runPipelined() throws IOException {
+		List<String> logs = new ArrayList<>();
+		int exitCode = executeWithLogs(
+			new CommandLine(new GQLFedUtils()),
+			logs,
+			"purge",
+			"--suffix", ".actual",
+			"--pipeline",
+			"--jobs", "2",
+			"--queue-depth", "1",
+			"--config", "src/test/resources/purge/purge.ok.yaml",
+			"--exclude", "expected",
+			"--exclude", "actual",
+			"src/test/resources/purge/dir", "src/test/resources/purge/purge.graphql"
+		);
+		assertEquals(0, exitCode);
+
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/purge.expected.graphql")),
+			Files.readString(Path.of("src/test/resources/purge/purge.actual.graphql"))
+		);
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/dir/1.expected.graphql")),
+			Files.readString(Path.of("src/test/resources/purge/dir/1.actual.graphql"))
+		);
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/dir/2.expected.graphql")),
+			Files.readString(Path.of("src/test/resources/purge/dir/2.actual.graphql"))
+		);
+
+		// logs are printed in order, followed by the statistics of each stage
+		assertEquals(
+			List.of(
+				"Processing " + Path.of("src/test/resources/purge/dir/1.graphql"),
+				"Saving output in " + Path.of("src/test/resources/purge/dir/1.actual.graphql"),
+				"Processing " + Path.of("src/test/resources/purge/dir/2.graphql"),
+				"Saving output in " + Path.of("src/test/resources/purge/dir/2.actual.graphql"),
+				"Processing " + Path.of("src/test/resources/purge/purge.graphql"),
+				"Saving output in " + Path.of("src/test/resources/purge/purge.actual.graphql")
+			),
+			logs.subList(0, 6)
+		);
+		assertTrue(logs.get(6).startsWith("Stage read: 3 file(s)"));
+		assertTrue(logs.get(7).startsWith("Stage parse: 3 file(s)"));
+		assertTrue(logs.get(8).startsWith("Stage purge: 3 file(s)"));
+		assertTrue(logs.get(9).startsWith("Stage write: 3 file(s)"));
+		assertTrue(logs.get(10).startsWith("Purged 3 file(s) in"));
+	}
+
+	@DisplayName("Testing items for which a stage throws an error are done")
+	@Test
+	void pipelineErrors() {
+		List<Integer> errors = Collections.synchronizedList(new ArrayList<>());
+		Pipeline<Integer> pipeline = new Pipeline<Integer>((item, e) -> errors.add(item))
+			.addStage("first", 2, 1, item -> {
+				if (item == 3)
+					throw new StackOverflowError();
+				return true;
+			})
+			.addStage("second", 2, 1, item -> true);
+
+		List<Integer> done = new ArrayList<>();
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			assertTimeoutPreemptively(
+				Duration.ofSeconds(10),
+				() -> pipeline.run(List.of(1, 2, 3, 4, 5), executor, done::add)
+			);
+		} finally {
+			executor.shutdownNow();
+		}
+		Collections.sort(done);
+		assertEquals(List.of(1, 2, 3, 4, 5), done);
+		assertEquals(List.of(3), errors);
+	}
+
+	@DisplayName("Testing references to removed types are removed with --cascade")
+	@Test
+	void runCascade() throws IOException {
+		List<String> logs = new ArrayList<>();
+		int exitCode = executeWithLogs(
+			new CommandLine(new GQLFedUtils()),
+			logs,
+			"purge",
+			"--cascade",
+			"--suffix", ".actual",
+			"--config", "src/test/resources/purge/purge.ok.yaml",
+			"src/test/resources/purge/cascade.graphql"
+		);
+		assertEquals(0, exitCode);
+
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/cascade.expected.graphql")),
+			Files.readString(Path.of("src/test/resources/purge/cascade.actual.graphql"))
+		);
+		assertEquals(
+			List.of(
+				"Removed field Query.secret, its type Secret was removed",
+				"Removed field Team.secret, its type Secret was removed",
+				"Removed Team, all its fields were removed",
+				"Removed argument Query.users(filter), its type UserFilter was removed",
+				"Removed field Query.team, its type Team was removed",
+				"Removed field User.team, its type Team was removed"
+			),
+			logs.subList(1, 7)
+		);
+	}
+
+	@DisplayName("Testing the reason each node was kept or removed is written")
+	@Test
+	void runExplain() throws IOException {
+		int exitCode = new CommandLine(new GQLFedUtils()).execute(
+			"purge",
+			"--suffix", ".actual",
+			"--explain", "src/test/resources/purge/explain.actual.jsonl",
+			"--config", "src/test/resources/purge/purge.ok.yaml",
+			"src/test/resources/purge/explain.graphql"
+		);
+		assertEquals(0, exitCode);
+
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/explain.expected.jsonl")),
+			Files.readString(Path.of("src/test/resources/purge/explain.actual.jsonl"))
+		);
+	}
+
+	@DisplayName("Testing input directories are scanned with exclusions, inclusions and maximum depth")
+	@Test
+	void inputScanner() throws IOException {
+		Path root = Files.createTempDirectory("purge-scan");
+		try {
+			for (String file : List.of(
+				"a.graphql", "a.expected.graphql", "notes.txt",
+				"sub/b.graphql", "sub/deep/c.graphql",
+				"node_modules/pkg/d.graphql", "generated/e.graphql"
+			)) {
+				Path path = root.resolve(file);
+				Files.createDirectories(path.getParent());
+				Files.writeString(path, "scalar Date");
+			}
+
+			InputScanner scanner = new InputScanner(
+				List.of("node_modules", "expected", "**/generated"),
+				List.of("*.graphql"),
+				5
+			);
+			assertEquals(
+				List.of(root.resolve("a.graphql"), root.resolve("sub/b.graphql"), root.resolve("sub/deep/c.graphql")),
+				scanner.scan(root)
+			);
+
+			assertEquals(
+				List.of(root.resolve("a.graphql"), root.resolve("generated/e.graphql"), root.resolve("sub/b.graphql")),
+				new InputScanner(List.of("node_modules", "*.expected.graphql", "*.txt"), List.of(), 2).scan(root)
+			);
+
+			// changed files are checked without scanning
+			assertTrue(scanner.accepts(root, root.resolve("sub/deep/c.graphql")));
+			assertFalse(scanner.accepts(root, root.resolve("node_modules/pkg/d.graphql")));
+			assertFalse(scanner.accepts(root, root.resolve("notes.txt")));
+			assertFalse(new InputScanner(List.of(), List.of(), 2).accepts(root, root.resolve("sub/deep/c.graphql")));
+		} finally {
+			try (Stream<Path> paths = Files.walk(root)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	@DisplayName("Testing files are skipped if input, config and output didn't change")
+	@Test
+	void runIncrementally() throws IOException {
+		String[] args = {
+			"purge",
+			"--suffix", ".actual",
+			"--overwrite",
+			"--manifest", "src/test/resources/purge/manifest.actual.yaml",
+			"--config", "src/test/resources/purge/purge.ok.yaml",
+			"src/test/resources/purge/purge.graphql", "src/test/resources/purge/purge2.graphql"
+		};
+		Path output = Path.of("src/test/resources/purge/purge.actual.graphql");
+
+		List<String> logs = new ArrayList<>();
+		assertEquals(0, executeWithLogs(new CommandLine(new GQLFedUtils()), logs, args));
+		assertTrue(logs.get(logs.size() - 1).startsWith("Purged 2 file(s) in"));
+		assertTrue(Files.exists(Path.of("src/test/resources/purge/manifest.actual.yaml")));
+
+		// nothing changed
+		logs.clear();
+		assertEquals(0, executeWithLogs(new CommandLine(new GQLFedUtils()), logs, args));
+		assertTrue(logs.get(logs.size() - 1).startsWith("Purged 0 file(s), 2 skipped (up-to-date) in"));
+
+		// output changed
+		Files.writeString(output, "modified");
+		logs.clear();
+		assertEquals(0, executeWithLogs(new CommandLine(new GQLFedUtils()), logs, args));
+		assertTrue(logs.get(logs.size() - 1).startsWith("Purged 1 file(s), 1 skipped (up-to-date) in"));
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/purge.expected.graphql")),
+			Files.readString(output)
+		);
+
+		// config changed
+		args[7] = "src/test/resources/purge/purge2.yaml";
+		logs.clear();
+		assertEquals(0, executeWithLogs(new CommandLine(new GQLFedUtils()), logs, args));
+		assertTrue(logs.get(logs.size() - 1).startsWith("Purged 2 file(s) in"));
+
+		// output files changed
+		args[2] = ".actual2";
+		logs.clear();
+		assertEquals(0, executeWithLogs(new CommandLine(new GQLFedUtils()), logs, args));
+		assertTrue(logs.get(logs.size() - 1).startsWith("Purged 2 file(s) in"));
+		assertTrue(Files.exists(Path.of("src/test/resources/purge/purge.actual2.graphql")));
+
+		// an option affecting the output changed
+		String[] cascadeArgs = Stream.concat(Stream.of(args), Stream.of("--cascade")).toArray(String[]::new);
+		logs.clear();
+		assertEquals(0, executeWithLogs(new CommandLine(new GQLFedUtils()), logs, cascadeArgs));
+		assertTrue(logs.get(logs.size() - 1).startsWith("Purged 2 file(s) in"));
+	}
+
+	@DisplayName("Testing the manifest remembers the output files chosen by the user")
+	@Test
+	void runIncrementallyAltOut() throws IOException {
+		Path dir = Files.createTempDirectory("purge-manifest");
+		Path input = dir.resolve("a.graphql"), altOutput = dir.resolve("alt.graphql");
+		Files.copy(Path.of("src/test/resources/purge/purge.graphql"), input);
+		Files.writeString(dir.resolve("a.out.graphql"), "existing");
+		String[] args = {
+			"purge",
+			"--suffix", ".out",
+			"--manifest", dir.resolve("manifest.yaml").toString(),
+			"--config", "src/test/resources/purge/purge.ok.yaml",
+			input.toString()
+		};
+
+		InputStream stdin = System.in;
+		try {
+			// the user chooses another output file, instead of overwriting a.out.graphql
+			System.setIn(new ByteArrayInputStream((altOutput + "\n").getBytes(StandardCharsets.UTF_8)));
+			List<String> logs = new ArrayList<>();
+			assertEquals(0, executeWithLogs(new CommandLine(new GQLFedUtils()), logs, args));
+			assertEquals(
+				Files.readString(Path.of("src/test/resources/purge/purge.expected.graphql")),
+				Files.readString(altOutput)
+			);
+
+			// the file is up-to-date, and the user isn't asked again
+			System.setIn(new ByteArrayInputStream(new byte[0]));
+			logs.clear();
+			assertEquals(0, executeWithLogs(new CommandLine(new GQLFedUtils()), logs, args));
+			assertTrue(logs.get(logs.size() - 1).startsWith("Purged 0 file(s), 1 skipped (up-to-date) in"));
+			assertEquals("existing", Files.readString(dir.resolve("a.out.graphql")));
+		} finally {
+			System.setIn(stdin);
+			try (Stream<Path> paths = Files.walk(dir)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+	}
+
+	@DisplayName("Testing outputs that already have the purged content are not written")
+	@Test
+	void runUnchangedOutputs() throws IOException {
+		String[] args = {
+			"purge",
+			"--suffix", ".actual",
+			"--overwrite",
+			"--config", "src/test/resources/purge/purge.ok.yaml",
+			"src/test/resources/purge/purge.graphql"
+		};
+		Path output = Path.of("src/test/resources/purge/purge.actual.graphql");
+
+		List<String> logs = new ArrayList<>();
+		assertEquals(0, executeWithLogs(new CommandLine(new GQLFedUtils()), logs, args));
+		assertTrue(logs.get(logs.size() - 1).endsWith("(1 output(s) written, 0 unchanged)"));
+
+		FileTime modified = FileTime.fromMillis(0);
+		Files.setLastModifiedTime(output, modified);
+		logs.clear();
+		assertEquals(0, executeWithLogs(new CommandLine(new GQLFedUtils()), logs, args));
+		assertTrue(logs.contains(output + " is unchanged, not saving it"));
+		assertTrue(logs.get(logs.size() - 1).endsWith("(0 output(s) written, 1 unchanged)"));
+		assertEquals(modified, Files.getLastModifiedTime(output));
+
+		// same size, different content
+		String expected = Files.readString(output);
+		Files.writeString(output, expected.replace('a', 'b'));
+		logs.clear();
+		assertEquals(0, executeWithLogs(new CommandLine(new GQLFedUtils()), logs, args));
+		assertTrue(logs.get(logs.size() - 1).endsWith("(1 output(s) written, 0 unchanged)"));
+		assertEquals(expected, Files.readString(output));
+	}
+
+	@DisplayName("Testing files are read from archives and outputs are saved in an archive")
+	@Test
+	void runArchives() throws IOException {
+		String sdl = Files.readString(Path.of("src/test/resources/purge/purge.graphql"));
+		String expected = Files.readString(Path.of("src/test/resources/purge/purge.expected.graphql"));
+		Path dir = Files.createTempDirectory("purge-archives");
+		Path input = dir.resolve("schemas.jar"), copy = dir.resolve("schemas-copy.jar");
+		Path output = dir.resolve("purged.zip");
+		try {
+			try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(input))) {
+				for (String entry : List.of("graphql/a.graphql", "graphql/b.graphql", "META-INF/MANIFEST.MF")) {
+					zip.putNextEntry(new ZipEntry(entry));
+					zip.write(sdl.getBytes(StandardCharsets.UTF_8));
+					zip.closeEntry();
+				}
+			}
+
+			int exitCode = new CommandLine(new GQLFedUtils()).execute(
+				"purge",
+				"--suffix", ".purged",
+				"--include", "*.graphql",
+				"--exclude", "b.graphql",
+				"--output-archive", output.toString(),
+				"--config", "src/test/resources/purge/purge.ok.yaml",
+				input.toString(),
+				input + "!/graphql/b.graphql"
+			);
+			assertEquals(0, exitCode);
+
+			Map<String, String> entries = new HashMap<>();
+			try (ZipInputStream zip = new ZipInputStream(Files.newInputStream(output))) {
+				for (ZipEntry entry; (entry = zip.getNextEntry()) != null; )
+					entries.merge(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8), String::concat);
+			}
+			assertEquals(Map.of("graphql/a.purged.graphql", expected, "graphql/b.purged.graphql", expected), entries);
+
+			// a.graphql is in both archives, nothing is saved
+			Files.copy(input, copy);
+			FileTime modified = Files.getLastModifiedTime(output);
+			exitCode = new CommandLine(new GQLFedUtils()).execute(
+				"purge",
+				"--suffix", ".purged",
+				"--include", "a.graphql",
+				"--output-archive", output.toString(),
+				"--overwrite",
+				"--config", "src/test/resources/purge/purge.ok.yaml",
+				input.toString(),
+				copy.toString()
+			);
+			assertEquals(CommandLine.ExitCode.SOFTWARE, exitCode);
+			assertEquals(modified, Files.getLastModifiedTime(output));
+			try (Stream<Path> files = Files.list(dir)) {
+				assertEquals(3, files.count()); // no temporary files are left
+			}
+		} finally {
+			Files.deleteIfExists(copy);
+			Files.deleteIfExists(input);
+			Files.deleteIfExists(output);
+			Files.delete(dir);
+		}
+	}
+
+	@DisplayName("Testing each profile produces the same output as purging with its own config")
+	@Test
+	void runProfiles() throws IOException {
+		int exitCode = new CommandLine(new GQLFedUtils()).execute(
+			"purge",
+			"--suffix", ".actual",
+			"--config", "src/test/resources/purge/purge.profiles.yaml",
+			"src/test/resources/purge/purge.graphql"
+		);
+		assertEquals(0, exitCode);
+
+		// same config as purge.ok.yaml
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/purge.expected.graphql")),
+			Files.readString(Path.of("src/test/resources/purge/purge.actual.ok.graphql"))
+		);
+
+		// same config as purge2.yaml
+		exitCode = new CommandLine(new GQLFedUtils()).execute(
+			"purge",
+			"--suffix", ".actual-admin",
+			"--config", "src/test/resources/purge/purge2.yaml",
+			"src/test/resources/purge/purge.graphql"
+		);
+		assertEquals(0, exitCode);
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/purge.actual-admin.graphql")),
+			Files.readString(Path.of("src/test/resources/purge/purge.actual.admin.graphql"))
+		);
+	}
+
+	@DisplayName("Testing --watch purges changed files and reloads the configuration")
+	@Test
+	void runWatch() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("purge-watch");
+		Path config = dir.resolve("config.yaml");
+		Path inputs = Files.createDirectory(dir.resolve("inputs"));
+		Files.copy(Path.of("src/test/resources/purge/purge.ok.yaml"), config);
+		Files.copy(Path.of("src/test/resources/purge/purge.graphql"), inputs.resolve("a.graphql"));
+		String expected = Files.readString(Path.of("src/test/resources/purge/purge.expected.graphql"));
+
+		CommandLine cmd = new CommandLine(new GQLFedUtils());
+		cmd.setOut(new PrintWriter(new StringWriter()));
+		Thread watcher = new Thread(() -> cmd.execute(
+			"purge",
+			"--watch",
+			"--suffix", ".out",
+			"--exclude", "*.out.graphql",
+			"--config", config.toString(),
+			inputs.toString()
+		));
+		watcher.start();
+		try {
+			awaitContent(inputs.resolve("a.out.graphql"), expected);
+
+			// new and modified files are purged
+			Files.copy(Path.of("src/test/resources/purge/purge.graphql"), inputs.resolve("b.graphql"));
+			awaitContent(inputs.resolve("b.out.graphql"), expected);
+
+			// a new configuration is applied to all files
+			Files.copy(Path.of("src/test/resources/purge/purge2.yaml"), config, StandardCopyOption.REPLACE_EXISTING);
+			for (int i = 0; i < 200 && expected.equals(Files.readString(inputs.resolve("a.out.graphql"))); ++i)
+				Thread.sleep(50);
+			assertNotEquals(expected, Files.readString(inputs.resolve("a.out.graphql")));
+
+			Files.copy(
+				Path.of("src/test/resources/purge/purge2.graphql"),
+				inputs.resolve("a.graphql"),
+				StandardCopyOption.REPLACE_EXISTING
+			);
+			awaitContent(
+				inputs.resolve("a.out.graphql"),
+				Files.readString(Path.of("src/test/resources/purge/purge2.expected.graphql"))
+			);
+			assertFalse(Files.exists(inputs.resolve("a.out.out.graphql")));
+		} finally {
+			watcher.interrupt();
+			watcher.join(10_000);
+			try (Stream<Path> paths = Files.walk(dir)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+		assertFalse(watcher.isAlive());
+	}
+
+	@DisplayName("Testing --watch keeps the explanations of files that didn't change")
+	@Test
+	void runWatchExplain() throws IOException, InterruptedException {
+		Path dir = Files.createTempDirectory("purge-watch-explain");
+		Path explainFile = dir.resolve("explain.jsonl");
+		Path inputs = Files.createDirectory(dir.resolve("inputs"));
+		Path a = inputs.resolve("a.graphql"), b = inputs.resolve("b.graphql");
+		Files.copy(Path.of("src/test/resources/purge/explain.graphql"), a);
+		Files.copy(Path.of("src/test/resources/purge/explain.graphql"), b);
+
+		CommandLine cmd = new CommandLine(new GQLFedUtils());
+		cmd.setOut(new PrintWriter(new StringWriter()));
+		Thread watcher = new Thread(() -> cmd.execute(
+			"purge",
+			"--watch",
+			"--suffix", ".out",
+			"--exclude", "*.out.graphql",
+			"--explain", explainFile.toString(),
+			"--config", "src/test/resources/purge/purge.ok.yaml",
+			inputs.toString()
+		));
+		watcher.start();
+		try {
+			String aFile = "{\"file\":\"" + a + "\"", bFile = "{\"file\":\"" + b + "\"";
+			for (int i = 0; i < 200 && !(Files.exists(explainFile) && Files.readString(explainFile).contains(bFile)); ++i)
+				Thread.sleep(50);
+			String explanations = Files.readString(explainFile);
+			assertTrue(explanations.contains(aFile));
+
+			// only b is purged again, but the explanations of a are kept
+			Files.copy(Path.of("src/test/resources/purge/purge.graphql"), b, StandardCopyOption.REPLACE_EXISTING);
+			for (int i = 0; i < 200 && explanations.equals(Files.readString(explainFile)); ++i)
+				Thread.sleep(50);
+			String newExplanations = Files.readString(explainFile);
+			assertNotEquals(explanations, newExplanations);
+			assertTrue(newExplanations.contains(aFile));
+			assertTrue(newExplanations.contains(bFile));
+		} finally {
+			watcher.interrupt();
+			watcher.join(10_000);
+			try (Stream<Path> paths = Files.walk(dir)) {
+				paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+			}
+		}
+		assertFalse(watcher.isAlive());
+	}
+
+	/**
+	 * Waits (at most 10 seconds) until the file has the expected content
+	 */
+	private static void awaitContent(Path file, String expected) throws IOException, InterruptedException {
+		for (int i = 0; i < 200 && !(Files.exists(file) && expected.equals(Files.readString(file))); ++i)
+			Thread.sleep(50);
+		assertEquals(expected, Files.readString(file));
+	}
+
+	@DisplayName("Testing streaming purge gives the same output")
+	@Test
+	void runStreaming() throws IOException {
+		int exitCode = new CommandLine(new GQLFedUtils()).execute(
+			"purge",
+			"--stream",
+			"--suffix", ".actual",
+			"--config", "src/test/resources/purge/purge.ok.yaml",
+			"--exclude", "expected",
+			"--exclude", "actual",
+			"src/test/resources/purge/dir", "src/test/resources/purge/purge.graphql"
+		);
+		assertEquals(0, exitCode);
+
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/purge.expected.graphql")),
+			Files.readString(Path.of("src/test/resources/purge/purge.actual.graphql"))
+		);
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/dir/1.expected.graphql")),
+			Files.readString(Path.of("src/test/resources/purge/dir/1.actual.graphql"))
+		);
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/dir/2.expected.graphql")),
+			Files.readString(Path.of("src/test/resources/purge/dir/2.actual.graphql"))
+		);
+
+		for (String config : List.of("purge2.yaml", "purge2.rules.yaml")) {
+			Files.deleteIfExists(Path.of("src/test/resources/purge/purge2.actual.graphql"));
+			exitCode = new CommandLine(new GQLFedUtils()).execute(
+				"purge",
+				"--stream",
+				"--suffix", ".actual",
+				"--config", "src/test/resources/purge/" + config,
+				"src/test/resources/purge/purge2.graphql"
+			);
+			assertEquals(0, exitCode);
+			assertEquals(
+				Files.readString(Path.of("src/test/resources/purge/purge2.expected.graphql")),
+				Files.readString(Path.of("src/test/resources/purge/purge2.actual.graphql"))
+			);
+		}
+
+		// profiles
+		exitCode = new CommandLine(new GQLFedUtils()).execute(
+			"purge",
+			"--stream",
+			"--suffix", ".actual",
+			"--config", "src/test/resources/purge/purge.profiles.yaml",
+			"src/test/resources/purge/purge.graphql"
+		);
+		assertEquals(0, exitCode);
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/purge.expected.graphql")),
+			Files.readString(Path.of("src/test/resources/purge/purge.actual.ok.graphql"))
+		);
+
+		exitCode = new CommandLine(new GQLFedUtils()).execute(
+			"purge",
+			"--suffix", ".actual-admin",
+			"--config", "src/test/resources/purge/purge2.yaml",
+			"src/test/resources/purge/purge.graphql"
+		);
+		assertEquals(0, exitCode);
+		assertEquals(
+			Files.readString(Path.of("src/test/resources/purge/purge.actual-admin.graphql")),
+			Files.readString(Path.of("src/test/resources/purge/purge.actual.admin.graphql"))
+		);
+	}
+
+	@DisplayName("Testing all Query and Mutation types are kept, even if there are several of them")
+	@Test
+	void runDuplicatedQueries() throws IOException {
+		for (List<String> options : List.<List<String>>of(List.of(), List.of("--stream"), List.of("--cascade"))) {
+			Files.deleteIfExists(Path.of("src/test/resources/purge/queries.actual.graphql"));
+			List<String> args = new ArrayList<>(List.of(
+				"purge",
+				"--suffix", ".actual",
+				"--config", "src/test/resources/purge/purge.ok.yaml",
+				"src/test/resources/purge/queries.graphql"
+			));
+			args.addAll(1, options);
+			int exitCode = new CommandLine(new GQLFedUtils()).execute(args.toArray(new String[0]));
+			assertEquals(0, exitCode);
+			assertEquals(
+				Files.readString(Path.of("src/test/resources/purge/queries.expected.graphql")),
+				Files.readString(Path.of("src/test/resources/purge/queries.actual.graphql")),
+				options.toString()
+			);
+		}
+	}
+
+	/**
+	 * Executes the command and collects the messages logged by {@link Purge}
+	 */
+	private static int executeWithLogs(CommandLine cmd, List<String> logs, String... args) {
+		cmd.setOut(new PrintWriter(new StringWriter()));
+
+		Handler handler = new Handler() {
+			@Override
+			public void publish(LogRecord record) {
+				logs.add(record.getMessage());
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		};
+		Logger logger = Logger.getLogger(Purge.class.getName());
+		logger.addHandler(handler);
+		try {
+			return cmd.execute(args);
+		} finally {
+			logger.removeHandler(handler);
+		}
+	}
+}
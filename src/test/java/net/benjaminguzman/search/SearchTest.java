@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2021. Benjamín Antonio Velasco Guzmán
+ * Author: Benjamín Antonio Velasco Guzmán <bg@benjaminguzman.dev>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.benjaminguzman.search;
+
+import net.benjaminguzman.GQLFedUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchTest {
+	private static final Path INDEX_FILE = Path.of("src/test/resources/search/search.graphql.idx");
+
+	@AfterEach
+	void afterEach() throws IOException {
+		Files.deleteIfExists(INDEX_FILE);
+	}
+
+	@DisplayName("Testing search by name and description")
+	@Test
+	void searchNameAndDescription() {
+		String output = search("src/test/resources/search/search.graphql", "boxer", "name");
+
+		// the field name is split in camelCase words, and its description contains "boxer"
+		assertTrue(output.startsWith("field      Boxer.fullName\n           Boxer's full name\n"), output);
+	}
+
+	@DisplayName("Testing search by prefix")
+	@Test
+	void searchPrefix() {
+		String output = search("src/test/resources/search/search.graphql", "-n", "3", "stan");
+
+		assertTrue(output.contains("enum       Stance\n"), output);
+		assertEquals(3, output.lines().filter(line -> !line.startsWith(" ")).count(), output);
+
+		// invalid limits are replaced
+		output = search("src/test/resources/search/search.graphql", "-n", "0", "stan");
+		assertEquals(1, output.lines().filter(line -> !line.startsWith(" ")).count(), output);
+	}
+
+	@DisplayName("Testing persisted index is reused")
+	@Test
+	void searchPersisted() {
+		String output = search("src/test/resources/search/search.graphql", "--persist", "deprecated", "stance");
+		assertTrue(Files.exists(INDEX_FILE));
+
+		assertEquals(output, search("src/test/resources/search/search.graphql", "--persist", "deprecated",
+			"stance"));
+		assertEquals(output, search("src/test/resources/search/search.graphql", "deprecated", "stance"));
+	}
+
+	private static String search(String... args) {
+		CommandLine cmd = new CommandLine(new GQLFedUtils());
+
+		StringWriter sw = new StringWriter();
+		cmd.setOut(new PrintWriter(sw));
+
+		String[] fullArgs = new String[args.length + 1];
+		fullArgs[0] = "search";
+		System.arraycopy(args, 0, fullArgs, 1, args.length);
+		assertEquals(0, cmd.execute(fullArgs));
+
+		return sw.toString();
+	}
+}